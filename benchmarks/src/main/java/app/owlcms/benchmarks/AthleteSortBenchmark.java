@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.Gender;
+import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.athleteSort.Ranking;
+import app.owlcms.data.competition.Competition;
+import ch.qos.logback.classic.Level;
+
+/**
+ * Sorting a session in lifting order and in winning order, as done several times per decision.
+ *
+ * The "afterChange" variants modify one attempt on every athlete before sorting, so the parsed attempts must be
+ * rebuilt, as after a round of decisions. To compare with the String-parsing getters, run the same benchmark on a
+ * revision before the numeric attempt model was introduced.
+ *
+ * Run with <code>main</code> from the IDE, or with {@link BenchmarkRunner}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AthleteSortBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AthleteSortBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private List<Athlete> athletes;
+    private int round;
+
+    @Param({ "10", "100", "1000", "5000" })
+    private int size;
+
+    @Benchmark
+    public List<Athlete> liftingOrder() {
+        List<Athlete> sorted = new ArrayList<>(this.athletes);
+        AthleteSorter.liftingOrder(sorted);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<Athlete> liftingOrderAfterChange() {
+        changeAll();
+        return liftingOrder();
+    }
+
+    @Setup
+    public void setup() {
+        Competition.setCurrent(new Competition());
+        Random r = new Random(0);
+        this.athletes = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            Athlete a = new Athlete();
+            a.setLoggerLevel(Level.OFF);
+            a.setValidation(false);
+            a.setLastName("Athlete" + i);
+            a.setFirstName("Benchmark");
+            a.setGender(r.nextBoolean() ? Gender.F : Gender.M);
+            a.setBodyWeight(50.0D + r.nextInt(60));
+            a.setLotNumber(i + 1);
+            a.setStartNumber(i + 1);
+
+            int snatch = 60 + r.nextInt(80);
+            int cleanJerk = snatch + 20 + r.nextInt(30);
+            a.setSnatch1Declaration(Integer.toString(snatch));
+            a.setCleanJerk1Declaration(Integer.toString(cleanJerk));
+
+            // the session is in the middle of the snatch: 0 to 3 attempts done
+            int done = r.nextInt(4);
+            int weight = snatch;
+            for (int attempt = 1; attempt <= done; attempt++) {
+                boolean good = r.nextFloat() < 0.7;
+                String lift = good ? Integer.toString(weight) : Integer.toString(-weight);
+                switch (attempt) {
+                case 1:
+                    a.setSnatch1ActualLift(lift);
+                    break;
+                case 2:
+                    a.setSnatch2ActualLift(lift);
+                    break;
+                case 3:
+                    a.setSnatch3ActualLift(lift);
+                    break;
+                }
+                weight = good ? weight + 1 + r.nextInt(3) : weight;
+            }
+            this.athletes.add(a);
+        }
+        Collections.shuffle(this.athletes, r);
+    }
+
+    @Benchmark
+    public List<Athlete> winningOrder() {
+        List<Athlete> sorted = new ArrayList<>(this.athletes);
+        AthleteSorter.resultsOrder(sorted, Ranking.TOTAL, true);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<Athlete> winningOrderAfterChange() {
+        changeAll();
+        return winningOrder();
+    }
+
+    /**
+     * Change the clean&jerk declaration of every athlete, which invalidates the parsed attempts.
+     */
+    private void changeAll() {
+        this.round = (this.round + 1) % 10;
+        for (Athlete a : this.athletes) {
+            a.setCleanJerk1Change1(Integer.toString(150 + this.round));
+        }
+    }
+
+}
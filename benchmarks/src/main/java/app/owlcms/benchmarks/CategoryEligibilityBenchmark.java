@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import app.owlcms.Main;
+import app.owlcms.data.agegroup.AgeGroup;
+import app.owlcms.data.agegroup.AgeGroupRepository;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.Gender;
+import app.owlcms.data.category.AgeDivision;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.category.CategoryRepository;
+import app.owlcms.data.category.RegistrationPreferenceComparator;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.competition.CompetitionRepository;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.jpa.JPAService;
+import ch.qos.logback.classic.Level;
+
+/**
+ * Recomputing the eligible categories of 2,000 athletes, as done for a registration upload or after the age groups
+ * have been changed.
+ *
+ * "indexed" is the current code, which answers from the in-memory category index. "queried" issues the filtering
+ * query that was used before the index, once per athlete, for comparison.
+ *
+ * Run with <code>main</code> from the IDE, or with {@link BenchmarkRunner}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CategoryEligibilityBenchmark {
+
+    private static final int NB_ATHLETES = 2000;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CategoryEligibilityBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private List<Athlete> athletes;
+
+    @Benchmark
+    public int indexed() {
+        int nbParticipations = 0;
+        for (Athlete a : this.athletes) {
+            a.computeMainAndEligibleCategories();
+            nbParticipations += a.getParticipations().size();
+        }
+        return nbParticipations;
+    }
+
+    @Benchmark
+    public int queried() {
+        int nbEligible = 0;
+        for (Athlete a : this.athletes) {
+            List<Category> eligible = CategoryRepository.findFiltered((String) null, a.getGender(),
+                    (AgeDivision) null, (AgeGroup) null, a.getAge(), (Double) null, true, -1, -1);
+            eligible.sort(new RegistrationPreferenceComparator());
+            Double bw = a.getBodyWeight();
+            nbEligible += eligible.stream()
+                    .filter(c -> bw > c.getMinimumWeight() && bw <= c.getMaximumWeight())
+                    .count();
+        }
+        return nbEligible;
+    }
+
+    @Setup
+    public void setup() {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        JPAService.runInTransaction(em -> {
+            Competition competition = new Competition();
+            competition.setCompetitionName("Benchmark");
+            competition.setCompetitionDate(LocalDate.of(2023, 6, 1));
+            competition.setMasters(true);
+            CompetitionRepository.save(competition);
+            // all the age divisions, so that athletes are eligible for several categories
+            AgeGroupRepository.insertAgeGroups(em, null);
+            return null;
+        });
+
+        Random r = new Random(0);
+        this.athletes = new ArrayList<>(NB_ATHLETES);
+        for (int i = 0; i < NB_ATHLETES; i++) {
+            Athlete a = new Athlete();
+            a.setLoggerLevel(Level.OFF);
+            a.setValidation(false);
+            a.setLastName("Athlete" + i);
+            a.setFirstName("Benchmark");
+            a.setGender(r.nextBoolean() ? Gender.F : Gender.M);
+            a.setYearOfBirth(2023 - 13 - r.nextInt(60));
+            a.setBodyWeight(40.0D + r.nextInt(90) + r.nextInt(10) / 10.0D);
+            this.athletes.add(a);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        JPAService.close();
+    }
+
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with a fixed number of logarithmic buckets, safe to update from several threads.
+ *
+ * Values are kept in microseconds. Below 16µs every value has its bucket; above, each power of two is split in 8, so
+ * percentiles are within 12.5% of the actual value.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = LINEAR + (64 - 4) * SUB_BUCKETS;
+
+    static int index(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exp - 3)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exp - 4) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int exp = (index - LINEAR) / SUB_BUCKETS + 4;
+        int sub = (index - LINEAR) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1L) << (exp - 3)) - 1;
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final String name;
+    private final AtomicLong total = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    public double getMaxMillis() {
+        return this.max.get() / 1000.0D;
+    }
+
+    public double getMeanMillis() {
+        long n = this.count.get();
+        return n == 0 ? 0.0D : this.total.get() / 1000.0D / n;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @param fraction between 0 and 1, 0.99 for the 99th percentile
+     * @return the upper bound of the bucket holding the percentile, in milliseconds
+     */
+    public double getPercentileMillis(double fraction) {
+        long n = this.count.get();
+        if (n == 0) {
+            return 0.0D;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), this.max.get()) / 1000.0D;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * @param nanos the latency, as a difference of {@link System#nanoTime()}
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        this.counts.incrementAndGet(index(micros));
+        this.count.incrementAndGet();
+        this.total.addAndGet(micros);
+        this.max.accumulateAndGet(micros, Math::max);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-32s n=%-7d mean=%8.2fms p50=%8.2fms p90=%8.2fms p99=%8.2fms max=%8.2fms", this.name,
+                getCount(), getMeanMillis(), getPercentileMillis(0.50), getPercentileMillis(0.90),
+                getPercentileMillis(0.99), getMaxMillis());
+    }
+
+}
@@ -0,0 +1,355 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.data.platform.Platform;
+import app.owlcms.fieldofplay.FieldOfPlay;
+import app.owlcms.init.OwlcmsFactory;
+import app.owlcms.simulation.CompetitionSimulator;
+import app.owlcms.simulation.FOPSimulator;
+import app.owlcms.uievents.UIEvent;
+import app.owlcms.utils.OrderedEventBus;
+import app.owlcms.utils.StartupUtils;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+
+/**
+ * Headless load test: whole meets run by {@link CompetitionSimulator} on several platforms at once, in an in-memory
+ * database, with simulated displays attached to every field of play.
+ *
+ * The fields of play are in testing mode, so the delays of the simulation (clock running, decision display,
+ * breaks between groups) are on a virtual clock and each platform lifts as fast as the server allows. Measured:
+ * <ul>
+ * <li>decision to <code>LiftingOrderUpdated</code> emitted by the field of play,
+ * <li>decision to the new order rendered on each display,
+ * <li>decision to the first <code>/update</code> received by publicresults after the new order (if enabled),
+ * <li>lifts per second over the run and per second of wall time, allocation rate and garbage collection.
+ * </ul>
+ *
+ * The displays render the athlete rows through the shared render cache of the field of play and serialize them, as
+ * the scoreboards do; they also receive the timer and decision events. With <code>-Dpublicresults=true</code>, the
+ * updates are posted to a {@link PublicResultsReceiver} on the loopback interface.
+ *
+ * <pre>
+ * java -Dplatforms=6 -Dathletes=600 -Ddisplays=20 -Dpublicresults=true \
+ *     -cp benchmarks/target/benchmarks.jar app.owlcms.benchmarks.LoadHarness
+ * </pre>
+ */
+public class LoadHarness {
+
+    /**
+     * One per field of play. Remembers when the last decision was given and measures the lifting order update that
+     * follows.
+     */
+    private class Probe {
+        private final AtomicLong decisionNanos = new AtomicLong();
+        private final FieldOfPlay fop;
+        private final AtomicLong lifts = new AtomicLong();
+        /** decision for which the new lifting order has been emitted */
+        private volatile long orderDecision;
+        private volatile long orderNanos;
+        private long postedDecision;
+
+        private Probe(FieldOfPlay fop) {
+            this.fop = fop;
+        }
+
+        @Subscribe
+        public void orderUpdated(UIEvent.LiftingOrderUpdated e) {
+            long d = this.decisionNanos.get();
+            if (d != 0 && e.getCreatedNanos() >= d && d != this.orderDecision) {
+                this.orderNanos = e.getCreatedNanos();
+                this.orderDecision = d;
+                LoadHarness.this.orderEmitted.record(e.getCreatedNanos() - d);
+            }
+        }
+
+        private void decision() {
+            this.decisionNanos.set(System.nanoTime());
+            this.lifts.incrementAndGet();
+            LoadHarness.this.lifts.incrementAndGet();
+        }
+
+        private synchronized void updateReceived(long received) {
+            long d = this.orderDecision;
+            if (d != 0 && d != this.postedDecision && received >= this.orderNanos) {
+                this.postedDecision = d;
+                LoadHarness.this.updatePosted.record(received - d);
+            }
+        }
+    }
+
+    /**
+     * Drives one platform and reports the decisions.
+     */
+    private class MeasuringSimulator extends FOPSimulator {
+        private final Probe probe;
+
+        private MeasuringSimulator(FieldOfPlay f, List<Group> groups) {
+            super(f, groups);
+            this.probe = LoadHarness.this.probes.get(f.getName());
+        }
+
+        @Override
+        protected void doDecisions() {
+            this.probe.decision();
+            super.doDecisions();
+        }
+
+        @Override
+        protected void doFinished() {
+            super.doFinished();
+            LoadHarness.this.finished.countDown();
+        }
+    }
+
+    /**
+     * Does what a scoreboard does with the events, minus the browser.
+     */
+    private class SimulatedDisplay {
+        private static final String VARIANT = "SimulatedDisplay|athletes";
+        private long lastDecision;
+        private final Probe probe;
+
+        private SimulatedDisplay(Probe probe) {
+            this.probe = probe;
+        }
+
+        @Subscribe
+        public void event(UIEvent e) {
+            LoadHarness.this.displayEvents.incrementAndGet();
+        }
+
+        @Subscribe
+        public void orderUpdated(UIEvent.LiftingOrderUpdated e) {
+            FieldOfPlay fop = this.probe.fop;
+            JsonValue rows = fop.getRenderCache().get(VARIANT, fop.getRenderVersion(),
+                    () -> rows(e.getDisplayOrder()));
+            // each browser gets its own copy
+            LoadHarness.this.renderedChars.addAndGet(rows.toJson().length());
+
+            long d = this.probe.decisionNanos.get();
+            if (d != 0 && e.getCreatedNanos() >= d && d != this.lastDecision) {
+                this.lastDecision = d;
+                LoadHarness.this.displayUpdated.record(System.nanoTime() - d);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadHarness harness = new LoadHarness(
+                StartupUtils.getIntegerParam("platforms", 4),
+                StartupUtils.getIntegerParam("athletes", 400),
+                StartupUtils.getIntegerParam("displays", 10),
+                StartupUtils.getBooleanParam("publicresults"),
+                StartupUtils.getIntegerParam("timeoutMinutes", 60));
+        harness.run();
+        // hibernate and the event pools keep threads
+        System.exit(0);
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getTotalThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    private static long[] gcCountAndMillis() {
+        long[] r = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            r[0] += Math.max(0, gc.getCollectionCount());
+            r[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return r;
+    }
+
+    private static JsonValue rows(List<Athlete> athletes) {
+        JsonArray rows = Json.createArray();
+        if (athletes == null) {
+            return rows;
+        }
+        int i = 0;
+        for (Athlete a : athletes) {
+            JsonObject row = Json.createObject();
+            row.put("fullName", Objects.toString(a.getFullName(), ""));
+            row.put("teamName", Objects.toString(a.getTeam(), ""));
+            row.put("category", Objects.toString(a.getDisplayCategory(), ""));
+            row.put("startNumber", Objects.toString(a.getStartNumber(), ""));
+            String[] lifts = { a.getSnatch1ActualLift(), a.getSnatch2ActualLift(), a.getSnatch3ActualLift(),
+                    a.getCleanJerk1ActualLift(), a.getCleanJerk2ActualLift(), a.getCleanJerk3ActualLift() };
+            JsonArray attempts = Json.createArray();
+            for (int j = 0; j < lifts.length; j++) {
+                attempts.set(j, Objects.toString(lifts[j], ""));
+            }
+            row.put("attempts", attempts);
+            row.put("bestSnatch", Objects.toString(a.getBestSnatch(), ""));
+            row.put("bestCleanJerk", Objects.toString(a.getBestCleanJerk(), ""));
+            row.put("total", Objects.toString(a.getTotal(), ""));
+            row.put("snatchRank", a.getSnatchRank());
+            row.put("cleanJerkRank", a.getCleanJerkRank());
+            row.put("totalRank", a.getTotalRank());
+            rows.set(i++, row);
+        }
+        return rows;
+    }
+
+    private final AtomicLong displayEvents = new AtomicLong();
+    private final LatencyHistogram displayUpdated = new LatencyHistogram("decision -> displays updated");
+    private CountDownLatch finished;
+    private final AtomicLong lifts = new AtomicLong();
+    private final int nbAthletes;
+    private final int nbDisplays;
+    private final int nbPlatforms;
+    private final LatencyHistogram orderEmitted = new LatencyHistogram("decision -> LiftingOrderUpdated");
+    private final Map<String, Probe> probes = new ConcurrentHashMap<>();
+    private final boolean publicResults;
+    private final AtomicLong renderedChars = new AtomicLong();
+    private final int timeoutMinutes;
+    private final LatencyHistogram updatePosted = new LatencyHistogram("decision -> /update received");
+
+    public LoadHarness(int nbPlatforms, int nbAthletes, int nbDisplays, boolean publicResults, int timeoutMinutes) {
+        this.nbPlatforms = nbPlatforms;
+        this.nbAthletes = nbAthletes;
+        this.nbDisplays = nbDisplays;
+        this.publicResults = publicResults;
+        this.timeoutMinutes = timeoutMinutes;
+    }
+
+    public void run() throws Exception {
+        System.out.printf("preparing %d athletes on %d platforms, %d displays per platform, publicresults %s%n",
+                this.nbAthletes, this.nbPlatforms, this.nbDisplays, this.publicResults ? "on" : "off");
+        SyntheticCompetition competition = SyntheticCompetition.create(this.nbAthletes);
+        PublicResultsReceiver receiver = null;
+        try {
+            Config config = Config.getCurrentForEditing();
+            config.setMqttInternal(false);
+            if (this.publicResults) {
+                receiver = new PublicResultsReceiver((fop, received) -> {
+                    Probe probe = this.probes.get(fop);
+                    if (probe != null) {
+                        probe.updateReceived(received);
+                    }
+                });
+                config.setPublicResultsURL(receiver.getUrl());
+                config.setUpdatekey("loadharness");
+            } else {
+                config.setPublicResultsURL(null);
+            }
+            Config.setCurrent(config);
+
+            JPAService.runInTransaction(em -> {
+                for (int i = 1; i <= this.nbPlatforms; i++) {
+                    em.persist(new Platform("P" + i));
+                }
+                return null;
+            });
+            OwlcmsFactory.initFOPByName();
+            for (FieldOfPlay fop : OwlcmsFactory.getFOPs()) {
+                fop.setTestingMode(true);
+                Probe probe = new Probe(fop);
+                this.probes.put(fop.getName(), probe);
+                fop.getUiEventBus().register(probe);
+                for (int i = 0; i < this.nbDisplays; i++) {
+                    fop.getUiEventBus().register(new SimulatedDisplay(probe));
+                }
+            }
+            this.finished = new CountDownLatch(this.probes.size());
+
+            long allocatedBefore = allocatedBytes();
+            long[] gcBefore = gcCountAndMillis();
+            long start = System.nanoTime();
+            new CompetitionSimulator().startSimulators((f, groups) -> new MeasuringSimulator(f, groups));
+
+            List<Long> perSecond = new ArrayList<>();
+            long deadline = start + TimeUnit.MINUTES.toNanos(this.timeoutMinutes);
+            long previous = 0;
+            while (!this.finished.await(1, TimeUnit.SECONDS)) {
+                long current = this.lifts.get();
+                perSecond.add(current - previous);
+                previous = current;
+                if (System.nanoTime() > deadline) {
+                    System.out.printf("timed out after %d minutes%n", this.timeoutMinutes);
+                    break;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocatedBefore;
+            long[] gcAfter = gcCountAndMillis();
+
+            report(elapsed, perSecond, allocatedBefore < 0 ? -1 : allocated, gcAfter[0] - gcBefore[0],
+                    gcAfter[1] - gcBefore[1], receiver);
+        } finally {
+            if (receiver != null) {
+                receiver.close();
+            }
+            competition.close();
+        }
+    }
+
+    private void report(long elapsedNanos, List<Long> perSecond, long allocated, long gcCount, long gcMillis,
+            PublicResultsReceiver receiver) {
+        double seconds = elapsedNanos / 1.0E9;
+        System.out.println();
+        System.out.printf("%d lifts in %.1fs: %.1f lifts/s%n", this.lifts.get(), seconds, this.lifts.get() / seconds);
+        if (!perSecond.isEmpty()) {
+            System.out.printf("per second while running: min=%d max=%d%n",
+                    perSecond.stream().mapToLong(Long::longValue).min().getAsLong(),
+                    perSecond.stream().mapToLong(Long::longValue).max().getAsLong());
+        }
+        Map<String, Probe> sorted = new TreeMap<>(this.probes);
+        for (Probe p : sorted.values()) {
+            EventBus bus = p.fop.getUiEventBus();
+            System.out.printf("  %-6s %d lifts%s%n", p.fop.getName(), p.lifts.get(),
+                    bus instanceof OrderedEventBus
+                            ? String.format(", %d events dropped", ((OrderedEventBus) bus).getDroppedEvents())
+                            : "");
+        }
+        System.out.println();
+        System.out.println(this.orderEmitted);
+        System.out.println(this.displayUpdated);
+        if (receiver != null) {
+            System.out.println(this.updatePosted);
+        }
+        System.out.println();
+        System.out.printf("%d display events, %.1f MB of rows serialized%n", this.displayEvents.get(),
+                this.renderedChars.get() / 1.0E6);
+        if (receiver != null) {
+            System.out.printf("publicresults: %d requests, %d updates, %.1f MB received%n", receiver.getRequests(),
+                    receiver.getUpdates(), receiver.getBytes() / 1.0E6);
+        }
+        if (allocated >= 0) {
+            System.out.printf("allocated %.1f MB, %.1f MB/s, %.1f KB per lift%n", allocated / 1.0E6,
+                    allocated / 1.0E6 / seconds, this.lifts.get() == 0 ? 0.0 : allocated / 1.0E3 / this.lifts.get());
+        }
+        System.out.printf("gc: %d collections, %d ms%n", gcCount, gcMillis);
+    }
+
+}
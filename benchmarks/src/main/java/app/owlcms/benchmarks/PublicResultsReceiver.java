@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.GZIPInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import elemental.json.Json;
+import elemental.json.JsonObject;
+
+/**
+ * Stand-in for publicresults on the loopback interface, so that the updates sent by owlcms go through the real
+ * sender, HTTP client and serialization.
+ *
+ * Everything is accepted and answered with 200. The field of play of each <code>/update</code> is extracted (from the
+ * gzipped JSON state or from the form fields) and reported with the time it was received; nothing else is parsed.
+ */
+public class PublicResultsReceiver implements AutoCloseable {
+
+    private static String formValue(String body, String key) {
+        for (String pair : body.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && key.equals(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8))) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final HttpServer server;
+    private final ObjLongConsumer<String> updateListener;
+    private final AtomicLong updates = new AtomicLong();
+
+    /**
+     * Start listening on a free port.
+     *
+     * @param updateListener gets the field of play name and the {@link System#nanoTime()} of each update received
+     * @throws IOException
+     */
+    public PublicResultsReceiver(ObjLongConsumer<String> updateListener) throws IOException {
+        this.updateListener = updateListener;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newFixedThreadPool(4, (r) -> {
+            Thread t = new Thread(r, "publicresults-receiver");
+            t.setDaemon(true);
+            return t;
+        });
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    public long getBytes() {
+        return this.bytes.get();
+    }
+
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    public long getUpdates() {
+        return this.updates.get();
+    }
+
+    /**
+     * @return the value for the <code>remote</code> setting of owlcms
+     */
+    public String getUrl() {
+        return "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            long received = System.nanoTime();
+            this.requests.incrementAndGet();
+            this.bytes.addAndGet(body.length);
+            if (exchange.getRequestURI().getPath().endsWith("/update")) {
+                this.updates.incrementAndGet();
+                String fop = fopName(body, "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding")));
+                if (fop != null) {
+                    this.updateListener.accept(fop, received);
+                }
+            }
+            exchange.sendResponseHeaders(200, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String fopName(byte[] body, boolean gzipped) throws IOException {
+        if (gzipped) {
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                in.transferTo(json);
+            }
+            JsonObject payload = Json.parse(json.toString(StandardCharsets.UTF_8));
+            return payload.hasKey("fop") ? payload.getString("fop") : null;
+        }
+        return formValue(new String(body, StandardCharsets.UTF_8), "fop");
+    }
+
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.athleteSort.Ranking;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.competition.Competition;
+
+/**
+ * The rankings recomputed after each decision, on all the athletes of a competition.
+ *
+ * "categoryRanks" assigns the snatch, clean&jerk and total ranks in every eligible category (MultiCategoryRankSetter),
+ * "globalRanks" the Sinclair ranks for each gender, and "medals" computes the medalists of every category as the
+ * medal displays and ceremonies do.
+ *
+ * Run with <code>main</code> from the IDE, or with {@link BenchmarkRunner}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RankingBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RankingBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private List<Athlete> athletes;
+    private SyntheticCompetition competition;
+
+    @Param({ "10", "100", "1000", "5000" })
+    private int size;
+
+    @Benchmark
+    public List<Athlete> categoryRanks() {
+        List<Athlete> sorted = new ArrayList<>(this.athletes);
+        for (Ranking r : new Ranking[] { Ranking.SNATCH, Ranking.CLEANJERK, Ranking.TOTAL }) {
+            AthleteSorter.assignCategoryRanks(sorted, r);
+        }
+        return sorted;
+    }
+
+    @Benchmark
+    public List<Athlete> globalRanks() {
+        List<Athlete> sorted = new ArrayList<>(this.athletes);
+        AthleteSorter.resultsOrder(sorted, Ranking.BW_SINCLAIR, false);
+        AthleteSorter.assignOverallRanksAndPoints(sorted, Ranking.BW_SINCLAIR);
+        return sorted;
+    }
+
+    @Benchmark
+    public TreeMap<Category, TreeSet<Athlete>> medals() {
+        return Competition.getCurrent().computeMedalsByCategory(this.athletes);
+    }
+
+    @Setup
+    public void setup() {
+        this.competition = SyntheticCompetition.create(this.size);
+        this.athletes = this.competition.getAthletes();
+        // medals use the category ranks
+        categoryRanks();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.competition.close();
+    }
+
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.records.RecordEvent;
+import app.owlcms.data.records.RecordFilter;
+
+/**
+ * Building the record boxes shown under the current athlete, for every athlete of the competition, as the
+ * scoreboards do when the athlete is called.
+ *
+ * The displayable and challenged records are found once in the setup; only the JSON building is measured.
+ *
+ * Run with <code>main</code> from the IDE, or with {@link BenchmarkRunner}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordJsonBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RecordJsonBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private List<Athlete> athletes;
+    private Map<Athlete, Set<RecordEvent>> challenged = new HashMap<>();
+    private SyntheticCompetition competition;
+    private Map<Athlete, List<RecordEvent>> displayable;
+
+    @Param({ "10", "100", "1000", "5000" })
+    private int size;
+
+    @Benchmark
+    public void recordJson(Blackhole bh) {
+        for (Athlete a : this.athletes) {
+            Integer request = a.getNextAttemptRequestedWeight();
+            boolean snatch = a.getAttemptsDone() < 3;
+            bh.consume(RecordFilter.buildRecordJson(this.displayable.get(a), this.challenged.get(a),
+                    snatch ? request : null, snatch ? null : request, totalRequest(a), a));
+        }
+    }
+
+    @Setup
+    public void setup() {
+        this.competition = SyntheticCompetition.create(this.size);
+        this.athletes = this.competition.getAthletes();
+        this.displayable = RecordFilter.computeDisplayableRecordsForAthletes(this.athletes);
+        for (Athlete a : this.athletes) {
+            List<RecordEvent> eligible = RecordFilter.filterEligibleRecordsForAthlete(a, this.displayable.get(a));
+            Integer request = a.getNextAttemptRequestedWeight();
+            boolean snatch = a.getAttemptsDone() < 3;
+            this.challenged.put(a, new HashSet<>(RecordFilter.computeChallengedRecords(eligible,
+                    snatch ? request : null, snatch ? null : request, totalRequest(a))));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.competition.close();
+    }
+
+    /**
+     * @return the total if the clean&jerk being requested is successful
+     */
+    private Integer totalRequest(Athlete a) {
+        if (a.getAttemptsDone() < 3) {
+            return null;
+        }
+        Integer request = a.getNextAttemptRequestedWeight();
+        return request != null ? a.getBestSnatch() + request : null;
+    }
+
+}
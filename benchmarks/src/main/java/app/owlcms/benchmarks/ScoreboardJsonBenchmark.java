@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.fieldofplay.FieldOfPlay;
+import app.owlcms.fieldofplay.ProxyAthleteTimer;
+import app.owlcms.fieldofplay.ProxyBreakTimer;
+import app.owlcms.monitors.EventForwarder;
+
+/**
+ * Building the athlete rows sent to the scoreboards and to publicresults, serialized as sent, with
+ * {@link EventForwarder#computeAthletesJson(boolean)}. The shared render cache is bypassed, so every call does the
+ * full work done once per change on the field of play.
+ *
+ * All the athletes are put on the same field of play, so the larger sizes stand for the worst case of a very large
+ * session.
+ *
+ * Run with <code>main</code> from the IDE, or with {@link BenchmarkRunner}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScoreboardJsonBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ScoreboardJsonBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private SyntheticCompetition competition;
+    private EventForwarder forwarder;
+
+    @Param({ "10", "100", "1000", "5000" })
+    private int size;
+
+    @Benchmark
+    public String liftingOrder() {
+        return this.forwarder.computeAthletesJson(false).toJson();
+    }
+
+    @Benchmark
+    public String startOrder() {
+        return this.forwarder.computeAthletesJson(true).toJson();
+    }
+
+    @Setup
+    public void setup() {
+        this.competition = SyntheticCompetition.create(this.size);
+        List<Athlete> athletes = this.competition.getAthletes();
+        FieldOfPlay fop = FieldOfPlay.mockFieldOfPlay(athletes, new ProxyAthleteTimer(null), new ProxyBreakTimer(null));
+        this.forwarder = new EventForwarder(fop);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.competition.close();
+    }
+
+}
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.benchmarks;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import app.owlcms.Main;
+import app.owlcms.data.agegroup.AgeGroup;
+import app.owlcms.data.agegroup.AgeGroupRepository;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.athlete.Gender;
+import app.owlcms.data.athleteSort.Ranking;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.competition.CompetitionRepository;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.data.records.RecordConfig;
+import app.owlcms.data.records.RecordEvent;
+import app.owlcms.data.records.RecordIndex;
+import ch.qos.logback.classic.Level;
+
+/**
+ * A competition in progress, generated in an in-memory database the same way as the demo data: random athletes in
+ * sessions of {@link #SESSION_SIZE}, their eligible categories computed by the application, some attempts done, and
+ * records for every category.
+ *
+ * The athletes are read back once everything is saved, with their participations loaded, so the benchmarks work on
+ * the same detached objects as the field of play.
+ */
+public class SyntheticCompetition {
+
+    static final String[] RECORD_NAMES = { "World", "Continental", "National" };
+    static final int SESSION_SIZE = 20;
+    private static final String[] TEAMS = { "EAST", "WEST", "NORTH", "SOUTH", "CENTRAL", "ISLANDS" };
+
+    /**
+     * Start an empty in-memory database and fill it. {@link #close()} must be called when done.
+     *
+     * @param nbAthletes
+     * @return the competition
+     */
+    public static SyntheticCompetition create(int nbAthletes) {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        JPAService.runInTransaction(em -> {
+            Competition competition = new Competition();
+            competition.setCompetitionName("Benchmark");
+            competition.setCompetitionDate(LocalDate.of(2023, 6, 1));
+            competition.setMasters(true);
+            CompetitionRepository.save(competition);
+            // all the age divisions, so that athletes are eligible for several categories
+            AgeGroupRepository.insertAgeGroups(em, null);
+            return null;
+        });
+        return new SyntheticCompetition(nbAthletes);
+    }
+
+    private List<Athlete> athletes;
+    private final Random r = new Random(0);
+
+    private SyntheticCompetition(int nbAthletes) {
+        JPAService.runInTransaction(em -> {
+            Group group = null;
+            for (int i = 0; i < nbAthletes; i++) {
+                if (i % SESSION_SIZE == 0) {
+                    LocalDateTime start = LocalDateTime.of(2023, 6, 1, 9, 0).plusHours(i / SESSION_SIZE);
+                    group = new Group(String.format("S%03d", i / SESSION_SIZE + 1), start.minusHours(2), start);
+                    em.persist(group);
+                }
+                Athlete a = randomAthlete(i);
+                a.setGroup(group);
+                em.persist(a);
+            }
+            return null;
+        });
+        // categories and participations, as after a registration upload
+        AthleteRepository.resetParticipations();
+        saveRecords();
+
+        this.athletes = AthleteRepository.findAll();
+        for (Athlete a : this.athletes) {
+            a.setLoggerLevel(Level.OFF);
+            a.setValidation(false);
+            for (Participation p : a.getParticipations()) {
+                p.getCategory().getAgeGroup();
+            }
+        }
+    }
+
+    public void close() {
+        JPAService.close();
+    }
+
+    /**
+     * @return all the athletes, detached, in registration order
+     */
+    public List<Athlete> getAthletes() {
+        return this.athletes;
+    }
+
+    /**
+     * Do the attempts in order, 70% good, moving up 1 to 3 kg after a good lift.
+     */
+    private void lift(Athlete a, int snatch, int cleanJerk, int attemptsDone) {
+        int weight = snatch;
+        for (int attempt = 1; attempt <= attemptsDone; attempt++) {
+            if (attempt == 4) {
+                weight = cleanJerk;
+            }
+            boolean good = this.r.nextFloat() < 0.7;
+            String lift = good ? Integer.toString(weight) : Integer.toString(-weight);
+            switch (attempt) {
+            case 1:
+                a.setSnatch1ActualLift(lift);
+                break;
+            case 2:
+                a.setSnatch2ActualLift(lift);
+                break;
+            case 3:
+                a.setSnatch3ActualLift(lift);
+                break;
+            case 4:
+                a.setCleanJerk1ActualLift(lift);
+                break;
+            case 5:
+                a.setCleanJerk2ActualLift(lift);
+                break;
+            case 6:
+                a.setCleanJerk3ActualLift(lift);
+                break;
+            }
+            weight = good ? weight + 1 + this.r.nextInt(3) : weight;
+        }
+    }
+
+    private Athlete randomAthlete(int i) {
+        Athlete a = new Athlete();
+        a.setLoggerLevel(Level.OFF);
+        a.setValidation(false);
+        a.setLastName("Athlete" + i);
+        a.setFirstName("Benchmark");
+        Gender gender = this.r.nextBoolean() ? Gender.F : Gender.M;
+        a.setGender(gender);
+        a.setTeam(TEAMS[this.r.nextInt(TEAMS.length)]);
+        a.setFullBirthDate(LocalDate.of(2023 - 13 - this.r.nextInt(60), 1 + this.r.nextInt(12),
+                1 + this.r.nextInt(28)));
+        double bodyWeight = (gender == Gender.F ? 45.0D : 55.0D) + this.r.nextInt(60) + this.r.nextInt(10) / 10.0D;
+        a.setBodyWeight(bodyWeight);
+        a.setLotNumber(i + 1);
+        a.setStartNumber(i % SESSION_SIZE + 1);
+
+        double ratio = (gender == Gender.F ? 0.9 : 1.2) * (1 + this.r.nextGaussian() / 10);
+        int snatch = (int) Math.round(bodyWeight * ratio);
+        int cleanJerk = (int) Math.round(snatch * 1.2D);
+        a.setSnatch1Declaration(Integer.toString(snatch));
+        a.setCleanJerk1Declaration(Integer.toString(cleanJerk));
+        a.setQualifyingTotal(snatch + cleanJerk - 15);
+
+        // sessions are at different stages
+        lift(a, snatch, cleanJerk, this.r.nextInt(7));
+        return a;
+    }
+
+    /**
+     * Records of each kind for the categories of the athletes, a bit above what they lift, so that some are
+     * challenged.
+     */
+    private void saveRecords() {
+        Set<Category> categories = new LinkedHashSet<>();
+        JPAService.runInTransaction(em -> {
+            for (Athlete a : AthleteRepository.doFindAll(em)) {
+                for (Participation p : a.getParticipations()) {
+                    categories.add(p.getCategory());
+                }
+            }
+            for (Category c : categories) {
+                AgeGroup ag = c.getAgeGroup();
+                double snatch = c.getMaximumWeight() > 200 ? 200 : c.getMaximumWeight() * 1.3;
+                for (String recordName : RECORD_NAMES) {
+                    for (Ranking lift : new Ranking[] { Ranking.SNATCH, Ranking.CLEANJERK, Ranking.TOTAL }) {
+                        RecordEvent re = new RecordEvent();
+                        re.setRecordName(recordName);
+                        re.setRecordFederation(recordName.toUpperCase());
+                        re.setFileName("benchmark");
+                        re.setGender(c.getGender());
+                        re.setAgeGrp(ag.getCode());
+                        re.setAgeGrpLower(ag.getMinAge());
+                        re.setAgeGrpUpper(ag.getMaxAge());
+                        re.setBwCatLower((int) Math.round(c.getMinimumWeight()));
+                        re.setBwCatUpper((int) Math.round(c.getMaximumWeight()));
+                        re.setBwCatString(c.getLimitString());
+                        re.setRecordLift(lift);
+                        double value = lift == Ranking.SNATCH ? snatch
+                                : lift == Ranking.CLEANJERK ? snatch * 1.2 : snatch * 2.2;
+                        re.setRecordValue(Math.floor(value * (1 + this.r.nextGaussian() / 20)));
+                        em.persist(re);
+                    }
+                }
+            }
+            return null;
+        });
+        RecordConfig rc = new RecordConfig();
+        rc.setRecordOrder(List.of(RECORD_NAMES));
+        RecordConfig.setCurrent(rc);
+        RecordIndex.getCurrent().invalidate();
+    }
+
+}
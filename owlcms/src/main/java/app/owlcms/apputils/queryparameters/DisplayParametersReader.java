@@ -4,7 +4,6 @@ import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
 
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +24,7 @@ import com.vaadin.flow.router.Location;
 import com.vaadin.flow.router.OptionalParameter;
 
 import app.owlcms.i18n.Translator;
+import app.owlcms.utils.Scheduler;
 import ch.qos.logback.classic.Logger;
 
 public interface DisplayParametersReader extends SoundParametersReader, DisplayParameters {
@@ -246,6 +246,6 @@ public interface DisplayParametersReader extends SoundParametersReader, DisplayP
 		}
 	}
 
-	Timer getDialogTimer();
+	Scheduler.Task getDialogTimer();
 
 }
\ No newline at end of file
@@ -2,8 +2,6 @@ package app.owlcms.apputils.queryparameters;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import org.slf4j.LoggerFactory;
 
@@ -16,6 +14,7 @@ import com.vaadin.flow.router.Location;
 import app.owlcms.displays.video.StylesDirSelection;
 import app.owlcms.fieldofplay.FieldOfPlay;
 import app.owlcms.init.OwlcmsSession;
+import app.owlcms.utils.Scheduler;
 import ch.qos.logback.classic.Logger;
 
 public interface SoundParametersReader extends SoundParameters, FOPParametersReader, StylesDirSelection {
@@ -40,21 +39,16 @@ public interface SoundParametersReader extends SoundParameters, FOPParametersRea
 			nDialog.open();
 			setDialog(nDialog);
 			UI ui = UI.getCurrent();
-			Timer timer = new Timer();
-			timer.schedule(
-			        new TimerTask() {
-				        @Override
-				        public void run() {
-					        try {
-						        ui.access(() -> {
-							        // logger.debug("timer closing {}", dialog);
-							        nDialog.close();
-						        });
-					        } catch (Throwable e) {
-						        // ignore.
-					        }
-				        }
-			        }, 8 * 1000L);
+			Scheduler.Task timer = Scheduler.getShared().schedule(() -> {
+				try {
+					ui.access(() -> {
+						// logger.debug("timer closing {}", dialog);
+						nDialog.close();
+					});
+				} catch (Throwable e) {
+					// ignore.
+				}
+			}, 8 * 1000L);
 			setDialogTimer(timer);
 		}
 	}
@@ -93,7 +87,7 @@ public interface SoundParametersReader extends SoundParameters, FOPParametersRea
 
 	public void setDialog(Dialog nDialog);
 
-	public void setDialogTimer(Timer timer);
+	public void setDialogTimer(Scheduler.Task timer);
 
 	@Override
 	public void setShowInitialDialog(boolean b);
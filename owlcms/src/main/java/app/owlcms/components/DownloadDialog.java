@@ -18,6 +18,7 @@ import java.util.function.Supplier;
 import org.slf4j.LoggerFactory;
 
 //import com.vaadin.componentfactory.EnhancedDialog;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.combobox.ComboBox;
 import com.vaadin.flow.component.dialog.Dialog;
@@ -26,6 +27,7 @@ import com.vaadin.flow.component.html.Paragraph;
 import com.vaadin.flow.component.icon.Icon;
 import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.component.progressbar.ProgressBar;
 import com.vaadin.flow.server.StreamResource;
 import com.vaadin.flow.server.StreamResourceWriter;
 
@@ -156,6 +158,7 @@ public class DownloadDialog {
 
 					InputStream is = res.getStream();
 					xlsWriter.setInputStream(is);
+					xlsWriter.setTemplateName(res.getFilePath());
 					logger.debug("(2) filter present = {} {} {}", xlsWriter.getGroup(), xlsWriter.getCategory(),
 					        xlsWriter.getAgeDivision());
 
@@ -169,7 +172,9 @@ public class DownloadDialog {
 					templateSelection.replace(downloadAnchor, nDownloadAnchor);
 					downloadAnchor = nDownloadAnchor;
 
-					xlsWriter.setDoneCallback((message) -> dialog.close());
+					// called from the download request, once the spreadsheet has been sent
+					UI ui = UI.getCurrent();
+					xlsWriter.setDoneCallback((message) -> ui.access(() -> dialog.close()));
 
 //					downloadButton.setFileNameCallback(supplier);
 //					downloadButton.setInputStreamCallback(() -> xlsWriter.createInputStream());
@@ -197,7 +202,9 @@ public class DownloadDialog {
 		innerButton.setDisableOnClick(true);
 		innerButton.addClickListener((c) -> {
 			templateSelect.setEnabled(false);
-			dialog.add(new Paragraph(getProcessingMessage()));
+			ProgressBar progress = new ProgressBar();
+			progress.setIndeterminate(true);
+			dialog.add(new Paragraph(getProcessingMessage()), progress);
 		});
 		return link;
 	}
@@ -226,7 +233,7 @@ public class DownloadDialog {
 		LocalDateTime now = LocalDateTime.now().withNano(0);
 		suffix.append("_");
 		suffix.append(now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH'h'mm';'ss")));
-		suffix.append(".xls");
+		suffix.append(xlsWriter.isStreaming() ? ".xlsx" : ".xls");
 		String fileName = outputFileName + suffix;
 		fileName = sanitizeFilename(fileName);
 		logger.trace(fileName);
@@ -20,7 +20,7 @@ import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 
 import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.category.Category;
-import app.owlcms.data.competition.Competition;
+import app.owlcms.data.competition.MedalService;
 import app.owlcms.data.group.Group;
 import app.owlcms.fieldofplay.FieldOfPlay;
 import app.owlcms.i18n.Translator;
@@ -122,7 +122,7 @@ public class GroupCategorySelectionMenu extends MenuBar {
 	}
 
 	private Set<Category> getAllCategories(Group g) {
-		TreeMap<Category, TreeSet<Athlete>> medals = Competition.getCurrent().getMedals(g, false);
+		TreeMap<Category, TreeSet<Athlete>> medals = MedalService.getCurrent().getMedals(g, false);
 		return medals.keySet();
 	}
 
@@ -138,7 +138,7 @@ public class GroupCategorySelectionMenu extends MenuBar {
 
 	private Set<Category> getFinishedCategories(Group g) {
 		Set<Category> finishedCategories = new TreeSet<>();
-		TreeMap<Category, TreeSet<Athlete>> medals = Competition.getCurrent().getMedals(g, true);
+		TreeMap<Category, TreeSet<Athlete>> medals = MedalService.getCurrent().getMedals(g, true);
 		finishedCategories = medals.keySet();
 		return finishedCategories;
 	}
@@ -28,6 +28,7 @@ import app.owlcms.apputils.NotificationUtils;
 import app.owlcms.data.athlete.Gender;
 import app.owlcms.data.category.AgeDivision;
 import app.owlcms.data.category.Category;
+import app.owlcms.data.category.CategoryIndex;
 import app.owlcms.data.competition.Competition;
 import app.owlcms.data.jpa.JPAService;
 import app.owlcms.utils.LoggerUtils;
@@ -272,7 +273,7 @@ public class AgeGroupDefinitionReader {
 			logger.error("could not find ageGroup configuration\n{}", LoggerUtils./**/stackTrace(e1));
 			mainLogger.error("could not find ageGroup configuration. See logs for details");
 		}
-
+		CategoryIndex.invalidate();
 	}
 
 }
@@ -26,11 +26,14 @@ import org.slf4j.LoggerFactory;
 import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.athlete.AthleteRepository;
 import app.owlcms.data.athlete.Gender;
+import app.owlcms.data.athleteSort.RankingEngine;
 import app.owlcms.data.category.AgeDivision;
 import app.owlcms.data.category.Category;
+import app.owlcms.data.category.CategoryIndex;
 import app.owlcms.data.category.Participation;
 import app.owlcms.data.competition.Competition;
 import app.owlcms.data.group.Group;
+import app.owlcms.data.jpa.FetchPlans;
 import app.owlcms.data.jpa.JPAService;
 import app.owlcms.spreadsheet.PAthlete;
 import app.owlcms.utils.LoggerUtils;
@@ -61,6 +64,7 @@ public class AgeGroupRepository {
 			}
 			return null;
 		});
+		CategoryIndex.invalidate();
 		return nAgeGroup;
 	}
 
@@ -90,7 +94,8 @@ public class AgeGroupRepository {
 			        Participation.class);
 			q.setParameter("ageGroupCode", agPrefix);
 			q.setParameter("gender", g);
-			List<Participation> resultSet = q.getResultList();
+			List<Participation> resultSet = FetchPlans.apply(em, q, FetchPlans.PARTICIPATION_RESULTS)
+			        .getResultList();
 			return resultSet;
 		});
 	}
@@ -123,7 +128,8 @@ public class AgeGroupRepository {
 				q.setParameter("ageDivision", ageDivision);
 			}
 
-			List<Participation> resultSet = q.getResultList();
+			List<Participation> resultSet = FetchPlans.apply(em, q, FetchPlans.PARTICIPATION_RESULTS)
+			        .getResultList();
 			return resultSet;
 		});
 		return participations;
@@ -148,7 +154,8 @@ public class AgeGroupRepository {
 				                + categoriesFromAgegroup,
 				        Participation.class);
 				q.setParameter("ageGroupCode", agPrefix);
-				List<Participation> resultSet = q.getResultList();
+				List<Participation> resultSet = FetchPlans.apply(em, q, FetchPlans.PARTICIPATION_RESULTS)
+				        .getResultList();
 				return resultSet;
 			});
 			return parts.stream().map(p -> new PAthlete(p)).collect(Collectors.toList());
@@ -171,7 +178,8 @@ public class AgeGroupRepository {
 			        Participation.class);
 			q.setParameter("ageGroupCode", agPrefix);
 			q.setParameter("gender", g);
-			List<Participation> resultSet = q.getResultList();
+			List<Participation> resultSet = FetchPlans.apply(em, q, FetchPlans.PARTICIPATION_RESULTS)
+			        .getResultList();
 			return resultSet;
 		});
 		return parts.stream().map(p -> new PAthlete(p)).collect(Collectors.toList());
@@ -196,7 +204,8 @@ public class AgeGroupRepository {
 			        "select distinct p from Participation p join p.athlete a where a.group = :competitionGroup",
 			        Participation.class);
 			q.setParameter("competitionGroup", gr);
-			List<Participation> resultSet = q.getResultList();
+			List<Participation> resultSet = FetchPlans.apply(em, q, FetchPlans.PARTICIPATION_RESULTS)
+			        .getResultList();
 			return resultSet;
 		});
 		return parts.stream().map(p -> new PAthlete(p)).collect(Collectors.toList());
@@ -235,6 +244,8 @@ public class AgeGroupRepository {
 			}
 			return null;
 		});
+		CategoryIndex.invalidate();
+		RankingEngine.getCurrent().invalidate();
 	}
 
 	@SuppressWarnings("unchecked")
@@ -416,6 +427,7 @@ public class AgeGroupRepository {
 			}
 			return null;
 		});
+		CategoryIndex.invalidate();
 		AgeGroupDefinitionReader.doInsertAgeGroup(null, "/agegroups/" + localizedFileName);
 		AthleteRepository.resetParticipations();
 	}
@@ -437,6 +449,8 @@ public class AgeGroupRepository {
 			}
 			return null;
 		});
+		CategoryIndex.invalidate();
+		RankingEngine.getCurrent().invalidate();
 
 		return nAgeGroup;
 	}
@@ -31,11 +31,16 @@ import javax.persistence.FetchType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedSubgraph;
 import javax.persistence.OneToMany;
+import javax.persistence.PostLoad;
 import javax.persistence.Transient;
 
 import org.apache.commons.codec.binary.StringUtils;
 import org.apache.commons.lang3.ObjectUtils;
+import org.hibernate.annotations.BatchSize;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
@@ -57,6 +62,7 @@ import app.owlcms.data.competition.Competition;
 import app.owlcms.data.config.Config;
 import app.owlcms.data.group.DisplayGroup;
 import app.owlcms.data.group.Group;
+import app.owlcms.data.jpa.FetchPlans;
 import app.owlcms.data.jpa.LocalDateAttributeConverter;
 import app.owlcms.fieldofplay.FOPState;
 import app.owlcms.fieldofplay.FieldOfPlay;
@@ -98,6 +104,10 @@ import ch.qos.logback.classic.Logger;
 // must be listed in app.owlcms.data.jpa.JPAService.entityClassNames()
 @Entity
 @Cacheable
+@NamedEntityGraph(name = FetchPlans.ATHLETE_RANKING, attributeNodes = {
+        @NamedAttributeNode("category"),
+        @NamedAttributeNode(value = "participations", subgraph = "participationCategory") }, subgraphs = {
+                @NamedSubgraph(name = "participationCategory", attributeNodes = @NamedAttributeNode("category")) })
 @JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class, property = "id")
 @JsonIgnoreProperties(ignoreUnknown = true, value = { "hibernateLazyInitializer", "logger" })
 @JsonPropertyOrder({ "id", "participations", "category" })
@@ -340,6 +350,7 @@ public class Athlete {
 	@Transient
 	private final Level NORMAL_LEVEL = Level.INFO;
 	@OneToMany(mappedBy = "athlete", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
+	@BatchSize(size = 50)
 	@JsonProperty(index = 200)
 	private List<Participation> participations = new ArrayList<>();
 	/**
@@ -397,6 +408,12 @@ public class Athlete {
 	@Transient
 	@JsonIgnore
 	private boolean startingTotalViolation = false;
+	/**
+	 * parsed attempts, cleared by the attempt setters
+	 */
+	@Transient
+	@JsonIgnore
+	private AttemptVector attemptVector;
 
 	/**
 	 * Instantiates a new athlete.
@@ -675,26 +692,7 @@ public class Athlete {
 	@Transient
 	@JsonIgnore
 	public int getActuallyAttemptedLifts() {
-		int i = 0;
-		if (zeroIfInvalid(this.snatch1ActualLift) != 0) {
-			i++;
-		}
-		if (zeroIfInvalid(this.snatch2ActualLift) != 0) {
-			i++;
-		}
-		if (zeroIfInvalid(this.snatch3ActualLift) != 0) {
-			i++;
-		}
-		if (zeroIfInvalid(this.cleanJerk1ActualLift) != 0) {
-			i++;
-		}
-		if (zeroIfInvalid(this.cleanJerk2ActualLift) != 0) {
-			i++;
-		}
-		if (zeroIfInvalid(this.cleanJerk3ActualLift) != 0) {
-			i++;
-		}
-		return i; // long ago
+		return attempts().actuallyAttemptedLifts;
 	}
 
 	/**
@@ -834,10 +832,7 @@ public class Athlete {
 	@Transient
 	@JsonIgnore
 	public Integer getBestCleanJerk() {
-		final int cj1 = zeroIfInvalid(this.cleanJerk1ActualLift);
-		final int cj2 = zeroIfInvalid(this.cleanJerk2ActualLift);
-		final int cj3 = zeroIfInvalid(this.cleanJerk3ActualLift);
-		return max(0, cj1, cj2, cj3);
+		return attempts().bestCleanJerk;
 	}
 
 	/**
@@ -848,19 +843,7 @@ public class Athlete {
 	@Transient
 	@JsonIgnore
 	public int getBestCleanJerkAttemptNumber() {
-		int referenceValue = getBestCleanJerk();
-		if (referenceValue > 0) {
-			if (zeroIfInvalid(this.cleanJerk3ActualLift) == referenceValue) {
-				return 6;
-			}
-			if (zeroIfInvalid(this.cleanJerk2ActualLift) == referenceValue) {
-				return 5;
-			}
-			if (zeroIfInvalid(this.cleanJerk1ActualLift) == referenceValue) {
-				return 4;
-			}
-		}
-		return 0; // no match - bomb-out.
+		return attempts().bestCleanJerkAttemptNumber; // 0 if bomb-out.
 	}
 
 	/**
@@ -871,27 +854,28 @@ public class Athlete {
 	@Transient
 	@JsonIgnore
 	public int getBestResultAttemptNumber() {
-		int referenceValue = getBestCleanJerk();
+		AttemptVector v = attempts();
+		int referenceValue = v.bestCleanJerk;
 		if (referenceValue > 0) {
-			if (zeroIfInvalid(this.cleanJerk3ActualLift) == referenceValue) {
+			if (v.lifted(6) == referenceValue) {
 				return 6;
 			}
-			if (zeroIfInvalid(this.cleanJerk2ActualLift) == referenceValue) {
+			if (v.lifted(5) == referenceValue) {
 				return 5;
 			}
-			if (zeroIfInvalid(this.cleanJerk1ActualLift) == referenceValue) {
+			if (v.lifted(4) == referenceValue) {
 				return 4;
 			}
 		} else {
 			if (referenceValue > 0) {
-				referenceValue = getBestSnatch();
-				if (zeroIfInvalid(this.snatch3ActualLift) == referenceValue) {
+				referenceValue = v.bestSnatch;
+				if (v.lifted(3) == referenceValue) {
 					return 3;
 				}
-				if (zeroIfInvalid(this.snatch2ActualLift) == referenceValue) {
+				if (v.lifted(2) == referenceValue) {
 					return 2;
 				}
-				if (zeroIfInvalid(this.snatch1ActualLift) == referenceValue) {
+				if (v.lifted(1) == referenceValue) {
 					return 1;
 				}
 			}
@@ -907,10 +891,7 @@ public class Athlete {
 	@Transient
 	@JsonIgnore
 	public Integer getBestSnatch() {
-		final int sn1 = zeroIfInvalid(this.snatch1ActualLift);
-		final int sn2 = zeroIfInvalid(this.snatch2ActualLift);
-		final int sn3 = zeroIfInvalid(this.snatch3ActualLift);
-		return max(0, sn1, sn2, sn3);
+		return attempts().bestSnatch;
 	}
 
 	/**
@@ -921,20 +902,7 @@ public class Athlete {
 	@Transient
 	@JsonIgnore
 	public int getBestSnatchAttemptNumber() {
-		int referenceValue = getBestSnatch();
-		if (referenceValue > 0) {
-			if (zeroIfInvalid(this.snatch3ActualLift) == referenceValue) {
-				return 3;
-			}
-			if (zeroIfInvalid(this.snatch2ActualLift) == referenceValue) {
-				return 2;
-			}
-			if (zeroIfInvalid(this.snatch1ActualLift) == referenceValue) {
-				return 1;
-			}
-		}
-		return 0; // no match - bomb-out.
-
+		return attempts().bestSnatchAttemptNumber; // 0 if bomb-out.
 	}
 
 	/**
@@ -1240,23 +1208,7 @@ public class Athlete {
 	public Integer getCleanJerkAttemptsDone() {
 		// if Athlete signals he wont take his remaining tries, a zero is entered
 		// further lifts are not counted.
-		int attempts = 0;
-		if (!isEmpty(this.cleanJerk1ActualLift)) {
-			attempts++;
-		} else {
-			return attempts;
-		}
-		if (!isEmpty(this.cleanJerk2ActualLift)) {
-			attempts++;
-		} else {
-			return attempts;
-		}
-		if (!isEmpty(this.cleanJerk3ActualLift)) {
-			attempts++;
-		} else {
-			return attempts;
-		}
-		return attempts;
+		return attempts().cleanJerkAttemptsDone;
 	}
 
 	/**
@@ -1286,9 +1238,7 @@ public class Athlete {
 	@Transient
 	@JsonIgnore
 	public int getCleanJerkTotal() {
-		final int cleanJerkTotal = max(0, zeroIfInvalid(this.cleanJerk1ActualLift), zeroIfInvalid(this.cleanJerk2ActualLift),
-				zeroIfInvalid(this.cleanJerk3ActualLift));
-		return cleanJerkTotal;
+		return attempts().bestCleanJerk;
 	}
 
 	/**
@@ -2049,27 +1999,7 @@ public class Athlete {
 	@Transient
 	@JsonIgnore
 	public Integer getRequestedWeightForAttempt(int attempt) {
-		switch (attempt) {
-		case 1:
-			return last(zeroIfInvalid(getSnatch1AutomaticProgression()), zeroIfInvalid(this.snatch1Declaration),
-					zeroIfInvalid(this.snatch1Change1), zeroIfInvalid(this.snatch1Change2));
-		case 2:
-			return last(zeroIfInvalid(getSnatch2AutomaticProgression()), zeroIfInvalid(this.snatch2Declaration),
-					zeroIfInvalid(this.snatch2Change1), zeroIfInvalid(this.snatch2Change2));
-		case 3:
-			return last(zeroIfInvalid(getSnatch3AutomaticProgression()), zeroIfInvalid(this.snatch3Declaration),
-					zeroIfInvalid(this.snatch3Change1), zeroIfInvalid(this.snatch3Change2));
-		case 4:
-			return last(zeroIfInvalid(getCleanJerk1AutomaticProgression()), zeroIfInvalid(this.cleanJerk1Declaration),
-					zeroIfInvalid(this.cleanJerk1Change1), zeroIfInvalid(this.cleanJerk1Change2));
-		case 5:
-			return last(zeroIfInvalid(getCleanJerk2AutomaticProgression()), zeroIfInvalid(this.cleanJerk2Declaration),
-					zeroIfInvalid(this.cleanJerk2Change1), zeroIfInvalid(this.cleanJerk2Change2));
-		case 6:
-			return last(zeroIfInvalid(getCleanJerk3AutomaticProgression()), zeroIfInvalid(this.cleanJerk3Declaration),
-					zeroIfInvalid(this.cleanJerk3Change1), zeroIfInvalid(this.cleanJerk3Change2));
-		}
-		return 0;
+		return attempts().requestedWeight(attempt);
 	}
 
 	/**
@@ -2465,23 +2395,7 @@ public class Athlete {
 	public Integer getSnatchAttemptsDone() {
 		// Athlete signals he wont take his remaining tries, a zero is entered
 		// further lifts are not counted.
-		int attempts = 0;
-		if (!isEmpty(this.snatch1ActualLift)) {
-			attempts++;
-		} else {
-			return attempts;
-		}
-		if (!isEmpty(this.snatch2ActualLift)) {
-			attempts++;
-		} else {
-			return attempts;
-		}
-		if (!isEmpty(this.snatch3ActualLift)) {
-			attempts++;
-		} else {
-			return attempts;
-		}
-		return attempts;
+		return attempts().snatchAttemptsDone;
 	}
 
 	/**
@@ -2515,9 +2429,7 @@ public class Athlete {
 	@Transient
 	@JsonIgnore
 	public int getSnatchTotal() {
-		final int snatchTotal = max(0, zeroIfInvalid(this.snatch1ActualLift), zeroIfInvalid(this.snatch2ActualLift),
-				zeroIfInvalid(this.snatch3ActualLift));
-		return snatchTotal;
+		return attempts().bestSnatch;
 	}
 
 	/**
@@ -2641,15 +2553,7 @@ public class Athlete {
 	 * @return the total
 	 */
 	public Integer getTotal() {
-		final int snatchTotal = getSnatchTotal();
-		if (snatchTotal == 0) {
-			return 0;
-		}
-		final int cleanJerkTotal = getCleanJerkTotal();
-		if (cleanJerkTotal == 0) {
-			return 0;
-		}
-		return snatchTotal + cleanJerkTotal;
+		return attempts().total;
 	}
 
 	/**
@@ -2982,6 +2886,7 @@ public class Athlete {
 			validateCleanJerk1ActualLift(cleanJerk1ActualLift);
 		}
 		this.cleanJerk1ActualLift = cleanJerk1ActualLift;
+		this.attemptVector = null;
 		getLogger().info("{}{} cleanJerk1ActualLift={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				cleanJerk1ActualLift);
 	}
@@ -3002,6 +2907,7 @@ public class Athlete {
 	public void setCleanJerk1Change1(String cleanJerk1Change1) {
 		if ("0".equals(cleanJerk1Change1)) {
 			this.cleanJerk1Change1 = cleanJerk1Change1;
+			this.attemptVector = null;
 			getLogger().info("{}{} cleanJerk1Change1={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					cleanJerk1Change1);
 			setCleanJerk1ActualLift("0");
@@ -3011,6 +2917,7 @@ public class Athlete {
 			validateCleanJerk1Change1(cleanJerk1Change1);
 		}
 		this.cleanJerk1Change1 = cleanJerk1Change1;
+		this.attemptVector = null;
 		// validateStartingTotalsRule();
 
 		getLogger().info("{}{} cleanJerk1Change1={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
@@ -3025,6 +2932,7 @@ public class Athlete {
 	public void setCleanJerk1Change2(String cleanJerk1Change2) {
 		if ("0".equals(cleanJerk1Change2)) {
 			this.cleanJerk1Change2 = cleanJerk1Change2;
+			this.attemptVector = null;
 			getLogger().info("{}{} cleanJerk1Change2={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					cleanJerk1Change2);
 			setCleanJerk1ActualLift("0");
@@ -3034,6 +2942,7 @@ public class Athlete {
 			validateCleanJerk1Change2(cleanJerk1Change2);
 		}
 		this.cleanJerk1Change2 = cleanJerk1Change2;
+		this.attemptVector = null;
 		// validateStartingTotalsRule();
 
 		getLogger().info("{}{} cleanJerk1Change2={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
@@ -3058,6 +2967,7 @@ public class Athlete {
 			validateCleanJerk1Declaration(cleanJerk1Declaration);
 		}
 		this.cleanJerk1Declaration = cleanJerk1Declaration;
+		this.attemptVector = null;
 		// if (zeroIfInvalid(getSnatch1Declaration()) > 0)
 		// // validateStartingTotalsRule();
 
@@ -3079,6 +2989,7 @@ public class Athlete {
 			validateCleanJerk2ActualLift(cleanJerk2ActualLift);
 		}
 		this.cleanJerk2ActualLift = cleanJerk2ActualLift;
+		this.attemptVector = null;
 		getLogger().info("{}{} cleanJerk2ActualLift={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				cleanJerk2ActualLift);
 
@@ -3105,6 +3016,7 @@ public class Athlete {
 	public void setCleanJerk2Change1(String cleanJerk2Change1) {
 		if ("0".equals(cleanJerk2Change1)) {
 			this.cleanJerk2Change1 = cleanJerk2Change1;
+			this.attemptVector = null;
 			getLogger().info("{}{} cleanJerk2Change1={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					cleanJerk2Change1);
 			setCleanJerk2ActualLift("0");
@@ -3114,6 +3026,7 @@ public class Athlete {
 			validateCleanJerk2Change1(cleanJerk2Change1);
 		}
 		this.cleanJerk2Change1 = cleanJerk2Change1;
+		this.attemptVector = null;
 		getLogger().info("{}{} cleanJerk2Change1={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				cleanJerk2Change1);
 	}
@@ -3126,6 +3039,7 @@ public class Athlete {
 	public void setCleanJerk2Change2(String cleanJerk2Change2) {
 		if ("0".equals(cleanJerk2Change2)) {
 			this.cleanJerk2Change2 = cleanJerk2Change2;
+			this.attemptVector = null;
 			getLogger().info("{}{} cleanJerk2Change2={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					cleanJerk2Change2);
 			setCleanJerk2ActualLift("0");
@@ -3135,6 +3049,7 @@ public class Athlete {
 			validateCleanJerk2Change2(cleanJerk2Change2);
 		}
 		this.cleanJerk2Change2 = cleanJerk2Change2;
+		this.attemptVector = null;
 		getLogger().info("{}{} cleanJerk2Change2={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				cleanJerk2Change2);
 	}
@@ -3147,6 +3062,7 @@ public class Athlete {
 	public void setCleanJerk2Declaration(String cleanJerk2Declaration) {
 		if ("0".equals(cleanJerk2Declaration)) {
 			this.cleanJerk2Declaration = cleanJerk2Declaration;
+			this.attemptVector = null;
 			getLogger().info("{}{} cleanJerk2Declaration={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					cleanJerk2Declaration);
 			setCleanJerk2ActualLift("0");
@@ -3156,6 +3072,7 @@ public class Athlete {
 			validateCleanJerk2Declaration(cleanJerk2Declaration);
 		}
 		this.cleanJerk2Declaration = cleanJerk2Declaration;
+		this.attemptVector = null;
 		getLogger().info("{}{} cleanJerk2Declaration={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				cleanJerk2Declaration);
 	}
@@ -3174,6 +3091,7 @@ public class Athlete {
 			validateCleanJerk3ActualLift(cleanJerk3ActualLift);
 		}
 		this.cleanJerk3ActualLift = cleanJerk3ActualLift;
+		this.attemptVector = null;
 		getLogger().info("{}{} cleanJerk3ActualLift={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				cleanJerk3ActualLift);
 	}
@@ -3194,6 +3112,7 @@ public class Athlete {
 	public void setCleanJerk3Change1(String cleanJerk3Change1) {
 		if ("0".equals(cleanJerk3Change1)) {
 			this.cleanJerk3Change1 = cleanJerk3Change1;
+			this.attemptVector = null;
 			getLogger().info("{}{} cleanJerk3Change1={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					cleanJerk3Change1);
 			setCleanJerk3ActualLift("0");
@@ -3203,6 +3122,7 @@ public class Athlete {
 			validateCleanJerk3Change1(cleanJerk3Change1);
 		}
 		this.cleanJerk3Change1 = cleanJerk3Change1;
+		this.attemptVector = null;
 		getLogger().info("{}{} cleanJerk3Change1={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				cleanJerk3Change1);
 	}
@@ -3215,6 +3135,7 @@ public class Athlete {
 	public void setCleanJerk3Change2(String cleanJerk3Change2) {
 		if ("0".equals(cleanJerk3Change2)) {
 			this.cleanJerk3Change2 = cleanJerk3Change2;
+			this.attemptVector = null;
 			getLogger().info("{}{} cleanJerk3Change2={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					cleanJerk3Change2);
 			setCleanJerk3ActualLift("0");
@@ -3225,6 +3146,7 @@ public class Athlete {
 			validateCleanJerk3Change2(cleanJerk3Change2);
 		}
 		this.cleanJerk3Change2 = cleanJerk3Change2;
+		this.attemptVector = null;
 		getLogger().info("{}{} cleanJerk3Change2={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				cleanJerk3Change2);
 	}
@@ -3237,6 +3159,7 @@ public class Athlete {
 	public void setCleanJerk3Declaration(String cleanJerk3Declaration) {
 		if ("0".equals(cleanJerk3Declaration)) {
 			this.cleanJerk3Declaration = cleanJerk3Declaration;
+			this.attemptVector = null;
 			getLogger().info("{}{} cleanJerk3Declaration={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					cleanJerk3Declaration);
 			setCleanJerk3ActualLift("0");
@@ -3246,6 +3169,7 @@ public class Athlete {
 			validateCleanJerk3Declaration(cleanJerk3Declaration);
 		}
 		this.cleanJerk3Declaration = cleanJerk3Declaration;
+		this.attemptVector = null;
 		getLogger().info("{}{} cleanJerk3Declaration={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				cleanJerk3Declaration);
 	}
@@ -3582,6 +3506,7 @@ public class Athlete {
 			validateSnatch1ActualLift(snatch1ActualLift);
 		}
 		this.snatch1ActualLift = snatch1ActualLift;
+		this.attemptVector = null;
 		getLogger().info("{}{} snatch1ActualLift={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				snatch1ActualLift);
 		// if (zeroIfInvalid(snatch1ActualLift) == 0) {
@@ -3607,6 +3532,7 @@ public class Athlete {
 	public void setSnatch1Change1(String snatch1Change1) {
 		if ("0".equals(snatch1Change1)) {
 			this.snatch1Change1 = snatch1Change1;
+			this.attemptVector = null;
 			getLogger().info("{}{} snatch1Change1={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					snatch1Change1);
 			setSnatch1ActualLift("0");
@@ -3618,6 +3544,7 @@ public class Athlete {
 			validateSnatch1Change1(snatch1Change1);
 		}
 		this.snatch1Change1 = snatch1Change1;
+		this.attemptVector = null;
 		// validateStartingTotalsRule();
 	}
 
@@ -3629,6 +3556,7 @@ public class Athlete {
 	public void setSnatch1Change2(String snatch1Change2) {
 		if ("0".equals(snatch1Change2)) {
 			this.snatch1Change2 = snatch1Change2;
+			this.attemptVector = null;
 			getLogger().info("{}{} snatch1Change2={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					snatch1Change2);
 			setSnatch1ActualLift("0");
@@ -3644,6 +3572,7 @@ public class Athlete {
 			}
 		}
 		this.snatch1Change2 = snatch1Change2;
+		this.attemptVector = null;
 
 	}
 
@@ -3657,6 +3586,7 @@ public class Athlete {
 			validateSnatch1Declaration(snatch1Declaration);
 		}
 		this.snatch1Declaration = snatch1Declaration;
+		this.attemptVector = null;
 		getLogger().info("{}{} snatch1Declaration={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				snatch1Declaration);
 	}
@@ -3675,6 +3605,7 @@ public class Athlete {
 			validateSnatch2ActualLift(snatch2ActualLift);
 		}
 		this.snatch2ActualLift = snatch2ActualLift;
+		this.attemptVector = null;
 		getLogger().info("{}{} snatch2ActualLift={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				snatch2ActualLift);
 	}
@@ -3695,6 +3626,7 @@ public class Athlete {
 	public void setSnatch2Change1(String snatch2Change1) {
 		if ("0".equals(snatch2Change1)) {
 			this.snatch2Change1 = snatch2Change1;
+			this.attemptVector = null;
 			getLogger().info("{}{} snatch2Change1={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					snatch2Change1);
 			setSnatch2ActualLift("0");
@@ -3704,6 +3636,7 @@ public class Athlete {
 			validateSnatch2Change1(snatch2Change1);
 		}
 		this.snatch2Change1 = snatch2Change1;
+		this.attemptVector = null;
 		getLogger().info("{}{} snatch2Change1={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				snatch2Change1);
 	}
@@ -3716,6 +3649,7 @@ public class Athlete {
 	public void setSnatch2Change2(String snatch2Change2) {
 		if ("0".equals(snatch2Change2)) {
 			this.snatch2Change2 = snatch2Change2;
+			this.attemptVector = null;
 			getLogger().info("{}{} snatch2Change2={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					snatch2Change2);
 			setSnatch2ActualLift("0");
@@ -3725,6 +3659,7 @@ public class Athlete {
 			validateSnatch2Change2(snatch2Change2);
 		}
 		this.snatch2Change2 = snatch2Change2;
+		this.attemptVector = null;
 		getLogger().info("{}{} snatch2Change2={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				snatch2Change2);
 	}
@@ -3737,6 +3672,7 @@ public class Athlete {
 	public void setSnatch2Declaration(String snatch2Declaration) {
 		if ("0".equals(snatch2Declaration)) {
 			this.snatch2Declaration = snatch2Declaration;
+			this.attemptVector = null;
 			getLogger().info("{}{} snatch2Declaration={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					snatch2Declaration);
 			setSnatch2ActualLift("0");
@@ -3746,6 +3682,7 @@ public class Athlete {
 			validateSnatch2Declaration(snatch2Declaration);
 		}
 		this.snatch2Declaration = snatch2Declaration;
+		this.attemptVector = null;
 		getLogger().info("{}{} snatch2Declaration={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				snatch2Declaration);
 	}
@@ -3764,6 +3701,7 @@ public class Athlete {
 			validateSnatch3ActualLift(snatch3ActualLift);
 		}
 		this.snatch3ActualLift = snatch3ActualLift;
+		this.attemptVector = null;
 		getLogger().info("{}{} snatch3ActualLift={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				snatch3ActualLift);
 	}
@@ -3784,6 +3722,7 @@ public class Athlete {
 	public void setSnatch3Change1(String snatch3Change1) {
 		if ("0".equals(snatch3Change1)) {
 			this.snatch3Change1 = snatch3Change1;
+			this.attemptVector = null;
 			getLogger().info("{}{} snatch3Change1={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					snatch3Change1);
 			setSnatch3ActualLift("0");
@@ -3793,6 +3732,7 @@ public class Athlete {
 			validateSnatch3Change1(snatch3Change1);
 		}
 		this.snatch3Change1 = snatch3Change1;
+		this.attemptVector = null;
 		getLogger().info("{}{} snatch3Change1={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				snatch3Change1);
 	}
@@ -3805,6 +3745,7 @@ public class Athlete {
 	public void setSnatch3Change2(String snatch3Change2) {
 		if ("0".equals(snatch3Change2)) {
 			this.snatch3Change2 = snatch3Change2;
+			this.attemptVector = null;
 			getLogger().info("{}{} snatch3Change2={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					snatch3Change2);
 			setSnatch3ActualLift("0");
@@ -3814,6 +3755,7 @@ public class Athlete {
 			validateSnatch3Change2(snatch3Change2);
 		}
 		this.snatch3Change2 = snatch3Change2;
+		this.attemptVector = null;
 		getLogger().info("{}{} snatch3Change2={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				snatch3Change2);
 	}
@@ -3826,6 +3768,7 @@ public class Athlete {
 	public void setSnatch3Declaration(String snatch3Declaration) {
 		if ("0".equals(snatch3Declaration)) {
 			this.snatch3Declaration = snatch3Declaration;
+			this.attemptVector = null;
 			getLogger().info("{}{} snatch3Declaration={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 					snatch3Declaration);
 			setSnatch3ActualLift("0");
@@ -3836,6 +3779,7 @@ public class Athlete {
 					this.snatch3ActualLift);
 		}
 		this.snatch3Declaration = snatch3Declaration;
+		this.attemptVector = null;
 		getLogger().info("{}{} snatch3Declaration={}", OwlcmsSession.getFopLoggingName(), this.getShortName(),
 				snatch3Declaration);
 	}
@@ -4428,6 +4372,38 @@ public class Athlete {
 		}
 	}
 
+	/**
+	 * Parse the attempt strings once; the setters clear the result.
+	 *
+	 * @return the numeric attempts
+	 */
+	private AttemptVector attempts() {
+		AttemptVector v = this.attemptVector;
+		if (v == null) {
+			v = new AttemptVector(
+			        new String[] {
+			                this.snatch1Declaration, this.snatch1Change1, this.snatch1Change2,
+			                this.snatch2Declaration, this.snatch2Change1, this.snatch2Change2,
+			                this.snatch3Declaration, this.snatch3Change1, this.snatch3Change2,
+			                this.cleanJerk1Declaration, this.cleanJerk1Change1, this.cleanJerk1Change2,
+			                this.cleanJerk2Declaration, this.cleanJerk2Change1, this.cleanJerk2Change2,
+			                this.cleanJerk3Declaration, this.cleanJerk3Change1, this.cleanJerk3Change2 },
+			        new String[] {
+			                this.snatch1ActualLift, this.snatch2ActualLift, this.snatch3ActualLift,
+			                this.cleanJerk1ActualLift, this.cleanJerk2ActualLift, this.cleanJerk3ActualLift });
+			this.attemptVector = v;
+		}
+		return v;
+	}
+
+	/**
+	 * JPA sets the fields directly, bypassing the setters (this matters on refresh).
+	 */
+	@PostLoad
+	private void clearAttemptVector() {
+		this.attemptVector = null;
+	}
+
 	private Category bestMatch(List<Category> allEligible2) {
 		return allEligible2 != null ? (allEligible2.size() > 0 ? allEligible2.get(0) : null) : null;
 	}
@@ -5004,12 +4980,6 @@ public class Athlete {
 		return this.startingTotalViolation;
 	}
 
-	private Integer max(Integer... items) {
-		List<Integer> itemList = Arrays.asList(items);
-		final Integer max = Collections.max(itemList);
-		return max;
-	}
-
 	@SuppressWarnings("unused")
 	private Integer max(String... items) {
 		List<String> itemList = Arrays.asList(items);
@@ -18,10 +18,15 @@ import org.slf4j.LoggerFactory;
 
 import app.owlcms.data.agegroup.AgeGroup;
 import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.athleteSort.RankingEngine;
 import app.owlcms.data.category.AgeDivision;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.competition.Competition;
+import app.owlcms.data.competition.MedalService;
+import app.owlcms.data.competition.ResultsModel;
 import app.owlcms.data.group.Group;
+import app.owlcms.data.jpa.DataVersion;
+import app.owlcms.data.jpa.FetchPlans;
 import app.owlcms.data.jpa.JPAService;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
@@ -95,6 +100,7 @@ public class AthleteRepository {
 			Competition.getCurrent().setRankingsInvalid(true);
 			return null;
 		});
+		RankingEngine.getCurrent().invalidate();
 	}
 
 	public static Integer doCountFiltered(String lastName, Group group, Category category, AgeGroup ageGroup,
@@ -113,7 +119,8 @@ public class AthleteRepository {
 
 	@SuppressWarnings("unchecked")
 	public static List<Athlete> doFindAll(EntityManager em) {
-		return em.createQuery("select distinct a from Athlete a").getResultList();
+		return FetchPlans.apply(em, em.createQuery("select distinct a from Athlete a"), FetchPlans.ATHLETE_RANKING)
+		        .getResultList();
 	}
 
 	public static List<Athlete> doFindAllByAgeroupGroupAndWeighIn(EntityManager em, AgeGroup ageGroup, Group group,
@@ -143,7 +150,9 @@ public class AthleteRepository {
 		if (group != null && group.getName() == "*") {
 			group = null;
 		}
-		String qlString = "select a from Athlete a"
+		// fetching the participations in the same query cannot be combined with paging in the database.
+		boolean paged = offset >= 0 || limit > 0;
+		String qlString = (paged ? "select a from Athlete a" : "select distinct a from Athlete a")
 		        + filteringSelection(lastName, group, category, ageGroup, ageDivision, gender, weighedIn, team)
 		        + " order by a.category";
 		// logger.debug("find query = {}", qlString);
@@ -155,6 +164,9 @@ public class AthleteRepository {
 		if (limit > 0) {
 			query.setMaxResults(limit);
 		}
+		if (!paged) {
+			FetchPlans.apply(em, query, FetchPlans.ATHLETE_RANKING);
+		}
 		@SuppressWarnings("unchecked")
 		List<Athlete> resultList = query.getResultList();
 		return resultList;
@@ -201,7 +213,7 @@ public class AthleteRepository {
 			        "select distinct a from Athlete a join a.participations p join p.category c where c.id = :catId",
 			        Athlete.class);
 			q.setParameter("catId", c.getId());
-			return q.getResultList();
+			return FetchPlans.apply(em, q, FetchPlans.ATHLETE_RANKING).getResultList();
 		});
 	}
 
@@ -293,6 +305,7 @@ public class AthleteRepository {
 			Competition.getCurrent().setRankingsInvalid(true);
 			return null;
 		});
+		RankingEngine.getCurrent().invalidate();
 		assignCategoryRanks();
 	}
 
@@ -306,11 +319,17 @@ public class AthleteRepository {
 		if (athlete == null) {
 			return athlete;
 		}
-		return JPAService.runInTransaction((em) -> {
-			Competition.getCurrent().setRankingsInvalid(true);
+		long mark = DataVersion.mark();
+		Athlete saved = JPAService.runInTransaction((em) -> {
 			Athlete merged = em.merge(athlete);
 			return merged;
 		});
+		// only the athlete who changed will be repositioned in the rankings
+		RankingEngine.getCurrent().athleteSaved(saved);
+		// only the results that include the athlete are recomputed
+		ResultsModel.getCurrent().athleteChanged(saved, mark);
+		MedalService.getCurrent().athleteChanged(saved, mark);
+		return saved;
 	}
 
 	private static List<Athlete> doFindAthletesForGlobalRanking(Group g, EntityManager em) {
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.athlete;
+
+/**
+ * Numeric view of the attempt strings of an athlete.
+ *
+ * The athlete keeps declarations, changes and lifts as strings, as typed. Sorting a session calls the derived getters
+ * (best lifts, total, attempts done, requested weight) many times per comparison; this vector parses the strings once
+ * and stays valid until an attempt setter is called on the athlete.
+ *
+ * For each of the six attempts, three values: the automatic progression, the requested weight (last non-zero of
+ * automatic progression, declaration, change 1, change 2) and the lift (negative if failed, 0 if not done).
+ *
+ * @see Athlete#zeroIfInvalid(String)
+ */
+final class AttemptVector {
+
+	private static final int AUTOMATIC = 0;
+	private static final int REQUESTED = 1;
+	private static final int LIFTED = 2;
+
+	private final int[] values = new int[18];
+
+	final int actuallyAttemptedLifts;
+	final int bestCleanJerk;
+	final int bestCleanJerkAttemptNumber;
+	final int bestSnatch;
+	final int bestSnatchAttemptNumber;
+	final int cleanJerkAttemptsDone;
+	final int snatchAttemptsDone;
+	final int total;
+
+	/**
+	 * @param requests the declaration, change 1 and change 2 for each attempt (18 strings)
+	 * @param lifts    the actual lift for each attempt (6 strings)
+	 */
+	AttemptVector(String[] requests, String[] lifts) {
+		int attempted = 0;
+		for (int i = 0; i < 6; i++) {
+			int lifted = Athlete.zeroIfInvalid(lifts[i]);
+			int automatic = 0;
+			if (i != 0 && i != 3) {
+				// no automatic progression on first snatch or first clean&jerk
+				int prevVal = this.values[(i - 1) * 3 + LIFTED];
+				automatic = prevVal > 0 ? prevVal + 1 : Math.abs(prevVal);
+			}
+			this.values[i * 3 + AUTOMATIC] = automatic;
+			this.values[i * 3 + REQUESTED] = Athlete.last(automatic, Athlete.zeroIfInvalid(requests[i * 3]),
+					Athlete.zeroIfInvalid(requests[i * 3 + 1]), Athlete.zeroIfInvalid(requests[i * 3 + 2]));
+			this.values[i * 3 + LIFTED] = lifted;
+			if (lifted != 0) {
+				attempted++;
+			}
+		}
+		this.actuallyAttemptedLifts = attempted;
+
+		// an empty lift ends the count; a zero entered means the remaining attempts are forfeited
+		this.snatchAttemptsDone = attemptsDone(lifts, 0);
+		this.cleanJerkAttemptsDone = attemptsDone(lifts, 3);
+
+		this.bestSnatch = Math.max(0, Math.max(lifted(1), Math.max(lifted(2), lifted(3))));
+		this.bestCleanJerk = Math.max(0, Math.max(lifted(4), Math.max(lifted(5), lifted(6))));
+		this.bestSnatchAttemptNumber = bestAttemptNumber(this.bestSnatch, 1);
+		this.bestCleanJerkAttemptNumber = bestAttemptNumber(this.bestCleanJerk, 4);
+		this.total = (this.bestSnatch == 0 || this.bestCleanJerk == 0) ? 0 : this.bestSnatch + this.bestCleanJerk;
+	}
+
+	/**
+	 * @param attempt 1 to 6
+	 * @return the automatic progression for the attempt
+	 */
+	int automaticProgression(int attempt) {
+		return this.values[(attempt - 1) * 3 + AUTOMATIC];
+	}
+
+	/**
+	 * @param attempt 1 to 6
+	 * @return the lift, negative if failed, 0 if not done
+	 */
+	int lifted(int attempt) {
+		return this.values[(attempt - 1) * 3 + LIFTED];
+	}
+
+	/**
+	 * @param attempt 1 to 6, anything else gives 0
+	 * @return the weight currently requested for the attempt
+	 */
+	int requestedWeight(int attempt) {
+		if (attempt < 1 || attempt > 6) {
+			return 0;
+		}
+		return this.values[(attempt - 1) * 3 + REQUESTED];
+	}
+
+	private int attemptsDone(String[] lifts, int first) {
+		int attempts = 0;
+		for (int i = first; i < first + 3; i++) {
+			if (Athlete.isEmpty(lifts[i])) {
+				break;
+			}
+			attempts++;
+		}
+		return attempts;
+	}
+
+	private int bestAttemptNumber(int best, int firstAttempt) {
+		if (best > 0) {
+			for (int attempt = firstAttempt + 2; attempt >= firstAttempt; attempt--) {
+				if (lifted(attempt) == best) {
+					return attempt;
+				}
+			}
+		}
+		return 0;
+	}
+
+}
@@ -689,7 +689,7 @@ public class AthleteSorter implements Serializable {
 	 * @param rankingType
 	 * @return
 	 */
-	private static double getRankingValue(Athlete curLifter, Ranking rankingType) {
+	static double getRankingValue(Athlete curLifter, Ranking rankingType) {
 		switch (rankingType) {
 		case SNATCH:
 			return curLifter.getBestSnatch();
@@ -0,0 +1,482 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.athleteSort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.category.Participation;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Keeps the category and overall rankings of the competition in memory so that a
+ * lift only repositions the athlete who lifted.
+ *
+ * The first call (or the first call after {@link #invalidate()}) ranks every
+ * weighed-in athlete, exactly like {@link AthleteSorter#assignCategoryRanks(EntityManager, app.owlcms.data.group.Group)}
+ * and the Sinclair, SMM and Q-points rankings of the results do. Afterwards, athletes saved
+ * through {@link AthleteRepository#save(Athlete)} are queued, and the next {@link #updateRanks(EntityManager)} removes
+ * them from the sorted lists, inserts them back at their new position, and only writes the athletes whose ranks
+ * actually changed.
+ *
+ * An athlete whose body weight, categories, eligibility or lot number has changed, or who has just been weighed in
+ * or out, only causes the categories they left or entered to be ranked again; the overall rankings only reposition
+ * that athlete. Changes to the competition settings and bulk edits call {@link #invalidate()}, which forces a full
+ * recomputation.
+ *
+ * @author Jean-François Lamy
+ */
+public class RankingEngine {
+
+	/**
+	 * Athletes sorted according to one ranking, kept in order by binary insertion.
+	 */
+	private static class RankedList {
+		private final List<Athlete> athletes = new ArrayList<>();
+		private final Category category;
+		private final WinningOrderComparator comparator;
+		private final Ranking ranking;
+
+		RankedList(Ranking ranking, Category category) {
+			this.ranking = ranking;
+			this.category = category;
+			this.comparator = new WinningOrderComparator(ranking, true);
+		}
+
+		void add(Athlete a) {
+			this.athletes.add(a);
+		}
+
+		void reposition(Athlete a) {
+			remove(a.getId());
+			int index = Collections.binarySearch(this.athletes, a, this.comparator);
+			this.athletes.add(index < 0 ? -index - 1 : index, a);
+		}
+
+		void sort() {
+			this.athletes.sort(this.comparator);
+		}
+
+		boolean remove(Long id) {
+			for (int i = 0; i < this.athletes.size(); i++) {
+				if (Objects.equals(this.athletes.get(i).getId(), id)) {
+					this.athletes.remove(i);
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static RankingEngine current;
+
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(RankingEngine.class);
+
+	private static final Ranking[] CATEGORY_RANKINGS = { Ranking.SNATCH, Ranking.CLEANJERK, Ranking.TOTAL,
+	        Ranking.CUSTOM };
+
+	private static final Ranking[] OVERALL_RANKINGS = { Ranking.BW_SINCLAIR, Ranking.SMM, Ranking.QPOINTS };
+
+	static {
+		logger.setLevel(Level.INFO);
+	}
+
+	public static synchronized RankingEngine getCurrent() {
+		if (current == null) {
+			current = new RankingEngine();
+		}
+		return current;
+	}
+
+	private Map<Long, Athlete> athletes = new HashMap<>();
+	/** codes of the categories where each athlete is ranked */
+	private Map<Long, List<String>> categoryCodes = new HashMap<>();
+	/** key is ranking name and category code */
+	private Map<String, RankedList> categoryRankings = new HashMap<>();
+	private Set<Athlete> lastUpdated = Set.of();
+	/** athletes whose categories or tie-break information have changed */
+	private Set<Long> moved = new LinkedHashSet<>();
+	/** key is ranking name and gender */
+	private Map<String, RankedList> overallRankings = new HashMap<>();
+	private Set<Long> pending = new LinkedHashSet<>();
+	private Map<Long, String> signatures = new HashMap<>();
+	private boolean valid = false;
+
+	/**
+	 * Called after an athlete has been saved. If only lifts have changed, the athlete will be repositioned on the next
+	 * call to {@link #updateRanks(EntityManager)}; otherwise the categories the athlete leaves and enters are ranked
+	 * again.
+	 *
+	 * @param a the athlete as saved
+	 */
+	public synchronized void athleteSaved(Athlete a) {
+		if (!this.valid || a == null || a.getId() == null) {
+			return;
+		}
+		Long id = a.getId();
+		boolean known = this.athletes.containsKey(id);
+		if (!known && !isWeighedIn(a)) {
+			return;
+		}
+		this.athletes.put(id, a);
+		if (known && isWeighedIn(a) && signature(a).equals(this.signatures.get(id))) {
+			this.pending.add(id);
+			return;
+		}
+		logger.debug("{} changed category or tie-break information, categories will be ranked again",
+		        a.getShortName());
+		this.pending.remove(id);
+		this.moved.add(id);
+	}
+
+	/**
+	 * @return the athletes whose ranks were written by the last call to {@link #updateRanks(EntityManager)}
+	 */
+	public synchronized Set<Athlete> getLastUpdated() {
+		return this.lastUpdated;
+	}
+
+	/**
+	 * Force a full recomputation on the next call to {@link #updateRanks(EntityManager)}.
+	 */
+	public synchronized void invalidate() {
+		this.valid = false;
+		this.pending.clear();
+		this.moved.clear();
+	}
+
+	/**
+	 * Bring the ranks stored in the database up to date.
+	 *
+	 * @param em the entity manager of the caller's transaction
+	 * @return the number of athletes whose ranks were written
+	 */
+	public synchronized int updateRanks(EntityManager em) {
+		this.lastUpdated = Set.of();
+		if (!this.valid) {
+			return rebuild(em);
+		}
+		if (this.pending.isEmpty() && this.moved.isEmpty()) {
+			return 0;
+		}
+
+		Set<Athlete> dirty = new LinkedHashSet<>();
+		Set<String> staleCategories = new LinkedHashSet<>();
+		Set<RankedList> staleOverall = new LinkedHashSet<>();
+		for (Long id : this.moved) {
+			Athlete a = this.athletes.get(id);
+			staleCategories.addAll(this.categoryCodes.getOrDefault(id, List.of()));
+			for (RankedList rl : this.overallRankings.values()) {
+				if (rl.remove(id)) {
+					staleOverall.add(rl);
+				}
+			}
+			if (!isWeighedIn(a)) {
+				this.athletes.remove(id);
+				this.signatures.remove(id);
+				this.categoryCodes.remove(id);
+				continue;
+			}
+			this.signatures.put(id, signature(a));
+			this.categoryCodes.put(id, categoryCodes(a));
+			staleCategories.addAll(categoryCodes(a));
+			for (Ranking r : OVERALL_RANKINGS) {
+				RankedList rl = this.overallRankings.computeIfAbsent(overallKey(r, a), k -> new RankedList(r, null));
+				rl.reposition(a);
+				staleOverall.add(rl);
+			}
+		}
+		for (String code : staleCategories) {
+			rankCategory(code, dirty);
+		}
+		for (RankedList rl : staleOverall) {
+			assignOverallRanks(rl, dirty);
+		}
+
+		for (Long id : this.pending) {
+			if (this.moved.contains(id)) {
+				continue;
+			}
+			Athlete a = this.athletes.get(id);
+			if (a.isEligibleForIndividualRanking()) {
+				for (Participation p : a.getParticipations()) {
+					for (Ranking r : CATEGORY_RANKINGS) {
+						RankedList rl = this.categoryRankings.get(categoryKey(r, p.getCategory()));
+						rl.reposition(a);
+						assignCategoryRanks(rl, dirty);
+					}
+				}
+			}
+			for (Ranking r : OVERALL_RANKINGS) {
+				RankedList rl = this.overallRankings.get(overallKey(r, a));
+				rl.reposition(a);
+				assignOverallRanks(rl, dirty);
+			}
+		}
+		this.pending.clear();
+		this.moved.clear();
+
+		for (Athlete a : dirty) {
+			copyRanks(a, em.find(Athlete.class, a.getId()));
+		}
+		em.flush();
+		this.lastUpdated = dirty;
+		logger.debug("incremental ranking, {} athletes updated", dirty.size());
+		return dirty.size();
+	}
+
+	private void assignCategoryRanks(RankedList rl, Set<Athlete> dirty) {
+		String code = rl.category.getComputedCode();
+		Ranking r = rl.ranking;
+		int rank = 0;
+		for (Athlete a : rl.athletes) {
+			Participation p = findParticipation(a, code);
+			if (p == null) {
+				continue;
+			}
+			int newRank = AthleteSorter.getRankingValue(a, r) > 0 ? ++rank : 0;
+			if (getCategoryRank(p, r) != newRank) {
+				setCategoryRank(p, r, newRank);
+				dirty.add(a);
+			}
+		}
+	}
+
+	private void assignOverallRanks(RankedList rl, Set<Athlete> dirty) {
+		Ranking r = rl.ranking;
+		int rank = 0;
+		for (Athlete a : rl.athletes) {
+			int newRank;
+			if (!a.isEligibleForIndividualRanking()) {
+				newRank = -1;
+			} else {
+				newRank = AthleteSorter.getRankingValue(a, r) > 0 ? ++rank : 0;
+			}
+			if (!Objects.equals(getOverallRank(a, r), newRank)) {
+				setOverallRank(a, r, newRank);
+				dirty.add(a);
+			}
+		}
+	}
+
+	private List<String> categoryCodes(Athlete a) {
+		return a.getParticipations().stream()
+		        .filter(p -> p.getCategory() != null)
+		        .map(p -> p.getCategory().getComputedCode())
+		        .sorted()
+		        .collect(Collectors.toList());
+	}
+
+	private String categoryKey(Ranking r, Category c) {
+		return categoryKey(r, c.getComputedCode());
+	}
+
+	private String categoryKey(Ranking r, String categoryCode) {
+		return r.name() + "_" + categoryCode;
+	}
+
+	private void copyRanks(Athlete src, Athlete dest) {
+		if (dest == null) {
+			return;
+		}
+		dest.setSinclairRank(src.getSinclairRank());
+		dest.setSmmRank(src.getSmmRank());
+		dest.setqPointsRank(src.getqPointsRank());
+		for (Participation destP : dest.getParticipations()) {
+			Participation srcP = findParticipation(src, destP.getCategory().getComputedCode());
+			if (srcP == null) {
+				continue;
+			}
+			destP.setSnatchRank(srcP.getSnatchRank());
+			destP.setCleanJerkRank(srcP.getCleanJerkRank());
+			destP.setTotalRank(srcP.getTotalRank());
+			destP.setCustomRank(srcP.getCustomRank());
+		}
+	}
+
+	private Participation findParticipation(Athlete a, String categoryCode) {
+		for (Participation p : a.getParticipations()) {
+			if (p.getCategory() != null && categoryCode.equals(p.getCategory().getComputedCode())) {
+				return p;
+			}
+		}
+		return null;
+	}
+
+	private int getCategoryRank(Participation p, Ranking r) {
+		switch (r) {
+		case SNATCH:
+			return p.getSnatchRank();
+		case CLEANJERK:
+			return p.getCleanJerkRank();
+		case TOTAL:
+			return p.getTotalRank();
+		case CUSTOM:
+			return p.getCustomRank();
+		default:
+			throw new IllegalArgumentException(r.name());
+		}
+	}
+
+	private Integer getOverallRank(Athlete a, Ranking r) {
+		switch (r) {
+		case BW_SINCLAIR:
+			return a.getSinclairRank();
+		case SMM:
+			return a.getSmmRank();
+		case QPOINTS:
+			return a.getqPointsRank();
+		default:
+			throw new IllegalArgumentException(r.name());
+		}
+	}
+
+	private boolean isWeighedIn(Athlete a) {
+		return a.getBodyWeight() != null && a.getBodyWeight() > 0;
+	}
+
+	private String overallKey(Ranking r, Athlete a) {
+		return r.name() + "_" + a.getGender();
+	}
+
+	/**
+	 * Full recomputation, used the first time and whenever something other than a lift has changed.
+	 */
+	private int rebuild(EntityManager em) {
+		long start = System.nanoTime();
+		this.athletes = new HashMap<>();
+		this.categoryCodes = new HashMap<>();
+		this.signatures = new HashMap<>();
+		this.categoryRankings = new HashMap<>();
+		this.overallRankings = new HashMap<>();
+		this.pending.clear();
+		this.moved.clear();
+
+		List<Athlete> all = AthleteRepository.doFindAllByGroupAndWeighIn(em, null, true, null);
+		for (Athlete a : all) {
+			this.athletes.put(a.getId(), a);
+			this.signatures.put(a.getId(), signature(a));
+			this.categoryCodes.put(a.getId(), categoryCodes(a));
+			if (a.isEligibleForIndividualRanking()) {
+				for (Participation p : a.getParticipations()) {
+					for (Ranking r : CATEGORY_RANKINGS) {
+						this.categoryRankings
+						        .computeIfAbsent(categoryKey(r, p.getCategory()), k -> new RankedList(r, p.getCategory()))
+						        .add(a);
+					}
+				}
+			}
+			for (Ranking r : OVERALL_RANKINGS) {
+				this.overallRankings.computeIfAbsent(overallKey(r, a), k -> new RankedList(r, null)).add(a);
+			}
+		}
+
+		// athletes are managed by em, changes are written when the transaction commits.
+		Set<Athlete> dirty = new LinkedHashSet<>();
+		for (RankedList rl : this.categoryRankings.values()) {
+			rl.sort();
+			assignCategoryRanks(rl, dirty);
+		}
+		for (RankedList rl : this.overallRankings.values()) {
+			rl.sort();
+			assignOverallRanks(rl, dirty);
+		}
+		em.flush();
+		this.valid = true;
+		this.lastUpdated = dirty;
+		logger.debug("full ranking of {} athletes, {} updated, {}ms", all.size(), dirty.size(),
+		        (System.nanoTime() - start) / 1000000.0);
+		return dirty.size();
+	}
+
+	/**
+	 * Rank one category from scratch, after athletes have left or entered it.
+	 */
+	private void rankCategory(String code, Set<Athlete> dirty) {
+		Category category = null;
+		List<Athlete> members = new ArrayList<>();
+		for (Athlete a : this.athletes.values()) {
+			Participation p = a.isEligibleForIndividualRanking() ? findParticipation(a, code) : null;
+			if (p != null) {
+				category = p.getCategory();
+				members.add(a);
+			}
+		}
+		for (Ranking r : CATEGORY_RANKINGS) {
+			if (members.isEmpty()) {
+				this.categoryRankings.remove(categoryKey(r, code));
+				continue;
+			}
+			RankedList rl = new RankedList(r, category);
+			members.forEach(rl::add);
+			rl.sort();
+			this.categoryRankings.put(categoryKey(r, code), rl);
+			assignCategoryRanks(rl, dirty);
+		}
+	}
+
+	private void setCategoryRank(Participation p, Ranking r, int rank) {
+		switch (r) {
+		case SNATCH:
+			p.setSnatchRank(rank);
+			break;
+		case CLEANJERK:
+			p.setCleanJerkRank(rank);
+			break;
+		case TOTAL:
+			p.setTotalRank(rank);
+			break;
+		case CUSTOM:
+			p.setCustomRank(rank);
+			break;
+		default:
+			throw new IllegalArgumentException(r.name());
+		}
+	}
+
+	private void setOverallRank(Athlete a, Ranking r, int rank) {
+		switch (r) {
+		case BW_SINCLAIR:
+			a.setSinclairRank(rank);
+			break;
+		case SMM:
+			a.setSmmRank(rank);
+			break;
+		case QPOINTS:
+			a.setqPointsRank(rank);
+			break;
+		default:
+			throw new IllegalArgumentException(r.name());
+		}
+	}
+
+	/**
+	 * Everything that determines where an athlete is ranked, except the lifts themselves.
+	 */
+	private String signature(Athlete a) {
+		String categories = String.join(",", categoryCodes(a));
+		return a.getGender() + "|" + a.getBodyWeight() + "|" + a.getYearOfBirth() + "|" + a.getFullBirthDate()
+		        + "|" + a.getLotNumber() + "|" + a.getStartNumber() + "|" + a.isEligibleForIndividualRanking()
+		        + "|" + categories;
+	}
+
+}
@@ -27,6 +27,7 @@ import javax.persistence.OneToMany;
 import javax.persistence.Transient;
 
 import org.apache.commons.lang3.ObjectUtils;
+import org.hibernate.annotations.BatchSize;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
@@ -99,6 +100,7 @@ public class Category implements Serializable, Comparable<Category>, Cloneable {
 	private String name;
 
 	@OneToMany(mappedBy = "category", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
+	@BatchSize(size = 50)
 	private List<Participation> participations = new ArrayList<>();
 
 	/** minimum weight to be considered eligible */
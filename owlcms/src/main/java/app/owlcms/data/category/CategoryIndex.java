@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.agegroup.AgeGroup;
+import app.owlcms.data.athlete.Gender;
+import app.owlcms.data.config.SettingsSnapshot;
+import app.owlcms.data.jpa.JPAService;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * In-memory copy of the categories of the active age groups, to find the categories an athlete is eligible for
+ * without a query.
+ *
+ * For each gender, the ages are cut into intervals where the same age groups apply; each interval lists its
+ * categories in registration preference order. A lookup is a binary search on the age followed by a scan of the few
+ * categories of the interval.
+ *
+ * The index is read again after age groups or categories are saved, deleted or reloaded. The categories are shared
+ * and must not be modified.
+ *
+ * @author Jean-François Lamy
+ */
+public class CategoryIndex {
+
+	/**
+	 * Categories of one gender (or all genders) by age.
+	 */
+	private static class AgeIntervals {
+		/** all the categories, for lookups without an age */
+		private final Category[] all;
+		/** categories[i] are those for ages from starts[i] to starts[i+1] excluded */
+		private final Category[][] categories;
+		private final int[] starts;
+
+		AgeIntervals(List<Category> sorted) {
+			this.all = sorted.toArray(new Category[0]);
+
+			TreeSet<Integer> bounds = new TreeSet<>();
+			for (Category c : sorted) {
+				AgeGroup ag = c.getAgeGroup();
+				if (ag.getMinAge() != null && ag.getMaxAge() != null) {
+					bounds.add(ag.getMinAge());
+					bounds.add(ag.getMaxAge() + 1);
+				}
+			}
+			this.starts = bounds.stream().mapToInt(Integer::intValue).toArray();
+			this.categories = new Category[this.starts.length][];
+			for (int i = 0; i < this.starts.length; i++) {
+				int age = this.starts[i];
+				this.categories[i] = sorted.stream()
+				        .filter(c -> c.getAgeGroup().getMinAge() != null && c.getAgeGroup().getMaxAge() != null
+				                && c.getAgeGroup().getMinAge() <= age && c.getAgeGroup().getMaxAge() >= age)
+				        .toArray(Category[]::new);
+			}
+		}
+
+		Category[] forAge(Integer age) {
+			if (age == null) {
+				return this.all;
+			}
+			int i = Arrays.binarySearch(this.starts, age);
+			if (i < 0) {
+				// insertion point is after the interval that contains age
+				i = -i - 2;
+			}
+			return i >= 0 ? this.categories[i] : new Category[0];
+		}
+	}
+
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(CategoryIndex.class);
+	private static final SettingsSnapshot<CategoryIndex> snapshot = new SettingsSnapshot<>("CategoryIndex",
+	        CategoryIndex::load);
+
+	/**
+	 * @return the index, read from the database if needed
+	 */
+	public static CategoryIndex getCurrent() {
+		return snapshot.get();
+	}
+
+	/**
+	 * Forget the index. To be called once changes to age groups or categories have been committed.
+	 */
+	public static void invalidate() {
+		snapshot.invalidate();
+	}
+
+	private static CategoryIndex load() {
+		long start = System.nanoTime();
+		List<Category> categories = JPAService.runInTransaction(em -> em
+		        .createQuery("select c from Category c join fetch c.ageGroup ag where ag.active = true"
+		                + " order by ag.ageDivision, c.gender, ag.minAge, ag.maxAge, ag.id, c.maximumWeight",
+		                Category.class)
+		        .getResultList());
+		CategoryIndex index = new CategoryIndex(categories);
+		logger.debug("indexed {} categories in {}ms", categories.size(), (System.nanoTime() - start) / 1000000.0);
+		return index;
+	}
+
+	private final AgeIntervals allGenders;
+	private final Map<Gender, AgeIntervals> byGender = new EnumMap<>(Gender.class);
+
+	CategoryIndex(List<Category> activeCategories) {
+		List<Category> sorted = new ArrayList<>(activeCategories);
+		sorted.sort(new RegistrationPreferenceComparator());
+		this.allGenders = new AgeIntervals(sorted);
+		for (Gender g : Gender.values()) {
+			List<Category> forGender = new ArrayList<>();
+			for (Category c : sorted) {
+				if (c.getGender() == g) {
+					forGender.add(c);
+				}
+			}
+			this.byGender.put(g, new AgeIntervals(forGender));
+		}
+	}
+
+	/**
+	 * Find the active categories that match, as the filtering query of {@link CategoryRepository} would.
+	 *
+	 * @param gender      null for all genders
+	 * @param ageDivision null for all age divisions
+	 * @param age         null for all ages
+	 * @param bodyWeight  null for all body weights
+	 * @return a new list, in registration preference order
+	 */
+	public List<Category> find(Gender gender, AgeDivision ageDivision, Integer age, Double bodyWeight) {
+		Category[] candidates = (gender != null ? this.byGender.get(gender) : this.allGenders).forAge(age);
+		List<Category> found = new ArrayList<>(candidates.length);
+		for (Category c : candidates) {
+			if (ageDivision != null && c.getAgeGroup().getAgeDivision() != ageDivision) {
+				continue;
+			}
+			if (bodyWeight != null && (c.getMinimumWeight() == null || c.getMaximumWeight() == null
+			        || c.getMinimumWeight() >= bodyWeight || c.getMaximumWeight() < bodyWeight)) {
+				continue;
+			}
+			found.add(c);
+		}
+		return found;
+	}
+
+}
@@ -20,6 +20,7 @@ import org.slf4j.LoggerFactory;
 import app.owlcms.data.agegroup.AgeGroup;
 import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.athlete.Gender;
+import app.owlcms.data.group.Group;
 import app.owlcms.data.jpa.JPAService;
 import app.owlcms.utils.LoggerUtils;
 import ch.qos.logback.classic.Level;
@@ -70,6 +71,7 @@ public class CategoryRepository {
 			em.remove(getById(Category.getId(), em));
 			return null;
 		});
+		CategoryIndex.invalidate();
 	}
 
 	public static Integer doCountFiltered(String name, Gender gender, AgeDivision ageDivision, AgeGroup ageGroup,
@@ -126,22 +128,11 @@ public class CategoryRepository {
 	 * @return active categories
 	 */
 	public static List<Category> findActive() {
-		List<Category> findFiltered = findFiltered((String) null, (Gender) null, (AgeDivision) null, (AgeGroup) null,
-		        (Integer) null, (Double) null,
-		        true, -1, -1);
-		findFiltered.sort(new RegistrationPreferenceComparator());
-		return findFiltered;
+		return CategoryIndex.getCurrent().find(null, null, null, null);
 	}
 
 	public static Collection<Category> findActive(Gender gender, Double bodyWeight) {
-		List<Category> findFiltered = findFiltered((String) null, gender, (AgeDivision) null, (AgeGroup) null,
-		        (Integer) null,
-		        bodyWeight, true, -1, -1);
-		// sort comparison to put more specific category age before. M30 before O21, O21
-		// also before SR (MASTERS, then
-		// U, then IWF/other)
-		findFiltered.sort(new RegistrationPreferenceComparator());
-		return findFiltered;
+		return CategoryIndex.getCurrent().find(gender, null, null, bodyWeight);
 	}
 
 	/**
@@ -155,6 +146,20 @@ public class CategoryRepository {
 		        .runInTransaction(em -> em.createQuery("select c from Category c order by c.name").getResultList());
 	}
 
+	/**
+	 * @param g a group
+	 * @return the categories of the athletes of the group that have a weighed-in athlete, from this group or another
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<Category> findByGroup(Group g) {
+		return JPAService.runInTransaction(em -> em.createQuery(
+		        "select distinct c from Athlete a join a.participations p join p.category c"
+		                + " where a.bodyWeight >= 0.01 and exists (select b from Athlete b join b.participations q"
+		                + " where b.group.id = :groupId and q.category.id = c.id)")
+		        .setParameter("groupId", g.getId())
+		        .getResultList());
+	}
+
 	/**
 	 * Find by code.
 	 *
@@ -167,24 +172,23 @@ public class CategoryRepository {
 		});
 	}
 
+	/**
+	 * Active categories for an athlete, answered from the {@link CategoryIndex} without a query.
+	 *
+	 * More specific age groups come first: M30 before O21, O21 also before SR (MASTERS, then U, then IWF/other)
+	 *
+	 * @param gender     null for all genders
+	 * @param age        null for all ages
+	 * @param bodyWeight null for all body weights
+	 * @return the categories, in registration preference order
+	 */
 	public static List<Category> findByGenderAgeBW(Gender gender, Integer age, Double bodyWeight) {
-		Boolean active = true;
-		List<Category> findFiltered = findFiltered((String) null, gender, (AgeDivision) null, (AgeGroup) null, age,
-		        bodyWeight, active, -1, -1);
-		// sort comparison to put more specific category age before. M30 before O21, O21
-		// also before SR (MASTERS, then
-		// U, then IWF/other)
-		findFiltered.sort(new RegistrationPreferenceComparator());
-		return findFiltered;
+		return CategoryIndex.getCurrent().find(gender, null, age, bodyWeight);
 	}
 
 	public static List<Category> findByGenderDivisionAgeBW(Gender gender, AgeDivision ageDivision, Integer age,
 	        Double bodyWeight) {
-		Boolean active = true;
-		List<Category> findFiltered = findFiltered((String) null, gender, ageDivision, (AgeGroup) null, age, bodyWeight,
-		        active, -1, -1);
-		findFiltered.sort(new RegistrationPreferenceComparator());
-		return findFiltered;
+		return CategoryIndex.getCurrent().find(gender, ageDivision, age, bodyWeight);
 	}
 
 	/**
@@ -246,7 +250,7 @@ public class CategoryRepository {
 			em.flush();
 			return null;
 		});
-
+		CategoryIndex.invalidate();
 	}
 
 	/**
@@ -271,11 +275,13 @@ public class CategoryRepository {
 	 * @return the category
 	 */
 	public static Category save(Category category) {
-		return JPAService.runInTransaction(em -> {
+		Category saved = JPAService.runInTransaction(em -> {
 			// code must match inside info for string-based matches in db.
 			category.setCode(category.getComputedCode());
 			return em.merge(category);
 		});
+		CategoryIndex.invalidate();
+		return saved;
 	}
 
 	private static String filteringJoins(AgeGroup ag, Integer age) {
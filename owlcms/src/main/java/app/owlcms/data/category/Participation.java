@@ -14,6 +14,8 @@ import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.ManyToOne;
 import javax.persistence.MapsId;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
@@ -25,6 +27,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.jpa.FetchPlans;
 import ch.qos.logback.classic.Logger;
 
 /**
@@ -38,6 +41,8 @@ import ch.qos.logback.classic.Logger;
  */
 @Entity(name = "Participation")
 @Table(name = "participation")
+@NamedEntityGraph(name = FetchPlans.PARTICIPATION_RESULTS, attributeNodes = { @NamedAttributeNode("athlete"),
+        @NamedAttributeNode("category") })
 @JsonIgnoreProperties(ignoreUnknown = true, value = { "hibernateLazyInitializer", "logger" })
 public class Participation implements IRankHolder {
 
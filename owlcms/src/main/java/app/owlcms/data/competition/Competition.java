@@ -21,40 +21,36 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
-import javax.persistence.EntityManager;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Transient;
 
-import org.apache.commons.lang3.ObjectUtils;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-import app.owlcms.data.agegroup.AgeGroupRepository;
 import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.athlete.AthleteRepository;
 import app.owlcms.data.athlete.Gender;
 import app.owlcms.data.athleteSort.AthleteSorter;
 import app.owlcms.data.athleteSort.Ranking;
+import app.owlcms.data.athleteSort.RankingEngine;
 import app.owlcms.data.athleteSort.WinningOrderComparator;
 import app.owlcms.data.category.AgeDivision;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.category.Participation;
 import app.owlcms.data.config.Config;
+import app.owlcms.data.config.SettingsSnapshot;
 import app.owlcms.data.group.Group;
-import app.owlcms.data.group.GroupRepository;
 import app.owlcms.fieldofplay.FieldOfPlay;
-import app.owlcms.i18n.Translator;
 import app.owlcms.init.OwlcmsSession;
 import app.owlcms.monitors.MQTTMonitor;
 import app.owlcms.spreadsheet.PAthlete;
@@ -73,11 +69,29 @@ import ch.qos.logback.classic.Logger;
 public class Competition {
 
 	public static final int SHORT_TEAM_LENGTH = 6;
-	private static Competition competition;
+	private static final SettingsSnapshot<Competition> snapshot = new SettingsSnapshot<>("Competition",
+	        () -> CompetitionRepository.findAll().get(0));
 
 	@Transient
 	final static private Logger logger = (Logger) LoggerFactory.getLogger(Competition.class);
 
+	/**
+	 * @param athletes the athletes shown, may be null
+	 * @return true if a team name is too long for the narrow team column
+	 */
+	public static boolean hasWideTeamNames(Collection<? extends Athlete> athletes) {
+		if (athletes == null) {
+			return false;
+		}
+		for (Athlete a : athletes) {
+			String team = a.getTeam();
+			if (team != null && team.trim().length() > SHORT_TEAM_LENGTH) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public static void debugRanks(String label, Athlete a) {
 		logger./**/warn("{} {} {} {} {} {}", label, System.identityHashCode(a), a.getId(), a.getShortName(),
 		        a.getTotalRank(), a.getCategory(), a.getParticipations().size());
@@ -86,17 +100,47 @@ public class Competition {
 	/**
 	 * Gets the current.
 	 *
+	 * The competition is read once and shared until the next save or import. It must not be modified, use
+	 * {@link #getCurrentForEditing()} instead.
+	 *
 	 * @return the current
 	 */
 	public static Competition getCurrent() {
-		if (competition == null) {
-			competition = CompetitionRepository.findAll().get(0);
-		}
-		return competition;
+		return snapshot.get();
+	}
+
+	/**
+	 * @return a copy read from the database, to be modified and saved with
+	 *         {@link CompetitionRepository#save(Competition)}
+	 */
+	public static Competition getCurrentForEditing() {
+		return CompetitionRepository.findAll().get(0);
+	}
+
+	/**
+	 * @return incremented every time the current competition is replaced
+	 */
+	public static long getCurrentVersion() {
+		return snapshot.getVersion();
+	}
+
+	/**
+	 * Forget the current competition after it has been changed directly in the database (import, reset).
+	 */
+	public static void invalidateCurrent() {
+		snapshot.invalidate();
+		// ranking rules may have changed
+		RankingEngine.getCurrent().invalidate();
+		ResultsModel.getCurrent().invalidate();
+		MedalService.getCurrent().invalidate();
 	}
 
 	public static void setCurrent(Competition c) {
-		competition = c;
+		snapshot.publish(c);
+		// ranking rules may have changed
+		RankingEngine.getCurrent().invalidate();
+		ResultsModel.getCurrent().invalidate();
+		MedalService.getCurrent().invalidate();
 	}
 
 	public static void splitByGender(List<Athlete> athletes, List<Athlete> sortedMen, List<Athlete> sortedWomen) {
@@ -186,10 +230,6 @@ public class Competition {
 	@Column(columnDefinition = "boolean default false")
 	private boolean mastersGenderEquality = false;
 
-	@Transient
-	@JsonIgnore
-	private HashMap<Group, TreeMap<Category, TreeSet<Athlete>>> medalsByGroup;
-
 	private String medalsTemplateFileName;
 
 	/* this is really "keep best n results", backward compatibility with database exports */
@@ -221,15 +261,9 @@ public class Competition {
 
 	private String protocolTemplateFileName;
 
-	@Transient
-	@JsonIgnore
-	private boolean rankingsInvalid = true;
-
 	@Column(name = "refdelay", columnDefinition = "integer default 1500")
 	private int refereeWakeUpDelay = 1500;
 
-	@Transient
-	private HashMap<String, Object> reportingBeans = new HashMap<>();
 	/**
 	 * All first lifts, then all second lifts, then all third lifts, etc. Can be
 	 * combined with genderOrder as well.
@@ -324,7 +358,6 @@ public class Competition {
 	private String recordOrder;
 
 	public Competition() {
-		medalsByGroup = new HashMap<>();
 	}
 
 	/**
@@ -347,22 +380,10 @@ public class Competition {
 	public TreeMap<Category, TreeSet<Athlete>> computeMedals(Group g, List<Athlete> rankedAthletes
 	// , boolean onlyFinished
 	) {
-		if (g == null) {
+		if (g == null || rankedAthletes == null || rankedAthletes.size() == 0) {
 			return new TreeMap<>();
 		}
-		if (medalsByGroup == null) {
-			logger.error("no initialization !?");
-			medalsByGroup = new HashMap<>();
-		}
-		if (rankedAthletes == null || rankedAthletes.size() == 0) {
-			TreeMap<Category, TreeSet<Athlete>> treeMap = new TreeMap<>();
-			medalsByGroup.put(g, treeMap);
-			return treeMap;
-		}
-
-		TreeMap<Category, TreeSet<Athlete>> medals = computeMedalsByCategory(rankedAthletes);
-		medalsByGroup.put(g, medals);
-		return medals;
+		return computeMedalsByCategory(rankedAthletes);
 	}
 
 	public TreeMap<Category, TreeSet<Athlete>> computeMedalsByCategory(List<Athlete> rankedAthletes
@@ -380,107 +401,88 @@ public class Competition {
 
 		// iterate over the remaining categories
 		for (Category category : medalCategories) {
+			medals.put(category, computeMedalists(category, rankedAthletes));
+		}
+		return medals;
+	}
 
-			List<Athlete> currentCategoryAthletes = new ArrayList<>();
-			for (Athlete a : rankedAthletes) {
-				// fetch the participation that matches the current athlete registration
-				// category
-				Optional<Participation> matchingParticipation = a.getParticipations().stream()
-				        .filter(p -> p.getCategory().sameAs(category)).findFirst();
-				// get a PAthlete proxy wrapper that has the rankings for that participation
-				if (matchingParticipation.isPresent()) {
-					currentCategoryAthletes.add(new PAthlete(matchingParticipation.get()));
-				}
+	/**
+	 * Compute the medalists of a category.
+	 *
+	 * @param category      the medal category
+	 * @param rankedAthletes athletes with their participations, the ones not registered in the category are ignored
+	 * @return the athletes that have a rank in one of the lifts or in the total, as {@link PAthlete} for the category
+	 */
+	public TreeSet<Athlete> computeMedalists(Category category, List<Athlete> rankedAthletes) {
+		List<Athlete> currentCategoryAthletes = new ArrayList<>();
+		for (Athlete a : rankedAthletes) {
+			// fetch the participation that matches the current athlete registration
+			// category
+			Optional<Participation> matchingParticipation = a.getParticipations().stream()
+			        .filter(p -> p.getCategory().sameAs(category)).findFirst();
+			// get a PAthlete proxy wrapper that has the rankings for that participation
+			if (matchingParticipation.isPresent()) {
+				currentCategoryAthletes.add(new PAthlete(matchingParticipation.get()));
 			}
-
-			// all rankings are from a PAthlete, i.e., for the current medal category
-			List<Athlete> snatchLeaders = null;
-			List<Athlete> cjLeaders = null;
-			// if (isSnatchCJTotalMedals()) {
-			snatchLeaders = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.SNATCH)
-			        .stream().filter(a -> a.getBestSnatch() > 0 && a.isEligibleForIndividualRanking())
-			        .collect(Collectors.toList());
-			cjLeaders = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.CLEANJERK)
-			        .stream().filter(a -> a.getBestCleanJerk() > 0 && a.isEligibleForIndividualRanking())
-			        .collect(Collectors.toList());
-			// }
-			List<Athlete> totalLeaders = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.TOTAL)
-			        .stream().filter(a -> a.getTotal() > 0 && a.isEligibleForIndividualRanking())
-			        .collect(Collectors.toList());
-
-			// Athletes excluded from Total due to bombing out can still win medals, so we
-			// add them
-			TreeSet<Athlete> medalists = new TreeSet<>(new WinningOrderComparator(Ranking.TOTAL, false));
-			medalists.addAll(totalLeaders);
-			// if (isSnatchCJTotalMedals()) {
-			medalists.addAll(cjLeaders);
-			medalists.addAll(snatchLeaders);
-			// }
-			medals.put(category, medalists);
-
-//            logger.debug("medalists for {}", category);
-//            for (Athlete medalist : medalists) {
-//                logger.debug("{}\t{} {} {} S {}", medalist.getShortName(), medalist.getSnatchRank(),
-//                        medalist.getCleanJerkRank(), medalist.getTotalRank(), medalist.getSinclairRank());
-//            }
 		}
-		return medals;
+
+		// all rankings are from a PAthlete, i.e., for the current medal category
+		List<Athlete> snatchLeaders = null;
+		List<Athlete> cjLeaders = null;
+		// if (isSnatchCJTotalMedals()) {
+		snatchLeaders = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.SNATCH)
+		        .stream().filter(a -> a.getBestSnatch() > 0 && a.isEligibleForIndividualRanking())
+		        .collect(Collectors.toList());
+		cjLeaders = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.CLEANJERK)
+		        .stream().filter(a -> a.getBestCleanJerk() > 0 && a.isEligibleForIndividualRanking())
+		        .collect(Collectors.toList());
+		// }
+		List<Athlete> totalLeaders = AthleteSorter.resultsOrderCopy(currentCategoryAthletes, Ranking.TOTAL)
+		        .stream().filter(a -> a.getTotal() > 0 && a.isEligibleForIndividualRanking())
+		        .collect(Collectors.toList());
+
+		// Athletes excluded from Total due to bombing out can still win medals, so we
+		// add them
+		TreeSet<Athlete> medalists = new TreeSet<>(new WinningOrderComparator(Ranking.TOTAL, false));
+		medalists.addAll(totalLeaders);
+		// if (isSnatchCJTotalMedals()) {
+		medalists.addAll(cjLeaders);
+		medalists.addAll(snatchLeaders);
+		// }
+
+//        logger.debug("medalists for {}", category);
+//        for (Athlete medalist : medalists) {
+//            logger.debug("{}\t{} {} {} S {}", medalist.getShortName(), medalist.getSnatchRank(),
+//                    medalist.getCleanJerkRank(), medalist.getTotalRank(), medalist.getSinclairRank());
+//        }
+		return medalists;
 	}
 
+	/**
+	 * The medalists of a category, as kept by the {@link MedalService}.
+	 *
+	 * @param category
+	 * @return the medalists, shared with the other callers and not to be modified
+	 */
 	public TreeSet<Athlete> computeMedalsForCategory(Category category) {
-		// brute force - reuse what works
-		List<Athlete> rankedAthletes = AthleteRepository.findAthletesForGlobalRanking(null);
-		TreeSet<Athlete> treeSet = computeMedalsByCategory(rankedAthletes).get(category);
-		// logger.debug("computeMedalsForCategory {}",treeSet);
-		return treeSet;
-	}
-
-	synchronized public HashMap<String, Object> computeReportingInfo() {
-		List<Athlete> athletes = AgeGroupRepository.allWeighedInPAthletesForAgeGroupAgeDivision(null, null);
-		doComputeReportingInfo(true, athletes, (String) null, null);
-		return reportingBeans;
-	}
-
-	synchronized public HashMap<String, Object> computeReportingInfo(String ageGroupPrefix, AgeDivision ad) {
-		List<Athlete> athletes = AgeGroupRepository.allWeighedInPAthletesForAgeGroupAgeDivision(ageGroupPrefix, ad);
-		doComputeReportingInfo(true, athletes, ageGroupPrefix, ad);
-		return reportingBeans;
-	}
-
-	public void doGlobalRankings(List<Athlete> athletes) {
-		List<Athlete> sortedAthletes;
-		List<Athlete> sortedMen;
-		List<Athlete> sortedWomen;
-
-		sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.BW_SINCLAIR);
-		AthleteSorter.assignOverallRanksAndPoints(sortedAthletes, Ranking.BW_SINCLAIR);
-		sortedMen = new ArrayList<>(sortedAthletes.size());
-		sortedWomen = new ArrayList<>(sortedAthletes.size());
-		splitByGender(sortedAthletes, sortedMen, sortedWomen);
-		reportingBeans.put("mSinclair", sortedMen);
-		reportingBeans.put("wSinclair", sortedWomen);
-		logger.debug("mSinclair {}", sortedMen);
-		logger.debug("wSinclair {}", sortedWomen);
-
-		sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.SMM);
-		AthleteSorter.assignOverallRanksAndPoints(sortedAthletes, Ranking.SMM);
-		sortedMen = new ArrayList<>(sortedAthletes.size());
-		sortedWomen = new ArrayList<>(sortedAthletes.size());
-		splitByGender(sortedAthletes, sortedMen, sortedWomen);
-		reportingBeans.put("mSmm", sortedMen);
-		reportingBeans.put("wSmm", sortedWomen);
-		logger.debug("mSmm {}", sortedMen);
-		logger.debug("wSmm {}", sortedWomen);
-		
-		sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.QPOINTS);
-		AthleteSorter.assignOverallRanksAndPoints(sortedAthletes, Ranking.QPOINTS);
-		sortedMen = new ArrayList<>(sortedAthletes.size());
-		sortedWomen = new ArrayList<>(sortedAthletes.size());
-		splitByGender(sortedAthletes, sortedMen, sortedWomen);
-		reportingBeans.put("mQPoints", sortedMen);
-		reportingBeans.put("wQPoints", sortedWomen);
-		logger.debug("mQPoints {}", sortedMen);
-		logger.debug("wQPoints {}", sortedWomen);
+		return MedalService.getCurrent().getMedalists(category);
+	}
+
+	public HashMap<String, Object> computeReportingInfo() {
+		return computeReportingInfo(null, null);
+	}
+
+	/**
+	 * Get all the rankings for an age group, or for all the age groups in an age division.
+	 *
+	 * The rankings are only recomputed if athletes have changed since the last call, see {@link ResultsModel}.
+	 *
+	 * @param ageGroupPrefix age group code, null for all
+	 * @param ad             age division, null for all
+	 * @return a new map owned by the caller; the lists inside are shared and must not be modified
+	 */
+	public HashMap<String, Object> computeReportingInfo(String ageGroupPrefix, AgeDivision ad) {
+		return ResultsModel.getCurrent().getView(ageGroupPrefix, ad).getBeans();
 	}
 
 	@Override
@@ -720,7 +722,7 @@ public class Competition {
 
 	@Transient
 	@JsonIgnore
-	synchronized public List<Athlete> getGlobalSinclairRanking(Gender gender) {
+	public List<Athlete> getGlobalSinclairRanking(Gender gender) {
 		return getListOrElseRecompute(gender == Gender.F ? "wSinclair" : "mSinclair");
 	}
 
@@ -756,28 +758,14 @@ public class Competition {
 		return juryTemplateFileName;
 	}
 
-	@SuppressWarnings("unchecked")
 	@Transient
 	@JsonIgnore
-	synchronized public List<Athlete> getListOrElseRecompute(String listName) {
-		List<Athlete> athletes = (List<Athlete>) reportingBeans.get(listName);
-		if (isRankingsInvalid() || athletes == null) {
-			setRankingsInvalid(true);
-			while (isRankingsInvalid()) { // could be made invalid again while we compute
-				setRankingsInvalid(false);
-				// recompute because an athlete has been saved (new weight requested, good/bad
-				// lift, etc.)
-				computeReportingInfo();
-				athletes = (List<Athlete>) reportingBeans.get(listName);
-				if (athletes == null) {
-					String error = MessageFormat.format("list {0} not found", listName);
-					logger./**/warn(error);
-					athletes = Collections.emptyList();
-				}
-			}
-			logger.debug("recomputed {} size {} from {}", listName, athletes != null ? athletes.size() : null);
-		} else {
-			logger.debug("found {} size {} from {}", listName, athletes != null ? athletes.size() : null);
+	public List<Athlete> getListOrElseRecompute(String listName) {
+		List<Athlete> athletes = ResultsModel.getCurrent().getView(null, null).getList(listName);
+		if (athletes == null) {
+			String error = MessageFormat.format("list {0} not found", listName);
+			logger./**/warn(error);
+			athletes = Collections.emptyList();
 		}
 		return athletes;
 	}
@@ -816,35 +804,11 @@ public class Competition {
 		return isMasters();
 	}
 
+	/**
+	 * @see MedalService#getMedals(Group, boolean)
+	 */
 	public TreeMap<Category, TreeSet<Athlete>> getMedals(Group g, boolean onlyFinished) {
-		TreeMap<Category, TreeSet<Athlete>> medals;
-		if (medalsByGroup == null || (medals = medalsByGroup.get(g)) == null) {
-			medals = computeMedals(g);
-		}
-		final TreeMap<Category, TreeSet<Athlete>> m = new TreeMap<>(medals);
-		if (onlyFinished) {
-			List<Category> toRemove = medals.keySet().stream()
-			        .filter(k -> {
-				        TreeSet<Athlete> athletes = m.get(k);
-				        if (athletes.isEmpty()) {
-					        return true; // remove from list.
-				        }
-				        // logger.debug("athletes {} {}",k, athletes);
-				        // category includes an athlete that has not finished, mark it as "to be
-				        // removed"
-				        boolean anyMatch = athletes.stream()
-				                .anyMatch(a -> a.getSnatch3AsInteger() == null || a.getCleanJerk3AsInteger() == null);
-				        // logger.debug("category {} has finished {}", k, !anyMatch);
-				        return anyMatch;
-			        })
-			        .collect(Collectors.toList());
-			// logger.debug("notFinished {}",toRemove);
-			for (Category notFinished : toRemove) {
-				m.remove(notFinished);
-			}
-		}
-		return m;
-
+		return MedalService.getCurrent().getMedals(g, onlyFinished);
 	}
 
 	@Transient
@@ -876,12 +840,6 @@ public class Competition {
 		return refereeWakeUpDelay;
 	}
 
-	@Transient
-	@JsonIgnore
-	public HashMap<String, Object> getReportingBeans() {
-		return reportingBeans;
-	}
-
 	public Integer getShorterBreakDuration() {
 		return shorterBreakDuration;
 	}
@@ -922,16 +880,6 @@ public class Competition {
 		return womensBestN;
 	}
 
-	public void globalRankings() {
-		List<Athlete> athletes = AthleteRepository.findAllByGroupAndWeighIn(null, true);
-		doGlobalRankings(athletes);
-	}
-
-	public void globalRankings(EntityManager em) {
-		List<Athlete> athletes = AthleteRepository.doFindAllByGroupAndWeighIn(em, null, true, null);
-		doGlobalRankings(athletes);
-	}
-
 	@Override
 	public int hashCode() {
 		return 31;
@@ -985,10 +933,6 @@ public class Competition {
 		return mastersGenderEquality;
 	}
 
-	synchronized public boolean isRankingsInvalid() {
-		return rankingsInvalid;
-	}
-
 	public boolean isRoundRobinOrder() {
 		return roundRobinOrder;
 	}
@@ -1233,8 +1177,17 @@ public class Competition {
 		this.protocolTemplateFileName = protocolFileName;
 	}
 
-	synchronized public void setRankingsInvalid(boolean invalid) {
-		this.rankingsInvalid = invalid;
+	/**
+	 * Called after athletes have been changed directly in the database.
+	 *
+	 * @param invalid true if the results must be recomputed
+	 */
+	@JsonIgnore
+	public void setRankingsInvalid(boolean invalid) {
+		if (invalid) {
+			ResultsModel.getCurrent().invalidate();
+			MedalService.getCurrent().invalidate();
+		}
 	}
 
 	public void setRecordOrder(String recordOrder) {
@@ -1324,393 +1277,11 @@ public class Competition {
 		        + womensBestN + ", customScore=" + customScore + ", mastersGenderEquality=" + mastersGenderEquality
 		        + ", useBirthYear=" + isUseBirthYear() + ", useCategorySinclair=" + useCategorySinclair
 		        + ", useOldBodyWeightTieBreak=" + useOldBodyWeightTieBreak + ", useRegistrationCategory="
-		        + useRegistrationCategory + ", reportingBeans=" + reportingBeans + "]";
-	}
-
-	private void addToReportingBean(String string, List<Athlete> sorted) {
-		List<Athlete> athletes = getOrCreateBean(string);
-		athletes.addAll(sorted);
-	}
-
-	private void categoryRankings(List<Athlete> athletes) {
-		List<Athlete> sortedAthletes;
-		List<Athlete> sortedMen = null;
-		List<Athlete> sortedWomen = null;
-
-		reportingBeans.clear();
-
-		reportingBeans.put("competition", Competition.getCurrent());
-		reportingBeans.put("groups", GroupRepository.findAll().stream().sorted((a, b) -> {
-			int compare = ObjectUtils.compare(a.getWeighInTime(), b.getWeighInTime(), true);
-			if (compare != 0) {
-				return compare;
-			}
-			return compare = ObjectUtils.compare(a.getPlatform(), b.getPlatform(), true);
-		}).collect(Collectors.toList()));
-		reportingBeans.put("t", Translator.getMap());
-
-		// sort only, use ranks stored in database
-		sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.SNATCH, false);
-		sortedMen = new ArrayList<>(sortedAthletes.size());
-		sortedWomen = new ArrayList<>(sortedAthletes.size());
-		splitByGender(sortedAthletes, sortedMen, sortedWomen);
-		reportingBeans.put("mSn", sortedMen);
-		reportingBeans.put("wSn", sortedWomen);
-
-		// sort only, use ranks stored in database
-		sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.CLEANJERK, false);
-		AthleteSorter.assignCategoryRanks(sortedAthletes, Ranking.CLEANJERK);
-		sortedMen = new ArrayList<>(sortedAthletes.size());
-		sortedWomen = new ArrayList<>(sortedAthletes.size());
-		splitByGender(sortedAthletes, sortedMen, sortedWomen);
-		reportingBeans.put("mCJ", sortedMen);
-		reportingBeans.put("wCJ", sortedWomen);
-
-		// sort only, use ranks stored in database
-		sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.TOTAL, false);
-		sortedMen = new ArrayList<>(sortedAthletes.size());
-		sortedWomen = new ArrayList<>(sortedAthletes.size());
-		splitByGender(sortedAthletes, sortedMen, sortedWomen);
-		reportingBeans.put("mTot", sortedMen);
-		reportingBeans.put("wTot", sortedWomen);
-		reportingBeans.put("mwTot", sortedAthletes);
-		logger.debug("mTot {}", sortedMen);
-		logger.debug("wTot {}", sortedWomen);
-//        for (Athlete a : sortedMen) {
-//            debugRanks("mTot", a);
-//        }
-
-		// sort only, use ranks stored in database
-		sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.CUSTOM);
-		sortedMen = new ArrayList<>(sortedAthletes.size());
-		sortedWomen = new ArrayList<>(sortedAthletes.size());
-		splitByGender(sortedAthletes, sortedMen, sortedWomen);
-		reportingBeans.put("mCus", sortedMen);
-		reportingBeans.put("wCus", sortedWomen);
-		logger.debug("mCus {}", sortedMen);
-		logger.debug("wCus {}", sortedWomen);
-
-		sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.CAT_SINCLAIR);
-		AthleteSorter.assignOverallRanksAndPoints(sortedAthletes, Ranking.CAT_SINCLAIR);
-		sortedMen = new ArrayList<>(sortedAthletes.size());
-		sortedWomen = new ArrayList<>(sortedAthletes.size());
-		splitByGender(sortedAthletes, sortedMen, sortedWomen);
-		reportingBeans.put("mCatSinclair", sortedMen);
-		reportingBeans.put("wCatSinclair", sortedWomen);
-		logger.debug("mCatSinclair {}", sortedMen);
-		logger.debug("wCatSinclair {}", sortedWomen);
-
-		sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.ROBI);
-		AthleteSorter.assignOverallRanksAndPoints(sortedAthletes, Ranking.ROBI);
-		sortedMen = new ArrayList<>(sortedAthletes.size());
-		sortedWomen = new ArrayList<>(sortedAthletes.size());
-		splitByGender(sortedAthletes, sortedMen, sortedWomen);
-		reportingBeans.put("mRobi", sortedMen);
-		reportingBeans.put("wRobi", sortedWomen);
-		reportingBeans.put("mwRobi", sortedAthletes);
-	}
-
-	private void clearTeamReportingBeans(String suffix) {
-		getOrCreateBean("mCombined" + suffix).clear();
-		getOrCreateBean("wCombined" + suffix).clear();
-		getOrCreateBean("mwCombined" + suffix).clear();
-		getOrCreateBean("mTeam" + suffix).clear();
-		getOrCreateBean("wTeam" + suffix).clear();
-		getOrCreateBean("mwTeam" + suffix).clear();
-		getOrCreateBean("mCustom" + suffix).clear();
-		getOrCreateBean("wCustom" + suffix).clear();
-		getOrCreateBean("mwCustom" + suffix).clear();
-	}
-
-	private void doComputeReportingInfo(boolean full, List<Athlete> athletes, String ageGroupPrefix,
-	        AgeDivision ad) {
-		// reporting does many database queries. fork a low-priority thread.
-		runInThread(() -> {
-			if (athletes.isEmpty()) {
-				// prevent outputting silliness.
-				logger./**/warn("no athletes");
-				reportingBeans.clear();
-				return;
-			}
-
-			// the ranks within a category are stored in the database and
-			// not recomputed
-			categoryRankings(athletes);
-
-			// splitResultsByGroups(athletes);
-			if (full) {
-				reportingBeans.put("athletes", athletes);
-				// logger.debug("ad={} ageGroupPrefix={}", ad, ageGroupPrefix);
-				if (ad != null && (ageGroupPrefix == null || ageGroupPrefix.isBlank())) {
-					// iterate over all age groups present in age division ad
-					teamRankingsForAgeDivision(ad);
-				} else {
-					teamRankings(athletes, ageGroupPrefix);
-				}
-			}
-
-			doGlobalRankings(athletes);
-			// globalRankings();
-		}, Thread.MIN_PRIORITY);
-	}
-
-	/**
-	 * Compute a team-ranking for the specified PAthletes.
-	 *
-	 * PAthletes have a single participation, which is the one that will be used for
-	 * ranking. Caller is responsible for putting several age groups together (e.g.
-	 * for Masters), or using a single age group (e.g. SR)
-	 *
-	 * Reporting beans are modified. Caller must clear them beforehand if needed.
-	 *
-	 * @param athletes
-	 * @param singleAgeGroup true if not called in a loop, can compute team stats.
-	 * @param ageGroupPrefix
-	 */
-	private void doTeamRankings(List<Athlete> athletes, String suffix, boolean singleAgeGroup) {
-		// team-oriented rankings. These rankings put all the athletes from the same
-		// team
-		// together, sorted according to their points, so the top n can be kept if
-		// needed.
-		// substitutes are not included -- they should be marked as
-		// !isEligibleForTeamRanking
-
-		List<Athlete> sortedAthletes;
-		List<Athlete> sortedMen = new ArrayList<>();
-		List<Athlete> sortedWomen = new ArrayList<>();
-		splitPTeamMembersByGender(athletes, sortedMen, sortedWomen);
-		athletes = new ArrayList<>();
-		athletes.addAll(sortedMen);
-		athletes.addAll(sortedWomen);
-
-		sortedAthletes = AthleteSorter.teamPointsOrderCopy(athletes, Ranking.TOTAL);
-		sortedMen = AthleteSorter.teamPointsOrderCopy(sortedMen, Ranking.TOTAL);
-		sortedWomen = AthleteSorter.teamPointsOrderCopy(sortedWomen, Ranking.TOTAL);
-		addToReportingBean("mTeam" + suffix, sortedMen);
-		addToReportingBean("wTeam" + suffix, sortedWomen);
-		addToReportingBean("mwTeam" + suffix, sortedAthletes);
-		if (singleAgeGroup) {
-			reportTeams(sortedAthletes, sortedMen, sortedWomen);
-		}
-
-		sortedAthletes = AthleteSorter.teamPointsOrderCopy(athletes, Ranking.SNATCH_CJ_TOTAL);
-		sortedMen = AthleteSorter.teamPointsOrderCopy(sortedMen, Ranking.SNATCH_CJ_TOTAL);
-		sortedWomen = AthleteSorter.teamPointsOrderCopy(sortedWomen, Ranking.SNATCH_CJ_TOTAL);
-		addToReportingBean("mCombined" + suffix, sortedMen);
-		addToReportingBean("wCombined" + suffix, sortedWomen);
-		addToReportingBean("mwCombined" + suffix, sortedAthletes);
-		if (singleAgeGroup) {
-			reportCombined(sortedAthletes, sortedMen, sortedWomen);
-		}
-
-		sortedAthletes = AthleteSorter.teamPointsOrderCopy(athletes, Ranking.CUSTOM);
-		sortedMen = AthleteSorter.teamPointsOrderCopy(sortedMen, Ranking.CUSTOM);
-		sortedWomen = AthleteSorter.teamPointsOrderCopy(sortedWomen, Ranking.CUSTOM);
-		addToReportingBean("mCustom" + suffix, sortedMen);
-		addToReportingBean("wCustom" + suffix, sortedWomen);
-		addToReportingBean("mwCustom" + suffix, sortedAthletes);
-		if (singleAgeGroup) {
-			reportCustom(sortedAthletes, sortedMen, sortedWomen);
-		}
-
-		sortedMen = getOrCreateBean("mTeamSinclair" + suffix);
-		sortedWomen = getOrCreateBean("wTeamSinclair" + suffix);
-		AthleteSorter.teamPointsOrder(sortedMen, Ranking.BW_SINCLAIR);
-		AthleteSorter.teamPointsOrder(sortedWomen, Ranking.BW_SINCLAIR);
+		        + useRegistrationCategory + "]";
 	}
 
 	private String getMedalsTemplateFileName() {
 		return medalsTemplateFileName;
 	}
 
-	@SuppressWarnings("unchecked")
-	private List<Athlete> getOrCreateBean(String string) {
-		List<Athlete> list = (List<Athlete>) reportingBeans.get(string);
-		if (list == null) {
-			list = new ArrayList<>();
-			reportingBeans.put(string, list);
-		}
-		return list;
-	}
-
-	private void reportCombined(List<Athlete> sortedAthletes, List<Athlete> sortedMen, List<Athlete> sortedWomen) {
-		getOrCreateBean("mCombined");
-		reportingBeans.put("mCombined", sortedMen);
-		getOrCreateBean("wCombined");
-		reportingBeans.put("wCombined", sortedWomen);
-		getOrCreateBean("mwCombined");
-		reportingBeans.put("mwCombined", sortedAthletes);
-	}
-
-	private void reportCustom(List<Athlete> sortedAthletes, List<Athlete> sortedMen, List<Athlete> sortedWomen) {
-		getOrCreateBean("mCustom");
-		reportingBeans.put("mCustom", sortedMen);
-		getOrCreateBean("wCustom");
-		reportingBeans.put("wCustom", sortedWomen);
-		getOrCreateBean("mwCustom");
-		reportingBeans.put("mwCustom", sortedAthletes);
-	}
-
-	private void reportSinclair(List<Athlete> sortedMen, List<Athlete> sortedWomen) {
-		getOrCreateBean("mSinclair");
-		reportingBeans.put("mSinclair", sortedMen);
-		getOrCreateBean("wSinclair");
-		reportingBeans.put("wSinclair", sortedWomen);
-	}
-
-	private void reportSMF(List<Athlete> sortedMen, List<Athlete> sortedWomen) {
-		getOrCreateBean("mSMF");
-		reportingBeans.put("mSMF", sortedMen);
-		getOrCreateBean("wSMF");
-		reportingBeans.put("wSMF", sortedWomen);
-	}
-
-	private void reportTeams(List<Athlete> sortedAthletes, List<Athlete> sortedMen,
-	        List<Athlete> sortedWomen) {
-		// only needed once
-		reportingBeans.put("nbMen", sortedMen.size());
-		reportingBeans.put("nbWomen", sortedWomen.size());
-		reportingBeans.put("nbAthletes", sortedAthletes.size());
-		logger.debug("sortedMen {} sortedWomen {} sortedCombined {}", sortedMen.size(), sortedWomen.size(),
-		        sortedAthletes.size());
-
-		// extract club lists
-		TreeSet<String> teams = new TreeSet<>();
-		for (Athlete curAthlete : sortedAthletes) {
-			if (curAthlete.getTeam() != null) {
-				teams.add(curAthlete.getTeam());
-			}
-		}
-
-		getOrCreateBean("mTeam");
-		reportingBeans.put("mTeam", sortedMen);
-		getOrCreateBean("wTeam");
-		reportingBeans.put("wTeam", sortedWomen);
-		getOrCreateBean("mwTeam");
-		reportingBeans.put("mwTeam", sortedAthletes);
-
-		reportingBeans.put("clubs", teams);
-		reportingBeans.put("nbClubs", teams.size());
-		if (sortedMen.size() > 0) {
-			reportingBeans.put("mClubs", teams);
-		} else {
-			reportingBeans.put("mClubs", new ArrayList<String>());
-		}
-		if (sortedWomen.size() > 0) {
-			reportingBeans.put("wClubs", teams);
-		} else {
-			reportingBeans.put("wClubs", new ArrayList<String>());
-		}
-	}
-
-	private void runInThread(Runnable runnable, int priority) {
-		Thread t = new Thread(runnable);
-		AtomicReference<Throwable> errorReference = new AtomicReference<>();
-		t.setUncaughtExceptionHandler((th, ex) -> {
-			errorReference.set(ex);
-		});
-		t.setPriority(priority);
-		try {
-			t.start();
-			t.join();
-			Throwable throwable = errorReference.get();
-			if (throwable != null) {
-				throw new RuntimeException(throwable);
-			}
-		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	@SuppressWarnings({ "unchecked", "unused" })
-	private void splitResultsByGroups(List<PAthlete> athletes) {
-		// create one list per competition group
-		for (Group g : GroupRepository.findAll()) {
-			String name = g.getName();
-			if (name != null) {
-				reportingBeans.remove(name);
-				reportingBeans.put(name, new ArrayList<Athlete>());
-			}
-		}
-
-		AthleteSorter.displayOrder(athletes);
-		for (Athlete a : athletes) {
-			Group group = a.getGroup();
-			if (group != null && group.getName() != null) {
-				List<Athlete> list = (List<Athlete>) reportingBeans.get(group.getName());
-				// logger.trace("adding {} to {}", a.getShortName(), group.getName());
-				list.add(a);
-			}
-		}
-		logger.debug("updated reporting data");
-	}
-
-	private void teamRankings(List<Athlete> athletes, String ageGroupPrefix) {
-		clearTeamReportingBeans(ageGroupPrefix);
-		doTeamRankings(athletes, ageGroupPrefix, true);
-	}
-
-	/**
-	 * Iterate over all age prefixes in the age division and accumulate results.
-	 *
-	 * @param athletes
-	 * @param ageGroupPrefix
-	 */
-	private void teamRankingsForAgeDivision(AgeDivision ad) {
-		if (ad == null) {
-			return;
-		}
-		List<String> agePrefixes = AgeGroupRepository.findActiveAndUsed(ad);
-
-		for (String curAGPrefix : agePrefixes) {
-			List<Athlete> athletes = AgeGroupRepository.allPAthletesForAgeGroup(curAGPrefix);
-			doTeamRankings(athletes, ad.name(), false);
-		}
-
-		List<Athlete> sortedAthletes;
-		List<Athlete> sortedMen;
-		List<Athlete> sortedWomen;
-
-		sortedMen = getOrCreateBean("mTeam" + ad.name());
-		sortedWomen = getOrCreateBean("wTeam" + ad.name());
-		sortedAthletes = getOrCreateBean("mwTeam" + ad.name());
-		AthleteSorter.teamPointsOrder(sortedMen, Ranking.TOTAL);
-		AthleteSorter.teamPointsOrder(sortedWomen, Ranking.TOTAL);
-		AthleteSorter.teamPointsOrder(sortedAthletes, Ranking.TOTAL);
-
-		reportTeams(sortedAthletes, sortedMen, sortedWomen);
-
-		sortedMen = getOrCreateBean("mCombined" + ad.name());
-		sortedWomen = getOrCreateBean("wCombined" + ad.name());
-		sortedAthletes = getOrCreateBean("mwCombined" + ad.name());
-		AthleteSorter.teamPointsOrder(sortedMen, Ranking.SNATCH_CJ_TOTAL);
-		AthleteSorter.teamPointsOrder(sortedWomen, Ranking.SNATCH_CJ_TOTAL);
-		AthleteSorter.teamPointsOrder(sortedAthletes, Ranking.SNATCH_CJ_TOTAL);
-
-		reportCombined(sortedAthletes, sortedMen, sortedWomen);
-
-		sortedMen = getOrCreateBean("mCustom" + ad.name());
-		sortedWomen = getOrCreateBean("wCustom" + ad.name());
-		sortedAthletes = getOrCreateBean("mwCustom" + ad.name());
-		AthleteSorter.teamPointsOrder(sortedMen, Ranking.CUSTOM);
-		AthleteSorter.teamPointsOrder(sortedWomen, Ranking.CUSTOM);
-		AthleteSorter.teamPointsOrder(sortedAthletes, Ranking.CUSTOM);
-
-		reportCustom(sortedAthletes, sortedMen, sortedWomen);
-
-		sortedMen = getOrCreateBean("mTeamSinclair" + ad.name());
-		sortedWomen = getOrCreateBean("wTeamSinclair" + ad.name());
-		AthleteSorter.teamPointsOrder(sortedMen, Ranking.BW_SINCLAIR);
-		AthleteSorter.teamPointsOrder(sortedWomen, Ranking.BW_SINCLAIR);
-
-		reportSinclair(sortedMen, sortedWomen);
-
-		sortedMen = getOrCreateBean("mTeamSMF" + ad.name());
-		sortedWomen = getOrCreateBean("wTeamSMF" + ad.name());
-		AthleteSorter.teamPointsOrder(sortedMen, Ranking.SMM);
-		AthleteSorter.teamPointsOrder(sortedWomen, Ranking.SMM);
-
-		reportSMF(sortedMen, sortedWomen);
-	}
-
 }
@@ -13,7 +13,9 @@ import javax.persistence.Query;
 
 import org.slf4j.LoggerFactory;
 
+import app.owlcms.data.config.Config;
 import app.owlcms.data.jpa.JPAService;
+import app.owlcms.data.records.RecordIndex;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 
@@ -94,6 +96,9 @@ public class CompetitionRepository {
 			doRemoveAll(em);
 			return null;
 		});
+		RecordIndex.getCurrent().invalidate();
+		Config.invalidateCurrent();
+		Competition.invalidateCurrent();
 	}
 
 	/**
@@ -103,15 +108,11 @@ public class CompetitionRepository {
 	 * @return the competition
 	 */
 	public static Competition save(Competition competition) {
-		JPAService.runInTransaction(em -> {
-			Competition nc = em.merge(competition);
-			// needed because some classes get competition parameters from getCurrent()
-			Competition.setCurrent(nc);
-			return nc;
-		});
-
-		Competition current = Competition.getCurrent();
-		return current;
+		Competition nc = JPAService.runInTransaction(em -> em.merge(competition));
+		// needed because some classes get competition parameters from getCurrent()
+		// published once committed, so readers never see a value that could be rolled back.
+		Competition.setCurrent(nc);
+		return nc;
 	}
 
 }
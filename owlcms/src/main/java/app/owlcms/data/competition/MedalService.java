@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.competition;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.category.CategoryRepository;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.jpa.DataVersion;
+import app.owlcms.utils.Scheduler;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * The medalists of each category, kept between requests, for the medal displays and the medal ceremonies.
+ *
+ * The medalists of a category are computed from the athletes registered in that category only. When an athlete is
+ * saved or ranks are written, only the categories in which the athletes participate now, and those that were computed
+ * with them, are dropped. Any other change to the database is detected through {@link DataVersion}, as for the
+ * {@link ResultsModel}.
+ *
+ * Displays subscribe to the category they show. When athletes of that category change, the medalists are computed
+ * once, on a background thread, and given to all the subscribers, which only have to update their page.
+ *
+ * @author Jean-François Lamy
+ */
+public class MedalService {
+
+	private static class Entry {
+		/** the athletes registered in the category, whether medalists or not */
+		private final Set<Long> ids = new HashSet<>();
+		private final TreeSet<Athlete> medalists;
+		/** version of the database for which the medalists are known to be correct */
+		private volatile long version;
+
+		private Entry(TreeSet<Athlete> medalists, List<Athlete> athletes, long version) {
+			this.medalists = medalists;
+			for (Athlete a : athletes) {
+				this.ids.add(a.getId());
+			}
+			this.version = version;
+		}
+
+		/**
+		 * @param athletes
+		 * @return true if the medalists were computed with one of the athletes
+		 */
+		private boolean containsAny(Collection<? extends Athlete> athletes) {
+			return athletes.stream().anyMatch(a -> this.ids.contains(a.getId()));
+		}
+	}
+
+	private static class Subscription {
+		private final Category category;
+		private final List<Consumer<TreeSet<Athlete>>> listeners = new CopyOnWriteArrayList<>();
+
+		private Subscription(Category category) {
+			this.category = category;
+		}
+	}
+
+	private static MedalService current;
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(MedalService.class);
+
+	public static synchronized MedalService getCurrent() {
+		if (current == null) {
+			current = new MedalService();
+		}
+		return current;
+	}
+
+	/**
+	 * @return the codes of the categories of the athletes, or null if the participations are not available
+	 */
+	private static Set<String> categoryCodes(Collection<? extends Athlete> athletes) {
+		Set<String> codes = new HashSet<>();
+		try {
+			for (Athlete a : athletes) {
+				for (Participation p : a.getParticipations()) {
+					Category c = p.getCategory();
+					if (c != null) {
+						codes.add(c.getCode());
+					}
+				}
+			}
+			return codes;
+		} catch (RuntimeException e) {
+			// participations not available, assume the worst
+			return null;
+		}
+	}
+
+	/** incremented whenever medalists are dropped, so that medalists computed meanwhile are not kept */
+	private final AtomicLong changes = new AtomicLong();
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private boolean notifying;
+	/** categories to recompute for the subscribers, guarded by the set itself */
+	private final Set<String> pending = new LinkedHashSet<>();
+	private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+	private MedalService() {
+	}
+
+	/**
+	 * Called after an athlete has been saved.
+	 *
+	 * @param a    the athlete as saved
+	 * @param mark the value of {@link DataVersion#mark()} taken before the transaction
+	 */
+	public void athleteChanged(Athlete a, long mark) {
+		athletesChanged(a != null ? List.of(a) : List.of(), mark);
+	}
+
+	/**
+	 * Called after athletes have been saved, for example after their ranks have been written. The categories in which
+	 * one of the athletes participates are dropped, as are the categories that contained one of them before the save
+	 * (the athlete may have moved to another category). The other ones remain valid.
+	 *
+	 * @param athletes the athletes as saved
+	 * @param mark     the value of {@link DataVersion#mark()} taken before the transaction
+	 */
+	public void athletesChanged(Collection<? extends Athlete> athletes, long mark) {
+		if (athletes.isEmpty()) {
+			return;
+		}
+		this.changes.incrementAndGet();
+		long version = DataVersion.versionIfOnlyOwnChanges(mark);
+		Set<String> changed = categoryCodes(athletes);
+		for (Map.Entry<String, Entry> e : this.entries.entrySet()) {
+			Entry entry = e.getValue();
+			if (changed == null || changed.contains(e.getKey())) {
+				this.entries.remove(e.getKey(), entry);
+			} else if (entry.containsAny(athletes)) {
+				// the category the athlete has left
+				this.entries.remove(e.getKey(), entry);
+				changed.add(e.getKey());
+			} else if (version >= 0 && entry.version == mark) {
+				// nobody else has written, nothing has changed for this category
+				entry.version = version;
+			}
+		}
+		notifyLater(changed);
+	}
+
+	/**
+	 * Get the medalists of a category, computing them if anything has changed since last time.
+	 *
+	 * @param category
+	 * @return the medalists, as {@link app.owlcms.spreadsheet.PAthlete} for the category, in medal order. The set is
+	 *         shared between all the readers and must not be modified.
+	 */
+	public TreeSet<Athlete> getMedalists(Category category) {
+		String code = category.getCode();
+		Entry entry = this.entries.get(code);
+		if (entry != null && entry.version == DataVersion.get()) {
+			return entry.medalists;
+		}
+
+		long changesBefore = this.changes.get();
+		long version = DataVersion.get();
+		long start = System.nanoTime();
+		List<Athlete> registered = AthleteRepository.findAthletesForCategory(category);
+		List<Athlete> athletes = registered.stream().filter(a -> {
+			Double bw = a.getBodyWeight();
+			return bw != null && bw >= 0.01;
+		}).collect(Collectors.toList());
+		entry = new Entry(Competition.getCurrent().computeMedalists(category, athletes), registered, version);
+		logger.debug("medals for {} computed in {}ms", code, (System.nanoTime() - start) / 1000000.0);
+		this.entries.put(code, entry);
+		if (this.changes.get() != changesBefore) {
+			// athletes saved while we were reading, the medalists may already be out of date.
+			this.entries.remove(code, entry);
+		}
+		return entry.medalists;
+	}
+
+	/**
+	 * Get the medalists of every category of a group, each category being computed only if it has changed.
+	 *
+	 * @param g            the group
+	 * @param onlyFinished if true, the categories where an athlete has lifts to do, or has no medal, are left out
+	 * @return for each category, the medalists as given by {@link #getMedalists(Category)}
+	 */
+	public TreeMap<Category, TreeSet<Athlete>> getMedals(Group g, boolean onlyFinished) {
+		TreeMap<Category, TreeSet<Athlete>> medals = new TreeMap<>();
+		if (g == null) {
+			return medals;
+		}
+		for (Category category : CategoryRepository.findByGroup(g)) {
+			TreeSet<Athlete> medalists = getMedalists(category);
+			if (onlyFinished && (medalists.isEmpty() || medalists.stream()
+			        .anyMatch(a -> a.getSnatch3AsInteger() == null || a.getCleanJerk3AsInteger() == null))) {
+				continue;
+			}
+			medals.put(category, medalists);
+		}
+		return medals;
+	}
+
+	/**
+	 * Drop all the medalists, for example after the athletes have been reloaded. The subscribers get the new
+	 * medalists.
+	 */
+	public void invalidate() {
+		this.changes.incrementAndGet();
+		this.entries.clear();
+		notifyLater(null);
+	}
+
+	/**
+	 * Be given the medalists of a category whenever they change. The listener is called on a background thread and
+	 * must not hold on to it; a display uses it to update its page.
+	 *
+	 * @param category
+	 * @param listener
+	 */
+	public void subscribe(Category category, Consumer<TreeSet<Athlete>> listener) {
+		this.subscriptions.computeIfAbsent(category.getCode(), (c) -> new Subscription(category)).listeners
+		        .add(listener);
+	}
+
+	/**
+	 * Stop giving medalists to a listener, whatever the category it was subscribed to.
+	 *
+	 * @param listener
+	 */
+	public void unsubscribe(Consumer<TreeSet<Athlete>> listener) {
+		if (listener == null) {
+			return;
+		}
+		for (Subscription s : this.subscriptions.values()) {
+			s.listeners.remove(listener);
+		}
+	}
+
+	/**
+	 * Recompute the categories that have subscribers, once per category however many changes came in meanwhile.
+	 *
+	 * @param codes the categories that changed, null for all
+	 */
+	private void notifyLater(Set<String> codes) {
+		boolean start = false;
+		synchronized (this.pending) {
+			for (Map.Entry<String, Subscription> s : this.subscriptions.entrySet()) {
+				if (!s.getValue().listeners.isEmpty() && (codes == null || codes.contains(s.getKey()))) {
+					this.pending.add(s.getKey());
+				}
+			}
+			if (!this.notifying && !this.pending.isEmpty()) {
+				this.notifying = true;
+				start = true;
+			}
+		}
+		if (start) {
+			Scheduler.getShared().execute(this::notifySubscribers);
+		}
+	}
+
+	private void notifySubscribers() {
+		while (true) {
+			String code;
+			synchronized (this.pending) {
+				Iterator<String> it = this.pending.iterator();
+				if (!it.hasNext()) {
+					this.notifying = false;
+					return;
+				}
+				code = it.next();
+				it.remove();
+			}
+			Subscription s = this.subscriptions.get(code);
+			if (s == null || s.listeners.isEmpty()) {
+				continue;
+			}
+			TreeSet<Athlete> medalists;
+			try {
+				medalists = getMedalists(s.category);
+			} catch (RuntimeException e) {
+				logger.error("medals for {} not computed {}", code, e);
+				continue;
+			}
+			for (Consumer<TreeSet<Athlete>> listener : s.listeners) {
+				try {
+					listener.accept(medalists);
+				} catch (RuntimeException e) {
+					logger.error("medal listener for {} failed {}", code, e);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,629 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.competition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.agegroup.AgeGroup;
+import app.owlcms.data.agegroup.AgeGroupRepository;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.athleteSort.Ranking;
+import app.owlcms.data.category.AgeDivision;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.group.GroupRepository;
+import app.owlcms.data.jpa.DataVersion;
+import app.owlcms.i18n.Translator;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * The results used by the result pages and the competition book, kept between requests.
+ *
+ * There is one {@link View} per age division and age group requested. A view is computed once and then shared: the
+ * category rankings and the global rankings are computed when the view is built, the team rankings only when first
+ * asked for. A view is built by a single thread; readers asking for it meanwhile wait for that thread instead of
+ * computing their own copy.
+ *
+ * When an athlete is saved or ranks are written, only the views that contain the athlete are dropped. Any other change
+ * to the database (bulk edits, imports, group or category changes) is detected through {@link DataVersion} and causes
+ * the views to be recomputed when next used.
+ *
+ * @author Jean-François Lamy
+ */
+public class ResultsModel {
+
+	/**
+	 * The results for one age division and age group, as they were when the view was built.
+	 *
+	 * The lists are shared between all the readers and must not be modified. Everything that writes into the athletes
+	 * (ranks, points) is done in the constructor, before the view is published; the lazy team rankings only sort lists
+	 * of their own.
+	 */
+	public static class View {
+
+		private final AgeDivision ageDivision;
+		private final String ageGroupPrefix;
+		private final List<Athlete> athletes;
+		private final Map<String, Object> categoryBeans;
+		private final Map<String, Object> globalBeans;
+		private final Set<Long> ids = new HashSet<>();
+		private volatile Map<String, Object> teamBeans;
+		/** version of the database for which the view is known to be correct */
+		private volatile long version;
+
+		private View(String ageGroupPrefix, AgeDivision ad, long version) {
+			this.ageGroupPrefix = ageGroupPrefix;
+			this.ageDivision = ad;
+			this.version = version;
+			this.athletes = Collections.unmodifiableList(
+			        AgeGroupRepository.allWeighedInPAthletesForAgeGroupAgeDivision(ageGroupPrefix, ad));
+			for (Athlete a : this.athletes) {
+				this.ids.add(a.getId());
+			}
+			HashMap<String, Object> beans = new HashMap<>();
+			if (this.athletes.isEmpty()) {
+				// prevent outputting silliness.
+				logger./**/warn("no athletes");
+			} else {
+				// the ranks within a category are stored in the database and
+				// not recomputed
+				categoryRankings(beans, this.athletes);
+				beans.put("athletes", this.athletes);
+			}
+			this.categoryBeans = Collections.unmodifiableMap(beans);
+
+			// the global rankings assign ranks to the shared athletes, so they cannot be left for later
+			HashMap<String, Object> global = new HashMap<>();
+			if (!this.athletes.isEmpty()) {
+				new Rankings(global).globalRankings(this.athletes);
+			}
+			this.globalBeans = Collections.unmodifiableMap(global);
+		}
+
+		/**
+		 * @return the weighed-in athletes, one per participation
+		 */
+		public List<Athlete> getAthletes() {
+			return this.athletes;
+		}
+
+		/**
+		 * All the rankings, as expected by the result templates.
+		 *
+		 * @return a new map, owned by the caller; the lists inside are shared.
+		 */
+		public HashMap<String, Object> getBeans() {
+			HashMap<String, Object> beans = new HashMap<>();
+			if (this.athletes.isEmpty()) {
+				return beans;
+			}
+			beans.putAll(this.categoryBeans);
+			beans.putAll(getTeamBeans());
+			// the global rankings replace the team Sinclair lists, as they always did
+			beans.putAll(this.globalBeans);
+			// the translations depend on the caller's locale
+			beans.put("t", Translator.getMap());
+			return beans;
+		}
+
+		/**
+		 * Get a single ranking, computing only the part of the view that contains it.
+		 *
+		 * @param listName name of the list in the result templates, for example mTot or wSinclair
+		 * @return the list, or null if there is no such list
+		 */
+		@SuppressWarnings("unchecked")
+		public List<Athlete> getList(String listName) {
+			Object list = this.categoryBeans.get(listName);
+			if (list == null && !this.athletes.isEmpty()) {
+				list = this.globalBeans.get(listName);
+				if (list == null) {
+					list = getTeamBeans().get(listName);
+				}
+			}
+			return list instanceof List ? (List<Athlete>) list : null;
+		}
+
+		boolean contains(Athlete a) {
+			if (this.ageGroupPrefix == null && this.ageDivision == null) {
+				return true;
+			}
+			if (this.ids.contains(a.getId())) {
+				return true;
+			}
+			try {
+				for (Participation p : a.getParticipations()) {
+					Category c = p.getCategory();
+					AgeGroup ag = c != null ? c.getAgeGroup() : null;
+					if (ag == null) {
+						continue;
+					}
+					if ((this.ageDivision == null || this.ageDivision == ag.getAgeDivision())
+					        && (this.ageGroupPrefix == null || this.ageGroupPrefix.equals(ag.getCode()))) {
+						return true;
+					}
+				}
+				return false;
+			} catch (RuntimeException e) {
+				// participations not available, assume the worst
+				return true;
+			}
+		}
+
+		private void categoryRankings(Map<String, Object> beans, List<Athlete> athletes) {
+			List<Athlete> sortedAthletes;
+			List<Athlete> sortedMen = null;
+			List<Athlete> sortedWomen = null;
+
+			beans.put("competition", Competition.getCurrent());
+			beans.put("groups", GroupRepository.findAll().stream().sorted((a, b) -> {
+				int compare = ObjectUtils.compare(a.getWeighInTime(), b.getWeighInTime(), true);
+				if (compare != 0) {
+					return compare;
+				}
+				return compare = ObjectUtils.compare(a.getPlatform(), b.getPlatform(), true);
+			}).collect(Collectors.toList()));
+
+			// sort only, use ranks stored in database
+			sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.SNATCH, false);
+			sortedMen = new ArrayList<>(sortedAthletes.size());
+			sortedWomen = new ArrayList<>(sortedAthletes.size());
+			Competition.splitByGender(sortedAthletes, sortedMen, sortedWomen);
+			beans.put("mSn", sortedMen);
+			beans.put("wSn", sortedWomen);
+
+			// sort only, use ranks stored in database
+			sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.CLEANJERK, false);
+			AthleteSorter.assignCategoryRanks(sortedAthletes, Ranking.CLEANJERK);
+			sortedMen = new ArrayList<>(sortedAthletes.size());
+			sortedWomen = new ArrayList<>(sortedAthletes.size());
+			Competition.splitByGender(sortedAthletes, sortedMen, sortedWomen);
+			beans.put("mCJ", sortedMen);
+			beans.put("wCJ", sortedWomen);
+
+			// sort only, use ranks stored in database
+			sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.TOTAL, false);
+			sortedMen = new ArrayList<>(sortedAthletes.size());
+			sortedWomen = new ArrayList<>(sortedAthletes.size());
+			Competition.splitByGender(sortedAthletes, sortedMen, sortedWomen);
+			beans.put("mTot", sortedMen);
+			beans.put("wTot", sortedWomen);
+			beans.put("mwTot", sortedAthletes);
+			logger.debug("mTot {}", sortedMen);
+			logger.debug("wTot {}", sortedWomen);
+
+			// sort only, use ranks stored in database
+			sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.CUSTOM);
+			sortedMen = new ArrayList<>(sortedAthletes.size());
+			sortedWomen = new ArrayList<>(sortedAthletes.size());
+			Competition.splitByGender(sortedAthletes, sortedMen, sortedWomen);
+			beans.put("mCus", sortedMen);
+			beans.put("wCus", sortedWomen);
+			logger.debug("mCus {}", sortedMen);
+			logger.debug("wCus {}", sortedWomen);
+
+			sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.CAT_SINCLAIR);
+			AthleteSorter.assignOverallRanksAndPoints(sortedAthletes, Ranking.CAT_SINCLAIR);
+			sortedMen = new ArrayList<>(sortedAthletes.size());
+			sortedWomen = new ArrayList<>(sortedAthletes.size());
+			Competition.splitByGender(sortedAthletes, sortedMen, sortedWomen);
+			beans.put("mCatSinclair", sortedMen);
+			beans.put("wCatSinclair", sortedWomen);
+			logger.debug("mCatSinclair {}", sortedMen);
+			logger.debug("wCatSinclair {}", sortedWomen);
+
+			sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.ROBI);
+			AthleteSorter.assignOverallRanksAndPoints(sortedAthletes, Ranking.ROBI);
+			sortedMen = new ArrayList<>(sortedAthletes.size());
+			sortedWomen = new ArrayList<>(sortedAthletes.size());
+			Competition.splitByGender(sortedAthletes, sortedMen, sortedWomen);
+			beans.put("mRobi", sortedMen);
+			beans.put("wRobi", sortedWomen);
+			beans.put("mwRobi", sortedAthletes);
+		}
+
+		private Map<String, Object> getTeamBeans() {
+			Map<String, Object> beans = this.teamBeans;
+			if (beans == null) {
+				synchronized (this) {
+					beans = this.teamBeans;
+					if (beans == null) {
+						beans = new HashMap<>();
+						Rankings rankings = new Rankings(beans);
+						// logger.debug("ad={} ageGroupPrefix={}", ad, ageGroupPrefix);
+						if (this.ageDivision != null && this.ageGroupPrefix == null) {
+							// iterate over all age groups present in age division ad
+							rankings.teamRankingsForAgeDivision(this.ageDivision);
+						} else {
+							rankings.teamRankings(this.athletes, this.ageGroupPrefix);
+						}
+						this.teamBeans = beans = Collections.unmodifiableMap(beans);
+					}
+				}
+			}
+			return beans;
+		}
+
+	}
+
+	/**
+	 * Team and global rankings, added to a map of beans.
+	 */
+	private static class Rankings {
+
+		private final Map<String, Object> reportingBeans;
+
+		Rankings(Map<String, Object> beans) {
+			this.reportingBeans = beans;
+		}
+
+		void globalRankings(List<Athlete> athletes) {
+			List<Athlete> sortedAthletes;
+			List<Athlete> sortedMen;
+			List<Athlete> sortedWomen;
+
+			sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.BW_SINCLAIR);
+			AthleteSorter.assignOverallRanksAndPoints(sortedAthletes, Ranking.BW_SINCLAIR);
+			sortedMen = new ArrayList<>(sortedAthletes.size());
+			sortedWomen = new ArrayList<>(sortedAthletes.size());
+			Competition.splitByGender(sortedAthletes, sortedMen, sortedWomen);
+			this.reportingBeans.put("mSinclair", sortedMen);
+			this.reportingBeans.put("wSinclair", sortedWomen);
+			logger.debug("mSinclair {}", sortedMen);
+			logger.debug("wSinclair {}", sortedWomen);
+
+			sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.SMM);
+			AthleteSorter.assignOverallRanksAndPoints(sortedAthletes, Ranking.SMM);
+			sortedMen = new ArrayList<>(sortedAthletes.size());
+			sortedWomen = new ArrayList<>(sortedAthletes.size());
+			Competition.splitByGender(sortedAthletes, sortedMen, sortedWomen);
+			this.reportingBeans.put("mSmm", sortedMen);
+			this.reportingBeans.put("wSmm", sortedWomen);
+			logger.debug("mSmm {}", sortedMen);
+			logger.debug("wSmm {}", sortedWomen);
+
+			sortedAthletes = AthleteSorter.resultsOrderCopy(athletes, Ranking.QPOINTS);
+			AthleteSorter.assignOverallRanksAndPoints(sortedAthletes, Ranking.QPOINTS);
+			sortedMen = new ArrayList<>(sortedAthletes.size());
+			sortedWomen = new ArrayList<>(sortedAthletes.size());
+			Competition.splitByGender(sortedAthletes, sortedMen, sortedWomen);
+			this.reportingBeans.put("mQPoints", sortedMen);
+			this.reportingBeans.put("wQPoints", sortedWomen);
+			logger.debug("mQPoints {}", sortedMen);
+			logger.debug("wQPoints {}", sortedWomen);
+		}
+
+		void teamRankings(List<Athlete> athletes, String ageGroupPrefix) {
+			doTeamRankings(athletes, ageGroupPrefix, true);
+		}
+
+		/**
+		 * Iterate over all age prefixes in the age division and accumulate results.
+		 *
+		 * @param ad
+		 */
+		void teamRankingsForAgeDivision(AgeDivision ad) {
+			List<String> agePrefixes = AgeGroupRepository.findActiveAndUsed(ad);
+
+			for (String curAGPrefix : agePrefixes) {
+				List<Athlete> athletes = AgeGroupRepository.allPAthletesForAgeGroup(curAGPrefix);
+				doTeamRankings(athletes, ad.name(), false);
+			}
+
+			List<Athlete> sortedAthletes;
+			List<Athlete> sortedMen;
+			List<Athlete> sortedWomen;
+
+			sortedMen = getOrCreateBean("mTeam" + ad.name());
+			sortedWomen = getOrCreateBean("wTeam" + ad.name());
+			sortedAthletes = getOrCreateBean("mwTeam" + ad.name());
+			AthleteSorter.teamPointsOrder(sortedMen, Ranking.TOTAL);
+			AthleteSorter.teamPointsOrder(sortedWomen, Ranking.TOTAL);
+			AthleteSorter.teamPointsOrder(sortedAthletes, Ranking.TOTAL);
+
+			reportTeams(sortedAthletes, sortedMen, sortedWomen);
+
+			sortedMen = getOrCreateBean("mCombined" + ad.name());
+			sortedWomen = getOrCreateBean("wCombined" + ad.name());
+			sortedAthletes = getOrCreateBean("mwCombined" + ad.name());
+			AthleteSorter.teamPointsOrder(sortedMen, Ranking.SNATCH_CJ_TOTAL);
+			AthleteSorter.teamPointsOrder(sortedWomen, Ranking.SNATCH_CJ_TOTAL);
+			AthleteSorter.teamPointsOrder(sortedAthletes, Ranking.SNATCH_CJ_TOTAL);
+
+			reportCombined(sortedAthletes, sortedMen, sortedWomen);
+
+			sortedMen = getOrCreateBean("mCustom" + ad.name());
+			sortedWomen = getOrCreateBean("wCustom" + ad.name());
+			sortedAthletes = getOrCreateBean("mwCustom" + ad.name());
+			AthleteSorter.teamPointsOrder(sortedMen, Ranking.CUSTOM);
+			AthleteSorter.teamPointsOrder(sortedWomen, Ranking.CUSTOM);
+			AthleteSorter.teamPointsOrder(sortedAthletes, Ranking.CUSTOM);
+
+			reportCustom(sortedAthletes, sortedMen, sortedWomen);
+
+			sortedMen = getOrCreateBean("mTeamSinclair" + ad.name());
+			sortedWomen = getOrCreateBean("wTeamSinclair" + ad.name());
+			AthleteSorter.teamPointsOrder(sortedMen, Ranking.BW_SINCLAIR);
+			AthleteSorter.teamPointsOrder(sortedWomen, Ranking.BW_SINCLAIR);
+
+			reportSinclair(sortedMen, sortedWomen);
+
+			sortedMen = getOrCreateBean("mTeamSMF" + ad.name());
+			sortedWomen = getOrCreateBean("wTeamSMF" + ad.name());
+			AthleteSorter.teamPointsOrder(sortedMen, Ranking.SMM);
+			AthleteSorter.teamPointsOrder(sortedWomen, Ranking.SMM);
+
+			reportSMF(sortedMen, sortedWomen);
+		}
+
+		private void addToReportingBean(String string, List<Athlete> sorted) {
+			List<Athlete> athletes = getOrCreateBean(string);
+			athletes.addAll(sorted);
+		}
+
+		/**
+		 * Compute a team-ranking for the specified PAthletes.
+		 *
+		 * PAthletes have a single participation, which is the one that will be used for ranking. Caller is
+		 * responsible for putting several age groups together (e.g. for Masters), or using a single age group (e.g.
+		 * SR)
+		 *
+		 * @param athletes
+		 * @param suffix         added to the names of the lists
+		 * @param singleAgeGroup true if not called in a loop, can compute team stats.
+		 */
+		private void doTeamRankings(List<Athlete> athletes, String suffix, boolean singleAgeGroup) {
+			// team-oriented rankings. These rankings put all the athletes from the same
+			// team together, sorted according to their points, so the top n can be kept if
+			// needed.
+			// substitutes are not included -- they should be marked as
+			// !isEligibleForTeamRanking
+
+			List<Athlete> sortedAthletes;
+			List<Athlete> sortedMen = new ArrayList<>();
+			List<Athlete> sortedWomen = new ArrayList<>();
+			Competition.splitPTeamMembersByGender(athletes, sortedMen, sortedWomen);
+			athletes = new ArrayList<>();
+			athletes.addAll(sortedMen);
+			athletes.addAll(sortedWomen);
+
+			sortedAthletes = AthleteSorter.teamPointsOrderCopy(athletes, Ranking.TOTAL);
+			sortedMen = AthleteSorter.teamPointsOrderCopy(sortedMen, Ranking.TOTAL);
+			sortedWomen = AthleteSorter.teamPointsOrderCopy(sortedWomen, Ranking.TOTAL);
+			addToReportingBean("mTeam" + suffix, sortedMen);
+			addToReportingBean("wTeam" + suffix, sortedWomen);
+			addToReportingBean("mwTeam" + suffix, sortedAthletes);
+			if (singleAgeGroup) {
+				reportTeams(sortedAthletes, sortedMen, sortedWomen);
+			}
+
+			sortedAthletes = AthleteSorter.teamPointsOrderCopy(athletes, Ranking.SNATCH_CJ_TOTAL);
+			sortedMen = AthleteSorter.teamPointsOrderCopy(sortedMen, Ranking.SNATCH_CJ_TOTAL);
+			sortedWomen = AthleteSorter.teamPointsOrderCopy(sortedWomen, Ranking.SNATCH_CJ_TOTAL);
+			addToReportingBean("mCombined" + suffix, sortedMen);
+			addToReportingBean("wCombined" + suffix, sortedWomen);
+			addToReportingBean("mwCombined" + suffix, sortedAthletes);
+			if (singleAgeGroup) {
+				reportCombined(sortedAthletes, sortedMen, sortedWomen);
+			}
+
+			sortedAthletes = AthleteSorter.teamPointsOrderCopy(athletes, Ranking.CUSTOM);
+			sortedMen = AthleteSorter.teamPointsOrderCopy(sortedMen, Ranking.CUSTOM);
+			sortedWomen = AthleteSorter.teamPointsOrderCopy(sortedWomen, Ranking.CUSTOM);
+			addToReportingBean("mCustom" + suffix, sortedMen);
+			addToReportingBean("wCustom" + suffix, sortedWomen);
+			addToReportingBean("mwCustom" + suffix, sortedAthletes);
+			if (singleAgeGroup) {
+				reportCustom(sortedAthletes, sortedMen, sortedWomen);
+			}
+
+			sortedMen = getOrCreateBean("mTeamSinclair" + suffix);
+			sortedWomen = getOrCreateBean("wTeamSinclair" + suffix);
+			AthleteSorter.teamPointsOrder(sortedMen, Ranking.BW_SINCLAIR);
+			AthleteSorter.teamPointsOrder(sortedWomen, Ranking.BW_SINCLAIR);
+		}
+
+		@SuppressWarnings("unchecked")
+		private List<Athlete> getOrCreateBean(String string) {
+			List<Athlete> list = (List<Athlete>) this.reportingBeans.get(string);
+			if (list == null) {
+				list = new ArrayList<>();
+				this.reportingBeans.put(string, list);
+			}
+			return list;
+		}
+
+		private void reportCombined(List<Athlete> sortedAthletes, List<Athlete> sortedMen,
+		        List<Athlete> sortedWomen) {
+			this.reportingBeans.put("mCombined", sortedMen);
+			this.reportingBeans.put("wCombined", sortedWomen);
+			this.reportingBeans.put("mwCombined", sortedAthletes);
+		}
+
+		private void reportCustom(List<Athlete> sortedAthletes, List<Athlete> sortedMen, List<Athlete> sortedWomen) {
+			this.reportingBeans.put("mCustom", sortedMen);
+			this.reportingBeans.put("wCustom", sortedWomen);
+			this.reportingBeans.put("mwCustom", sortedAthletes);
+		}
+
+		private void reportSinclair(List<Athlete> sortedMen, List<Athlete> sortedWomen) {
+			this.reportingBeans.put("mSinclair", sortedMen);
+			this.reportingBeans.put("wSinclair", sortedWomen);
+		}
+
+		private void reportSMF(List<Athlete> sortedMen, List<Athlete> sortedWomen) {
+			this.reportingBeans.put("mSMF", sortedMen);
+			this.reportingBeans.put("wSMF", sortedWomen);
+		}
+
+		private void reportTeams(List<Athlete> sortedAthletes, List<Athlete> sortedMen,
+		        List<Athlete> sortedWomen) {
+			// only needed once
+			this.reportingBeans.put("nbMen", sortedMen.size());
+			this.reportingBeans.put("nbWomen", sortedWomen.size());
+			this.reportingBeans.put("nbAthletes", sortedAthletes.size());
+			logger.debug("sortedMen {} sortedWomen {} sortedCombined {}", sortedMen.size(), sortedWomen.size(),
+			        sortedAthletes.size());
+
+			// extract club lists
+			TreeSet<String> teams = new TreeSet<>();
+			for (Athlete curAthlete : sortedAthletes) {
+				if (curAthlete.getTeam() != null) {
+					teams.add(curAthlete.getTeam());
+				}
+			}
+
+			this.reportingBeans.put("mTeam", sortedMen);
+			this.reportingBeans.put("wTeam", sortedWomen);
+			this.reportingBeans.put("mwTeam", sortedAthletes);
+
+			this.reportingBeans.put("clubs", teams);
+			this.reportingBeans.put("nbClubs", teams.size());
+			if (sortedMen.size() > 0) {
+				this.reportingBeans.put("mClubs", teams);
+			} else {
+				this.reportingBeans.put("mClubs", new ArrayList<String>());
+			}
+			if (sortedWomen.size() > 0) {
+				this.reportingBeans.put("wClubs", teams);
+			} else {
+				this.reportingBeans.put("wClubs", new ArrayList<String>());
+			}
+		}
+	}
+
+	private static ResultsModel current;
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(ResultsModel.class);
+
+	public static synchronized ResultsModel getCurrent() {
+		if (current == null) {
+			current = new ResultsModel();
+		}
+		return current;
+	}
+
+	/** incremented whenever views are dropped, so that a view computed meanwhile is not kept */
+	private final AtomicLong changes = new AtomicLong();
+	/** views being built, so that concurrent readers of the same view wait for a single computation */
+	private final Map<String, FutureTask<View>> loading = new ConcurrentHashMap<>();
+	private final Map<String, View> views = new ConcurrentHashMap<>();
+
+	private ResultsModel() {
+	}
+
+	/**
+	 * Called after an athlete has been saved.
+	 *
+	 * @param a    the athlete as saved
+	 * @param mark the value of {@link DataVersion#mark()} taken before the transaction
+	 */
+	public void athleteChanged(Athlete a, long mark) {
+		athletesChanged(a != null ? List.of(a) : List.of(), mark);
+	}
+
+	/**
+	 * Called after athletes have been saved, for example after their ranks have been written. The views that contain
+	 * one of the athletes are dropped, the other ones remain valid.
+	 *
+	 * @param athletes the athletes as saved
+	 * @param mark     the value of {@link DataVersion#mark()} taken before the transaction
+	 */
+	public void athletesChanged(Collection<? extends Athlete> athletes, long mark) {
+		this.changes.incrementAndGet();
+		long version = DataVersion.versionIfOnlyOwnChanges(mark);
+		for (Map.Entry<String, View> e : this.views.entrySet()) {
+			View v = e.getValue();
+			if (athletes.stream().anyMatch(a -> v.contains(a))) {
+				this.views.remove(e.getKey(), v);
+			} else if (version >= 0 && v.version == mark) {
+				// nobody else has written, nothing has changed for this view
+				v.version = version;
+			}
+		}
+	}
+
+	/**
+	 * Get the results for an age division and an age group, computing them if anything has changed since last time.
+	 *
+	 * @param ageGroupPrefix age group code, null or blank for all the age groups
+	 * @param ad             age division, null for all
+	 * @return the view
+	 */
+	public View getView(String ageGroupPrefix, AgeDivision ad) {
+		String prefix = ageGroupPrefix == null || ageGroupPrefix.isBlank() ? null : ageGroupPrefix;
+		String key = (ad != null ? ad.name() : "") + "|" + (prefix != null ? prefix : "");
+		View v = this.views.get(key);
+		if (v != null && v.version == DataVersion.get()) {
+			return v;
+		}
+
+		FutureTask<View> task = new FutureTask<>(() -> buildView(key, prefix, ad));
+		FutureTask<View> running = this.loading.putIfAbsent(key, task);
+		if (running == null) {
+			running = task;
+			try {
+				task.run();
+			} finally {
+				this.loading.remove(key, task);
+			}
+		}
+		try {
+			return running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private View buildView(String key, String prefix, AgeDivision ad) {
+		long changesBefore = this.changes.get();
+		long start = System.nanoTime();
+		View v = new View(prefix, ad, DataVersion.get());
+		logger.debug("results for {} computed in {}ms", key, (System.nanoTime() - start) / 1000000.0);
+		this.views.put(key, v);
+		if (this.changes.get() != changesBefore) {
+			// athletes saved while we were reading, the view may already be out of date.
+			this.views.remove(key, v);
+		}
+		return v;
+	}
+
+	/**
+	 * Drop all the views, for example after the athletes have been reloaded.
+	 */
+	public void invalidate() {
+		this.changes.incrementAndGet();
+		this.views.clear();
+	}
+
+}
@@ -56,20 +56,48 @@ public class Config {
 
 	public static final String FAKE_PIN = "\u25CF\u25CF\u25CF\u25CF\u25CF\u25CF\u25CF\u25CF\u25CF\u25CF";
 	public static final int SHORT_TEAM_LENGTH = 6;
-	private static Config current;
 	@Transient
 	final static private Logger logger = (Logger) LoggerFactory.getLogger(Config.class);
+	private static final SettingsSnapshot<Config> snapshot = new SettingsSnapshot<>("Config",
+	        () -> ConfigRepository.findAll().get(0));
 
 	/**
 	 * Gets the current.
 	 *
+	 * The configuration is read once and shared until the next save or import; it must not be modified, use
+	 * {@link #getCurrentForEditing()} to obtain a copy that can be edited and then saved with
+	 * {@link #setCurrent(Config)}
+	 *
 	 * @return the current
 	 */
 	public static Config getCurrent() {
-		// *******
-		current = ConfigRepository.findAll().get(0);
-		current.setSkipReading(false);
-		return current;
+		return snapshot.get();
+	}
+
+	/**
+	 * @return a copy of the configuration read from the database, for editing
+	 */
+	public static Config getCurrentForEditing() {
+		Config config = ConfigRepository.findAll().get(0);
+		Config shared = snapshot.peek();
+		if (shared != null) {
+			config.setMqttConfig(shared.getMqttConfig());
+		}
+		return config;
+	}
+
+	/**
+	 * @return incremented every time the current configuration is replaced
+	 */
+	public static long getCurrentVersion() {
+		return snapshot.getVersion();
+	}
+
+	/**
+	 * Forget the current configuration after it has been changed directly in the database (import, reset).
+	 */
+	public static void invalidateCurrent() {
+		snapshot.invalidate();
 	}
 
 	public static void initConfig() {
@@ -93,8 +121,14 @@ public class Config {
 	}
 
 	public static Config setCurrent(Config config) {
-		current = ConfigRepository.save(config);
-		return current;
+		Config saved = ConfigRepository.save(config);
+		Config previous = snapshot.peek();
+		if (saved.getMqttConfig() == null && previous != null) {
+			// the embedded broker settings are not persisted.
+			saved.setMqttConfig(previous.getMqttConfig());
+		}
+		saved.setSkipReading(false);
+		return snapshot.publish(saved);
 	}
 
 	@Id
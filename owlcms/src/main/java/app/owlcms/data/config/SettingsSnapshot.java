@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.config;
+
+import java.util.function.Supplier;
+
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Logger;
+
+/**
+ * In-memory copy of a settings singleton ({@link Config}, {@link app.owlcms.data.competition.Competition},
+ * {@link app.owlcms.data.records.RecordConfig}).
+ *
+ * The copy is read from the database on first use and then only replaced when a save or an import has committed, so
+ * the many readers do not each start a transaction. Readers share the same detached instance and must not modify it;
+ * editors work on a copy read from the database and publish the saved result.
+ *
+ * Every change of copy increases the version, so callers that derive data from the settings can tell when to
+ * recompute.
+ *
+ * @param <T> the settings class
+ * @author Jean-François Lamy
+ */
+public class SettingsSnapshot<T> {
+
+	private static final class Versioned<T> {
+		private final T value;
+		private final long version;
+
+		private Versioned(T value, long version) {
+			this.value = value;
+			this.version = version;
+		}
+	}
+
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(SettingsSnapshot.class);
+
+	private final String name;
+	private final Supplier<T> loader;
+	private volatile Versioned<T> current;
+	private long lastVersion;
+
+	/**
+	 * @param name   for logging
+	 * @param loader reads the committed settings from the database
+	 */
+	public SettingsSnapshot(String name, Supplier<T> loader) {
+		this.name = name;
+		this.loader = loader;
+	}
+
+	/**
+	 * @return the shared copy, read from the database if needed. Must not be modified.
+	 */
+	public T get() {
+		Versioned<T> v = this.current;
+		if (v == null) {
+			v = load();
+		}
+		return v.value;
+	}
+
+	/**
+	 * @return the version of the shared copy, 0 if never read.
+	 */
+	public long getVersion() {
+		Versioned<T> v = this.current;
+		return v != null ? v.version : 0L;
+	}
+
+	/**
+	 * Forget the shared copy, the next {@link #get()} reads the database again. Used after imports and bulk deletes
+	 * that bypass the save methods.
+	 */
+	public synchronized void invalidate() {
+		this.current = null;
+		logger.debug("{} snapshot invalidated", this.name);
+	}
+
+	/**
+	 * @return the shared copy if one has been read, without going to the database.
+	 */
+	public T peek() {
+		Versioned<T> v = this.current;
+		return v != null ? v.value : null;
+	}
+
+	/**
+	 * Replace the shared copy. To be called once the transaction that saved the value has committed.
+	 *
+	 * @param value the saved settings
+	 * @return the value
+	 */
+	public synchronized T publish(T value) {
+		this.current = new Versioned<>(value, ++this.lastVersion);
+		logger.debug("{} snapshot version {}", this.name, this.lastVersion);
+		return value;
+	}
+
+	private synchronized Versioned<T> load() {
+		Versioned<T> v = this.current;
+		if (v == null) {
+			v = new Versioned<>(this.loader.get(), ++this.lastVersion);
+			this.current = v;
+			logger.debug("{} snapshot loaded, version {}", this.name, v.version);
+		}
+		return v;
+	}
+
+}
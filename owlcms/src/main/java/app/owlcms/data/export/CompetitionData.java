@@ -6,26 +6,63 @@
  *******************************************************************************/
 package app.owlcms.data.export;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.persistence.EntityManager;
 
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.ObjectIdResolver;
+import com.fasterxml.jackson.annotation.SimpleObjectIdResolver;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.KeyDeserializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.cfg.HandlerInstantiator;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 import app.owlcms.data.agegroup.AgeGroup;
 import app.owlcms.data.agegroup.AgeGroupRepository;
 import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.category.CategoryIndex;
 import app.owlcms.data.competition.Competition;
 import app.owlcms.data.competition.CompetitionRepository;
 import app.owlcms.data.config.Config;
@@ -36,17 +73,136 @@ import app.owlcms.data.platform.Platform;
 import app.owlcms.data.platform.PlatformRepository;
 import app.owlcms.data.records.RecordConfig;
 import app.owlcms.data.records.RecordEvent;
+import app.owlcms.data.records.RecordIndex;
 import app.owlcms.data.records.RecordRepository;
 import app.owlcms.i18n.Translator;
 import app.owlcms.init.OwlcmsFactory;
+import app.owlcms.utils.LoggerUtils;
 import app.owlcms.utils.ResourceWalker;
+import app.owlcms.utils.Scheduler;
 import ch.qos.logback.classic.Logger;
 
+/**
+ * Export and restore of the complete competition.
+ *
+ * The file is written and read one section at a time with the Jackson streaming API. Athletes and records are
+ * fetched by pages of {@link #PAGE_SIZE}, each page in its own short transaction, so that a backup can be taken
+ * while a competition is running. When restoring, the file is first read completely without saving anything, so that a
+ * damaged file does not replace the database; it is then read again and saved in chunks of the same size, one
+ * transaction per chunk. The compact format is the same JSON without indentation, compressed with gzip; {@link #restore(InputStream)}
+ * accepts both.
+ */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class CompetitionData {
 
+	/**
+	 * Object ids shared by the successive reads of a restore, so that the athletes read one by one can refer to the
+	 * groups and categories read before them. Jackson would otherwise only resolve ids inside a single read.
+	 */
+	private static class SharedObjectIds extends SimpleObjectIdResolver {
+
+		/**
+		 * Athletes are only needed while their chunk is being read.
+		 */
+		void forgetAthletes() {
+			if (_items != null) {
+				_items.values().removeIf(v -> v instanceof Athlete);
+			}
+		}
+
+		@Override
+		public ObjectIdResolver newForDeserialization(Object context) {
+			return this;
+		}
+	}
+
+	/**
+	 * Gives Jackson our resolver instead of a new one per read.
+	 */
+	private static class SharedIdsInstantiator extends HandlerInstantiator {
+		private final SharedObjectIds ids;
+
+		SharedIdsInstantiator(SharedObjectIds ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public JsonDeserializer<?> deserializerInstance(DeserializationConfig config, Annotated annotated,
+		        Class<?> deserClass) {
+			return null;
+		}
+
+		@Override
+		public KeyDeserializer keyDeserializerInstance(DeserializationConfig config, Annotated annotated,
+		        Class<?> keyDeserClass) {
+			return null;
+		}
+
+		@Override
+		public ObjectIdResolver resolverIdGeneratorInstance(MapperConfig<?> config, Annotated annotated,
+		        Class<?> implClass) {
+			return implClass == SimpleObjectIdResolver.class ? this.ids : null;
+		}
+
+		@Override
+		public JsonSerializer<?> serializerInstance(SerializationConfig config, Annotated annotated,
+		        Class<?> serClass) {
+			return null;
+		}
+
+		@Override
+		public TypeIdResolver typeIdResolverInstance(MapperConfig<?> config, Annotated annotated,
+		        Class<?> resolverClass) {
+			return null;
+		}
+
+		@Override
+		public TypeResolverBuilder<?> typeResolverBuilderInstance(MapperConfig<?> config, Annotated annotated,
+		        Class<?> builderClass) {
+			return null;
+		}
+	}
+
 	final static Logger logger = (Logger) LoggerFactory.getLogger(CompetitionData.class);
 
+	/** athletes and records read or written per transaction, a multiple of the JDBC batch size */
+	static final int PAGE_SIZE = 100;
+
+	/**
+	 * The sections a section refers to. A section found in the file before those it needs is kept aside and read at
+	 * the end.
+	 */
+	private static final Map<String, Set<String>> NEEDS = Map.of(
+	        "groups", Set.of("platforms"),
+	        "athletes", Set.of("competition", "groups", "ageGroups"));
+
+	/** the order in which the sections are written, and in which postponed sections are read */
+	private static final List<String> SECTIONS = List.of("config", "competition", "platforms", "groups",
+	        "ageGroups", "athletes", "records", "recordConfig");
+
+	private static ObjectMapper newMapper() {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+		return mapper;
+	}
+
+	/**
+	 * @param inputStream plain or gzip-compressed content
+	 * @return the uncompressed content
+	 * @throws IOException
+	 */
+	private static InputStream uncompressed(InputStream inputStream) throws IOException {
+		BufferedInputStream in = new BufferedInputStream(inputStream);
+		in.mark(2);
+		int b1 = in.read();
+		int b2 = in.read();
+		in.reset();
+		if (b1 == (GZIPInputStream.GZIP_MAGIC & 0xFF) && b2 == (GZIPInputStream.GZIP_MAGIC >> 8)) {
+			return new GZIPInputStream(in, 64 * 1024);
+		}
+		return in;
+	}
+
 	private List<AgeGroup> ageGroups;
 	private List<Athlete> athletes;
 	private Competition competition;
@@ -59,27 +215,62 @@ public class CompetitionData {
 	public CompetitionData() {
 	}
 
+	/**
+	 * Indented JSON, as shown to the users.
+	 *
+	 * @return the content, written as it is read
+	 */
 	public InputStream exportData() {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.registerModule(new JavaTimeModule());
-		try {
-			ObjectWriter writerWithDefaultPrettyPrinter = mapper.writerWithDefaultPrettyPrinter();
+		return export(false);
+	}
 
-			PipedOutputStream out = new PipedOutputStream();
-			PipedInputStream in = new PipedInputStream(out);
-			new Thread(() -> {
-				try {
-					writerWithDefaultPrettyPrinter.writeValue(out, this.fromDatabase());
-					out.flush();
-					out.close();
-				} catch (Throwable e) {
-					e.printStackTrace();
-				}
-			}).start();
-			return in;
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+	/**
+	 * Compact JSON compressed with gzip, for backups.
+	 *
+	 * @return the content, written as it is read
+	 */
+	public InputStream exportCompressed() {
+		return export(true);
+	}
+
+	/**
+	 * Write the competition to a stream.
+	 *
+	 * @param out        left open
+	 * @param compressed true for compact gzip content, false for indented JSON
+	 * @throws IOException
+	 */
+	public void writeData(OutputStream out, boolean compressed) throws IOException {
+		ObjectMapper mapper = newMapper();
+		// the generator is flushed once, at the end
+		mapper.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		GZIPOutputStream gzip = compressed ? new GZIPOutputStream(out, 64 * 1024) : null;
+		try (JsonGenerator gen = mapper.getFactory().createGenerator(gzip != null ? gzip : out)) {
+			gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			if (!compressed) {
+				gen.useDefaultPrettyPrinter();
+			}
+			gen.writeStartObject();
+			gen.writeFieldName("config");
+			mapper.writeValue(gen, Config.getCurrent());
+			gen.writeFieldName("competition");
+			mapper.writeValue(gen, Competition.getCurrent());
+			gen.writeFieldName("platforms");
+			mapper.writeValue(gen, PlatformRepository.findAll());
+			gen.writeFieldName("groups");
+			mapper.writeValue(gen, GroupRepository.findAll());
+			gen.writeFieldName("ageGroups");
+			mapper.writeValue(gen, AgeGroupRepository.findAll());
+			writePages(gen, mapper, "athletes", Athlete.class, Athlete::getId);
+			writePages(gen, mapper, "records", RecordEvent.class, RecordEvent::getId);
+			gen.writeFieldName("recordConfig");
+			mapper.writeValue(gen, RecordConfig.getCurrent());
+			gen.writeEndObject();
+		}
+		if (gzip != null) {
+			gzip.finish();
 		}
+		out.flush();
 	}
 
 	/**
@@ -186,67 +377,44 @@ public class CompetitionData {
 		return newData;
 	}
 
-	public void restore(InputStream inputStream) {
-		this.removeAll();
-		JPAService.runInTransaction(em -> {
-			try {
-				Athlete.setSkipValidationsDuringImport(true);
-
-				CompetitionData updated = this.importData(inputStream);
-				Config config = updated.getConfig();
-				ResourceWalker.initLocalDir();
-
-				Locale defaultLocale = config.getDefaultLocale();
-				Translator.reset();
-				Translator.setForcedLocale(defaultLocale);
-
-				Competition competition = updated.getCompetition();
-
-				for (AgeGroup ag : updated.getAgeGroups()) {
-					em.persist(ag);
-				}
-
-				for (Athlete a : updated.getAthletes()) {
-					em.persist(a);
-				}
-
-				for (Group g : updated.getGroups()) {
-					em.merge(g);
-				}
-
-				if (updated.getRecords() != null) {
-					for (RecordEvent r : updated.getRecords()) {
-						em.merge(r);
-					}
-				}
-
-				if (updated.getPlatforms() != null) {
-					for (Platform p : updated.getPlatforms()) {
-						em.merge(p);
-					}
-				}
-				
-				if (updated.getRecordConfig() != null) {
-					{
-						em.merge(updated.getRecordConfig());
-					}
-				}
-
-				em.merge(competition);
-				em.flush();
-			} catch (Exception e) {
-				e.printStackTrace();
-			} finally {
-				Athlete.setSkipValidationsDuringImport(false);
-
+	/**
+	 * Replace the database content with that of an export file.
+	 *
+	 * The content is copied to a temporary file and read completely before the database is emptied. It is then read
+	 * again, one section at a time; athletes and records are saved by chunks, one transaction per chunk.
+	 *
+	 * @param inputStream JSON, plain or gzip-compressed
+	 * @throws IOException if the content cannot be read; the database is then left unchanged
+	 */
+	public void restore(InputStream inputStream) throws IOException {
+		Path spool = Files.createTempFile("owlcms-restore", ".json");
+		try {
+			Athlete.setSkipValidationsDuringImport(true);
+			try (inputStream) {
+				Files.copy(inputStream, spool, StandardCopyOption.REPLACE_EXISTING);
 			}
-			return null;
-		});
+			try (InputStream in = Files.newInputStream(spool)) {
+				read(in, false);
+			}
+			this.removeAll();
+			try (InputStream in = Files.newInputStream(spool)) {
+				read(in, true);
+			}
+		} finally {
+			Athlete.setSkipValidationsDuringImport(false);
+			RecordIndex.getCurrent().invalidate();
+			CategoryIndex.invalidate();
+			// the settings applied while reading the file were not the committed ones.
+			Config.invalidateCurrent();
+			Competition.invalidateCurrent();
+			RecordConfig.invalidateCurrent();
+			Files.deleteIfExists(spool);
+		}
 		// register the new FOPs for events and MQTT
 		OwlcmsFactory.initFOPByName();
-		
+
 		// set the record order if empty (compensate for issue #766)
-		RecordConfig current = RecordConfig.getCurrent();
+		RecordConfig current = RecordConfig.getCurrentForEditing();
 		current.addMissing(RecordRepository.findAllRecordNames());
 	}
 
@@ -297,37 +465,195 @@ public class CompetitionData {
 		this.records = records;
 	}
 
-	private void removeAll() {
-		JPAService.runInTransaction(em -> {
-			CompetitionRepository.doRemoveAll(em);
-			try {
-				this.fromDatabase();
-				for (Athlete a : this.getAthletes()) {
-					Athlete aX = em.find(Athlete.class, a.getId());
-					if (aX != null) {
-						em.remove(aX);
-					}
+	private InputStream export(boolean compressed) {
+		try {
+			PipedOutputStream out = new PipedOutputStream();
+			PipedInputStream in = new PipedInputStream(out, 64 * 1024);
+			Scheduler.getShared().executeDetached(() -> {
+				try (out) {
+					writeData(out, compressed);
+				} catch (Throwable e) {
+					logger.error("export failed {}", LoggerUtils.stackTrace(e));
 				}
-				for (Group g : this.getGroups()) {
-					Group gX = em.find(Group.class, g.getId());
-					if (gX != null) {
-						em.remove(gX);
-					}
+			});
+			return in;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Read the sections, in the order needed to resolve the references between them.
+	 *
+	 * @param inputStream JSON, plain or gzip-compressed
+	 * @param save        false to only check that the whole content can be read
+	 */
+	private void read(InputStream inputStream, boolean save) throws IOException {
+		SharedObjectIds ids = new SharedObjectIds();
+		ObjectMapper mapper = newMapper();
+		mapper.setHandlerInstantiator(new SharedIdsInstantiator(ids));
+		try (JsonParser parser = mapper.getFactory().createParser(uncompressed(inputStream))) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new JsonMappingException(parser, "not a competition export");
+			}
+			Set<String> done = new HashSet<>();
+			Map<String, TokenBuffer> postponed = new HashMap<>();
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String section = parser.getCurrentName();
+				parser.nextToken();
+				if (!done.containsAll(NEEDS.getOrDefault(section, Set.of()))) {
+					TokenBuffer tb = new TokenBuffer(parser);
+					tb.copyCurrentStructure(parser);
+					postponed.put(section, tb);
+				} else {
+					readSection(section, parser, mapper, ids, save);
 				}
-				for (AgeGroup ag : this.getAgeGroups()) {
-					AgeGroup agX = em.find(AgeGroup.class, ag.getId());
-					if (agX != null) {
-						em.remove(agX);
+				done.add(section);
+			}
+			if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+				throw new JsonMappingException(parser, "incomplete competition export");
+			}
+			for (String section : SECTIONS) {
+				TokenBuffer tb = postponed.get(section);
+				if (tb != null) {
+					try (JsonParser p = tb.asParser(mapper)) {
+						p.nextToken();
+						readSection(section, p, mapper, ids, save);
 					}
 				}
-				for (Platform p : this.getPlatforms()) {
-					Platform pX = em.find(Platform.class, p.getId());
-					if (pX != null) {
-						em.remove(pX);
+			}
+		}
+	}
+
+	/**
+	 * Read the elements of an array section and save them by chunks.
+	 */
+	private <T> void readChunks(JsonParser parser, ObjectMapper mapper, Class<T> entity, Consumer<List<T>> save)
+	        throws IOException {
+		List<T> chunk = new ArrayList<>(PAGE_SIZE);
+		int nb = 0;
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			chunk.add(mapper.readValue(parser, entity));
+			if (chunk.size() == PAGE_SIZE) {
+				save.accept(chunk);
+				nb += chunk.size();
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			save.accept(chunk);
+			nb += chunk.size();
+		}
+		logger.info("read {} {}", nb, entity.getSimpleName());
+	}
+
+	private void readSection(String section, JsonParser parser, ObjectMapper mapper, SharedObjectIds ids,
+	        boolean save) throws IOException {
+		if (parser.currentToken() == JsonToken.VALUE_NULL) {
+			return;
+		}
+		switch (section) {
+		case "config":
+			Config config = mapper.readValue(parser, Config.class);
+			if (save) {
+				this.setConfig(config);
+				ResourceWalker.initLocalDir();
+				Locale defaultLocale = this.getConfig().getDefaultLocale();
+				Translator.reset();
+				Translator.setForcedLocale(defaultLocale);
+			}
+			break;
+		case "competition":
+			Competition competition = mapper.readValue(parser, Competition.class);
+			if (save) {
+				this.setCompetition(competition);
+				JPAService.runInTransaction(em -> em.merge(this.getCompetition()));
+			} else {
+				// the running competition keeps its settings until the file is known to be good
+				this.setCompetitionForExport(competition);
+			}
+			break;
+		case "platforms":
+			List<Platform> platforms = mapper.readValue(parser, new TypeReference<List<Platform>>() {
+			});
+			if (save) {
+				saveAll(platforms, EntityManager::merge);
+			}
+			break;
+		case "groups":
+			List<Group> groups = mapper.readValue(parser, new TypeReference<List<Group>>() {
+			});
+			if (save) {
+				saveAll(groups, EntityManager::merge);
+			}
+			break;
+		case "ageGroups":
+			List<AgeGroup> ageGroups = mapper.readValue(parser, new TypeReference<List<AgeGroup>>() {
+			});
+			if (save) {
+				saveAll(ageGroups, EntityManager::persist);
+			}
+			break;
+		case "athletes":
+			readChunks(parser, mapper, Athlete.class, chunk -> {
+				if (!save) {
+					ids.forgetAthletes();
+					return;
+				}
+				JPAService.runInTransaction(em -> {
+					// the groups were saved by an earlier transaction
+					Map<Long, Group> sessions = new HashMap<>();
+					for (Athlete a : chunk) {
+						Group g = a.getGroup();
+						if (g != null) {
+							a.setGroup(sessions.computeIfAbsent(g.getId(), id -> em.getReference(Group.class, id)));
+						}
+						em.persist(a);
 					}
+					return null;
+				});
+				ids.forgetAthletes();
+			});
+			break;
+		case "records":
+			readChunks(parser, mapper, RecordEvent.class, chunk -> {
+				if (!save) {
+					return;
 				}
-			} catch (Exception e) {
-				e.printStackTrace();
+				JPAService.runInTransaction(em -> {
+					for (RecordEvent r : chunk) {
+						// generated, the old value is not kept (as with merge), without a select per record
+						r.setId(null);
+						em.persist(r);
+					}
+					return null;
+				});
+			});
+			break;
+		case "recordConfig":
+			RecordConfig recordConfig = mapper.readValue(parser, RecordConfig.class);
+			if (save) {
+				JPAService.runInTransaction(em -> em.merge(recordConfig));
+			}
+			break;
+		default:
+			logger.warn("ignoring unknown section {}", section);
+			parser.skipChildren();
+			break;
+		}
+	}
+
+	private void removeAll() {
+		JPAService.runInTransaction(em -> {
+			CompetitionRepository.doRemoveAll(em);
+			return null;
+		});
+	}
+
+	private <T> void saveAll(List<T> entities, BiConsumer<EntityManager, T> save) {
+		JPAService.runInTransaction(em -> {
+			for (T e : entities) {
+				save.accept(em, e);
 			}
 			return null;
 		});
@@ -347,4 +673,45 @@ public class CompetitionData {
 	private void setConfigForExport(Config config) {
 		this.config = config;
 	}
+
+	/**
+	 * Write an array with the entities, fetched by pages ordered by id. Each page is converted to tokens inside its
+	 * transaction (lazy associations are loaded there) and written after it is closed, so a slow reader does not keep
+	 * a transaction open.
+	 */
+	private <T> void writePages(JsonGenerator gen, ObjectMapper mapper, String field, Class<T> entity,
+	        Function<T, Long> idOf) throws IOException {
+		gen.writeArrayFieldStart(field);
+		String jpql = "select e from " + entity.getSimpleName() + " e where e.id > :after order by e.id";
+		Long[] last = { Long.MIN_VALUE };
+		int nb = 0;
+		List<TokenBuffer> page;
+		do {
+			page = JPAService.runInTransaction(em -> {
+				List<T> found = em.createQuery(jpql, entity)
+				        .setParameter("after", last[0])
+				        .setMaxResults(PAGE_SIZE)
+				        .getResultList();
+				List<TokenBuffer> tokens = new ArrayList<>(found.size());
+				for (T e : found) {
+					TokenBuffer tb = new TokenBuffer(mapper, false);
+					try {
+						mapper.writeValue(tb, e);
+					} catch (IOException ex) {
+						throw new RuntimeException(ex);
+					}
+					tokens.add(tb);
+					last[0] = idOf.apply(e);
+				}
+				return tokens;
+			});
+			for (TokenBuffer tb : page) {
+				tb.serialize(gen);
+			}
+			nb += page.size();
+		} while (page.size() == PAGE_SIZE);
+		gen.writeEndArray();
+		logger.debug("exported {} {}", nb, field);
+	}
+
 }
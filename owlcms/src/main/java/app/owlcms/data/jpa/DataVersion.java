@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.jpa;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * A number that changes whenever the competition data in the database changes, so that results computed from the
+ * database (for example generated spreadsheets) can be reused as long as it stays the same.
+ *
+ * Hibernate shows us every SQL statement; the version is increased when an insert, update or delete is sent, and again
+ * when the transaction that sent it commits. Something computed between the two, from data not yet committed or not
+ * yet visible, is therefore never reused.
+ *
+ * @author Jean-François Lamy
+ */
+@SuppressWarnings("serial")
+public class DataVersion implements StatementInspector {
+
+	private static final AtomicLong version = new AtomicLong();
+	private static final ThreadLocal<Boolean> written = ThreadLocal.withInitial(() -> Boolean.FALSE);
+	private static final ThreadLocal<long[]> ownChanges = ThreadLocal.withInitial(() -> new long[1]);
+
+	/**
+	 * @return the current version
+	 */
+	public static long get() {
+		return version.get();
+	}
+
+	/**
+	 * Start counting the changes made by the current thread.
+	 *
+	 * @return the current version
+	 */
+	public static long mark() {
+		ownChanges.get()[0] = 0;
+		return version.get();
+	}
+
+	/**
+	 * Tell whether the current thread was alone to write since {@link #mark()}, in which case what was up to date at
+	 * the mark is only missing the thread's own changes.
+	 *
+	 * @param mark the value returned by {@link #mark()}
+	 * @return the current version, or -1 if other threads have written since the mark
+	 */
+	public static long versionIfOnlyOwnChanges(long mark) {
+		long current = version.get();
+		return current == mark + ownChanges.get()[0] ? current : -1;
+	}
+
+	/**
+	 * Called after a commit by {@link JPAService}.
+	 */
+	static void committed() {
+		if (written.get()) {
+			written.set(Boolean.FALSE);
+			increment();
+		}
+	}
+
+	private static void increment() {
+		version.incrementAndGet();
+		ownChanges.get()[0]++;
+	}
+
+	private static boolean isWrite(String sql) {
+		int i = 0;
+		while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+			i++;
+		}
+		return sql.regionMatches(true, i, "insert", 0, 6)
+		        || sql.regionMatches(true, i, "update", 0, 6)
+		        || sql.regionMatches(true, i, "delete", 0, 6)
+		        || sql.regionMatches(true, i, "merge", 0, 5);
+	}
+
+	@Override
+	public String inspect(String sql) {
+		if (isWrite(sql)) {
+			written.set(Boolean.TRUE);
+			increment();
+		}
+		return sql;
+	}
+
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.jpa;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.hibernate.jpa.QueryHints;
+
+/**
+ * Named entity graphs used by the queries on the main read paths (rankings, medals, results sheets, scoreboards).
+ *
+ * The associations are lazy, and because lazy loading is allowed outside transactions, a loop over the athletes that
+ * looks at their participations would otherwise silently issue one query per athlete. The graphs fetch what these
+ * loops need in the same query; whatever is not covered is loaded in batches (see
+ * <code>hibernate.default_batch_fetch_size</code> in {@link JPAService}).
+ *
+ * @author Jean-François Lamy
+ */
+public class FetchPlans {
+
+	/**
+	 * Athlete with category, participations and the categories of the participations. Defined on
+	 * {@link app.owlcms.data.athlete.Athlete}
+	 */
+	public static final String ATHLETE_RANKING = "Athlete.ranking";
+
+	/**
+	 * Participation with its athlete and category. Defined on {@link app.owlcms.data.category.Participation}
+	 */
+	public static final String PARTICIPATION_RESULTS = "Participation.results";
+
+	private static final String LOAD_GRAPH = "javax.persistence.loadgraph";
+
+	/**
+	 * Fetch the attributes of a named graph in addition to those that are eager by default.
+	 *
+	 * When the graph includes a collection the query must be a "select distinct": duplicates caused by the join are
+	 * then removed in memory instead of being sent to the database as a SQL DISTINCT.
+	 *
+	 * @param <Q>       Query or TypedQuery
+	 * @param em        the entity manager that created the query
+	 * @param query     the query
+	 * @param graphName one of the constants of this class
+	 * @return the query
+	 */
+	public static <Q extends Query> Q apply(EntityManager em, Q query, String graphName) {
+		query.setHint(LOAD_GRAPH, em.getEntityGraph(graphName));
+		query.setHint(QueryHints.HINT_PASS_DISTINCT_THROUGH, false);
+		return query;
+	}
+
+}
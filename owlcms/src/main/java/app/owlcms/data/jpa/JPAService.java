@@ -7,6 +7,7 @@
 package app.owlcms.data.jpa;
 
 import static org.hibernate.cfg.AvailableSettings.CACHE_REGION_FACTORY;
+import static org.hibernate.cfg.AvailableSettings.DEFAULT_BATCH_FETCH_SIZE;
 import static org.hibernate.cfg.AvailableSettings.DIALECT;
 import static org.hibernate.cfg.AvailableSettings.GENERATE_STATISTICS;
 import static org.hibernate.cfg.AvailableSettings.HBM2DDL_AUTO;
@@ -14,9 +15,12 @@ import static org.hibernate.cfg.AvailableSettings.JPA_JDBC_DRIVER;
 import static org.hibernate.cfg.AvailableSettings.JPA_JDBC_PASSWORD;
 import static org.hibernate.cfg.AvailableSettings.JPA_JDBC_URL;
 import static org.hibernate.cfg.AvailableSettings.JPA_JDBC_USER;
+import static org.hibernate.cfg.AvailableSettings.ORDER_INSERTS;
+import static org.hibernate.cfg.AvailableSettings.ORDER_UPDATES;
 import static org.hibernate.cfg.AvailableSettings.QUERY_STARTUP_CHECKING;
 import static org.hibernate.cfg.AvailableSettings.SHOW_SQL;
 import static org.hibernate.cfg.AvailableSettings.STATEMENT_BATCH_SIZE;
+import static org.hibernate.cfg.AvailableSettings.STATEMENT_INSPECTOR;
 import static org.hibernate.cfg.AvailableSettings.USE_QUERY_CACHE;
 import static org.hibernate.cfg.AvailableSettings.USE_REFLECTION_OPTIMIZER;
 import static org.hibernate.cfg.AvailableSettings.USE_SECOND_LEVEL_CACHE;
@@ -35,10 +39,12 @@ import javax.persistence.EntityManagerFactory;
 import javax.persistence.spi.PersistenceUnitInfo;
 
 import org.h2.tools.Server;
+import org.hibernate.SessionFactory;
 import org.hibernate.dialect.H2Dialect;
 import org.hibernate.hikaricp.internal.HikariCPConnectionProvider;
 import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
 import org.hibernate.jpa.boot.internal.PersistenceUnitInfoDescriptor;
+import org.hibernate.stat.Statistics;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableList;
@@ -91,6 +97,17 @@ public class JPAService {
 		return factory;
 	}
 
+	/**
+	 * Hibernate statistics for the current factory. Collection is off unless enabled with
+	 * {@link Statistics#setStatisticsEnabled(boolean)}, as done by the tests that count the statements issued by the
+	 * main read paths.
+	 *
+	 * @return the statistics
+	 */
+	public static Statistics getStatistics() {
+		return getFactory().unwrap(SessionFactory.class).getStatistics();
+	}
+
 	/**
 	 * Inits the database
 	 *
@@ -203,6 +220,7 @@ public class JPAService {
 			T result = function.apply(entityManager);
 
 			entityManager.getTransaction().commit();
+			DataVersion.committed();
 			return result;
 
 		} finally {
@@ -232,6 +250,7 @@ public class JPAService {
 			T result = function.apply(entityManager);
 
 			entityManager.getTransaction().commit();
+			DataVersion.committed();
 			return result;
 
 		} finally {
@@ -261,6 +280,7 @@ public class JPAService {
 			List<Object[]> result = function.apply(entityManager);
 
 			entityManager.getTransaction().commit();
+			DataVersion.committed();
 			return result;
 
 		} finally {
@@ -282,6 +302,7 @@ public class JPAService {
 		PersistenceUnitInfo persistenceUnitInfo = new PersistenceUnitInfoImpl(JPAService.class.getSimpleName(),
 		        entityClassNames(), properties);
 		Map<String, Object> configuration = new HashMap<>();
+		configuration.put(STATEMENT_INSPECTOR, new DataVersion());
 
 		factory = new EntityManagerFactoryBuilderImpl(new PersistenceUnitInfoDescriptor(persistenceUnitInfo),
 		        configuration).build();
@@ -347,6 +368,10 @@ public class JPAService {
 		        .put(QUERY_STARTUP_CHECKING, false).put(GENERATE_STATISTICS, false)
 		        .put(USE_REFLECTION_OPTIMIZER, false).put(USE_SECOND_LEVEL_CACHE, true).put(USE_QUERY_CACHE, false)
 		        .put(USE_STRUCTURED_CACHE, false).put(STATEMENT_BATCH_SIZE, 20)
+		        // group the statements by table, otherwise cascades (athlete, participations) break up the batches
+		        .put(ORDER_INSERTS, true).put(ORDER_UPDATES, true)
+		        // lazy associations not covered by a FetchPlans graph are loaded 50 at a time
+		        .put(DEFAULT_BATCH_FETCH_SIZE, 50)
 		        .put(CACHE_REGION_FACTORY, "org.hibernate.cache.jcache.JCacheRegionFactory")
 		        .put("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider")
 		        .put("hibernate.javax.cache.missing_cache_strategy", "create")
@@ -18,6 +18,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonSetter;
 
 import app.owlcms.apputils.JpaJsonConverter;
+import app.owlcms.data.config.SettingsSnapshot;
 import app.owlcms.data.jpa.JPAService;
 import ch.qos.logback.classic.Logger;
 @Cacheable
@@ -27,36 +28,72 @@ public class RecordConfig {
 
 	static Logger logger = (Logger) LoggerFactory.getLogger(RecordConfig.class);
 
-	private static RecordConfig current;
+	private static final SettingsSnapshot<RecordConfig> snapshot = new SettingsSnapshot<>("RecordConfig",
+	        RecordConfig::load);
 
+	/**
+	 * The record configuration is read once and shared until the next save or import. It must not be modified, use
+	 * {@link #getCurrentForEditing()} instead.
+	 *
+	 * @return the shared record configuration
+	 */
 	public static RecordConfig getCurrent() {
-		current = JPAService.runInTransaction(em -> em.find(RecordConfig.class, 1L));
-		if (current == null) {
-			current = new RecordConfig();
-			setCurrent(current);
-		}
-		if (current.getRecordOrder() == null) {
-			current.setRecordOrder(new ArrayList<String>());
-		}
-		if (current.getShowAllCategoryRecords() == null) {
-			current.setShowAllCategoryRecords(false);
-		}
-		if (current.getShowAllFederations() == null) {
-			current.setShowAllFederations(false);
-		}
-		return current;
+		return snapshot.get();
+	}
+
+	/**
+	 * @return a copy read from the database, to be modified and saved with {@link #setCurrent(RecordConfig)}
+	 */
+	public static RecordConfig getCurrentForEditing() {
+		return load();
+	}
+
+	/**
+	 * @return incremented every time the shared record configuration is replaced
+	 */
+	public static long getCurrentVersion() {
+		return snapshot.getVersion();
+	}
+
+	/**
+	 * Forget the shared record configuration after it has been changed directly in the database.
+	 */
+	public static void invalidateCurrent() {
+		snapshot.invalidate();
 	}
 
 	public static RecordConfig setCurrent(RecordConfig recordConfig) {
-		RecordConfig merged = JPAService.runInTransaction(em -> {
+		return snapshot.publish(withDefaults(save(recordConfig)));
+	}
+
+	private static RecordConfig load() {
+		RecordConfig rc = JPAService.runInTransaction(em -> em.find(RecordConfig.class, 1L));
+		if (rc == null) {
+			rc = save(new RecordConfig());
+		}
+		return withDefaults(rc);
+	}
+
+	private static RecordConfig save(RecordConfig recordConfig) {
+		return JPAService.runInTransaction(em -> {
 			RecordConfig nc = em.merge(recordConfig);
 			em.flush();
 			return nc;
 		});
-		current = merged;
-		return current;
 	}
 
+	private static RecordConfig withDefaults(RecordConfig rc) {
+		if (rc.getRecordOrder() == null) {
+			rc.setRecordOrder(new ArrayList<String>());
+		}
+		if (rc.getShowAllCategoryRecords() == null) {
+			rc.setShowAllCategoryRecords(false);
+		}
+		if (rc.getShowAllFederations() == null) {
+			rc.setShowAllFederations(false);
+		}
+		return rc;
+	}
 
 	@Convert(converter = JpaJsonConverter.class)
 	private ArrayList<String> recordOrder;
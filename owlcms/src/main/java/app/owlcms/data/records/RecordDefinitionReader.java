@@ -63,7 +63,7 @@ public class RecordDefinitionReader {
 		DateTimeFormatter ymFormatter = DateTimeFormatter.ofPattern("yyyy-MM");
 		DateTimeFormatter yFormatter = DateTimeFormatter.ofPattern("yyyy");
 
-		return JPAService.runInTransaction(em -> {
+		List<String> result = JPAService.runInTransaction(em -> {
 			int iRecord = 0;
 			List<String> errors = new ArrayList<>();
 
@@ -329,6 +329,8 @@ public class RecordDefinitionReader {
 			errors.add(Translator.translate("Records.Inserted",iRecord));
 			return errors;
 		});
+		RecordIndex.getCurrent().invalidate();
+		return result;
 	}
 
 	public static void readFolder(Path recordsPath) throws IOException {
@@ -444,7 +446,8 @@ public class RecordDefinitionReader {
 		} catch (FileNotFoundException e1) {
 			logger.error("cannot find records {}", LoggerUtils.stackTrace(e1));
 		}
-
+		// index now, so the first group loaded does not wait.
+		RecordIndex.getCurrent().rebuild();
 	}
 
 	private static boolean isEmptyRow(RecordEvent rec) {
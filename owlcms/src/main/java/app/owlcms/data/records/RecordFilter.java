@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -234,22 +233,20 @@ public class RecordFilter {
 	}
 
 	public static List<RecordEvent> computeDisplayableRecordsForAthlete(Athlete curAthlete) {
-		List<RecordEvent> records = RecordRepository.findFiltered(curAthlete.getGender(), curAthlete.getAge(),
-		        curAthlete.getBodyWeight(), null, null);
-		//logger.debug("records size {} {} {} {}", curAthlete.getGender(), curAthlete.getAge(), curAthlete.getBodyWeight(), records);
-
-		// remove duplicates for each kind of record, keep largest
-		Map<String, RecordEvent> cleanMap = new HashMap<>();
-		for (RecordEvent r : records) {
-			RecordEvent curMax = cleanMap.get(r.getKey());
-			if (curMax == null || r.getRecordValue() > curMax.getRecordValue()) {
-				//if (curAthlete.getStartNumber() == 5) logger.debug("updating {} {}", r.getKey(), r.getRecordValue());
-				cleanMap.put(r.getKey(), r);
-			} else {
-				//if (curAthlete.getStartNumber() == 5) logger.debug("DISCARDING {} {}", r.getKey(), r.getRecordValue());
-			}
-		}
-		return new ArrayList<RecordEvent>(cleanMap.values());
+		// largest record for each kind of record, from the in-memory index
+		return new ArrayList<RecordEvent>(RecordIndex.getCurrent().findForAthlete(curAthlete));
+	}
+
+	/**
+	 * Same as {@link #computeDisplayableRecordsForAthlete(Athlete)} for a whole group.
+	 *
+	 * @param athletes
+	 * @return a map from each athlete to its displayable records
+	 */
+	public static Map<Athlete, List<RecordEvent>> computeDisplayableRecordsForAthletes(Collection<Athlete> athletes) {
+		Map<Athlete, List<RecordEvent>> records = RecordIndex.getCurrent().findForAthletes(athletes);
+		records.replaceAll((a, l) -> new ArrayList<RecordEvent>(l));
+		return records;
 	}
 
 }
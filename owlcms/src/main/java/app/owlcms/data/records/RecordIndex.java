@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.data.records;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.Gender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * In-memory index of the records, used to find the records that apply to an athlete without querying the database.
+ *
+ * For each gender, the age group bounds split the ages into segments where the same age groups apply; inside each age
+ * segment, the body weight bounds split the body weights the same way. Each (age, body weight) cell holds the largest
+ * record for each record key (record name, lift, age group, body weight category), so a lookup is two binary searches.
+ *
+ * The index is loaded from the database on first use and after {@link #invalidate()}. Records created or voided
+ * during the competition are applied in memory with {@link #recordsAdded(Collection)} and
+ * {@link #recordsRemoved(Collection)}.
+ *
+ * @author Jean-François Lamy
+ */
+public class RecordIndex {
+
+	/**
+	 * The records for one gender, and the cells built from them.
+	 */
+	private static class GenderIndex {
+		/** key is the first age of a segment; the segment ends before the next key. */
+		private final TreeMap<Integer, TreeMap<Double, List<RecordEvent>>> ageSegments = new TreeMap<>();
+		private final List<RecordEvent> records = new ArrayList<>();
+
+		/**
+		 * @return the records for the athlete, largest for each key, or an empty list.
+		 */
+		List<RecordEvent> find(int age, double bw) {
+			Entry<Integer, TreeMap<Double, List<RecordEvent>>> ageEntry = this.ageSegments.floorEntry(age);
+			if (ageEntry == null) {
+				return List.of();
+			}
+			// body weight cells are keyed by their upper bound; the lower bound is excluded.
+			Entry<Double, List<RecordEvent>> bwEntry = ageEntry.getValue().ceilingEntry(bw);
+			if (bwEntry == null) {
+				return List.of();
+			}
+			return bwEntry.getValue();
+		}
+
+		void rebuild() {
+			this.ageSegments.clear();
+			TreeSet<Integer> ageBounds = new TreeSet<>();
+			for (RecordEvent r : this.records) {
+				ageBounds.add(r.getAgeGrpLower());
+				ageBounds.add(r.getAgeGrpUpper() + 1);
+			}
+			for (Integer ageStart : ageBounds) {
+				List<RecordEvent> ageRecords = new ArrayList<>();
+				for (RecordEvent r : this.records) {
+					if (r.getAgeGrpLower() <= ageStart && r.getAgeGrpUpper() >= ageStart) {
+						ageRecords.add(r);
+					}
+				}
+				this.ageSegments.put(ageStart, buildBodyWeightCells(ageRecords));
+			}
+		}
+
+		private TreeMap<Double, List<RecordEvent>> buildBodyWeightCells(List<RecordEvent> ageRecords) {
+			TreeMap<Double, List<RecordEvent>> cells = new TreeMap<>();
+			TreeSet<Double> bwBounds = new TreeSet<>();
+			for (RecordEvent r : ageRecords) {
+				bwBounds.add((double) r.getBwCatLower());
+				bwBounds.add(r.getBwCatUpper().doubleValue());
+			}
+			Double cellLower = null;
+			for (Double cellUpper : bwBounds) {
+				if (cellLower == null) {
+					// nothing applies at or below the smallest bound.
+					cells.put(cellUpper, List.of());
+				} else {
+					Map<String, RecordEvent> maxByKey = new LinkedHashMap<>();
+					for (RecordEvent r : ageRecords) {
+						if (r.getBwCatLower() <= cellLower && r.getBwCatUpper() >= cellUpper) {
+							RecordEvent curMax = maxByKey.get(r.getKey());
+							if (curMax == null || value(r) > value(curMax)) {
+								maxByKey.put(r.getKey(), r);
+							}
+						}
+					}
+					cells.put(cellUpper, List.copyOf(maxByKey.values()));
+				}
+				cellLower = cellUpper;
+			}
+			return cells;
+		}
+	}
+
+	/** same order as the database query used before the index, so the first of equal records is kept */
+	private static final Comparator<RecordEvent> QUERY_ORDER = Comparator
+	        .comparingInt(RecordEvent::getAgeGrpLower)
+	        .thenComparingInt(RecordEvent::getAgeGrpUpper)
+	        .thenComparingInt(RecordEvent::getBwCatUpper)
+	        .thenComparing(Comparator.comparingDouble(RecordIndex::value).reversed());
+
+	private static RecordIndex current;
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(RecordIndex.class);
+
+	static {
+		logger.setLevel(Level.INFO);
+	}
+
+	public static synchronized RecordIndex getCurrent() {
+		if (current == null) {
+			current = new RecordIndex();
+		}
+		return current;
+	}
+
+	private static double value(RecordEvent r) {
+		Double recordValue = r.getRecordValue();
+		return recordValue != null ? recordValue : Double.NEGATIVE_INFINITY;
+	}
+
+	private Map<Gender, GenderIndex> genders = new EnumMap<>(Gender.class);
+
+	private boolean valid = false;
+
+	/**
+	 * Records applicable to the athlete given gender, age and body weight, keeping only the largest record for each
+	 * record key.
+	 *
+	 * @param a the athlete
+	 * @return the records
+	 */
+	public synchronized List<RecordEvent> findForAthlete(Athlete a) {
+		ensureValid();
+		return lookup(a);
+	}
+
+	/**
+	 * Same as {@link #findForAthlete(Athlete)} for every athlete of a group, under a single lock.
+	 *
+	 * @param athletes
+	 * @return a map from each athlete to its records
+	 */
+	public synchronized Map<Athlete, List<RecordEvent>> findForAthletes(Collection<Athlete> athletes) {
+		ensureValid();
+		Map<Athlete, List<RecordEvent>> result = new LinkedHashMap<>();
+		for (Athlete a : athletes) {
+			result.put(a, lookup(a));
+		}
+		return result;
+	}
+
+	/**
+	 * Forget the indexed records; they will be read again from the database on next use. Called after records are
+	 * loaded, cleared or imported.
+	 */
+	public synchronized void invalidate() {
+		this.valid = false;
+		this.genders.clear();
+	}
+
+	/**
+	 * Read all the records from the database and index them now rather than on first use.
+	 */
+	public synchronized void rebuild() {
+		long start = System.nanoTime();
+		this.genders.clear();
+		for (RecordEvent r : RecordRepository.findAll()) {
+			add(r);
+		}
+		this.genders.values().forEach(g -> g.records.sort(QUERY_ORDER));
+		this.genders.values().forEach(GenderIndex::rebuild);
+		this.valid = true;
+		logger.debug("indexed {} records in {}ms",
+		        this.genders.values().stream().mapToInt(g -> g.records.size()).sum(),
+		        (System.nanoTime() - start) / 1000000.0);
+	}
+
+	/**
+	 * Add records just persisted, such as new records set during the competition.
+	 *
+	 * @param newRecords
+	 */
+	public synchronized void recordsAdded(Collection<RecordEvent> newRecords) {
+		if (!this.valid || newRecords == null || newRecords.isEmpty()) {
+			return;
+		}
+		for (RecordEvent r : newRecords) {
+			GenderIndex g = add(r);
+			if (g != null) {
+				g.records.sort(QUERY_ORDER);
+				g.rebuild();
+			}
+		}
+	}
+
+	/**
+	 * Remove records just deleted, such as new records voided by the jury.
+	 *
+	 * @param removedRecords
+	 */
+	public synchronized void recordsRemoved(Collection<RecordEvent> removedRecords) {
+		if (!this.valid || removedRecords == null || removedRecords.isEmpty()) {
+			return;
+		}
+		for (RecordEvent r : removedRecords) {
+			GenderIndex g = this.genders.get(r.getGender());
+			if (g != null && g.records.removeIf(e -> e == r || (r.getId() != null && Objects.equals(e.getId(), r.getId())))) {
+				g.rebuild();
+			}
+		}
+	}
+
+	private GenderIndex add(RecordEvent r) {
+		if (r.getGender() == null || r.getBwCatUpper() == null) {
+			// cannot match any athlete.
+			return null;
+		}
+		GenderIndex g = this.genders.computeIfAbsent(r.getGender(), k -> new GenderIndex());
+		g.records.add(r);
+		return g;
+	}
+
+	private void ensureValid() {
+		if (!this.valid) {
+			rebuild();
+		}
+	}
+
+	private List<RecordEvent> lookup(Athlete a) {
+		Gender gender = a.getGender();
+		Integer age = a.getAge();
+		Double bw = a.getBodyWeight();
+		if (gender == null || age == null || bw == null) {
+			return scan(gender, age, bw);
+		}
+		GenderIndex g = this.genders.get(gender);
+		if (g == null) {
+			return List.of();
+		}
+		return g.find(age, bw);
+	}
+
+	/**
+	 * Missing criteria are not used for filtering, as with {@link RecordRepository#findFiltered}. Only happens for
+	 * incomplete registrations, so the records are simply scanned.
+	 */
+	private List<RecordEvent> scan(Gender gender, Integer age, Double bw) {
+		Map<String, RecordEvent> maxByKey = new LinkedHashMap<>();
+		for (GenderIndex g : this.genders.values()) {
+			for (RecordEvent r : g.records) {
+				if ((gender == null || r.getGender() == gender)
+				        && (age == null || (r.getAgeGrpLower() <= age && r.getAgeGrpUpper() >= age))
+				        && (bw == null || (r.getBwCatLower() < bw && r.getBwCatUpper() >= bw))) {
+					RecordEvent curMax = maxByKey.get(r.getKey());
+					if (curMax == null || value(r) > value(curMax)) {
+						maxByKey.put(r.getKey(), r);
+					}
+				}
+			}
+		}
+		return List.copyOf(maxByKey.values());
+	}
+
+}
@@ -48,6 +48,7 @@ public class RecordRepository {
 			}
 			return null;
 		});
+		RecordIndex.getCurrent().invalidate();
 	}
 
 	/**
@@ -67,6 +68,7 @@ public class RecordRepository {
 			}
 			return null;
 		});
+		RecordIndex.getCurrent().invalidate();
 	}
 	
 	/**
@@ -86,6 +88,7 @@ public class RecordRepository {
 			}
 			return null;
 		});
+		RecordIndex.getCurrent().invalidate();
 	}
 
 //    public static JsonValue computeRecords(Gender gender, Integer age, Double bw, Integer snatchRequest,
@@ -114,6 +117,7 @@ public class RecordRepository {
 			}
 			return null;
 		});
+		RecordIndex.getCurrent().invalidate();
 	}
 
 	@SuppressWarnings("unchecked")
@@ -193,6 +197,7 @@ public class RecordRepository {
 			}
 			return null;
 		});
+		RecordIndex.getCurrent().invalidate();
 
 		return nRecord;
 	}
@@ -302,6 +307,7 @@ public class RecordRepository {
 			q.executeUpdate();
 			return null;
 		});
+		RecordIndex.getCurrent().invalidate();
 	}
 
 	public static void clearRecordsOriginallyFromFile(String fileName) {
@@ -313,6 +319,7 @@ public class RecordRepository {
 			q.executeUpdate();
 			return null;
 		});
+		RecordIndex.getCurrent().invalidate();
 	}
 
 }
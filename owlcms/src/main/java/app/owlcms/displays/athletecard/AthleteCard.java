@@ -6,7 +6,6 @@
  *******************************************************************************/
 package app.owlcms.displays.athletecard;
 
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,8 +38,6 @@ import app.owlcms.nui.shared.RequireLogin;
 import app.owlcms.nui.shared.SafeEventBusRegistration;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
-import elemental.json.Json;
-import elemental.json.JsonObject;
 
 /**
  * Attempt board.
@@ -211,15 +208,7 @@ public class AthleteCard extends LitTemplate
 	}
 
 	protected void setTranslationMap() {
-		JsonObject translations = Json.createObject();
-		Enumeration<String> keys = Translator.getKeys();
-		while (keys.hasMoreElements()) {
-			String curKey = keys.nextElement();
-			if (curKey.startsWith("Card.")) {
-				translations.put(curKey.replace("Card.", ""), Translator.translate(curKey));
-			}
-		}
-		this.getElement().setPropertyJson("t", translations);
+		this.getElement().setPropertyJson("t", Translator.getSectionJson("Card."));
 	}
 
 	private void init() {
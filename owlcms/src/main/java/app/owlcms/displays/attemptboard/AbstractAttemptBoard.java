@@ -6,7 +6,6 @@
  *******************************************************************************/
 package app.owlcms.displays.attemptboard;
 
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -52,12 +51,11 @@ import app.owlcms.nui.shared.SafeEventBusRegistration;
 import app.owlcms.uievents.BreakDisplay;
 import app.owlcms.uievents.BreakType;
 import app.owlcms.uievents.UIEvent;
+import app.owlcms.utils.Scheduler;
 import app.owlcms.utils.StartupUtils;
 import app.owlcms.utils.URLUtils;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
-import elemental.json.Json;
-import elemental.json.JsonObject;
 
 /**
  * Attempt board.
@@ -373,11 +371,11 @@ public abstract class AbstractAttemptBoard extends LitTemplate implements
 		uiEventLogger.debug("### {} {} {} {}", this.getClass().getSimpleName(), e.getClass().getSimpleName(),
 		        this.getOrigin(), e.getOrigin());
 		// don't block others
-		new Thread(() -> {
+		Scheduler.getShared().execute(() -> {
 			UIEventProcessor.uiAccess(this, uiEventBus, e, () -> {
 				this.getElement().setProperty("decisionVisible", true);
 			});
-		}).start();
+		});
 	}
 
 	@Subscribe
@@ -721,15 +719,7 @@ public abstract class AbstractAttemptBoard extends LitTemplate implements
 	}
 
 	protected void setTranslationMap() {
-		JsonObject translations = Json.createObject();
-		Enumeration<String> keys = Translator.getKeys();
-		while (keys.hasMoreElements()) {
-			String curKey = keys.nextElement();
-			if (curKey.startsWith("Scoreboard.")) {
-				translations.put(curKey.replace("Scoreboard.", ""), Translator.translate(curKey));
-			}
-		}
-		this.getElement().setPropertyJson("t", translations);
+		this.getElement().setPropertyJson("t", Translator.getSectionJson("Scoreboard."));
 	}
 
 	protected void syncWithFOP(FieldOfPlay fop) {
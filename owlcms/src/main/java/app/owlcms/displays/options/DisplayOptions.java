@@ -124,7 +124,6 @@ public class DisplayOptions {
 		wrappedTextField.setValueChangeMode(ValueChangeMode.ON_CHANGE);
 		wrappedTextField.addFocusListener(f -> {
 			dp.getDialogTimer().cancel();
-			dp.getDialogTimer().purge();
 		});
 		fontSizeField.setValue(dp.getEmFontSize());
 		fontSizeField.addValueChangeListener(e -> {
@@ -139,7 +138,6 @@ public class DisplayOptions {
 		twTextField.setValueChangeMode(ValueChangeMode.ON_CHANGE);
 		twTextField.addFocusListener(f -> {
 			dp.getDialogTimer().cancel();
-			dp.getDialogTimer().purge();
 		});
 		twField.setValue(dp.getTeamWidth());
 		twField.addValueChangeListener(e -> {
@@ -7,7 +7,6 @@
 package app.owlcms.displays.scoreboard;
 
 import java.util.Collections;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -526,15 +525,7 @@ public class CurrentAthlete extends Results {
 
 	@Override
 	protected void setTranslationMap() {
-		JsonObject translations = Json.createObject();
-		Enumeration<String> keys = Translator.getKeys();
-		while (keys.hasMoreElements()) {
-			String curKey = keys.nextElement();
-			if (curKey.startsWith("Scoreboard.")) {
-				translations.put(curKey.replace("Scoreboard.", ""), Translator.translate(curKey));
-			}
-		}
-		this.getElement().setPropertyJson("t", translations);
+		this.getElement().setPropertyJson("t", Translator.getSectionJson("Scoreboard."));
 	}
 
 	@Override
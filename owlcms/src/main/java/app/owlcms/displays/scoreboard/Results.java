@@ -8,7 +8,6 @@ package app.owlcms.displays.scoreboard;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -44,6 +43,7 @@ import app.owlcms.data.category.Participation;
 import app.owlcms.data.competition.Competition;
 import app.owlcms.data.config.Config;
 import app.owlcms.data.group.Group;
+import app.owlcms.data.jpa.DataVersion;
 import app.owlcms.displays.video.StylesDirSelection;
 import app.owlcms.fieldofplay.FOPState;
 import app.owlcms.fieldofplay.FieldOfPlay;
@@ -623,7 +623,11 @@ RequireDisplayLogin, HasBoardMode, StylesDirSelection {
 						&& this.displayOrder.size() > 0) {
 					// null as second argument because we do not highlight current athletes in the
 					// leaderboard
-					this.getElement().setPropertyJson("leaders", getAthletesJson(this.displayOrder, null, fop));
+					// the Sinclair leaders come from all the fields of play, not only this one
+					boolean sinclair = Competition.getCurrent().isSinclair();
+					this.getElement().setPropertyJson("leaders",
+							getSharedAthletesJson(sinclair ? "sinclairLeaders" : "leaders", this.displayOrder, null,
+									fop, sinclair ? DataVersion.get() : 0L));
 					this.getElement().setProperty("leaderLines", this.displayOrder.size() + 2); // spacer + title
 				} else {
 					// nothing to show
@@ -845,6 +849,41 @@ RequireDisplayLogin, HasBoardMode, StylesDirSelection {
 		return jath;
 	}
 
+	/**
+	 * Same as {@link #getAthletesJson(List, List, FieldOfPlay)}, but computed only once per change on the field of
+	 * play for all the displays of the same kind with the same options and language. The result is shared and must not
+	 * be modified.
+	 *
+	 * @param list         which list is shown, part of the cache key
+	 * @param displayOrder
+	 * @param liftOrder
+	 * @param fop
+	 * @return
+	 */
+	protected JsonValue getSharedAthletesJson(String list, List<Athlete> displayOrder, List<Athlete> liftOrder,
+			FieldOfPlay fop) {
+		return getSharedAthletesJson(list, displayOrder, liftOrder, fop, 0L);
+	}
+
+	/**
+	 * Same as {@link #getSharedAthletesJson(String, List, List, FieldOfPlay)}, for a list that also depends on the
+	 * other fields of play.
+	 *
+	 * @param dataVersion {@link DataVersion#get()} if the list changes when another field of play lifts, 0 otherwise
+	 */
+	protected JsonValue getSharedAthletesJson(String list, List<Athlete> displayOrder, List<Athlete> liftOrder,
+			FieldOfPlay fop, long dataVersion) {
+		String variant = getClass().getName() + "|" + list + "|" + OwlcmsSession.getLocale() + "|"
+				+ isAbbreviatedName() + "|" + this.teamFlags + "|" + showCurrent(fop);
+		JsonValue json = fop.getRenderCache().get(variant, fop.getRenderVersion(), dataVersion,
+				() -> getAthletesJson(displayOrder, liftOrder, fop));
+		// the display that built the JSON has already done this, the others must do it too.
+		if (Competition.hasWideTeamNames(displayOrder)) {
+			setWideTeamNames(true);
+		}
+		return json;
+	}
+
 	/**
 	 * Compute Json string ready to be used by web component template
 	 *
@@ -977,15 +1016,7 @@ RequireDisplayLogin, HasBoardMode, StylesDirSelection {
 	}
 
 	protected void setTranslationMap() {
-		JsonObject translations = Json.createObject();
-		Enumeration<String> keys = Translator.getKeys();
-		while (keys.hasMoreElements()) {
-			String curKey = keys.nextElement();
-			if (curKey.startsWith("Scoreboard.")) {
-				translations.put(curKey.replace("Scoreboard.", ""), Translator.translate(curKey));
-			}
-		}
-		this.getElement().setPropertyJson("t", translations);
+		this.getElement().setPropertyJson("t", Translator.getSectionJson("Scoreboard."));
 	}
 
 	protected void uiLog(UIEvent e) {
@@ -1030,7 +1061,7 @@ RequireDisplayLogin, HasBoardMode, StylesDirSelection {
 		}
 		this.getElement().setPropertyJson("ageGroups", getAgeGroupNamesJson(fop.getAgeGroupMap()));
 		this.getElement().setPropertyJson("athletes",
-				getAthletesJson(this.displayOrder, fop.getLiftingOrder(), fop));
+				getSharedAthletesJson("athletes", this.displayOrder, fop.getLiftingOrder(), fop));
 
 		List<Athlete> order = getOrder(OwlcmsSession.getFop());
 		int resultLines = (order != null ? order.size() : 0) + countSubsets(order);
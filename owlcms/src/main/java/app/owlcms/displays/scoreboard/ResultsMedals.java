@@ -8,18 +8,20 @@ package app.owlcms.displays.scoreboard;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Enumeration;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.slf4j.LoggerFactory;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
 import com.vaadin.flow.component.Tag;
 import com.vaadin.flow.component.dependency.JsModule;
 
@@ -34,6 +36,7 @@ import app.owlcms.data.category.AgeDivision;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.category.Participation;
 import app.owlcms.data.competition.Competition;
+import app.owlcms.data.competition.MedalService;
 import app.owlcms.data.config.Config;
 import app.owlcms.data.group.Group;
 import app.owlcms.fieldofplay.FieldOfPlay;
@@ -42,6 +45,7 @@ import app.owlcms.init.OwlcmsSession;
 import app.owlcms.nui.lifting.UIEventProcessor;
 import app.owlcms.uievents.CeremonyType;
 import app.owlcms.uievents.UIEvent;
+import app.owlcms.utils.Scheduler;
 import app.owlcms.utils.URLUtils;
 import ch.qos.logback.classic.Logger;
 import elemental.json.Json;
@@ -67,6 +71,10 @@ public class ResultsMedals extends Results implements ResultsParameters, Display
 	private Category category;
 	private JsonArray cattempts;
 	private TreeMap<Category, TreeSet<Athlete>> medals;
+	private Consumer<TreeSet<Athlete>> medalListener;
+	private String medalListenerCode;
+	/** incremented each time the display is set up, guarded by the UI lock */
+	private long medalsGeneration;
 	private JsonArray sattempts;
 	private EventBus uiEventBus;
 	private boolean snatchCJTotalMedals;
@@ -402,17 +410,17 @@ public class ResultsMedals extends Results implements ResultsParameters, Display
 //		}
 	}
 
+	@Override
+	protected void onDetach(DetachEvent detachEvent) {
+		super.onDetach(detachEvent);
+		MedalService.getCurrent().unsubscribe(medalListener);
+		medalListener = null;
+		medalListenerCode = null;
+	}
+
 	@Override
 	protected void setTranslationMap() {
-		JsonObject translations = Json.createObject();
-		Enumeration<String> keys = Translator.getKeys();
-		while (keys.hasMoreElements()) {
-			String curKey = keys.nextElement();
-			if (curKey.startsWith("Scoreboard.")) {
-				translations.put(curKey.replace("Scoreboard.", ""), Translator.translate(curKey));
-			}
-		}
-		this.getElement().setPropertyJson("t", translations);
+		this.getElement().setPropertyJson("t", Translator.getSectionJson("Scoreboard."));
 	}
 
 	protected void setWideTeamNames(boolean wide) {
@@ -480,6 +488,20 @@ public class ResultsMedals extends Results implements ResultsParameters, Display
 		});
 	}
 
+	/**
+	 * Does not touch the page, can be called outside the UI lock.
+	 */
+	private TreeMap<Category, TreeSet<Athlete>> computeMedals(Group group, Category category, FieldOfPlay fop) {
+		TreeMap<Category, TreeSet<Athlete>> newMedals;
+		if (category == null) {
+			newMedals = MedalService.getCurrent().getMedals(group != null ? group : fop.getGroup(), false);
+		} else {
+			newMedals = new TreeMap<>();
+			newMedals.put(category, MedalService.getCurrent().getMedalists(category));
+		}
+		return newMedals;
+	}
+
 	private String computeLiftType(Athlete a) {
 		if (a == null || a.getAttemptsDone() > 6) {
 			return null;
@@ -503,28 +525,31 @@ public class ResultsMedals extends Results implements ResultsParameters, Display
 			medalsInit();
 			checkVideo(Config.getCurrent().getParamStylesDir() + "/video/results.css", this);
 			teamFlags = URLUtils.checkFlags();
-			if (this.getCategory() == null) {
-				if (this.getGroup() != null) {
-					medals = Competition.getCurrent().getMedals(this.getGroup(), false);
-				} else {
-					// we listen on uiEventBus.
-					uiEventBus = uiEventBusRegister(this, fop);
-					medals = Competition.getCurrent().getMedals(OwlcmsSession.getFop().getGroup(), false);
-				}
+			Group group = this.getGroup();
+			Category category = this.getCategory();
+			if (category == null) {
 				this.getElement().setProperty("fillerDisplay", "");
 			} else {
-				TreeSet<Athlete> catMedals = Competition.getCurrent().computeMedalsForCategory(this.getCategory());
-				// logger.debug("group {} category {} catMedals {}", getGroup(), getCategory(),
-				// catMedals);
-				medals = new TreeMap<>();
-				medals.put(this.getCategory(), catMedals);
 				this.getElement().setProperty("fillerDisplay", "display: none;");
 			}
 			setDisplay();
 			this.getElement().setProperty("showLiftRanks", Competition.getCurrent().isSnatchCJTotalMedals()); 
-			computeMedalsJson(medals);
 			// we listen on uiEventBus.
 			uiEventBus = uiEventBusRegister(this, fop);
+			syncMedalSubscription();
+			// the medals are computed outside the UI lock, the page is filled when they are known.
+			long generation = ++medalsGeneration;
+			Scheduler.getShared().execute(() -> {
+				TreeMap<Category, TreeSet<Athlete>> newMedals = computeMedals(group, category, fop);
+				UIEventProcessor.uiAccess(this, uiEventBus, () -> {
+					if (generation != medalsGeneration) {
+						// another group or category has been asked for meanwhile
+						return;
+					}
+					medals = newMedals;
+					computeMedalsJson(medals);
+				});
+			});
 		});
 
 		if (!Competition.getCurrent().isSnatchCJTotalMedals()) {
@@ -534,29 +559,19 @@ public class ResultsMedals extends Results implements ResultsParameters, Display
 	}
 
 	private void doRefresh(UIEvent e) {
-		Thread t1 = new Thread(() -> {
+		Group group = this.getGroup();
+		Category category = this.getCategory();
+		FieldOfPlay fop = getFop() != null ? getFop() : OwlcmsSession.getFop();
+		// medal stuff can wait, and is computed before taking the UI lock.
+		Scheduler.getShared().execute(() -> {
+			TreeMap<Category, TreeSet<Athlete>> newMedals = computeMedals(group, category, fop);
 			UIEventProcessor.uiAccess(this, uiEventBus, e, () -> {
-				if (this.getCategory() == null) {
-					if (this.getGroup() != null) {
-						medals = Competition.getCurrent().getMedals(this.getGroup(), false);
-					} else {
-						OwlcmsSession.getCurrent();
-						medals = Competition.getCurrent().getMedals(OwlcmsSession.getFop().getGroup(), false);
-					}
-				} else {
-					TreeSet<Athlete> catMedals = Competition.getCurrent().computeMedalsForCategory(this.getCategory());
-					// logger.debug("group {} category {} catMedals {}", getGroup(), getCategory(),
-					// catMedals);
-					medals = new TreeMap<>();
-					medals.put(this.getCategory(), catMedals);
-				}
+				medals = newMedals;
+				syncMedalSubscription();
 				setDisplay();
 				computeMedalsJson(medals);
 			});
 		});
-		// medal stuff can wait.
-		t1.setPriority(Thread.MIN_PRIORITY);
-		t1.start();
 	}
 
 	private String formatKg(String total) {
@@ -659,6 +674,34 @@ public class ResultsMedals extends Results implements ResultsParameters, Display
 //		        .then(String.class, resultHandler);
 //	}
 
+	/**
+	 * When showing a category, be given its medalists whenever an athlete of the category changes, instead of
+	 * recomputing them for every display.
+	 */
+	private void syncMedalSubscription() {
+		Category cat = this.getCategory();
+		String code = cat != null ? cat.getCode() : null;
+		if (Objects.equals(code, medalListenerCode)) {
+			return;
+		}
+		MedalService.getCurrent().unsubscribe(medalListener);
+		medalListener = null;
+		medalListenerCode = code;
+		if (cat == null) {
+			return;
+		}
+		medalListener = (catMedals) -> UIEventProcessor.uiAccess(this, uiEventBus, () -> {
+			Category current = this.getCategory();
+			if (current == null || !code.equals(current.getCode())) {
+				return;
+			}
+			medals = new TreeMap<>();
+			medals.put(current, catMedals);
+			computeMedalsJson(medals);
+		});
+		MedalService.getCurrent().subscribe(cat, medalListener);
+	}
+
 	private void setDisplay() {
 		OwlcmsSession.withFop(fop -> {
 			setBoardMode(fop.getState(), fop.getBreakType(), fop.getCeremonyType(), this.getElement());
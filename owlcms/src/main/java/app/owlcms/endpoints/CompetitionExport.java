@@ -56,9 +56,16 @@ import jakarta.servlet.http.HttpServletResponse;
  * @author Jean-François Lamy
  *
  */
-@WebServlet("/competition/export")
+@WebServlet(urlPatterns = { CompetitionExport.EXPORT, CompetitionExport.EXPORT_COMPRESSED, CompetitionExport.IMPORT })
 public class CompetitionExport extends HttpServlet {
 
+	/** indented JSON */
+	static final String EXPORT = "/competition/export";
+	/** compact JSON, gzip-compressed, for backups */
+	static final String EXPORT_COMPRESSED = "/competition/export.json.gz";
+	/** POST of an export, plain or compressed, replaces the database content */
+	static final String IMPORT = "/competition/import";
+
 	// Helpers (can be refactored to public utility class)
 	// ----------------------------------------
 
@@ -80,17 +87,15 @@ public class CompetitionExport extends HttpServlet {
 	private void processRequest(HttpServletRequest request, HttpServletResponse response, boolean content)
 	        throws IOException {
 		logger.info("processing competition state request");
-		// use proxyutils because this is a plain servlet, not a Vaadin servlet
-		String host = ProxyUtils.getClientIp(request);
-		boolean bd = AccessUtils.checkBackdoor(host);
-		if (!bd) {
-			logger.error("{} not in backdoor list, denied full state access", host);
-			response.setStatus(403);
+		if (!authorized(request, response)) {
+			return;
+		}
+		if (IMPORT.equals(request.getServletPath())) {
+			response.setStatus(405);
 			response.flushBuffer();
 			return;
-		} else {
-			logger.info("{} authorized full state access", host);
 		}
+		boolean compressed = EXPORT_COMPRESSED.equals(request.getServletPath());
 
 		// Prepare and initialize response
 		// --------------------------------------------------------
@@ -99,7 +104,6 @@ public class CompetitionExport extends HttpServlet {
 		response.reset();
 
 		// Prepare streams.
-		InputStream inputStream = null;
 		OutputStream output = null;
 		PrintWriter printWriter = null;
 
@@ -107,12 +111,19 @@ public class CompetitionExport extends HttpServlet {
 			// Open streams.
 			output = response.getOutputStream();
 			printWriter = new PrintWriter(output, true, StandardCharsets.UTF_8);
-			response.setContentType("application/json");
-			response.setCharacterEncoding("UTF-8");
-			
-			inputStream = new CompetitionData().exportData();
-			inputStream.transferTo(output);
-			output.flush();
+			if (compressed) {
+				response.setContentType("application/gzip");
+			} else {
+				response.setContentType("application/json");
+				response.setCharacterEncoding("UTF-8");
+			}
+			if (!content) {
+				response.setStatus(200);
+				response.flushBuffer();
+				return;
+			}
+
+			new CompetitionData().writeData(output, compressed);
 			printWriter.flush();
 
 			response.setStatus(200);
@@ -127,9 +138,21 @@ public class CompetitionExport extends HttpServlet {
 			if (printWriter != null) {
 				printWriter.close();
 			}
-			if (inputStream != null) {
-				inputStream.close();
-			}
+		}
+	}
+
+	private boolean authorized(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		// use proxyutils because this is a plain servlet, not a Vaadin servlet
+		String host = ProxyUtils.getClientIp(request);
+		boolean bd = AccessUtils.checkBackdoor(host);
+		if (!bd) {
+			logger.error("{} not in backdoor list, denied full state access", host);
+			response.setStatus(403);
+			response.flushBuffer();
+			return false;
+		} else {
+			logger.info("{} authorized full state access", host);
+			return true;
 		}
 	}
 
@@ -158,4 +181,30 @@ public class CompetitionExport extends HttpServlet {
 		processRequest(request, response, false);
 	}
 
+	/**
+	 * Restore an export (plain or compressed JSON) sent as the body of the request.
+	 *
+	 * @see HttpServlet#doPost(HttpServletRequest, HttpServletResponse).
+	 */
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response)
+	        throws ServletException, IOException {
+		if (!authorized(request, response)) {
+			return;
+		}
+		if (!IMPORT.equals(request.getServletPath())) {
+			response.setStatus(405);
+			response.flushBuffer();
+			return;
+		}
+		logger.info("processing competition import request");
+		try (InputStream inputStream = request.getInputStream()) {
+			new CompetitionData().restore(inputStream);
+			response.setStatus(200);
+		} catch (Throwable t) {
+			logger.error("{}", LoggerUtils.stackTrace(t));
+			response.sendError(500, LoggerUtils.exceptionMessage(t));
+		}
+	}
+
 }
@@ -21,14 +21,15 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import javax.sound.sampled.LineUnavailableException;
@@ -38,7 +39,6 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 
@@ -49,16 +49,21 @@ import app.owlcms.data.athlete.AthleteRepository;
 import app.owlcms.data.athlete.LiftDefinition;
 import app.owlcms.data.athleteSort.AthleteSorter;
 import app.owlcms.data.athleteSort.Ranking;
+import app.owlcms.data.athleteSort.RankingEngine;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.category.Participation;
 import app.owlcms.data.competition.Competition;
+import app.owlcms.data.competition.MedalService;
+import app.owlcms.data.competition.ResultsModel;
 import app.owlcms.data.config.Config;
 import app.owlcms.data.group.Group;
+import app.owlcms.data.jpa.DataVersion;
 import app.owlcms.data.jpa.JPAService;
 import app.owlcms.data.platform.Platform;
 import app.owlcms.data.records.RecordConfig;
 import app.owlcms.data.records.RecordEvent;
 import app.owlcms.data.records.RecordFilter;
+import app.owlcms.data.records.RecordIndex;
 import app.owlcms.fieldofplay.FOPEvent.BarbellOrPlatesChanged;
 import app.owlcms.fieldofplay.FOPEvent.CeremonyDone;
 import app.owlcms.fieldofplay.FOPEvent.CeremonyStarted;
@@ -89,8 +94,10 @@ import app.owlcms.uievents.JuryDeliberationEventType;
 import app.owlcms.uievents.UIEvent;
 import app.owlcms.uievents.UIEvent.BreakStarted;
 import app.owlcms.uievents.UIEvent.JuryNotification;
-import app.owlcms.utils.DelayTimer;
 import app.owlcms.utils.LoggerUtils;
+import app.owlcms.utils.OrderedEventBus;
+import app.owlcms.utils.Scheduler;
+import app.owlcms.utils.VirtualScheduler;
 import ch.qos.logback.classic.Logger;
 import elemental.json.Json;
 import elemental.json.JsonValue;
@@ -179,10 +186,16 @@ public class FieldOfPlay {
 	final private Logger timingLogger = (Logger) LoggerFactory.getLogger(this.logger.getName() + "_Timing");
 	private EventBus uiEventBus = null;
 	final private Logger uiEventLogger = (Logger) LoggerFactory.getLogger(this.logger.getName() + "_UI");
-	private Thread wakeUpRef;
+	/** set from the timer threads, cancelled from the event threads */
+	private final AtomicReference<Scheduler.Task> wakeUpRef = new AtomicReference<>();
+	private final AtomicInteger wakeUpRefIndex = new AtomicInteger(-1);
+	/** cheap to create, only used in testing mode */
+	private final VirtualScheduler virtualScheduler = new VirtualScheduler();
 	private Integer weightAtLastStart;
 	private int prevWeight;
 	private JsonValue recordsJson;
+	private RenderCache renderCache;
+	private final AtomicLong renderVersion = new AtomicLong();
 	private List<RecordEvent> challengedRecords;
 	private List<RecordEvent> newRecords;
 	private List<RecordEvent> lastChallengedRecords;
@@ -462,6 +475,23 @@ public class FieldOfPlay {
 		return this.recordsJson;
 	}
 
+	/**
+	 * @return the JSON shared by the displays of this field of play
+	 */
+	public synchronized RenderCache getRenderCache() {
+		if (this.renderCache == null) {
+			this.renderCache = new RenderCache(getName() != null ? getName() : "");
+		}
+		return this.renderCache;
+	}
+
+	/**
+	 * @return a number that changes whenever what the displays show may have changed (lifting order, state, group)
+	 */
+	public long getRenderVersion() {
+		return this.renderVersion.get();
+	}
+
 	public Boolean[] getRefereeDecision() {
 		return this.refereeDecision;
 	}
@@ -474,6 +504,16 @@ public class FieldOfPlay {
 		return this.resultsOrder;
 	}
 
+	/**
+	 * @return the scheduler for delayed lifting events; a virtual clock in testing mode
+	 */
+	public Scheduler getScheduler() {
+		if (isTestingMode()) {
+			return this.virtualScheduler;
+		}
+		return Scheduler.getShared();
+	}
+
 	/**
 	 * @return the current state
 	 */
@@ -967,8 +1007,9 @@ public class FieldOfPlay {
 		this.fopEventBus = new EventBus("FOP-" + this.name);
 
 		// we post on these buses
-		this.uiEventBus = new AsyncEventBus("UI-" + this.name, Executors.newCachedThreadPool());
-		this.postBus = new AsyncEventBus("POST-" + this.name, Executors.newCachedThreadPool());
+		// each display gets the events in order, on a bounded pool shared by all platforms
+		this.uiEventBus = new OrderedEventBus("UI-" + this.name);
+		this.postBus = new OrderedEventBus("POST-" + this.name);
 	}
 
 	public boolean isAnnouncerDecisionImmediate() {
@@ -1202,6 +1243,7 @@ public class FieldOfPlay {
 	 */
 	public void setGroup(Group group) {
 		this.group = group;
+		renderChanged();
 	}
 
 	public void setJuryMemberDecision(Boolean[] juryMemberDecision) {
@@ -1213,6 +1255,7 @@ public class FieldOfPlay {
 	 */
 	public void setLeaders(List<Athlete> leaders) {
 		this.leaders = leaders;
+		renderChanged();
 	}
 
 	/**
@@ -1395,10 +1438,21 @@ public class FieldOfPlay {
 	}
 
 	private void cancelWakeUpRef() {
-		if (this.wakeUpRef != null) {
-			this.wakeUpRef.interrupt();
+		Scheduler.Task ref = this.wakeUpRef.getAndSet(null);
+		if (ref != null) {
+			ref.cancel();
+		}
+		endWakeUpRef();
+	}
+
+	/**
+	 * Turn off the reminder for the last referee, if one is showing.
+	 */
+	private void endWakeUpRef() {
+		int lastRef = this.wakeUpRefIndex.getAndSet(-1);
+		if (lastRef != -1) {
+			this.uiEventBus.post(new UIEvent.WakeUpRef(lastRef + 1, false, this));
 		}
-		this.wakeUpRef = null;
 	}
 
 	private Ranking computeResultOrderRanking(boolean groupDone) {
@@ -1504,7 +1558,7 @@ public class FieldOfPlay {
 			recomputeLiftingOrder(true, true);
 
 			// tell ourself to reset after 3 secs.
-			new DelayTimer(isTestingMode()).schedule(() -> {
+			getScheduler().scheduleJob(() -> {
 				// fopEventPost(new DecisionReset(this));
 				if (reversalToGood) {
 					notifyRecords(this.newRecords, true);
@@ -1523,6 +1577,7 @@ public class FieldOfPlay {
 	}
 
 	private void doSetState(FOPState state) {
+		renderChanged();
 		if (state == CURRENT_ATHLETE_DISPLAYED) {
 			Athlete a = getCurAthlete();
 			if (getGroup() != null) {
@@ -1824,15 +1879,9 @@ public class FieldOfPlay {
 		final int reds = nbRed;
 		final int whites = nbWhite;
 		if (nbDecisions == jurySize) {
-			new Thread(() -> {
-				try {
-					// make sure all greens are shown before showing decisions.
-					Thread.sleep(200);
-				} catch (InterruptedException e) {
-				}
-				showJuryMemberDecisionsNow(origin, (reds == jurySize || whites == jurySize), jurySize,
-				        getJuryMemberDecision());
-			}).start();
+			// make sure all greens are shown before showing decisions.
+			getScheduler().schedule(() -> showJuryMemberDecisionsNow(origin, (reds == jurySize || whites == jurySize),
+			        jurySize, getJuryMemberDecision()), 200);
 		}
 	}
 
@@ -1863,36 +1912,29 @@ public class FieldOfPlay {
 		}
 		if (nbDecisions == 2) {
 			// 2 decisions, reminder for last referee
-			this.wakeUpRef = new Thread(() -> {
-				int lastRef = -1;
-				try {
-					// wait a bit. If the decision comes in while waiting, this thread will be
-					// cancelled anyway
-					Thread.sleep(Competition.getCurrent().getRefereeWakeUpDelay());
-					lastRef = ArrayUtils.indexOf(getRefereeDecision(), null);
-					if (lastRef != -1 && !Thread.currentThread().isInterrupted()) {
-						// logger.debug("posting");
-						this.uiEventBus.post(new UIEvent.WakeUpRef(lastRef + 1, true, this));
-					} else {
-						// logger.debug("not posting");
-					}
-					Thread.sleep(WAKEUP_DURATION_MS);
-				} catch (InterruptedException e1) {
-					// ignore interruption, finally handles clean up
-				} finally {
-					// if we are here, either the last ref has entered a decision, or we've
-					// exhausted the reminder
-					// duration
-					// in either case, we turn the reminder off.
-					if (lastRef != -1) {
-						this.uiEventBus.post(new UIEvent.WakeUpRef(lastRef + 1, false, this));
+			// the reminder only concerns the displays, so it runs on the real clock even when testing.
+			Scheduler scheduler = Scheduler.getShared();
+			AtomicReference<Scheduler.Task> reminder = new AtomicReference<>();
+			reminder.set(scheduler.schedule(() -> {
+				// if the decision came in while waiting, this task was cancelled
+				int lastRef = ArrayUtils.indexOf(getRefereeDecision(), null);
+				if (lastRef != -1) {
+					this.wakeUpRefIndex.set(lastRef);
+					this.uiEventBus.post(new UIEvent.WakeUpRef(lastRef + 1, true, this));
+					// turn the reminder off after a while if still no decision, unless it was cancelled meanwhile
+					Scheduler.Task end = scheduler.schedule(this::endWakeUpRef, WAKEUP_DURATION_MS);
+					if (!this.wakeUpRef.compareAndSet(reminder.get(), end)) {
+						end.cancel();
 					}
 				}
-			});
-			this.wakeUpRef.start();
+			}, Competition.getCurrent().getRefereeWakeUpDelay()));
+			Scheduler.Task previous = this.wakeUpRef.getAndSet(reminder.get());
+			if (previous != null) {
+				previous.cancel();
+			}
 		}
 		if (nbDecisions == 3) {
-			if (this.wakeUpRef != null) {
+			if (this.wakeUpRef.get() != null) {
 				cancelWakeUpRef();
 			}
 			setGoodLift(nbWhite >= 2);
@@ -2050,39 +2092,25 @@ public class FieldOfPlay {
 
 		// logger.debug("recompute ranks {}
 		// [{}]",recomputeRanks,LoggerUtils.whereFrom());
-		if (recomputeRanks) {
-			// we update the ranks of affected athletes in the database
-			athletes = JPAService.runInTransaction(em -> {
-				List<Athlete> l = AthleteSorter.assignCategoryRanks(em, g);
-				List<Athlete> nl = new LinkedList<>();
-				try {
-					Competition.getCurrent().globalRankings(em);
-				} catch (Exception e) {
-					this.logger.error("{} global ranking exception {}\n ", getLoggingName(), e,
-					        LoggerUtils.stackTrace(e));
-				}
-				for (Athlete a : l) {
-					nl.add(em.merge(a));
-				}
-				em.flush();
-				return nl;
-			});
-		} else {
-			athletes = JPAService.runInTransaction(em -> {
-				List<Athlete> l = AthleteRepository.findAthletesForGlobalRanking(em, g);
-				List<Athlete> nl = new LinkedList<>();
+		// ranks are maintained incrementally: only the athletes whose lifts changed are
+		// repositioned, and only the athletes whose ranks moved are written.
+		// saves that do not change results stay queued until the next result change.
+		long mark = DataVersion.mark();
+		athletes = JPAService.runInTransaction(em -> {
+			if (recomputeRanks) {
 				try {
-					Competition.getCurrent().globalRankings(em);
+					RankingEngine.getCurrent().updateRanks(em);
 				} catch (Exception e) {
-					this.logger.error("{} global ranking exception {}\n ", getLoggingName(), e,
+					this.logger.error("{} ranking exception {}\n ", getLoggingName(), e,
 					        LoggerUtils.stackTrace(e));
+					RankingEngine.getCurrent().invalidate();
 				}
-				for (Athlete a : l) {
-					nl.add(em.merge(a));
-				}
-				em.flush();
-				return nl;
-			});
+			}
+			return AthleteRepository.findAthletesForGlobalRanking(em, g);
+		});
+		if (recomputeRanks) {
+			ResultsModel.getCurrent().athletesChanged(RankingEngine.getCurrent().getLastUpdated(), mark);
+			MedalService.getCurrent().athletesChanged(RankingEngine.getCurrent().getLastUpdated(), mark);
 		}
 		endAssignRanks = System.nanoTime();
 
@@ -2136,11 +2164,20 @@ public class FieldOfPlay {
 
 	}
 
+	/**
+	 * Displays must recompute their JSON instead of reusing the shared one.
+	 */
+	private void renderChanged() {
+		this.renderVersion.incrementAndGet();
+	}
+
 	private void recomputeRecordsMap(List<Athlete> athletes) {
 		// logger.debug("recompute record map");
 		this.groupRecords.clear();
+		Map<Athlete, List<RecordEvent>> groupDisplayableRecords = RecordFilter
+		        .computeDisplayableRecordsForAthletes(athletes);
 		for (Athlete a : athletes) {
-			List<RecordEvent> displayableRecords = RecordFilter.computeDisplayableRecordsForAthlete(a);
+			List<RecordEvent> displayableRecords = groupDisplayableRecords.get(a);
 			this.displayableRecordsByAthlete.put(a, displayableRecords);
 
 			List<RecordEvent> eligibleRecords = RecordFilter.filterEligibleRecordsForAthlete(a, displayableRecords);
@@ -2264,6 +2301,7 @@ public class FieldOfPlay {
 	 */
 	private void setDisplayOrder(List<Athlete> displayOrder) {
 		this.displayOrder = displayOrder;
+		renderChanged();
 	}
 
 	private synchronized void setDownEmitted(boolean downEmitted) {
@@ -2304,6 +2342,7 @@ public class FieldOfPlay {
 
 	private void setLiftingOrder(List<Athlete> liftingOrder) {
 		this.liftingOrder = liftingOrder;
+		renderChanged();
 	}
 
 	private void setPreviousAthlete(Athlete athlete) {
@@ -2316,6 +2355,7 @@ public class FieldOfPlay {
 
 	private void setResultsOrder(List<Athlete> resultsOrderCopy) {
 		this.resultsOrder = resultsOrderCopy;
+		renderChanged();
 	}
 
 	/**
@@ -2369,7 +2409,8 @@ public class FieldOfPlay {
 		// reversalDelay);
 		assert !isDecisionDisplayScheduled(); // caller checks.
 		setDecisionDisplayScheduled(true); // so there are never two scheduled...
-		new DelayTimer(isTestingMode()).schedule(() -> showDecisionNow(origin2), reversalDelay);
+		// saves the athlete and recomputes the order, not on the timer threads
+		getScheduler().scheduleJob(() -> showDecisionNow(origin2), reversalDelay);
 	}
 
 	/**
@@ -2422,13 +2463,13 @@ public class FieldOfPlay {
 		recomputeLiftingOrder(true, true);
 
 		// control timing of notifications
-		new DelayTimer(isTestingMode()).schedule(
+		getScheduler().scheduleJob(
 		        () -> {
 			        notifyRecords(getNewRecords(), true);
 		        }, 500);
 		// tell ourself to reset after 3 secs.
 		// Decision reset will handle end of group.
-		new DelayTimer(isTestingMode()).schedule(
+		getScheduler().scheduleJob(
 		        () -> {
 			        fopEventPost(new DecisionReset(this));
 		        }, DECISION_VISIBLE_DURATION);
@@ -2678,6 +2719,7 @@ public class FieldOfPlay {
 			warnMissingKg();
 		}
 		recomputeLeadersAndRecords(this.displayOrder);
+		renderChanged();
 
 		// logger.debug("&&&& previous {} current {} change {} from[{}]",
 		// getPrevWeight(), curWeight, newWeight,
@@ -2721,14 +2763,14 @@ public class FieldOfPlay {
 		        downEmitted2);
 		if (emitSoundsOnServer2 && !downEmitted2) {
 			// sound is synchronous, we don't want to wait.
-			new Thread(() -> {
+			Scheduler.getShared().execute(() -> {
 				try {
 					new Sound(getSoundMixer(), "down.wav").emit();
 					// downSignal.emit();
 				} catch (IllegalArgumentException /* | LineUnavailableException */ e) {
 					broadcast("SoundSystemProblem");
 				}
-			}).start();
+			});
 			setDownEmitted(true);
 		}
 		pushOutUIEvent(new UIEvent.DownSignal(origin2));
@@ -2826,6 +2868,7 @@ public class FieldOfPlay {
 				}
 				return null;
 			});
+			RecordIndex.getCurrent().recordsAdded(newRecords);
 			recomputeRecordsMap(this.displayOrder);
 			return newRecords;
 		} else {
@@ -2838,6 +2881,7 @@ public class FieldOfPlay {
 					}
 					return null;
 				});
+				RecordIndex.getCurrent().recordsRemoved(voidableRecords);
 				recomputeRecordsMap(this.displayOrder);
 			}
 			return new ArrayList<>();
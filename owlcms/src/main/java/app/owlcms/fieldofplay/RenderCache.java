@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.fieldofplay;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Logger;
+import elemental.json.JsonValue;
+
+/**
+ * JSON rendered for the displays of a field of play, shared by all the displays that show the same thing.
+ *
+ * Each entry is identified by a variant (the kind of board, the list shown, the locale, and the display options that
+ * change the output) and remembers the {@link FieldOfPlay#getRenderVersion() render version} it was built for. The
+ * first display to ask after a change builds the JSON; the others get the same object, which must therefore be
+ * treated as read-only.
+ *
+ * Hits, misses and build times are published over JMX as <code>app.owlcms:type=RenderCache,name="fop name"</code>
+ *
+ * @author Jean-François Lamy
+ */
+public class RenderCache implements RenderCacheMBean {
+
+	private static class Entry {
+		private final long dataVersion;
+		private final long version;
+		private final JsonValue value;
+
+		private Entry(long version, long dataVersion, JsonValue value) {
+			this.version = version;
+			this.dataVersion = dataVersion;
+			this.value = value;
+		}
+
+		private boolean isCurrent(long version, long dataVersion) {
+			return this.version == version && this.dataVersion == dataVersion;
+		}
+	}
+
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(RenderCache.class);
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong totalBuildNanos = new AtomicLong();
+	private final AtomicLong maxBuildNanos = new AtomicLong();
+	private final String name;
+
+	RenderCache(String name) {
+		this.name = name;
+		registerMBean();
+	}
+
+	/**
+	 * Get the JSON for a variant, building it if the field of play has changed since it was last built.
+	 *
+	 * @param variant identifies everything other than the field of play state that affects the output
+	 * @param version the current render version of the field of play
+	 * @param builder computes the JSON
+	 * @return the shared JSON, not to be modified
+	 */
+	public JsonValue get(String variant, long version, Supplier<JsonValue> builder) {
+		return get(variant, version, 0L, builder);
+	}
+
+	/**
+	 * Get the JSON for a variant that also depends on the other fields of play, such as a competition-wide ranking.
+	 *
+	 * @param variant     identifies everything other than the field of play state that affects the output
+	 * @param version     the current render version of the field of play
+	 * @param dataVersion the current {@link app.owlcms.data.jpa.DataVersion}, changed by every write
+	 * @param builder     computes the JSON
+	 * @return the shared JSON, not to be modified
+	 */
+	public JsonValue get(String variant, long version, long dataVersion, Supplier<JsonValue> builder) {
+		Entry e = this.entries.get(variant);
+		if (e != null && e.isCurrent(version, dataVersion)) {
+			this.hits.incrementAndGet();
+			return e.value;
+		}
+		// concurrent requests for the same variant wait for a single build.
+		e = this.entries.compute(variant, (k, old) -> {
+			if (old != null && old.isCurrent(version, dataVersion)) {
+				this.hits.incrementAndGet();
+				return old;
+			}
+			long start = System.nanoTime();
+			JsonValue value = builder.get();
+			recordBuild(System.nanoTime() - start);
+			return new Entry(version, dataVersion, value);
+		});
+		return e.value;
+	}
+
+	@Override
+	public int getEntryCount() {
+		return this.entries.size();
+	}
+
+	@Override
+	public double getHitRatio() {
+		long h = this.hits.get();
+		long total = h + this.misses.get();
+		return total == 0 ? 0.0D : (double) h / total;
+	}
+
+	@Override
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	@Override
+	public double getMaxBuildMillis() {
+		return this.maxBuildNanos.get() / 1_000_000.0D;
+	}
+
+	@Override
+	public double getMeanBuildMillis() {
+		long n = this.misses.get();
+		return n == 0 ? 0.0D : this.totalBuildNanos.get() / 1_000_000.0D / n;
+	}
+
+	@Override
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Forget all the entries, for example when the field of play is reloaded.
+	 */
+	public void clear() {
+		this.entries.clear();
+	}
+
+	@Override
+	public void resetStatistics() {
+		this.hits.set(0);
+		this.misses.set(0);
+		this.totalBuildNanos.set(0);
+		this.maxBuildNanos.set(0);
+	}
+
+	private void recordBuild(long nanos) {
+		this.misses.incrementAndGet();
+		this.totalBuildNanos.addAndGet(nanos);
+		this.maxBuildNanos.accumulateAndGet(nanos, Math::max);
+		if (logger.isTraceEnabled()) {
+			logger.trace("{} built in {}ms, hit ratio {}", this.name, nanos / 1_000_000.0D, getHitRatio());
+		}
+	}
+
+	private void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("app.owlcms:type=RenderCache,name=" + ObjectName.quote(this.name));
+			if (server.isRegistered(objectName)) {
+				// field of play re-created with the same name
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(this, objectName);
+		} catch (Exception e) {
+			logger.warn("cannot publish metrics for {}: {}", this.name, e.toString());
+		}
+	}
+
+}
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.fieldofplay;
+
+/**
+ * Metrics published over JMX for the {@link RenderCache} of each field of play.
+ */
+public interface RenderCacheMBean {
+
+	public int getEntryCount();
+
+	public double getHitRatio();
+
+	public long getHits();
+
+	public double getMaxBuildMillis();
+
+	public double getMeanBuildMillis();
+
+	public long getMisses();
+
+	public void resetStatistics();
+
+}
@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.slf4j.LoggerFactory;
 
@@ -43,6 +44,7 @@ public class OwlcmsSession {
 	private final static Logger logger = (Logger) LoggerFactory.getLogger(OwlcmsSession.class);
 
 	private static OwlcmsSession owlcmsSessionSingleton = null;
+	private static final ThreadLocal<Locale> threadLocale = new ThreadLocal<>();
 
 	static {
 		logger.setLevel(Level.INFO);
@@ -108,7 +110,11 @@ public class OwlcmsSession {
 	}
 
 	public static Locale getLocale() {
-		Locale locale = (Locale) getAttribute(LOCALE);
+		Locale locale = threadLocale.get();
+		if (locale != null) {
+			return locale;
+		}
+		locale = (Locale) getAttribute(LOCALE);
 		if (locale != null) {
 			return locale;
 		}
@@ -166,6 +172,28 @@ public class OwlcmsSession {
 		setAttribute(REQUESTED_URL, url);
 	}
 
+	/**
+	 * Run code outside of the user's session (for example on a worker thread) with the locale the user had chosen.
+	 *
+	 * @param <T>      the result type
+	 * @param locale   the locale returned by {@link #getLocale()} while the code runs
+	 * @param supplier the code
+	 * @return the result of the code
+	 */
+	public static <T> T withLocale(Locale locale, Supplier<T> supplier) {
+		Locale previous = threadLocale.get();
+		threadLocale.set(locale);
+		try {
+			return supplier.get();
+		} finally {
+			if (previous != null) {
+				threadLocale.set(previous);
+			} else {
+				threadLocale.remove();
+			}
+		}
+	}
+
 	public static void withFop(Consumer<FieldOfPlay> command) {
 		FieldOfPlay fop = getFop();
 		if (fop == null) {
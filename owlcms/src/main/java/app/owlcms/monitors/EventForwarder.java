@@ -6,31 +6,13 @@
  *******************************************************************************/
 package app.owlcms.monitors;
 
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.io.UnsupportedEncodingException;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.NameValuePair;
-import org.apache.http.StatusLine;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.util.EntityUtils;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.eventbus.EventBus;
@@ -66,7 +48,6 @@ import app.owlcms.uievents.UIEvent.SetTime;
 import app.owlcms.uievents.UIEvent.StartTime;
 import app.owlcms.uievents.UIEvent.StopTime;
 import app.owlcms.utils.LoggerUtils;
-import app.owlcms.utils.ResourceWalker;
 import app.owlcms.utils.URLUtils;
 import ch.qos.logback.classic.Logger;
 import elemental.json.Json;
@@ -81,7 +62,6 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 	final private static Logger logger = (Logger) LoggerFactory.getLogger(EventForwarder.class);
 	final private static Logger uiEventLogger = (Logger) LoggerFactory.getLogger("UI" + logger.getName());
 
-	public static final Object singleThreadLock = new Object();
 	private String attempt;
 
 	private String categoryName;
@@ -104,6 +84,7 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 	private JsonValue leaders;
 	private String liftsDone;
 	private EventBus postBus;
+	private PublicResultsSender sender;
 	private int previousHashCode = 0;
 	private long previousMillis = 0L;
 	private JsonArray sattempts;
@@ -111,6 +92,7 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 	private String teamName;
 	private Integer timeAllowed;
 	private JsonObject translationMap;
+	private String translationMapJson;
 	private long translatorResetTimeStamp;
 	private Integer weight;
 	private boolean wideTeamNames;
@@ -124,6 +106,7 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 		// logger.debug("|||| eventForwarder {} {} {}", System.identityHashCode(this),
 		// emittingFop.getName(),System.identityHashCode(emittingFop));
 
+		sender = new PublicResultsSender(getFop().getLoggingName());
 		postBus = getFop().getPostEventBus();
 		postBus.register(this);
 
@@ -140,6 +123,19 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 		pushUpdate();
 	}
 
+	/**
+	 * Build the athlete rows sent to the scoreboards and to publicresults for the current state of the field of play,
+	 * bypassing the render cache. Normally they are computed once per change on the field of play and shared; this
+	 * entry point is meant for measurements.
+	 *
+	 * @param startOrder true for the group in start order, false for the lifting order
+	 * @return the rows, as they are sent
+	 */
+	public JsonValue computeAthletesJson(boolean startOrder) {
+		List<Athlete> liftingOrder = getFop().getLiftingOrder();
+		return getAthletesJson(startOrder ? getFop().getDisplayOrder() : liftingOrder, liftingOrder, startOrder);
+	}
+
 	@Override
 	public void doBreak(UIEvent e) {
 		BreakType breakType = fop.getBreakType();
@@ -452,15 +448,8 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 	}
 
 	protected void setTranslationMap() {
-		JsonObject translations = Json.createObject();
-		Enumeration<String> keys = Translator.getKeys();
-		while (keys.hasMoreElements()) {
-			String curKey = keys.nextElement();
-			if (curKey.startsWith("Scoreboard.")) {
-				translations.put(curKey.replace("Scoreboard.", ""), Translator.translate(curKey));
-			}
-		}
-		setTranslationMap(translations);
+		setTranslationMap(Translator.getSectionJson("Scoreboard."));
+		this.translationMapJson = Translator.getSectionJsonString("Scoreboard.");
 	}
 
 	void setAttempt(String formattedAttempt) {
@@ -502,8 +491,9 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 		setGroupName(computeSecondLine(getFop().getCurAthlete(), group != null ? group.getName() : null));
 		setLiftsDone(Translator.translate("Scoreboard.AttemptsDone", liftsDone));
 		if (displayOrder != null && displayOrder.size() > 0) {
-			setGroupAthletes(getAthletesJson(displayOrder, getFop().getLiftingOrder(), true));
-			setLiftingOrderAthletes(getAthletesJson(getFop().getLiftingOrder(), getFop().getLiftingOrder(), false));
+			setGroupAthletes(getSharedAthletesJson("groupAthletes", displayOrder, getFop().getLiftingOrder(), true));
+			setLiftingOrderAthletes(getSharedAthletesJson("liftingOrderAthletes", getFop().getLiftingOrder(),
+			        getFop().getLiftingOrder(), false));
 		} else {
 			setGroupAthletes(null);
 			setLiftingOrderAthletes(null);
@@ -536,12 +526,12 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 			} else if (groupLeaders.size() > 0) {
 				// null as second argument because we do not highlight current athletes in the
 				// leaderboard
-				setLeaders(getAthletesJson(groupLeaders, null, true));
+				setLeaders(getSharedAthletesJson("leaders", groupLeaders, null, true));
 			} else {
 				// no one has totaled, so we show the snatch leaders
 				if (!fop.isCjStarted()) {
 					if (groupLeaders.size() > 0) {
-						setLeaders(getAthletesJson(groupLeaders, null, true));
+						setLeaders(getSharedAthletesJson("leaders", groupLeaders, null, true));
 					} else {
 						// nothing to show
 						setLeaders(null);
@@ -709,7 +699,7 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 		createRecord(sb);
 
 		// presentation information
-		mapPut(sb, "translationMap", translationMap.toJson());
+		mapPut(sb, "translationMap", translationMapJson);
 		mapPut(sb, "hidden", String.valueOf(hidden));
 		mapPut(sb, "wideTeamNames", String.valueOf(wideTeamNames));
 		mapPut(sb, "sinclairMeet", Boolean.toString(Competition.getCurrent().isSinclair()));
@@ -748,56 +738,6 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 		pushUpdate();
 	}
 
-	private void doPost(String url, Map<String, String> parameters) {
-		HttpPost post = new HttpPost(url);
-		// add request parameters or form parameters
-		List<NameValuePair> urlParameters = new ArrayList<>();
-		parameters.entrySet().stream()
-		        .forEach((e) -> urlParameters.add(new BasicNameValuePair(e.getKey(), e.getValue())));
-
-		boolean done = false;
-		int nbTries = 0;
-		// send post. if the local configuration files are missing, we are sent back a
-		// 412 code.
-		// we send the configuration files as well.
-		while (!done && nbTries <= 1) {
-			try {
-				post.setEntity(new UrlEncodedFormEntity(urlParameters, "UTF-8"));
-				try (CloseableHttpClient httpClient = HttpClients.createDefault();
-				        CloseableHttpResponse response = httpClient.execute(post)) {
-					StatusLine statusLine = response.getStatusLine();
-					Integer statusCode = statusLine != null ? statusLine.getStatusCode() : null;
-					if (statusCode != null && statusCode != 200) {
-						synchronized (singleThreadLock) {
-							if (nbTries == 0 && statusCode != null && statusCode == 412) {
-								logger.error("{}missing remote configuration {} {} {}", getFop().getLoggingName(), url,
-								        statusLine,
-								        LoggerUtils.whereFrom(1));
-								sendConfig(parameters.get("updateKey"));
-								nbTries++;
-							} else {
-								logger.error("{}could not post to {} {} {}", getFop().getLoggingName(), url, statusLine,
-								        LoggerUtils.whereFrom(1));
-								done = true;
-							}
-						}
-					} else {
-						done = true;
-					}
-				} catch (Exception e1) {
-					logger.error("{}could not post to {} {}", getFop().getLoggingName(), url,
-					        LoggerUtils.exceptionMessage(e1));
-					done = true;
-				}
-			} catch (UnsupportedEncodingException e2) {
-				// can't happen.
-				logger.error("{}could not post to {} {}", getFop().getLoggingName(), url,
-				        LoggerUtils.exceptionMessage(e2));
-				done = true;
-			}
-		}
-	}
-
 	private void doUpdate(Athlete a, UIEvent e) {
 		logger.trace("doUpdate {} {}", a, a != null ? a.getAttemptsDone() : null);
 		boolean leaveTopAlone = false;
@@ -984,6 +924,21 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 		return jath;
 	}
 
+	/**
+	 * Same as {@link #getAthletesJson(List, List, boolean)}, computed once per change on the field of play.
+	 *
+	 * @param list identifies the list in the shared cache
+	 */
+	private JsonValue getSharedAthletesJson(String list, List<Athlete> groupAthletes, List<Athlete> liftOrder,
+	        boolean startOrder) {
+		JsonValue json = fop.getRenderCache().get("EventForwarder|" + list + "|" + OwlcmsSession.getLocale(),
+		        fop.getRenderVersion(), () -> getAthletesJson(groupAthletes, liftOrder, startOrder));
+		if (Competition.hasWideTeamNames(groupAthletes)) {
+			setWideTeamNames(true);
+		}
+		return json;
+	}
+
 	/**
 	 * Compute Json string ready to be used by web component template
 	 *
@@ -1105,59 +1060,6 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 		sendPost(updateUrl, createUpdate());
 	}
 
-	private void sendConfig(String updateKey) {
-		String destination = Config.getCurrent().getParamPublicResultsURL() + "/config";
-		// wait for previous send to finish.
-		// no consequences sending it multiple times in a row -- we have no idea why it
-		// is being requested again.
-		synchronized (Config.getCurrent()) {
-			try {
-				logger.info("{}sending config", getFop().getLoggingName());
-				HttpPost post = new HttpPost(destination);
-
-				MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-				builder.addPart("updateKey", new StringBody(updateKey, ContentType.TEXT_PLAIN));
-
-				try {
-					PipedOutputStream out = new PipedOutputStream();
-					PipedInputStream in = new PipedInputStream(out);
-					new Thread(() -> {
-						try {
-							ResourceWalker.zipPublicResultsConfig(out);
-							out.flush();
-							out.close();
-						} catch (Throwable e) {
-							throw new RuntimeException(e);
-						}
-					}).start();
-					builder.addBinaryBody("local", in, ContentType.create("application/zip"), "local.zip");
-				} catch (Exception e) {
-					throw new RuntimeException(e);
-				}
-
-				HttpEntity entity = builder.build();
-
-				post.setEntity(entity);
-				try (CloseableHttpClient httpClient = HttpClients.createDefault();
-				        CloseableHttpResponse response = httpClient.execute(post)) {
-					StatusLine statusLine = response.getStatusLine();
-					Integer statusCode = statusLine != null ? statusLine.getStatusCode() : null;
-					if (statusCode != null && statusCode != 200) {
-						logger.error("{}could not send config to {} {} {}", getFop().getLoggingName(), destination,
-						        statusLine,
-						        LoggerUtils.whereFrom(1));
-					}
-					EntityUtils.toString(response.getEntity());
-				} catch (Exception e1) {
-					logger.error("{}could not send config to {} {}", getFop().getLoggingName(), destination,
-					        LoggerUtils.exceptionMessage(e1));
-				}
-			} catch (Exception e2) {
-				logger.error("{}could not send config to {} {}", getFop().getLoggingName(), destination, e2);
-			}
-		}
-	}
-
 	private void sendPost(String url, Map<String, String> parameters) {
 		// logger.debug("{}posting update {}", getFop().getLoggingName(),
 		// LoggerUtils.whereFrom());
@@ -1166,7 +1068,8 @@ public class EventForwarder implements BreakDisplay, HasBoardMode {
 		// debounce, sometimes several identical updates in a rapid succession
 		// identical updates are ok after 1 sec.
 		if (hashCode != previousHashCode || (deltaMillis > 1000)) {
-			new Thread(() -> doPost(url, parameters)).start();
+			// only the most recent scoreboard state is worth sending
+			sender.enqueue(url, parameters, url.equals(Config.getCurrent().getParamUpdateUrl()));
 
 			previousHashCode = hashCode;
 			previousMillis = System.currentTimeMillis();
@@ -0,0 +1,493 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.monitors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.apache.http.entity.mime.content.StringBody;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.config.Config;
+import app.owlcms.utils.LoggerUtils;
+import app.owlcms.utils.ResourceWalker;
+import ch.qos.logback.classic.Logger;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+
+/**
+ * Sends the updates of one field of play to publicresults.
+ *
+ * All the field of plays share a pooled HTTP client, so connections to publicresults are kept alive instead of being
+ * opened for each post. Each field of play has two queues, each emptied by its own thread: one for the scoreboard
+ * updates and one for the timer and decision events, so that an update being retried after a timeout does not hold
+ * back the clocks. Within a queue, messages arrive in the order they were produced. A scoreboard update replaces any
+ * update for the same URL that has not been sent yet, since only the newest state matters; timer and decision events
+ * are all sent, but a newer event for the same URL stops the retries of an older one.
+ *
+ * Scoreboard updates are sent as gzipped JSON carrying a sequence number. The first update, and any update following
+ * an error, contains the whole state; the others only contain the values that changed, so the translation map and the
+ * athlete tables are only sent when they change. publicresults answers 409 when it detects a gap in the sequence, and
+ * the state is then sent again in full.
+ *
+ * @author Jean-François Lamy
+ */
+public class PublicResultsSender {
+
+	private static class Message {
+		boolean coalesce;
+		long enqueued = System.nanoTime();
+		Map<String, String> parameters;
+		volatile boolean superseded;
+		String url;
+
+		Message(String url, Map<String, String> parameters, boolean coalesce) {
+			this.url = url;
+			this.parameters = parameters;
+			this.coalesce = coalesce;
+		}
+	}
+
+	/**
+	 * A queue emptied by its own thread.
+	 */
+	private class Lane {
+		private volatile Message inFlight;
+		private final String label;
+		private final LinkedBlockingDeque<Message> queue = new LinkedBlockingDeque<>(QUEUE_CAPACITY);
+		private Thread sender;
+
+		Lane(String label) {
+			this.label = label;
+		}
+
+		void add(Message m) {
+			synchronized (this.queue) {
+				Message current = this.inFlight;
+				if (current != null && current.url.equals(m.url)) {
+					// stop retrying an obsolete message
+					current.superseded = true;
+				}
+				if (m.coalesce) {
+					Iterator<Message> it = this.queue.iterator();
+					while (it.hasNext()) {
+						Message old = it.next();
+						if (old.url.equals(m.url)) {
+							old.superseded = true;
+							it.remove();
+							PublicResultsSender.this.coalesced.incrementAndGet();
+						}
+					}
+				}
+				while (!this.queue.offerLast(m)) {
+					// drop the oldest message, the newer ones carry the current state
+					Message old = this.queue.pollFirst();
+					if (old != null) {
+						old.superseded = true;
+						PublicResultsSender.this.dropped.incrementAndGet();
+					}
+				}
+				start();
+			}
+		}
+
+		int size() {
+			return this.queue.size();
+		}
+
+		private void send() {
+			while (!Thread.currentThread().isInterrupted()) {
+				Message m;
+				try {
+					m = this.queue.takeFirst();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				this.inFlight = m;
+				try {
+					if (doPost(m)) {
+						long latency = System.nanoTime() - m.enqueued;
+						PublicResultsSender.this.sent.incrementAndGet();
+						PublicResultsSender.this.totalLatencyNanos.addAndGet(latency);
+						PublicResultsSender.this.maxLatencyNanos.accumulateAndGet(latency, Math::max);
+					} else if (!m.superseded) {
+						PublicResultsSender.this.failed.incrementAndGet();
+					}
+				} catch (Throwable t) {
+					PublicResultsSender.this.failed.incrementAndGet();
+					LoggerUtils.logError(logger, t);
+				} finally {
+					this.inFlight = null;
+				}
+				if (logger.isDebugEnabled()) {
+					logger.debug("{}", PublicResultsSender.this);
+				}
+			}
+		}
+
+		private void start() {
+			if (this.sender == null || !this.sender.isAlive()) {
+				String threadName = "publicresults-" + this.label + "-" + PublicResultsSender.this.name;
+				this.sender = new Thread(this::send, threadName);
+				this.sender.setDaemon(true);
+				this.sender.start();
+			}
+		}
+	}
+
+	/**
+	 * The configuration zip, written straight into the request body by the thread sending the post.
+	 */
+	private static class ConfigZipBody extends AbstractContentBody {
+		ConfigZipBody() {
+			super(ContentType.create("application/zip"));
+		}
+
+		@Override
+		public long getContentLength() {
+			return -1;
+		}
+
+		@Override
+		public String getFilename() {
+			return "local.zip";
+		}
+
+		@Override
+		public String getTransferEncoding() {
+			return MIME.ENC_BINARY;
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			ResourceWalker.zipPublicResultsConfig(out);
+			out.flush();
+		}
+	}
+
+	private static final int[] BACKOFF_MILLIS = { 250, 1000, 2500 };
+	private static final Object configLock = new Object();
+	/** a timer or decision event is useless if it arrives late, do not wait as long as for the updates */
+	private static final RequestConfig EVENT_REQUEST_CONFIG = RequestConfig.custom()
+	        .setConnectTimeout(2000)
+	        .setConnectionRequestTimeout(2000)
+	        .setSocketTimeout(3000)
+	        .build();
+	private static CloseableHttpClient httpClient;
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(PublicResultsSender.class);
+	private static final int MAX_CONNECTIONS = 20;
+	private static final int MAX_CONNECTIONS_PER_ROUTE = 8;
+	private static final int QUEUE_CAPACITY = 100;
+	/** sent back by the publicresults versions that understand the incremental protocol, whatever the status */
+	private static final String PROTOCOL_HEADER = "X-Update-Protocol";
+	private static final String STATE_PROTOCOL_VERSION = "1";
+
+	/**
+	 * @return the HTTP client shared by all the senders
+	 */
+	public static synchronized CloseableHttpClient getHttpClient() {
+		if (httpClient == null) {
+			PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(60, TimeUnit.SECONDS);
+			cm.setMaxTotal(MAX_CONNECTIONS);
+			cm.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+			cm.setValidateAfterInactivity(2000);
+			RequestConfig requestConfig = RequestConfig.custom()
+			        .setConnectTimeout(5000)
+			        .setConnectionRequestTimeout(5000)
+			        .setSocketTimeout(15000)
+			        .build();
+			httpClient = HttpClients.custom()
+			        .setConnectionManager(cm)
+			        .setDefaultRequestConfig(requestConfig)
+			        .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+			        .evictIdleConnections(30, TimeUnit.SECONDS)
+			        .build();
+		}
+		return httpClient;
+	}
+
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final Lane events = new Lane("events");
+	private final AtomicLong failed = new AtomicLong();
+	/** state acknowledged by publicresults, only used by the update lane */
+	private Map<String, String> lastSentState;
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+	private final String name;
+	private final AtomicLong sent = new AtomicLong();
+	/** only used by the update lane */
+	private long sequence;
+	private volatile boolean stateProtocol = true;
+	private final AtomicLong totalLatencyNanos = new AtomicLong();
+	private final Lane updates = new Lane("updates");
+
+	/**
+	 * @param name the name of the field of play, used for the thread name and logging
+	 */
+	public PublicResultsSender(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Queue a form post.
+	 *
+	 * @param url        destination
+	 * @param parameters form parameters
+	 * @param coalesce   true if the message is a complete state, which makes older ones useless
+	 */
+	public void enqueue(String url, Map<String, String> parameters, boolean coalesce) {
+		Message m = new Message(url, parameters, coalesce);
+		(coalesce ? this.updates : this.events).add(m);
+	}
+
+	public long getCoalescedCount() {
+		return this.coalesced.get();
+	}
+
+	public long getDroppedCount() {
+		return this.dropped.get();
+	}
+
+	public long getFailedCount() {
+		return this.failed.get();
+	}
+
+	/**
+	 * @return average time in milliseconds between queueing and the end of the post
+	 */
+	public double getMeanLatencyMillis() {
+		long n = this.sent.get();
+		return n == 0 ? 0.0D : (this.totalLatencyNanos.get() / (double) n) / 1000000.0;
+	}
+
+	public double getMaxLatencyMillis() {
+		return this.maxLatencyNanos.get() / 1000000.0;
+	}
+
+	public int getQueueDepth() {
+		return this.updates.size() + this.events.size();
+	}
+
+	public long getSentCount() {
+		return this.sent.get();
+	}
+
+	/**
+	 * Send the local configuration files (styles, translations) to publicresults. Called when publicresults answers
+	 * 412 because it does not have them.
+	 *
+	 * @param updateKey shared secret
+	 */
+	public void sendConfig(String updateKey) {
+		String destination = Config.getCurrent().getParamPublicResultsURL() + "/config";
+		// wait for previous send to finish.
+		// no consequences sending it multiple times in a row -- we have no idea why it
+		// is being requested again.
+		synchronized (configLock) {
+			try {
+				logger.info("{}sending config", this.name);
+				HttpPost post = new HttpPost(destination);
+
+				MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+				builder.addPart("updateKey", new StringBody(updateKey, ContentType.TEXT_PLAIN));
+				builder.addPart("local", new ConfigZipBody());
+
+				HttpEntity entity = builder.build();
+				post.setEntity(entity);
+				try (CloseableHttpResponse response = getHttpClient().execute(post)) {
+					StatusLine statusLine = response.getStatusLine();
+					Integer statusCode = statusLine != null ? statusLine.getStatusCode() : null;
+					if (statusCode != null && statusCode != 200) {
+						logger.error("{}could not send config to {} {} {}", this.name, destination,
+						        statusLine,
+						        LoggerUtils.whereFrom(1));
+					}
+					EntityUtils.consume(response.getEntity());
+				} catch (Exception e1) {
+					logger.error("{}could not send config to {} {}", this.name, destination,
+					        LoggerUtils.exceptionMessage(e1));
+				}
+			} catch (Exception e2) {
+				logger.error("{}could not send config to {} {}", this.name, destination, e2);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s queue=%d sent=%d coalesced=%d dropped=%d failed=%d latency avg=%.1fms max=%.1fms",
+		        this.name, getQueueDepth(), getSentCount(), getCoalescedCount(), getDroppedCount(), getFailedCount(),
+		        getMeanLatencyMillis(), getMaxLatencyMillis());
+	}
+
+	/**
+	 * Build the body for a state update: the whole state if publicresults does not have a previous state we can rely
+	 * on, otherwise only the values that changed since the last update that was acknowledged. The JSON is gzipped.
+	 */
+	private HttpPost buildStatePost(Message m) throws IOException {
+		boolean full = this.lastSentState == null;
+		long seq = ++this.sequence;
+
+		JsonObject values = Json.createObject();
+		for (Entry<String, String> e : m.parameters.entrySet()) {
+			if (full || !Objects.equals(e.getValue(), this.lastSentState.get(e.getKey()))) {
+				values.put(e.getKey(), e.getValue());
+			}
+		}
+		JsonArray removed = Json.createArray();
+		if (!full) {
+			for (String key : this.lastSentState.keySet()) {
+				if (!m.parameters.containsKey(key)) {
+					removed.set(removed.length(), key);
+				}
+			}
+		}
+		JsonObject payload = Json.createObject();
+		payload.put("protocol", STATE_PROTOCOL_VERSION);
+		payload.put("updateKey", m.parameters.get("updateKey"));
+		payload.put("fop", m.parameters.get("fop"));
+		payload.put("seq", seq);
+		payload.put("full", full);
+		payload.put("values", values);
+		payload.put("removed", removed);
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+			gz.write(payload.toJson().getBytes(StandardCharsets.UTF_8));
+		}
+		HttpPost post = new HttpPost(m.url);
+		post.setHeader("Content-Encoding", "gzip");
+		post.setEntity(new ByteArrayEntity(bos.toByteArray(), ContentType.APPLICATION_JSON));
+		if (logger.isTraceEnabled()) {
+			logger.trace("{}seq={} full={} changed={} removed={} bytes={}", this.name, seq, full, values.keys().length,
+			        removed.length(), bos.size());
+		}
+		return post;
+	}
+
+	private HttpPost buildFormPost(Message m) {
+		List<NameValuePair> urlParameters = new ArrayList<>();
+		m.parameters.entrySet().stream()
+		        .forEach((e) -> urlParameters.add(new BasicNameValuePair(e.getKey(), e.getValue())));
+		HttpPost post = new HttpPost(m.url);
+		post.setEntity(new UrlEncodedFormEntity(urlParameters, StandardCharsets.UTF_8));
+		if (!m.coalesce) {
+			post.setConfig(EVENT_REQUEST_CONFIG);
+		}
+		return post;
+	}
+
+	/**
+	 * Post the message, retrying with increasing delays if publicresults cannot be reached.
+	 *
+	 * @return true if the message was delivered
+	 */
+	private boolean doPost(Message m) throws IOException {
+		boolean configSent = false;
+		boolean resynced = false;
+		int attempt = 0;
+		while (true) {
+			if (m.superseded) {
+				return false;
+			}
+			boolean statePost = m.coalesce && this.stateProtocol;
+			HttpPost post = statePost ? buildStatePost(m) : buildFormPost(m);
+			Integer statusCode = null;
+			StatusLine statusLine = null;
+			boolean knowsProtocol = false;
+			try (CloseableHttpResponse response = getHttpClient().execute(post)) {
+				statusLine = response.getStatusLine();
+				statusCode = statusLine != null ? statusLine.getStatusCode() : null;
+				knowsProtocol = response.containsHeader(PROTOCOL_HEADER);
+				// consume the body so the connection goes back to the pool
+				EntityUtils.consume(response.getEntity());
+			} catch (IOException e1) {
+				logger.warn("{}could not post to {} {}", this.name, m.url, LoggerUtils.exceptionMessage(e1));
+			}
+
+			if (statePost && (statusCode == null || statusCode != 200)) {
+				// we cannot know what publicresults has, next update must be complete.
+				this.lastSentState = null;
+			}
+
+			if (statusCode != null && statusCode == 200) {
+				if (statePost) {
+					this.lastSentState = m.parameters;
+				}
+				return true;
+			} else if (statusCode != null && statusCode == 409 && statePost && !resynced) {
+				// publicresults missed an update or restarted, send everything.
+				logger.info("{}resynchronizing {}", this.name, m.url);
+				resynced = true;
+				continue;
+			} else if (statusCode != null && statusCode == 412 && !configSent) {
+				// the local configuration files are missing, send them and try again.
+				logger.error("{}missing remote configuration {} {}", this.name, m.url, statusLine);
+				sendConfig(m.parameters.get("updateKey"));
+				configSent = true;
+				continue;
+			} else if (statePost && statusCode != null && (statusCode == 404 || statusCode == 415
+			        || ((statusCode == 400 || statusCode == 401) && !knowsProtocol))) {
+				// older publicresults only understands form posts, and denies a JSON body for lack of an updateKey
+				// parameter. A current one marks its answers, so a wrong updateKey is reported as such below.
+				logger.warn("{}{} does not accept incremental updates ({}), using form posts", this.name, m.url,
+				        statusLine);
+				this.stateProtocol = false;
+				continue;
+			} else if (statusCode != null && statusCode < 500) {
+				// the request is refused, sending it again will not help
+				logger.error("{}could not post to {} {}", this.name, m.url, statusLine);
+				return false;
+			}
+
+			if (attempt >= BACKOFF_MILLIS.length) {
+				logger.error("{}giving up posting to {} after {} attempts", this.name, m.url, attempt + 1);
+				return false;
+			}
+			try {
+				Thread.sleep(BACKOFF_MILLIS[attempt]);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			attempt++;
+		}
+	}
+
+}
@@ -2,7 +2,6 @@ package app.owlcms.nui.displays;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
 
 import org.slf4j.LoggerFactory;
 
@@ -22,6 +21,7 @@ import app.owlcms.data.group.Group;
 import app.owlcms.fieldofplay.FieldOfPlay;
 import app.owlcms.init.OwlcmsSession;
 import app.owlcms.nui.shared.SafeEventBusRegistration;
+import app.owlcms.utils.Scheduler;
 import ch.qos.logback.classic.Logger;
 
 @SuppressWarnings("serial")
@@ -34,7 +34,7 @@ public abstract class AbstractDisplayPage extends Div implements DisplayParamete
 	private boolean darkMode;
 	private QueryParameters defaultParameters;
 	private Dialog dialog;
-	private Timer dialogTimer;
+	private Scheduler.Task dialogTimer;
 	private Location location;
 	private UI locationUI;
 	private boolean showInitialDialog;
@@ -89,7 +89,7 @@ public abstract class AbstractDisplayPage extends Div implements DisplayParamete
 	}
 
 	@Override
-	final public Timer getDialogTimer() {
+	final public Scheduler.Task getDialogTimer() {
 		return dialogTimer;
 	}
 
@@ -219,7 +219,7 @@ public abstract class AbstractDisplayPage extends Div implements DisplayParamete
 	}
 
 	@Override
-	final public void setDialogTimer(Timer dialogTimer) {
+	final public void setDialogTimer(Scheduler.Task dialogTimer) {
 		this.dialogTimer = dialogTimer;
 	}
 
@@ -29,7 +29,6 @@ import com.vaadin.flow.router.Route;
 import app.owlcms.apputils.DebugUtils;
 import app.owlcms.components.GroupCategorySelectionMenu;
 import app.owlcms.data.category.Category;
-import app.owlcms.data.competition.Competition;
 import app.owlcms.data.group.Group;
 import app.owlcms.data.group.GroupRepository;
 import app.owlcms.displays.video.StreamingEventMonitor;
@@ -180,7 +179,6 @@ public class VideoNavigationContent extends BaseNavigationContent
 	}
 
 	private void selectVideoContext(Group g, Category c, FieldOfPlay fop) {
-		Competition.getCurrent().computeMedals(g);
 		fop.setVideoGroup(g);
 		fop.setVideoCategory(c);
 		setMedalGroup(g);
@@ -47,7 +47,7 @@ public class CompetitionContent extends Composite<VerticalLayout>
 	public CompetitionContent() {
 		initLoggers();
 		factory = createFormFactory();
-		Component form = factory.buildNewForm(CrudOperation.UPDATE, Competition.getCurrent(), false, null, event -> {
+		Component form = factory.buildNewForm(CrudOperation.UPDATE, Competition.getCurrentForEditing(), false, null, event -> {
 		});
 		fillH(form, getContent());
 	}
@@ -80,7 +80,7 @@ public class CompetitionContent extends Composite<VerticalLayout>
 	@Override
 	public Collection<Competition> findAll() {
 		ArrayList<Competition> arrayList = new ArrayList<>();
-		arrayList.add(Competition.getCurrent());
+		arrayList.add(Competition.getCurrentForEditing());
 		return arrayList;
 	}
 
@@ -57,7 +57,7 @@ public class ConfigContent extends Composite<VerticalLayout>
 			LoggerUtils.logError(logger, e);
 		}
 		factory = createFormFactory();
-		Component form = factory.buildNewForm(CrudOperation.UPDATE, Config.getCurrent(), false, null, event -> {
+		Component form = factory.buildNewForm(CrudOperation.UPDATE, Config.getCurrentForEditing(), false, null, event -> {
 		});
 		fillH(form, getContent());
 	}
@@ -90,7 +90,7 @@ public class ConfigContent extends Composite<VerticalLayout>
 	@Override
 	public Collection<Config> findAll() {
 		ArrayList<Config> arrayList = new ArrayList<>();
-		arrayList.add(Config.getCurrent());
+		arrayList.add(Config.getCurrentForEditing());
 		return arrayList;
 	}
 
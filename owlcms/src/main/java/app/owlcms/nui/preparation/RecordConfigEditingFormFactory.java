@@ -135,7 +135,7 @@ public class RecordConfigEditingFormFactory extends OwlcmsCrudFormFactory<Record
 
 	@Override
 	public Collection<RecordConfig> findAll() {
-		return Arrays.asList(RecordConfig.getCurrent());
+		return Arrays.asList(RecordConfig.getCurrentForEditing());
 	}
 
 	@Override
@@ -218,7 +218,7 @@ public class RecordConfigEditingFormFactory extends OwlcmsCrudFormFactory<Record
 		Component title = createTitle("Records.OfficialSection");
 
 		loadedField = new LoadedRecordsField(() -> {
-			RecordConfig current = RecordConfig.getCurrent();
+			RecordConfig current = RecordConfig.getCurrentForEditing();
 			current.addMissing(RecordRepository.findAllRecordNames());
 			ofBinding.read(current);
 		});
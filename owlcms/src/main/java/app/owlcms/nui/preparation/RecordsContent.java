@@ -48,7 +48,7 @@ public class RecordsContent extends Composite<VerticalLayout>
 	public RecordsContent() {
 		initLoggers();
 		factory = createFormFactory();
-		RecordConfig current = RecordConfig.getCurrent();
+		RecordConfig current = RecordConfig.getCurrentForEditing();
 		current.addMissing(RecordRepository.findAllRecordNames());
 		Component form = factory.buildNewForm(CrudOperation.UPDATE, current, false, null, event -> {
 		});
@@ -83,7 +83,7 @@ public class RecordsContent extends Composite<VerticalLayout>
 	@Override
 	public Collection<RecordConfig> findAll() {
 		ArrayList<RecordConfig> arrayList = new ArrayList<>();
-		arrayList.add(RecordConfig.getCurrent());
+		arrayList.add(RecordConfig.getCurrentForEditing());
 		return arrayList;
 	}
 
@@ -59,6 +59,7 @@ import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.athlete.AthleteRepository;
 import app.owlcms.data.athlete.Gender;
 import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.athleteSort.RankingEngine;
 import app.owlcms.data.category.AgeDivision;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.category.CategoryRepository;
@@ -843,8 +844,10 @@ public class RegistrationContent extends BaseContent implements CrudListener<Ath
 				em.merge(a);
 			}
 			em.flush();
+			Competition.getCurrent().setRankingsInvalid(true);
 			return null;
 		});
+		RankingEngine.getCurrent().invalidate();
 	}
 
 	private void deleteAthletes() {
@@ -854,8 +857,10 @@ public class RegistrationContent extends BaseContent implements CrudListener<Ath
 				em.remove(a);
 			}
 			em.flush();
+			Competition.getCurrent().setRankingsInvalid(true);
 			return null;
 		});
+		RankingEngine.getCurrent().invalidate();
 		refreshCrudGrid();
 	}
 
@@ -884,8 +889,11 @@ public class RegistrationContent extends BaseContent implements CrudListener<Ath
 				em.merge(a);
 			}
 			em.flush();
+			Competition.getCurrent().setRankingsInvalid(true);
 			return null;
 		});
+		// lot numbers break ties
+		RankingEngine.getCurrent().invalidate();
 		refreshCrudGrid();
 	}
 
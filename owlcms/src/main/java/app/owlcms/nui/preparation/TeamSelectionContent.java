@@ -539,7 +539,8 @@ public class TeamSelectionContent extends BaseContent
 			xlsWriter.setAgeDivision(ageDivisionValue);
 			finalPackage.getElement().setAttribute("download",
 			        "results" + (getAgeDivision() != null ? "_" + getAgeDivision().name()
-			                : (ageGroupPrefix != null ? "_" + ageGroupPrefix : "_all")) + ".xls");
+			                : (ageGroupPrefix != null ? "_" + ageGroupPrefix : "_all"))
+			                + (xlsWriter.isStreaming() ? ".xlsx" : ".xls"));
 
 			String value = notEmpty ? first : null;
 			// logger.debug("setting prefix to {}", value);
@@ -566,7 +567,8 @@ public class TeamSelectionContent extends BaseContent
 			xlsWriter.setAgeGroupPrefix(ageGroupPrefix);
 			finalPackage.getElement().setAttribute("download",
 			        "results" + (getAgeDivision() != null ? "_" + getAgeDivision().name()
-			                : (ageGroupPrefix != null ? "_" + ageGroupPrefix : "_all")) + ".xls");
+			                : (ageGroupPrefix != null ? "_" + ageGroupPrefix : "_all"))
+			                + (xlsWriter.isStreaming() ? ".xlsx" : ".xls"));
 
 			if (crudGrid != null) {
 				crudGrid.refreshGrid();
@@ -11,8 +11,6 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +55,7 @@ import app.owlcms.nui.shared.RequireLogin;
 import app.owlcms.nui.shared.SafeEventBusRegistration;
 import app.owlcms.uievents.UIEvent;
 import app.owlcms.utils.LoggerUtils;
+import app.owlcms.utils.Scheduler;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 
@@ -70,21 +69,6 @@ import ch.qos.logback.classic.Logger;
 public class RefContent extends BaseContent implements FOPParametersReader, SafeEventBusRegistration,
         UIEventProcessor, HasDynamicTitle, RequireLogin, BeforeEnterListener {
 
-	private class DelayTimer {
-		private final Timer t = new Timer();
-
-		public TimerTask schedule(final Runnable r, long delay) {
-			final TimerTask task = new TimerTask() {
-				@Override
-				public void run() {
-					r.run();
-				}
-			};
-			t.schedule(task, delay);
-			return task;
-		}
-	}
-
 	final private static Logger logger = (Logger) LoggerFactory.getLogger(RefContent.class);
 	private static final String REF_INDEX = "num";
 	final private static Logger uiEventLogger = (Logger) LoggerFactory.getLogger("UI" + logger.getName());
@@ -257,10 +241,10 @@ public class RefContent extends BaseContent implements FOPParametersReader, Safe
 			topWrapper.add(juryRow);
 
 			UI currentUI = UI.getCurrent();
-			new DelayTimer().schedule(() -> currentUI.access(() -> {
+			Scheduler.getShared().schedule(() -> currentUI.access(() -> {
 				beeper.beep();
 			}), 1000);
-			new DelayTimer().schedule(() -> currentUI.access(() -> {
+			Scheduler.getShared().schedule(() -> currentUI.access(() -> {
 				beeper.reset();
 				topWrapper.removeAll();
 				topWrapper.add(topRow);
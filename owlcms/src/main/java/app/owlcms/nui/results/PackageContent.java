@@ -51,6 +51,7 @@ import app.owlcms.data.category.AgeDivision;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.category.CategoryRepository;
 import app.owlcms.data.competition.Competition;
+import app.owlcms.data.competition.ResultsModel;
 import app.owlcms.data.group.Group;
 import app.owlcms.data.group.GroupRepository;
 import app.owlcms.fieldofplay.FieldOfPlay;
@@ -160,8 +161,8 @@ public class PackageContent extends AthleteGridContent implements HasDynamicTitl
 	 */
 	@Override
 	public Collection<Athlete> findAll() {
-		Competition competition = Competition.getCurrent();
-		HashMap<String, Object> beans = competition.computeReportingInfo(ageGroupPrefix, ageDivision);
+		// only the category rankings are needed, team and global rankings are not computed
+		ResultsModel.View results = ResultsModel.getCurrent().getView(ageGroupPrefix, ageDivision);
 
 		// String suffix = (getAgeGroupPrefix() != null) ? getAgeGroupPrefix() :
 		// getAgeDivision().name();
@@ -170,8 +171,7 @@ public class PackageContent extends AthleteGridContent implements HasDynamicTitl
 		// Ranking.TOTAL, false);
 
 		String key = "mwTot";
-		@SuppressWarnings("unchecked")
-		List<Athlete> ranked = (List<Athlete>) beans.get(key);
+		List<Athlete> ranked = results.getList(key);
 		if (ranked == null || ranked.isEmpty()) {
 			return new ArrayList<>();
 		}
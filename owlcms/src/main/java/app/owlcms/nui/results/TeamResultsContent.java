@@ -521,7 +521,8 @@ public class TeamResultsContent extends BaseContent
 			xlsWriter.setAgeDivision(ageDivisionValue);
 			finalPackage.getElement().setAttribute("download",
 			        "results" + (getAgeDivision() != null ? "_" + getAgeDivision().name()
-			                : (ageGroupPrefix != null ? "_" + ageGroupPrefix : "_all")) + ".xls");
+			                : (ageGroupPrefix != null ? "_" + ageGroupPrefix : "_all"))
+			                + (xlsWriter.isStreaming() ? ".xlsx" : ".xls"));
 
 			String value = notEmpty ? first : null;
 			// logger.debug("setting prefix to {}", value);
@@ -548,7 +549,8 @@ public class TeamResultsContent extends BaseContent
 			xlsWriter.setAgeGroupPrefix(ageGroupPrefix);
 			finalPackage.getElement().setAttribute("download",
 			        "results" + (getAgeDivision() != null ? "_" + getAgeDivision().name()
-			                : (ageGroupPrefix != null ? "_" + ageGroupPrefix : "_all")) + ".xls");
+			                : (ageGroupPrefix != null ? "_" + ageGroupPrefix : "_all"))
+			                + (xlsWriter.isStreaming() ? ".xlsx" : ".xls"));
 
 			if (crudGrid != null) {
 				crudGrid.refreshGrid();
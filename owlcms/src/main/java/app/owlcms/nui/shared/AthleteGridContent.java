@@ -12,7 +12,6 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
 import java.util.stream.Collectors;
 
 import org.slf4j.LoggerFactory;
@@ -93,6 +92,7 @@ import app.owlcms.uievents.UIEvent;
 import app.owlcms.utils.IdUtils;
 import app.owlcms.utils.LoggerUtils;
 import app.owlcms.utils.NaturalOrderComparator;
+import app.owlcms.utils.Scheduler;
 import app.owlcms.utils.URLUtils;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
@@ -566,7 +566,7 @@ BreakDisplay {
 	}
 
 	@Override
-	public void setDialogTimer(Timer timer) {
+	public void setDialogTimer(Scheduler.Task timer) {
 	}
 
 	public void setFirstNameWrapper(H3 firstNameWrapper) {
@@ -62,7 +62,7 @@ public class DownloadButtonFactory {
 			        LocalDateTime now = LocalDateTime.now().withNano(0);
 			        return prefix
 			                + "_" + now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH'h'mm';'ss"))
-			                + ".xls";
+			                + (xlsSource.isStreaming() ? ".xlsx" : ".xls");
 		        },
 		        xlsSource);
 
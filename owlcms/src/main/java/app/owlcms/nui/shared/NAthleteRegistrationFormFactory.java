@@ -79,7 +79,6 @@ import app.owlcms.data.competition.Competition;
 import app.owlcms.data.config.Config;
 import app.owlcms.data.group.Group;
 import app.owlcms.data.group.GroupRepository;
-import app.owlcms.data.jpa.JPAService;
 import app.owlcms.displays.athletecard.AthleteCard;
 import app.owlcms.i18n.Translator;
 import app.owlcms.init.OwlcmsSession;
@@ -140,9 +139,8 @@ public final class NAthleteRegistrationFormFactory extends OwlcmsCrudFormFactory
 	 */
 	@Override
 	public Athlete add(Athlete athlete) {
-		Athlete nAthlete = JPAService.runInTransaction((em) -> {
-			return em.merge(athlete);
-		});
+		// go through the repository so the rankings and results take the new athlete into account
+		Athlete nAthlete = AthleteRepository.save(athlete);
 		enablePrint(nAthlete);
 		return nAthlete;
 	}
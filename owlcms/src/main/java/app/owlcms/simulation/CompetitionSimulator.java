@@ -12,6 +12,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.ObjectUtils;
@@ -51,8 +52,22 @@ public class CompetitionSimulator {
 	}
 
 	public String runSimulation() throws InterruptedException {
-		Competition.getCurrent().setSimulation(true);
 		logger.setLevel(Level.DEBUG);
+		startSimulators(FOPSimulator::new);
+		return "simulation done.";
+	}
+
+	/**
+	 * Clear the lifts, weigh-in the athletes if needed, spread the groups over the platforms and start one simulator
+	 * per field of play. Returns once the simulators are started.
+	 *
+	 * @param simulatorFactory creates the simulator for a field of play, given its groups in order
+	 * @return the simulators
+	 * @throws InterruptedException
+	 */
+	public List<FOPSimulator> startSimulators(BiFunction<FieldOfPlay, List<Group>, FOPSimulator> simulatorFactory)
+	        throws InterruptedException {
+		Competition.getCurrent().setSimulation(true);
 
 		Map<Platform, List<Group>> groupsByPlatform = new TreeMap<>();
 		List<Platform> ps = PlatformRepository.findAll().stream().collect(Collectors.toList());
@@ -110,11 +125,14 @@ public class CompetitionSimulator {
 
 		for (Platform p : ps) {
 			FieldOfPlay f = OwlcmsFactory.getFOPByName(p.getName());
-			FOPSimulator fopSimulator = new FOPSimulator(f, groupsByPlatform.get(p));
+			FOPSimulator fopSimulator = simulatorFactory.apply(f, groupsByPlatform.get(p));
 			registeredSimulators.add(fopSimulator);
-			fopSimulator.go();
 		}
-		return "simulation done.";
+		List<FOPSimulator> simulators = new ArrayList<>(registeredSimulators);
+		for (FOPSimulator s : simulators) {
+			s.go();
+		}
+		return simulators;
 	}
 
 	private void clearLifts() {
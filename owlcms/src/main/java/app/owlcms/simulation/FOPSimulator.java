@@ -31,6 +31,10 @@ import ch.qos.logback.classic.Logger;
  * possible to create as many real browser windows as required to observe the
  * updates taking place.
  *
+ * Delays go through the scheduler of the field of play; when it is in testing
+ * mode, they are on a virtual clock and the meet runs as fast as the server can
+ * process it.
+ *
  * @author Jean-François Lamy
  *
  */
@@ -38,6 +42,8 @@ public class FOPSimulator {
 
 	static private Random r = new Random(0);
 
+	private boolean finished;
+
 	private FieldOfPlay fop;
 
 	private boolean groupDone;
@@ -72,18 +78,16 @@ public class FOPSimulator {
 	public void slaveDecisionReset(UIEvent.DecisionReset e) throws InterruptedException {
 		uiEventLogger.debug("### {} {} {} {}", this.getClass().getSimpleName(), e.getClass().getSimpleName(),
 		        this.getOrigin(), e.getOrigin());
-		new Thread(() -> {
-			if (groupDone) {
-				if (groups.size() > 0) {
-					groups.remove(0);
-					startNextGroup(groups);
-				} else {
-					return;
-				}
+		if (groupDone) {
+			if (groups.size() > 0) {
+				groups.remove(0);
+				startNextGroup(groups);
 			} else {
-				doNextAthleteWithDeclaration(e);
+				return;
 			}
-		}).start();
+		} else {
+			doNextAthleteWithDeclaration(e);
+		}
 	}
 
 	@Subscribe
@@ -99,17 +103,11 @@ public class FOPSimulator {
 		        this.getOrigin(), e.getOrigin());
 		// note that the group is done.
 		groupDone = false; // WAS true
-		new Thread(() -> {
-			logger.info("########## group {} done", e.getGroup());
-			if (groups.size() > 0) {
-				if (groups.get(0).getName().contentEquals(e.getGroup().getName())) {
-					groups.remove(0);
-				}
-				startNextGroup(groups);
-			} else {
-				return;
-			}
-		}).start();
+		logger.info("########## group {} done", e.getGroup());
+		if (groups.size() > 0 && groups.get(0).getName().contentEquals(e.getGroup().getName())) {
+			groups.remove(0);
+		}
+		startNextGroup(groups);
 	}
 
 	@Subscribe
@@ -131,7 +129,7 @@ public class FOPSimulator {
 	public void slaveStartLifting(UIEvent.StartLifting e) throws InterruptedException {
 		uiEventLogger.debug("### {} {} {} {}", this.getClass().getSimpleName(), e.getClass().getSimpleName(),
 		        this.getOrigin(), e.getOrigin());
-		new Thread(() -> doNextAthlete(e)).start();
+		doNextAthlete(e);
 	}
 
 	@Subscribe
@@ -143,7 +141,7 @@ public class FOPSimulator {
 	public void slaveSwitchGroup(UIEvent.SwitchGroup e) throws InterruptedException {
 		uiEventLogger.debug("### {} {} {} {}", this.getClass().getSimpleName(), e.getClass().getSimpleName(),
 		        this.getOrigin(), e.getOrigin());
-		new Thread(() -> doSwitchGroup(e)).start();
+		fop.getScheduler().execute(() -> doSwitchGroup(e));
 	}
 
 	public void unregister() {
@@ -180,19 +178,14 @@ public class FOPSimulator {
 		List<Athlete> order = fop.getLiftingOrder();
 		Athlete athlete = order.size() > 0 ? order.get(0) : null;
 
-		try {
-			Thread.sleep(1000);
-		} catch (InterruptedException e1) {
-		}
-		doLift(athlete);
+		fop.getScheduler().scheduleJob(() -> doLift(athlete), 1000);
 	}
 
 	private void doNextAthleteWithDeclaration(UIEvent e) {
-		try {
-			Thread.sleep(2000);
-		} catch (InterruptedException e1) {
-		}
+		fop.getScheduler().scheduleJob(() -> doDeclarationAndLift(), 2000);
+	}
 
+	private void doDeclarationAndLift() {
 		List<Athlete> order = fop.getLiftingOrder();
 		Athlete athlete = order.size() > 0 ? order.get(0) : null;
 		if (athlete == null) {
@@ -250,25 +243,47 @@ public class FOPSimulator {
 		if (curGs != null && curGs.size() > 0) {
 			Group g = curGs.get(0);
 			logger.info("########## waiting to start group {} of {}", g, curGs);
-			try {
-				Thread.sleep(6000);
-			} catch (InterruptedException e) {
-			}
-			logger.info("{}########## switching to group {} of {}", fop.getLoggingName(), g, curGs);
-			fop.fopEventPost(new FOPEvent.SwitchGroup(g, this));
-			logger.info("{}########## starting group {}", fop.getLoggingName(), g);
-			groupDone = false;
-			fop.fopEventPost(new FOPEvent.StartLifting(this));
+			fop.getScheduler().scheduleJob(() -> {
+				logger.info("{}########## switching to group {} of {}", fop.getLoggingName(), g, curGs);
+				fop.fopEventPost(new FOPEvent.SwitchGroup(g, this));
+				logger.info("{}########## starting group {}", fop.getLoggingName(), g);
+				groupDone = false;
+				fop.fopEventPost(new FOPEvent.StartLifting(this));
+			}, 6000);
 
 			return true;
 		} else {
+			if (!finished) {
+				finished = true;
+				doFinished();
+			}
 			return false;
 		}
 	}
 
+	/**
+	 * The three referees give their decision.
+	 */
+	protected void doDecisions() {
+		fop.fopEventPost(new FOPEvent.DecisionUpdate(this, 0, goodLift(r)));
+		fop.fopEventPost(new FOPEvent.DecisionUpdate(this, 1, goodLift(r)));
+		fop.fopEventPost(new FOPEvent.DecisionUpdate(this, 2, goodLift(r)));
+	}
+
 	protected void doEmpty() {
 	}
 
+	/**
+	 * Called once, when there are no more groups to run on the platform.
+	 */
+	protected void doFinished() {
+		logger.info("{}########## all groups done", fop.getLoggingName());
+	}
+
+	protected FieldOfPlay getFop() {
+		return fop;
+	}
+
 	protected void doLift(Athlete a) {
 		if (a == null) {
 			doEmpty();
@@ -283,21 +298,12 @@ public class FOPSimulator {
 		fop.fopEventPost(new FOPEvent.TimeStarted(this));
 
 		// wait for clock to run down a bit
-		try {
-			Thread.sleep(2000);
-		} catch (InterruptedException e) {
-		}
-
-		// stop time and get decisions
-		fop.fopEventPost(new FOPEvent.TimeStopped(this));
-		// wait for clock to run down a bit
-		try {
-			Thread.sleep(1000);
-		} catch (InterruptedException e) {
-		}
-		fop.fopEventPost(new FOPEvent.DecisionUpdate(this, 0, goodLift(r)));
-		fop.fopEventPost(new FOPEvent.DecisionUpdate(this, 1, goodLift(r)));
-		fop.fopEventPost(new FOPEvent.DecisionUpdate(this, 2, goodLift(r)));
+		fop.getScheduler().scheduleJob(() -> {
+			// stop time and get decisions
+			fop.fopEventPost(new FOPEvent.TimeStopped(this));
+			// wait for clock to run down a bit
+			fop.getScheduler().scheduleJob(() -> doDecisions(), 1000);
+		}, 2000);
 	}
 
 	Object getOrigin() {
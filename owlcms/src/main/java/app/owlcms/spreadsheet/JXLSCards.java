@@ -53,6 +53,11 @@ public class JXLSCards extends JXLSWorkbookStreamSource {
 		}
 	}
 
+	@Override
+	protected boolean isStreamingCandidate() {
+		return true;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -156,6 +156,13 @@ public class JXLSCompetitionBook extends JXLSWorkbookStreamSource {
 		return null;
 	}
 
+	@Override
+	protected boolean isStreamingCandidate() {
+		// the fixed size collections are then produced like any other loop.
+		// the shipped templates use jxls formulas in the team sheets and are not streamed, see StreamingWorkbookWriter
+		return true;
+	}
+
 	/*
 	 * team result sheets need columns hidden, print area fixed
 	 *
@@ -188,11 +195,11 @@ public class JXLSCompetitionBook extends JXLSWorkbookStreamSource {
 	@Override
 	protected void setReportingInfo() {
 		Competition competition = Competition.getCurrent();
-		competition.computeReportingInfo(getAgeGroupPrefix(), getAgeDivision());
+		HashMap<String, Object> reportingBeans = competition.computeReportingInfo(getAgeGroupPrefix(),
+		        getAgeDivision());
 
 		super.setReportingInfo();
 		Object records = super.getReportingBeans().get("records");
-		HashMap<String, Object> reportingBeans = competition.getReportingBeans();
 		reportingBeans.put("records", records);
 		setReportingBeans(reportingBeans);
 	}
@@ -49,6 +49,11 @@ public class JXLSExportRecords extends JXLSWorkbookStreamSource {
 		this.allRecords = allRecords;
 	}
 
+	@Override
+	protected String getCacheKeyDetails() {
+		return "allRecords=" + allRecords;
+	}
+
 	@Override
 	public Group getGroup() {
 		return group;
@@ -21,6 +21,7 @@ import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.athleteSort.Ranking;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.competition.Competition;
+import app.owlcms.data.competition.MedalService;
 import app.owlcms.data.group.Group;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
@@ -52,7 +53,7 @@ public class JXLSMedalsSheet extends JXLSWorkbookStreamSource {
 		}
 
 		Group group = getGroup();
-		TreeMap<Category, TreeSet<Athlete>> medals = Competition.getCurrent().getMedals(group, true);
+		TreeMap<Category, TreeSet<Athlete>> medals = MedalService.getCurrent().getMedals(group, true);
 		sortedAthletes = new ArrayList<>();
 		for (Entry<Category, TreeSet<Athlete>> medalCat : medals.entrySet()) {
 			TreeSet<Athlete> medalists = medalCat.getValue();
@@ -52,6 +52,11 @@ public class JXLSResultSheet extends JXLSWorkbookStreamSource {
 		this.resultsByCategory = b;
 	}
 
+	@Override
+	protected String getCacheKeyDetails() {
+		return "byCategory=" + this.resultsByCategory;
+	}
+
 	@Override
 	public List<Athlete> getSortedAthletes() {
 		if (sortedAthletes != null) {
@@ -149,6 +154,24 @@ public class JXLSResultSheet extends JXLSWorkbookStreamSource {
 	 */
 	@Override
 	protected void postProcess(Workbook workbook) {
+		if (!isStreaming()) {
+			// when streaming, done on the template
+			zapGroup(workbook);
+		}
+	}
+
+	@Override
+	protected boolean isStreamingCandidate() {
+		return true;
+	}
+
+	@Override
+	protected void preProcessTemplate(Workbook template) {
+		// the header rows are no longer available after streaming
+		zapGroup(template);
+	}
+
+	private void zapGroup(Workbook workbook) {
 		final Group currentCompetitionSession = getGroup();
 		if (currentCompetitionSession == null
 		        && !Competition.getCurrent().getProtocolTemplateFileName().contains("USAW")) {
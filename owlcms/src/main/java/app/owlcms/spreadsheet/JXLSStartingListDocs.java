@@ -45,6 +45,12 @@ public class JXLSStartingListDocs extends JXLSWorkbookStreamSource {
 		this.setExcludeNotWeighed(false);
 	}
 
+	@Override
+	protected String getCacheKeyDetails() {
+		// each caller sets its own post-processing
+		return postProcessor != null ? postProcessor.getClass().getName() : "";
+	}
+
 	@Override
 	protected void postProcess(Workbook workbook) {
 		if (postProcessor != null) {
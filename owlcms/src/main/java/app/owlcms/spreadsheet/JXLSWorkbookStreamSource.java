@@ -6,17 +6,24 @@
  *******************************************************************************/
 package app.owlcms.spreadsheet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -27,6 +34,8 @@ import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.LoggerFactory;
 
 import com.vaadin.flow.component.UI;
@@ -41,13 +50,16 @@ import app.owlcms.data.athlete.Athlete;
 import app.owlcms.data.category.AgeDivision;
 import app.owlcms.data.category.Category;
 import app.owlcms.data.competition.Competition;
+import app.owlcms.data.config.Config;
 import app.owlcms.data.group.Group;
 import app.owlcms.data.group.GroupRepository;
+import app.owlcms.data.jpa.DataVersion;
 import app.owlcms.data.records.RecordEvent;
 import app.owlcms.i18n.Translator;
 import app.owlcms.init.OwlcmsSession;
 import app.owlcms.utils.LoggerUtils;
 import app.owlcms.utils.ResourceWalker;
+import app.owlcms.utils.StartupUtils;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import net.sf.jxls.transformer.XLSTransformer;
@@ -55,6 +67,12 @@ import net.sf.jxls.transformer.XLSTransformer;
 /**
  * Encapsulate a spreadsheet as a StreamSource so that it can be used as a source of data when the user clicks on a
  * link. This class converts the output stream to an input stream that the vaadin framework can consume.
+ *
+ * The spreadsheet is generated by the {@link ReportService}, outside of the user's session so the user interface is not
+ * frozen, and reused as long as nothing it depends on has changed (see {@link #getCacheKey(Locale)}).
+ *
+ * Subclasses that produce large spreadsheets can use the {@link StreamingWorkbookWriter}, which keeps the memory used
+ * constant whatever the number of athletes. The output is then in .xlsx format (see {@link #isStreaming()}).
  */
 @SuppressWarnings("serial")
 public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter, InputStreamFactory {
@@ -76,11 +94,17 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 	private InputStream inputStream;
 	private HashMap<String, Object> reportingBeans;
 	private String templateFileName;
+	private String templateName;
 	private UI ui;
+	private Locale locale;
 	private Consumer<String> doneCallback;
+	private byte[] templateBytes;
+	private boolean streamingChecked;
+	private StreamingWorkbookWriter streamingWriter;
 
 	public JXLSWorkbookStreamSource() {
 		this.ui = UI.getCurrent();
+		this.locale = OwlcmsSession.getLocale();
 		this.setExcludeNotWeighed(true);
 		init();
 	}
@@ -88,46 +112,78 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 	/**
 	 * Read the xls template and write the processed XLS file out.
 	 *
+	 * The session is only locked to find the user's locale; the spreadsheet is generated by the report service while
+	 * this request waits.
+	 *
 	 * @see com.vaadin.flow.server.StreamResourceWriter#accept(java.io.OutputStream,
 	 *      com.vaadin.flow.server.VaadinSession)
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public void accept(OutputStream stream, VaadinSession session) throws IOException {
+		Locale sessionLocale;
+		session.lock();
+		try {
+			sessionLocale = OwlcmsSession.getLocale();
+		} finally {
+			session.unlock();
+		}
+		byte[] content;
 		try {
-			session.lock();
-			writeStream(stream);
+			content = getContent(sessionLocale).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			// the download fails instead of producing an empty file
+			logger.error("spreadsheet not generated: {}", e.getCause().toString());
+			throw new IOException("spreadsheet not generated", e.getCause());
+		}
+		try {
+			stream.write(content);
+			if (this.doneCallback != null) {
+				this.doneCallback.accept(null);
+			}
 		} catch (IOException e) {
 			// ignore
 		} catch (Throwable t) {
 			logger.error(LoggerUtils./**/stackTrace(t));
-		} finally {
-			session.unlock();
 		}
 	}
 
 	@Override
 	public InputStream createInputStream() {
-		try {
-			PipedInputStream in = new PipedInputStream();
-			PipedOutputStream out = new PipedOutputStream(in);
-			logger.debug("created pipes");
-			new Thread(
-					new Runnable() {
-						@Override
-						public void run() {
-							try {
-								writeStream(out);
-								out.close();
-							} catch (IOException e) {
-								throw new RuntimeException(e);
-							}
-						}
-					}).start();
-			return in;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		CompletableFuture<byte[]> content = getContent(this.locale);
+		// the spreadsheet is only waited for when the stream is read
+		return new InputStream() {
+			private InputStream bytes;
+
+			@Override
+			public int read() throws IOException {
+				return bytes().read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return bytes().read(b, off, len);
+			}
+
+			private InputStream bytes() throws IOException {
+				if (this.bytes == null) {
+					try {
+						this.bytes = new ByteArrayInputStream(content.get());
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					} catch (ExecutionException e) {
+						throw new IOException(e.getCause());
+					}
+					if (getDoneCallback() != null) {
+						getDoneCallback().accept(null);
+					}
+				}
+				return this.bytes;
+			}
+		};
 	}
 
 	/**
@@ -196,6 +252,20 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 		return this.excludeNotWeighed;
 	}
 
+	/**
+	 * Whether the spreadsheet will be produced by the {@link StreamingWorkbookWriter}. This is the case if the subclass
+	 * allows it, if the template only uses the jxls features the writer understands, and if the
+	 * <code>streamingReports</code> parameter is set to true. Streaming changes the output from .xls to .xlsx, so it
+	 * is off unless asked for.
+	 *
+	 * Must be called after the template is set.
+	 *
+	 * @return true if the output is an .xlsx file produced by the {@link StreamingWorkbookWriter}
+	 */
+	public boolean isStreaming() {
+		return getStreamingWriter(this.locale) != null;
+	}
+
 	public void setAgeDivision(AgeDivision ageDivision) {
 		this.ageDivision = ageDivision;
 	}
@@ -227,6 +297,14 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 		this.inputStream = is;
 	}
 
+	/**
+	 * @param templateName identifies the template given to {@link #setInputStream(InputStream)}, so that the result can
+	 *                     be reused
+	 */
+	public void setTemplateName(String templateName) {
+		this.templateName = templateName;
+	}
+
 	public void setReportingBeans(HashMap<String, Object> jXLSBeans) {
 		this.reportingBeans = jXLSBeans;
 	}
@@ -244,6 +322,13 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 	 */
 	public void zapCellPair(Workbook workbook, int rownum, int cellnum) {
 		Row row = workbook.getSheetAt(0).getRow(rownum);
+		if (row == null) {
+			if (workbook instanceof SXSSFWorkbook) {
+				// the top rows of a streamed workbook are no longer in memory, see preProcessTemplate()
+				throw new IllegalStateException("row " + (rownum + 1) + " already written out, cannot be erased");
+			}
+			return;
+		}
 		final Cell cellLeft = row.getCell(cellnum);
 		if (cellLeft == null) {
 			return;
@@ -268,6 +353,72 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 		// do nothing, to be overridden as needed,
 	}
 
+	/**
+	 * Identify everything the generated spreadsheet depends on. Two requests with the same key get the same bytes.
+	 * The digest of the template is included, so that a template edited on disk is taken into account.
+	 *
+	 * @param locale
+	 * @return the key
+	 */
+	protected String getCacheKey(Locale locale) {
+		StringBuilder key = new StringBuilder(getClass().getName());
+		String template;
+		if (this.inputStream != null) {
+			if (this.templateName == null) {
+				throw new IllegalStateException("setTemplateName() is required with setInputStream()");
+			}
+			template = this.templateName;
+		} else {
+			template = getTemplateFileName();
+		}
+		Group g = getGroup();
+		Category c = getCategory();
+		key.append('|').append(template)
+		        .append('@').append(getTemplateDigest(locale))
+		        .append('|').append(locale)
+		        .append('|').append(g != null ? g.getId() : null)
+		        .append('|').append(getAgeGroupPrefix())
+		        .append('|').append(getAgeDivision())
+		        .append('|').append(c != null ? c.getId() : null)
+		        .append('|').append(isExcludeNotWeighed());
+		if (this.sortedAthletes != null) {
+			// explicit selection, the order matters
+			String ids = this.sortedAthletes.stream()
+			        .map(a -> a.getId() + ":" + (a.getCategory() != null ? a.getCategory().getId() : ""))
+			        .collect(Collectors.joining(","));
+			key.append("|athletes=").append(this.sortedAthletes.size()).append('/').append(sha256(ids));
+		}
+		key.append('|').append(getCacheKeyDetails())
+		        .append("|v").append(DataVersion.get())
+		        .append('.').append(Config.getCurrentVersion());
+		return key.toString();
+	}
+
+	/**
+	 * @param s
+	 * @return the SHA-256 digest of s, in hexadecimal; collisions are not a concern, unlike with hashCode()
+	 */
+	private static String sha256(String s) {
+		return sha256(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String sha256(byte[] bytes) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of().formatHex(digest.digest(bytes));
+		} catch (NoSuchAlgorithmException e) {
+			// mandatory in every JRE
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the options of a subclass that change the output
+	 */
+	protected String getCacheKeyDetails() {
+		return "";
+	}
+
 	/**
 	 * Try the possible variations of a template based on locale. For "/templates/start/startList", ".xls", and a locale
 	 * of fr_CA, the following names will be tried /templates/start/startList_fr_CA.xls
@@ -307,6 +458,9 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 	}
 
 	protected InputStream getTemplate(Locale locale) throws IOException, Exception {
+		if (this.templateBytes != null) {
+			return new ByteArrayInputStream(this.templateBytes);
+		}
 		if (this.inputStream != null) {
 			logger.debug("explicitly set template {}", this.inputStream);
 			return this.inputStream;
@@ -323,10 +477,31 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 		return false;
 	}
 
+	/**
+	 * @return true if the spreadsheet can be large enough to be worth streaming
+	 */
+	protected boolean isStreamingCandidate() {
+		return false;
+	}
+
+	/**
+	 * Called after the spreadsheet is produced. When streaming, only the last rows of each sheet are still available.
+	 *
+	 * @param workbook
+	 */
 	protected void postProcess(Workbook workbook) {
 		// do nothing, to be overridden as needed,
 	}
 
+	/**
+	 * When streaming, called on the template before the spreadsheet is produced, for changes to the rows at the top.
+	 *
+	 * @param template
+	 */
+	protected void preProcessTemplate(Workbook template) {
+		// do nothing, to be overridden as needed,
+	}
+
 	/**
 	 * Return athletes as required by the template.
 	 */
@@ -366,8 +541,75 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 		}).collect(Collectors.toList()));
 	}
 
+	private void closeTemplate() {
+		if (this.inputStream != null) {
+			try {
+				this.inputStream.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * A template given as a stream is read once and kept, since the stream cannot be read again.
+	 *
+	 * @param locale
+	 * @return the SHA-256 digest of the template that will be used
+	 */
+	private synchronized String getTemplateDigest(Locale locale) {
+		try {
+			if (this.inputStream != null && this.templateBytes == null) {
+				this.templateBytes = this.inputStream.readAllBytes();
+				closeTemplate();
+			}
+			try (InputStream in = getTemplate(locale)) {
+				// missing templates fail when generating, and failures are not cached
+				return in != null ? sha256(in.readAllBytes()) : "none";
+			}
+		} catch (Exception e) {
+			return "unreadable";
+		}
+	}
+
+	private CompletableFuture<byte[]> getContent(Locale locale) {
+		CompletableFuture<byte[]> content = ReportService.getCurrent().render(getCacheKey(locale),
+		        () -> OwlcmsSession.withLocale(locale, () -> render()));
+		// the template stream is not read if the spreadsheet was already available.
+		content.whenComplete((r, t) -> closeTemplate());
+		return content;
+	}
+
+	private synchronized StreamingWorkbookWriter getStreamingWriter(Locale locale) {
+		if (this.streamingChecked) {
+			return this.streamingWriter;
+		}
+		this.streamingChecked = true;
+		if (!isStreamingCandidate() || !StartupUtils.getBooleanParam("streamingReports")) {
+			return null;
+		}
+		try {
+			// the template is read again by jxls if it cannot be streamed.
+			this.templateBytes = getTemplate(locale).readAllBytes();
+			StreamingWorkbookWriter writer = new StreamingWorkbookWriter(new ByteArrayInputStream(this.templateBytes));
+			if (writer.isSupported()) {
+				this.streamingWriter = writer;
+			} else {
+				logger.info("template {} not streamed: {}", this.templateName, writer.getUnsupportedReason());
+			}
+		} catch (Exception e) {
+			logger.warn("template {} not streamed: {}", this.templateName, e.toString());
+		}
+		return this.streamingWriter;
+	}
+
+	/**
+	 * Runs on a report worker thread.
+	 *
+	 * @return the spreadsheet
+	 */
 	@SuppressWarnings("unchecked")
-	private void writeStream(OutputStream stream) throws IOException {
+	private byte[] render() {
 		Locale locale = OwlcmsSession.getLocale();
 		XLSTransformer transformer = new XLSTransformer();
 		configureTransformer(transformer);
@@ -378,6 +620,10 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 			HashMap<String, Object> reportingInfo = getReportingBeans();
 			List<Athlete> athletes = (List<Athlete>) reportingInfo.get("athletes");
 			if (athletes != null && (athletes.size() > 0 || isEmptyOk())) {
+				StreamingWorkbookWriter writer = getStreamingWriter(locale);
+				if (writer != null) {
+					return renderStreaming(writer, reportingInfo);
+				}
 				workbook = transformer.transformXLS(getTemplate(locale), reportingInfo);
 				if (workbook != null) {
 					postProcess(workbook);
@@ -385,34 +631,49 @@ public abstract class JXLSWorkbookStreamSource implements StreamResourceWriter,
 			} else {
 				String noAthletes = Translator.translate("NoAthletes");
 				logger./**/warn("no athletes: empty report.");
-				this.ui.access(() -> {
-					Notification notif = new Notification();
-					notif.addThemeVariants(NotificationVariant.LUMO_ERROR);
-					notif.setPosition(Position.TOP_STRETCH);
-					notif.setDuration(3000);
-					notif.setText(noAthletes);
-					notif.open();
-				});
-				workbook = new HSSFWorkbook();
+				if (this.ui != null) {
+					this.ui.access(() -> {
+						Notification notif = new Notification();
+						notif.addThemeVariants(NotificationVariant.LUMO_ERROR);
+						notif.setPosition(Position.TOP_STRETCH);
+						notif.setDuration(3000);
+						notif.setText(noAthletes);
+						notif.open();
+					});
+				}
+				// same format as a normal result
+				workbook = getStreamingWriter(locale) != null ? new XSSFWorkbook() : new HSSFWorkbook();
 				workbook.createSheet().createRow(1).createCell(1).setCellValue(noAthletes);
 			}
-		} catch (Exception e) {
-			LoggerUtils.logError(logger, e);
-		}
-		if (workbook != null) {
-			logger.debug("writing stream");
-			try {
-				workbook.write(stream);
-				if (this.doneCallback != null) {
-					this.doneCallback.accept(null);
-				}
-			} catch (Throwable e) {
-				LoggerUtils.logError(logger, e);
+			if (workbook == null) {
+				throw new IllegalStateException("no workbook produced");
 			}
+			logger.debug("writing stream");
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			workbook.write(stream);
 			logger.debug("wrote stream");
+			return stream.toByteArray();
+		} catch (Exception e) {
+			// not cached, the next request tries again.
+			LoggerUtils.logError(logger, e);
+			throw new RuntimeException(e);
 		}
+	}
 
-
+	private byte[] renderStreaming(StreamingWorkbookWriter writer, HashMap<String, Object> reportingInfo)
+	        throws IOException {
+		preProcessTemplate(writer.getTemplate());
+		SXSSFWorkbook workbook = writer.transform(reportingInfo);
+		try {
+			postProcess(workbook);
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			workbook.write(stream);
+			logger.debug("wrote streamed workbook");
+			return stream.toByteArray();
+		} finally {
+			// remove the temporary files
+			workbook.dispose();
+		}
 	}
 
 }
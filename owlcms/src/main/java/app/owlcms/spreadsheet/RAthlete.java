@@ -180,8 +180,8 @@ public class RAthlete {
 	 * @see app.owlcms.data.athlete.Athlete#setCategory(app.owlcms.data.category.Category)
 	 */
 	public void setFullBirthDate(String s) throws Exception {
-		if (s != null) {
-			s = CharMatcher.javaIsoControl().removeFrom(s);
+		if (s == null || s.isBlank()) {
+			return;
 		}
 		s = CharMatcher.javaIsoControl().removeFrom(s);
 		try {
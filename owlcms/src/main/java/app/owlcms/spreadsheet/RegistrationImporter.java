@@ -0,0 +1,414 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.spreadsheet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.apache.commons.beanutils.BeanUtils;
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.athleteSort.RankingEngine;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.data.platform.Platform;
+import app.owlcms.i18n.Translator;
+import app.owlcms.init.OwlcmsFactory;
+import app.owlcms.spreadsheet.WorkbookRowReader.SheetRow;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Registration upload, in stages.
+ *
+ * <ol>
+ * <li>{@link #read(InputStream)} streams the athletes sheet and the optional sessions sheet, converts every row as the
+ * jxls mapping files (RegistrationReader.xml and GroupsReader.xml) did, and finds the categories and sessions in memory.
+ * All the errors are collected and nothing is written.
+ * <li>{@link #save()} replaces the athletes (and the sessions, if the spreadsheet has them) in a single transaction.
+ * The previous ones are removed with bulk deletes; the new ones are persisted in chunks so that Hibernate sends the
+ * inserts as JDBC batches.
+ * </ol>
+ *
+ * @author Jean-François Lamy
+ */
+public class RegistrationImporter {
+
+	@FunctionalInterface
+	private interface CellSetter {
+		void set(String value) throws Exception;
+	}
+
+	/** athletes persisted between flushes, a multiple of the JDBC batch size */
+	static final int CHUNK_SIZE = 100;
+
+	private static final int ATHLETES_SHEET = 0;
+	private static final int COMPETITION_ROWS = 4;
+	private static final int FIRST_ATHLETE_ROW = 8;
+	private static final int FIRST_GROUP_ROW = 2;
+	private static final int GROUPS_SHEET = 1;
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(RegistrationImporter.class);
+
+	private final List<SheetRow> athleteRows = new ArrayList<>();
+	private final List<RAthlete> athletes = new ArrayList<>();
+	private boolean athletesEnded;
+	private final RCompetition competition = new RCompetition();
+	private final SheetRow[] competitionRows = new SheetRow[COMPETITION_ROWS];
+	private final List<String> errors = new ArrayList<>();
+	private final List<SheetRow> groupRows = new ArrayList<>();
+	private final List<RGroup> groups = new ArrayList<>();
+	private boolean groupsEnded;
+	private boolean keepParticipations;
+	private final BiConsumer<String, Double> progress;
+
+	/**
+	 * @param progress called with a message and the fraction done for each stage, may be null
+	 */
+	public RegistrationImporter(BiConsumer<String, Double> progress) {
+		this.progress = progress != null ? progress : (m, f) -> {
+		};
+		for (int i = 0; i < COMPETITION_ROWS; i++) {
+			this.competitionRows[i] = new SheetRow(i);
+		}
+	}
+
+	public List<RAthlete> getAthletes() {
+		return this.athletes;
+	}
+
+	/**
+	 * @return the problems found by {@link #read(InputStream)}, one per cell
+	 */
+	public List<String> getErrors() {
+		return this.errors;
+	}
+
+	public List<RGroup> getGroups() {
+		return this.groups;
+	}
+
+	/**
+	 * Read and check the spreadsheet. The database is not changed.
+	 *
+	 * @param inputStream .xls or .xlsx registration file
+	 * @return true if there are no errors
+	 * @throws IOException if the file is not a readable workbook
+	 */
+	public boolean read(InputStream inputStream) throws IOException {
+		this.progress.accept(Translator.translate("Upload.Reading"), 0.0D);
+		new WorkbookRowReader(2).read(inputStream, this::row);
+		logger.info("{} {} athletes, {} groups", Translator.translate("DataRead"), this.athleteRows.size(),
+		        this.groupRows.size());
+
+		readCompetition();
+		readGroups();
+		readAthletes();
+		if (this.athletes.isEmpty() && this.errors.isEmpty()) {
+			this.errors.add(Translator.translate("NoAthletes"));
+		}
+		return this.errors.isEmpty();
+	}
+
+	/**
+	 * Replace the athletes, and the sessions if the spreadsheet has them.
+	 *
+	 * @return the number of athletes registered
+	 */
+	public int save() {
+		if (!this.errors.isEmpty()) {
+			throw new IllegalStateException("spreadsheet has errors");
+		}
+		List<Athlete> newAthletes = this.athletes.stream().map(RAthlete::getAthlete).collect(Collectors.toList());
+		computeParticipations(newAthletes);
+
+		long start = System.nanoTime();
+		Competition competition = JPAService.runInTransaction(em -> {
+			Competition merged = updateCompetition(em);
+			em.createQuery("delete from Participation").executeUpdate();
+			em.createQuery("delete from Athlete").executeUpdate();
+			if (!this.groups.isEmpty()) {
+				em.createQuery("delete from CompetitionGroup").executeUpdate();
+				updatePlatforms(em);
+			}
+			insert(em, newAthletes);
+			return merged;
+		});
+		logger.info("registered {} athletes in {}ms", newAthletes.size(), (System.nanoTime() - start) / 1000000);
+
+		// only once committed: a failed import leaves the competition and the fields of play as they were
+		Competition.setCurrent(competition);
+		if (!this.groups.isEmpty()) {
+			// recompute the available platforms, unregister the existing FOPs, etc.
+			OwlcmsFactory.initDefaultFOP();
+		}
+
+		Competition.getCurrent().setRankingsInvalid(true);
+		RankingEngine.getCurrent().invalidate();
+		if (!this.keepParticipations) {
+			AthleteRepository.assignCategoryRanks();
+		}
+		return newAthletes.size();
+	}
+
+	private void cell(SheetRow row, int col, CellSetter setter) {
+		try {
+			String value = row.get(col);
+			setter.set(value != null && !value.isBlank() ? value.trim() : null);
+		} catch (Exception e) {
+			String message = e.getLocalizedMessage() != null ? e.getLocalizedMessage() : e.toString();
+			this.errors.add(Translator.translate("Cell") + " " + row.getReference(col) + ": " + message);
+			logger.debug("{} {}", row.getReference(col), message);
+		}
+	}
+
+	/**
+	 * Athletes with an exact category name were given their eligible categories and teams while reading. For the
+	 * others the categories are computed as {@link AthleteRepository#resetParticipations()} does, unless the
+	 * spreadsheet gave them explicitly for some athletes.
+	 */
+	private void computeParticipations(List<Athlete> newAthletes) {
+		for (Athlete a : newAthletes) {
+			Set<Category> eligibles = RCompetition.getAthleteToEligibles().get(a.getId());
+			if (eligibles != null) {
+				Set<Category> teams = RCompetition.getAthleteToTeams().get(a.getId());
+				a.setCategory(eligibles.stream().findFirst().orElse(null));
+				a.setEligibleCategories(eligibles);
+				for (Participation p : a.getParticipations()) {
+					if (teams.contains(p.getCategory())) {
+						p.setTeamMember(true);
+					} else {
+						logger.info("Excluding {} as team member for {}", a.getShortName(),
+						        p.getCategory().getComputedCode());
+						p.setTeamMember(false);
+					}
+				}
+			} else if (!this.keepParticipations) {
+				a.setEligibleCategories(null);
+				a.computeMainAndEligibleCategories();
+				a.getParticipations().stream().forEach(p -> p.setTeamMember(true));
+			}
+		}
+	}
+
+	private void insert(EntityManager em, List<Athlete> newAthletes) {
+		for (RGroup g : this.groups) {
+			em.persist(g.getGroup());
+		}
+		// managed sessions, found again after each clear
+		Map<Long, Group> sessions = new HashMap<>();
+		int done = 0;
+		for (Athlete a : newAthletes) {
+			Group g = a.getGroup();
+			if (g != null) {
+				a.setGroup(sessions.computeIfAbsent(g.getId(), id -> em.getReference(Group.class, id)));
+			}
+			em.persist(a);
+			done++;
+			if (done % CHUNK_SIZE == 0 || done == newAthletes.size()) {
+				em.flush();
+				em.clear();
+				sessions.clear();
+				this.progress.accept(Translator.translate("Upload.Saving", done, newAthletes.size()),
+				        (double) done / newAthletes.size());
+			}
+		}
+	}
+
+	private void readAthletes() {
+		RCompetition.resetActiveCategories();
+		if (this.groups.isEmpty()) {
+			RCompetition.resetActiveGroups();
+		} else {
+			// the sessions will be replaced by those of the spreadsheet
+			RCompetition.getActiveGroups().clear();
+			for (RGroup g : this.groups) {
+				RCompetition.getActiveGroups().put(g.getGroupName(), g.getGroup());
+			}
+		}
+		RCompetition.resetAthleteToEligibles();
+		RCompetition.resetAthleteToTeams();
+
+		int size = this.athleteRows.size();
+		for (SheetRow row : this.athleteRows) {
+			RAthlete r = new RAthlete();
+			// same order as RegistrationReader.xml: the group must exist, and the category is inferred from the
+			// birth date, gender, body weight and qualifying total
+			cell(row, 11, r::setGroup);
+			cell(row, 0, r::setMembership);
+			cell(row, 1, r::setLotNumber);
+			cell(row, 2, r::setLastName);
+			cell(row, 3, r::setFirstName);
+			cell(row, 4, r::setTeam);
+			cell(row, 5, r::setFullBirthDate);
+			cell(row, 6, r::setGender);
+			cell(row, 8, s -> r.setBodyWeight(s != null ? Double.valueOf(s) : null));
+			cell(row, 12, s -> r.setQualifyingTotal(s != null ? Integer.valueOf(s) : null));
+			cell(row, 7, r::setCategory);
+			cell(row, 9, r::setSnatch1Declaration);
+			cell(row, 10, r::setCleanJerk1Declaration);
+			cell(row, 13, r::setCoach);
+			cell(row, 14, r::setCustom1);
+			cell(row, 15, r::setCustom2);
+			cell(row, 16, r::setFederationCodes);
+			cell(row, 17, r::setPersonalBestSnatch);
+			cell(row, 18, r::setPersonalBestCleanJerk);
+			cell(row, 19, r::setPersonalBestTotal);
+			this.athletes.add(r);
+			if (this.athletes.size() % CHUNK_SIZE == 0) {
+				this.progress.accept(Translator.translate("Upload.Checking", size),
+				        (double) this.athletes.size() / size);
+			}
+		}
+		this.keepParticipations = !RCompetition.getAthleteToEligibles().isEmpty();
+	}
+
+	private void readCompetition() {
+		SheetRow[] r = this.competitionRows;
+		RCompetition c = this.competition;
+		cell(r[0], 0, c::setFederation);
+		cell(r[1], 0, c::setFederationAddress);
+		cell(r[2], 0, c::setFederationWebSite);
+		cell(r[3], 0, c::setFederationEMail);
+		cell(r[0], 5, c::setCompetitionName);
+		cell(r[1], 5, c::setCompetitionCity);
+		cell(r[2], 5, c::setCompetitionSite);
+		cell(r[3], 5, c::setCompetitionOrganizer);
+		cell(r[0], 12, c::setCompetitionDate);
+	}
+
+	private void readGroups() {
+		for (SheetRow row : this.groupRows) {
+			RGroup g = new RGroup();
+			cell(row, 0, g::setGroupName);
+			cell(row, 1, g::setPlatform);
+			cell(row, 2, g::setDescription);
+			cell(row, 3, g::setWeighinTime);
+			cell(row, 4, g::setCompetitionTime);
+			cell(row, 5, g::setWeighInTO1);
+			cell(row, 6, g::setWeighInTO2);
+			cell(row, 7, g::setAnnouncer);
+			cell(row, 8, g::setMarshall);
+			cell(row, 9, g::setMarshal2);
+			cell(row, 10, g::setTimekeeper);
+			cell(row, 11, g::setTechController);
+			cell(row, 12, g::setTechController2);
+			cell(row, 13, g::setRef1);
+			cell(row, 14, g::setRef2);
+			cell(row, 15, g::setRef3);
+			cell(row, 16, g::setJury1);
+			cell(row, 17, g::setJury2);
+			cell(row, 18, g::setJury3);
+			cell(row, 19, g::setJury4);
+			cell(row, 20, g::setJury5);
+			cell(row, 21, g::setReserve);
+			this.groups.add(g);
+		}
+	}
+
+	/**
+	 * Keep the rows of interest. As with the jxls loops, the list ends at the first row without a last name (athletes)
+	 * or a name (sessions).
+	 */
+	private void row(int sheetIndex, SheetRow row) {
+		int rowNum = row.getRowNum();
+		if (sheetIndex == ATHLETES_SHEET) {
+			if (rowNum < COMPETITION_ROWS) {
+				this.competitionRows[rowNum] = row;
+			} else if (rowNum >= FIRST_ATHLETE_ROW && !this.athletesEnded) {
+				int expected = FIRST_ATHLETE_ROW + this.athleteRows.size();
+				if (rowNum != expected || row.isBlank(2)) {
+					this.athletesEnded = true;
+				} else {
+					this.athleteRows.add(row);
+				}
+			}
+		} else if (sheetIndex == GROUPS_SHEET && rowNum >= FIRST_GROUP_ROW && !this.groupsEnded) {
+			int expected = FIRST_GROUP_ROW + this.groupRows.size();
+			if (rowNum != expected || row.isBlank(0)) {
+				this.groupsEnded = true;
+			} else {
+				this.groupRows.add(row);
+			}
+		}
+	}
+
+	private Competition updateCompetition(EntityManager em) {
+		Competition curC = Competition.getCurrentForEditing();
+		Competition rCompetition = this.competition.getCompetition();
+		// save some properties from current database that do not appear on spreadsheet
+		rCompetition.setEnforce20kgRule(curC.isEnforce20kgRule());
+		rCompetition.setUseBirthYear(curC.isUseBirthYear());
+		rCompetition.setMasters(curC.isMasters());
+		try {
+			// update the current competition with the new properties read from spreadsheet
+			BeanUtils.copyProperties(curC, rCompetition);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new RuntimeException(e);
+		}
+		return em.merge(curC);
+	}
+
+	/**
+	 * Create the platforms named by the sessions and remove the others, as the sessions must refer to them. Called in
+	 * the import transaction once the old sessions have been deleted; the fields of play are recreated after the commit.
+	 */
+	private void updatePlatforms(EntityManager em) {
+		Set<String> futurePlatforms = this.groups.stream().map(RGroup::getPlatform)
+		        .filter(p -> (p != null && !p.isBlank()))
+		        .collect(Collectors.toSet());
+		if (futurePlatforms.isEmpty()) {
+			// keep the current default if no group is linked to a platform.
+			futurePlatforms.add(OwlcmsFactory.getDefaultFOP().getName());
+		}
+		logger.debug("to be kept if present: {}", futurePlatforms);
+
+		Map<String, Platform> platforms = new TreeMap<>();
+		for (Platform pl : em.createQuery("select p from Platform p order by p.id", Platform.class).getResultList()) {
+			if (!futurePlatforms.contains(pl.getName())) {
+				logger.info("removing platform {}", pl.getName());
+				em.remove(pl);
+			} else {
+				platforms.putIfAbsent(pl.getName(), pl);
+			}
+		}
+		for (String name : futurePlatforms) {
+			if (!platforms.containsKey(name)) {
+				Platform np = new Platform(name);
+				logger.info("adding platform '{}'", name);
+				em.persist(np);
+				platforms.put(name, np);
+			}
+		}
+
+		// the first platform by name becomes the default field of play
+		String newDefault = platforms.keySet().iterator().next();
+		for (RGroup g : this.groups) {
+			String platformName = g.getPlatform();
+			if (platformName == null || platformName.isBlank()) {
+				platformName = newDefault;
+			}
+			logger.info("setting platform '{}' for group {}", platformName, g.getGroupName());
+			g.getGroup().setPlatform(platforms.get(platformName));
+		}
+	}
+
+}
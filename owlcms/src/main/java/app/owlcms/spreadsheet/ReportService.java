@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.spreadsheet;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.utils.StartupUtils;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Generates the spreadsheets on a small pool of worker threads and keeps the result.
+ *
+ * The key given by the caller identifies everything the spreadsheet depends on (kind of report, template, locale,
+ * filters and the {@link app.owlcms.data.jpa.DataVersion} of the database), so asking again for an unchanged start
+ * list or protocol returns the same bytes without running jxls. Concurrent requests for the same key wait for a single
+ * generation.
+ *
+ * The pool size is set with the <code>reportThreads</code> parameter (default 2). The cache keeps the most recently
+ * used spreadsheets up to <code>reportCacheMB</code> megabytes (default 64). Metrics are published over JMX as
+ * <code>app.owlcms:type=ReportService</code>
+ *
+ * @author Jean-François Lamy
+ */
+public class ReportService implements ReportServiceMBean {
+
+	private static final int MAX_QUEUED = 16;
+	private static ReportService current;
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(ReportService.class);
+
+	public static synchronized ReportService getCurrent() {
+		if (current == null) {
+			current = new ReportService(
+			        StartupUtils.getIntegerParam("reportThreads", 2),
+			        StartupUtils.getIntegerParam("reportCacheMB", 64) * 1024L * 1024L);
+		}
+		return current;
+	}
+
+	/** most recently used last. Guarded by this. */
+	private final LinkedHashMap<String, CompletableFuture<byte[]>> cache = new LinkedHashMap<>(16, 0.75F, true);
+	private long cachedBytes;
+	private final long maxBytes;
+	private final ThreadPoolExecutor workers;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong totalBuildNanos = new AtomicLong();
+
+	private ReportService(int nbThreads, long maxBytes) {
+		this.maxBytes = maxBytes;
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(nbThreads, nbThreads, 60L, TimeUnit.SECONDS,
+		        new ArrayBlockingQueue<>(MAX_QUEUED),
+		        (r) -> {
+			        Thread t = new Thread(r, "report-" + threadNumber.incrementAndGet());
+			        t.setDaemon(true);
+			        return t;
+		        });
+		this.workers.allowCoreThreadTimeOut(true);
+		registerMBean();
+	}
+
+	@Override
+	public synchronized void clear() {
+		this.cache.clear();
+		this.cachedBytes = 0;
+	}
+
+	@Override
+	public int getActiveCount() {
+		return this.workers.getActiveCount();
+	}
+
+	@Override
+	public synchronized long getCachedBytes() {
+		return this.cachedBytes;
+	}
+
+	@Override
+	public synchronized int getEntryCount() {
+		return this.cache.size();
+	}
+
+	@Override
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	@Override
+	public double getMeanBuildMillis() {
+		long n = this.misses.get();
+		return n == 0 ? 0.0D : this.totalBuildNanos.get() / 1_000_000.0D / n;
+	}
+
+	@Override
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	@Override
+	public int getQueueSize() {
+		return this.workers.getQueue().size();
+	}
+
+	/**
+	 * Get a spreadsheet, generating it on a worker thread unless it is already available or being generated.
+	 *
+	 * If all the workers are busy and too many requests are waiting, the future fails with a
+	 * {@link java.util.concurrent.RejectedExecutionException}.
+	 *
+	 * @param key      everything the content depends on
+	 * @param renderer generates the content; runs on a worker thread, without the user's session
+	 * @return the content, shared and not to be modified
+	 */
+	public CompletableFuture<byte[]> render(String key, Supplier<byte[]> renderer) {
+		CompletableFuture<byte[]> future;
+		synchronized (this) {
+			future = this.cache.get(key);
+			if (future != null) {
+				this.hits.incrementAndGet();
+				logger.debug("reusing {}", key);
+				return future;
+			}
+			future = new CompletableFuture<>();
+			this.cache.put(key, future);
+		}
+		this.misses.incrementAndGet();
+		CompletableFuture<byte[]> result = future;
+		try {
+			this.workers.execute(() -> {
+				long start = System.nanoTime();
+				try {
+					byte[] content = renderer.get();
+					this.totalBuildNanos.addAndGet(System.nanoTime() - start);
+					logger.debug("generated {} in {}ms, {} bytes", key, (System.nanoTime() - start) / 1_000_000,
+					        content.length);
+					added(key, result, content.length);
+					result.complete(content);
+				} catch (Throwable t) {
+					forget(key, result);
+					result.completeExceptionally(t);
+				}
+			});
+		} catch (RuntimeException e) {
+			forget(key, result);
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	@Override
+	public void resetStatistics() {
+		this.hits.set(0);
+		this.misses.set(0);
+		this.totalBuildNanos.set(0);
+	}
+
+	private synchronized void added(String key, CompletableFuture<byte[]> future, int size) {
+		if (this.cache.get(key) != future) {
+			// removed by clear() while being generated, not counted
+			return;
+		}
+		this.cachedBytes += size;
+		// evict least recently used completed entries
+		Iterator<Map.Entry<String, CompletableFuture<byte[]>>> it = this.cache.entrySet().iterator();
+		while (this.cachedBytes > this.maxBytes && it.hasNext()) {
+			CompletableFuture<byte[]> f = it.next().getValue();
+			if (f.isDone() && !f.isCompletedExceptionally()) {
+				this.cachedBytes -= f.join().length;
+				it.remove();
+			}
+		}
+	}
+
+	private synchronized void forget(String key, CompletableFuture<byte[]> future) {
+		this.cache.remove(key, future);
+	}
+
+	private void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("app.owlcms:type=ReportService");
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(this, objectName);
+		} catch (Exception e) {
+			logger.warn("cannot publish report metrics: {}", e.toString());
+		}
+	}
+
+}
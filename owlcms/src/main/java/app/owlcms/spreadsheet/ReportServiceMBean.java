@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.spreadsheet;
+
+/**
+ * Metrics published over JMX for the {@link ReportService}.
+ */
+public interface ReportServiceMBean {
+
+	public void clear();
+
+	public int getActiveCount();
+
+	public long getCachedBytes();
+
+	public int getEntryCount();
+
+	public long getHits();
+
+	public double getMeanBuildMillis();
+
+	public long getMisses();
+
+	public int getQueueSize();
+
+	public void resetStatistics();
+
+}
@@ -0,0 +1,747 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.spreadsheet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.JexlException;
+import org.apache.commons.jexl2.MapContext;
+import org.apache.poi.hssf.usermodel.HSSFPalette;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.PrintSetup;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Fill a jxls template into a streaming (.xlsx) workbook.
+ *
+ * jxls builds the complete workbook in memory before it can be written, which for the larger competitions takes
+ * hundreds of megabytes. This writer produces the rows in order and only keeps the last {@link #ROW_WINDOW} of them in
+ * memory, the others being flushed to a temporary file, so the memory used does not depend on the number of athletes.
+ *
+ * Only the subset of the jxls syntax used by our list-type templates is understood: <code>${...}</code> expressions in
+ * cells, and <code>jx:forEach</code> (items, var, varStatus, groupBy, select) and <code>jx:if</code> (test) tags that
+ * occupy a row by themselves, possibly nested. Templates that use anything else (jxls formulas <code>$[...]</code>,
+ * spreadsheet formulas, other tags) are reported as not supported and are processed by jxls as before.
+ *
+ * This is a known limitation for the competition books: the team sheets of the shipped templates rank and total the
+ * teams with jxls formulas whose references jxls adjusts as the rows of the loops are inserted, so these books are still
+ * built in memory by jxls. A competition book template without formulas is streamed.
+ *
+ * @author Jean-François Lamy
+ */
+public class StreamingWorkbookWriter {
+
+	/**
+	 * Current element and index of a <code>jx:forEach</code>, as in jxls.
+	 */
+	public static class LoopStatus {
+		private final int index;
+
+		LoopStatus(int index) {
+			this.index = index;
+		}
+
+		public int getIndex() {
+			return this.index;
+		}
+	}
+
+	/**
+	 * Items of a <code>jx:forEach</code> with a <code>groupBy</code>, as in jxls.
+	 */
+	public static class GroupData {
+		private final Object item;
+		private final List<Object> items = new ArrayList<>();
+
+		GroupData(Object item) {
+			this.item = item;
+		}
+
+		/**
+		 * @return the first item of the group
+		 */
+		public Object getItem() {
+			return this.item;
+		}
+
+		public List<Object> getItems() {
+			return this.items;
+		}
+	}
+
+	private static class CellTemplate {
+		final int column;
+		final CellStyle style;
+		/** String, Double or Boolean for a constant cell, List of String and Expression otherwise */
+		final Object value;
+
+		CellTemplate(int column, CellStyle style, Object value) {
+			this.column = column;
+			this.style = style;
+			this.value = value;
+		}
+	}
+
+	private static class IfNode extends Node {
+		final List<Node> body = new ArrayList<>();
+		final Expression test;
+
+		IfNode(Expression test) {
+			this.test = test;
+		}
+	}
+
+	private static class LoopNode extends Node {
+		final List<Node> body = new ArrayList<>();
+		String groupBy;
+		Expression items;
+		Expression select;
+		String var;
+		String varStatus;
+	}
+
+	private static abstract class Node {
+	}
+
+	private static class RowTemplate extends Node {
+		final List<CellTemplate> cells = new ArrayList<>();
+		/** merged regions that start on this row, relative to this row */
+		final List<CellRangeAddress> regions = new ArrayList<>();
+		final Row row;
+		final int rowNum;
+
+		RowTemplate(int rowNum, Row row) {
+			this.rowNum = rowNum;
+			this.row = row;
+		}
+	}
+
+	private static class SheetTemplate {
+		final List<Node> nodes = new ArrayList<>();
+		final Sheet sheet;
+		/** first row that is not copied at the same position */
+		int firstTagRow = Integer.MAX_VALUE;
+
+		SheetTemplate(Sheet sheet) {
+			this.sheet = sheet;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class UnsupportedTemplateException extends Exception {
+		UnsupportedTemplateException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Number of rows kept in memory for each sheet.
+	 */
+	public static final int ROW_WINDOW = 100;
+
+	private static final Pattern ATTRIBUTE = Pattern.compile("(\\w+)\\s*=\\s*\"([^\"]*)\"");
+	private static final String END_FOR_EACH = "</jx:forEach>";
+	private static final String END_IF = "</jx:if>";
+	private static final String FOR_EACH = "<jx:forEach";
+	private static final String IF = "<jx:if";
+	private static final JexlEngine jexl = new JexlEngine();
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(StreamingWorkbookWriter.class);
+	static {
+		logger.setLevel(Level.INFO);
+		jexl.setSilent(true);
+		jexl.setLenient(true);
+		jexl.setCache(512);
+	}
+
+	private Map<Integer, Font> fonts;
+	private SXSSFWorkbook out;
+	private Map<Short, CellStyle> styles;
+	private final Workbook template;
+	private String unsupportedReason;
+
+	/**
+	 * Read and analyze a template.
+	 *
+	 * @param templateStream an .xls or .xlsx jxls template
+	 * @throws IOException if the template cannot be read
+	 */
+	public StreamingWorkbookWriter(InputStream templateStream) throws IOException {
+		this.template = WorkbookFactory.create(templateStream);
+		try {
+			parse();
+		} catch (UnsupportedTemplateException e) {
+			this.unsupportedReason = e.getMessage();
+		}
+	}
+
+	/**
+	 * The template, which can be adjusted before calling {@link #transform(Map)}.
+	 *
+	 * Rows at the top of the output are no longer available once the workbook has been produced, so changes to them
+	 * must be done here.
+	 *
+	 * @return the template
+	 */
+	public Workbook getTemplate() {
+		return this.template;
+	}
+
+	/**
+	 * @return why {@link #isSupported()} is false
+	 */
+	public String getUnsupportedReason() {
+		return this.unsupportedReason;
+	}
+
+	/**
+	 * @return true if the template only uses the tags and expressions understood by this writer
+	 */
+	public boolean isSupported() {
+		return this.unsupportedReason == null;
+	}
+
+	/**
+	 * Produce the workbook.
+	 *
+	 * Only the last {@link #ROW_WINDOW} rows of each sheet remain accessible. The caller writes the workbook and must
+	 * then call {@link SXSSFWorkbook#dispose()} to remove the temporary files.
+	 *
+	 * @param beans the values available to the expressions
+	 * @return the workbook
+	 */
+	public synchronized SXSSFWorkbook transform(Map<String, Object> beans) {
+		List<SheetTemplate> sheets;
+		try {
+			// the template may have been adjusted since it was analyzed
+			sheets = parse();
+		} catch (UnsupportedTemplateException e) {
+			throw new IllegalStateException("template not supported: " + e.getMessage());
+		}
+		this.out = new SXSSFWorkbook(ROW_WINDOW);
+		this.out.setCompressTempFiles(true);
+		this.styles = new HashMap<>();
+		this.fonts = new HashMap<>();
+		try {
+			MapContext context = new MapContext(new HashMap<>(beans));
+			for (int i = 0; i < sheets.size(); i++) {
+				SheetTemplate sheetTemplate = sheets.get(i);
+				Sheet sheet = this.out.createSheet(sheetTemplate.sheet.getSheetName());
+				copySheetSettings(sheetTemplate, sheet);
+				int[] nextRow = { 0 };
+				emit(sheetTemplate.nodes, sheet, nextRow, context);
+				this.out.setSheetHidden(i, this.template.isSheetHidden(i));
+				logger.debug("sheet {}: {} rows", sheet.getSheetName(), nextRow[0]);
+			}
+			this.out.setActiveSheet(this.template.getActiveSheetIndex());
+			return this.out;
+		} catch (RuntimeException e) {
+			this.out.dispose();
+			throw e;
+		} finally {
+			this.out = null;
+			this.styles = null;
+			this.fonts = null;
+		}
+	}
+
+	private void copySheetSettings(SheetTemplate sheetTemplate, Sheet sheet) {
+		Sheet src = sheetTemplate.sheet;
+		sheet.setDefaultColumnWidth(src.getDefaultColumnWidth());
+		sheet.setDefaultRowHeight(src.getDefaultRowHeight());
+		int lastColumn = 0;
+		for (Row row : src) {
+			lastColumn = Math.max(lastColumn, row.getLastCellNum());
+		}
+		for (int c = 0; c <= lastColumn; c++) {
+			sheet.setColumnWidth(c, src.getColumnWidth(c));
+			sheet.setColumnHidden(c, src.isColumnHidden(c));
+		}
+		sheet.setDisplayGridlines(src.isDisplayGridlines());
+		sheet.setPrintGridlines(src.isPrintGridlines());
+		sheet.setHorizontallyCenter(src.getHorizontallyCenter());
+		sheet.setVerticallyCenter(src.getVerticallyCenter());
+		sheet.setFitToPage(src.getFitToPage());
+		sheet.setAutobreaks(src.getAutobreaks());
+		for (short margin : new short[] { Sheet.LeftMargin, Sheet.RightMargin, Sheet.TopMargin, Sheet.BottomMargin,
+		        Sheet.HeaderMargin, Sheet.FooterMargin }) {
+			sheet.setMargin(margin, src.getMargin(margin));
+		}
+
+		PrintSetup from = src.getPrintSetup();
+		PrintSetup to = sheet.getPrintSetup();
+		to.setLandscape(from.getLandscape());
+		to.setPaperSize(from.getPaperSize());
+		to.setScale(from.getScale());
+		to.setFitWidth(from.getFitWidth());
+		to.setFitHeight(from.getFitHeight());
+
+		sheet.getHeader().setLeft(src.getHeader().getLeft());
+		sheet.getHeader().setCenter(src.getHeader().getCenter());
+		sheet.getHeader().setRight(src.getHeader().getRight());
+		sheet.getFooter().setLeft(src.getFooter().getLeft());
+		sheet.getFooter().setCenter(src.getFooter().getCenter());
+		sheet.getFooter().setRight(src.getFooter().getRight());
+
+		CellRangeAddress repeating = src.getRepeatingRows();
+		if (repeating != null && repeating.getLastRow() < sheetTemplate.firstTagRow) {
+			// rows before the first tag keep their position
+			sheet.setRepeatingRows(repeating);
+		}
+	}
+
+	private Font createFont(int fontIndex, HSSFPalette palette) {
+		Font srcFont = this.template.getFontAt(fontIndex);
+		XSSFFont font = (XSSFFont) this.out.createFont();
+		font.setFontName(srcFont.getFontName());
+		font.setFontHeight(srcFont.getFontHeight());
+		font.setBold(srcFont.getBold());
+		font.setItalic(srcFont.getItalic());
+		font.setStrikeout(srcFont.getStrikeout());
+		font.setUnderline(srcFont.getUnderline());
+		font.setTypeOffset(srcFont.getTypeOffset());
+		if (srcFont.getColor() != Font.COLOR_NORMAL) {
+			XSSFColor color = toXSSFColor(palette, srcFont.getColor());
+			if (color != null) {
+				font.setColor(color);
+			} else {
+				font.setColor(srcFont.getColor());
+			}
+		}
+		return font;
+	}
+
+	private CellStyle createStyle(CellStyle src) {
+		XSSFCellStyle style = (XSSFCellStyle) this.out.createCellStyle();
+		if (src instanceof XSSFCellStyle) {
+			style.cloneStyleFrom(src);
+			return style;
+		}
+		// POI cannot clone between formats.
+		HSSFPalette palette = ((HSSFWorkbook) this.template).getCustomPalette();
+		style.setAlignment(src.getAlignment());
+		style.setVerticalAlignment(src.getVerticalAlignment());
+		style.setWrapText(src.getWrapText());
+		style.setShrinkToFit(src.getShrinkToFit());
+		style.setRotation(src.getRotation());
+		style.setIndention(src.getIndention());
+		style.setLocked(src.getLocked());
+		style.setHidden(src.getHidden());
+		style.setBorderTop(src.getBorderTop());
+		style.setBorderBottom(src.getBorderBottom());
+		style.setBorderLeft(src.getBorderLeft());
+		style.setBorderRight(src.getBorderRight());
+		style.setTopBorderColor(src.getTopBorderColor());
+		style.setBottomBorderColor(src.getBottomBorderColor());
+		style.setLeftBorderColor(src.getLeftBorderColor());
+		style.setRightBorderColor(src.getRightBorderColor());
+		style.setFillPattern(src.getFillPattern());
+		if (src.getFillPattern() != FillPatternType.NO_FILL) {
+			XSSFColor foreground = toXSSFColor(palette, src.getFillForegroundColor());
+			if (foreground != null) {
+				style.setFillForegroundColor(foreground);
+			}
+			XSSFColor background = toXSSFColor(palette, src.getFillBackgroundColor());
+			if (background != null) {
+				style.setFillBackgroundColor(background);
+			}
+		}
+		style.setDataFormat(this.out.createDataFormat().getFormat(src.getDataFormatString()));
+		style.setFont(this.fonts.computeIfAbsent(src.getFontIndexAsInt(), (i) -> createFont(i, palette)));
+		return style;
+	}
+
+	private void emit(List<Node> nodes, Sheet sheet, int[] nextRow, MapContext context) {
+		for (Node node : nodes) {
+			if (node instanceof RowTemplate) {
+				emitRow((RowTemplate) node, sheet, nextRow[0]++, context);
+			} else if (node instanceof IfNode) {
+				IfNode ifNode = (IfNode) node;
+				if (Boolean.TRUE.equals(ifNode.test.evaluate(context))) {
+					emit(ifNode.body, sheet, nextRow, context);
+				}
+			} else {
+				emitLoop((LoopNode) node, sheet, nextRow, context);
+			}
+		}
+	}
+
+	private void emitLoop(LoopNode loop, Sheet sheet, int[] nextRow, MapContext context) {
+		Iterable<?> items = toIterable(loop.items.evaluate(context));
+		if (items == null) {
+			return;
+		}
+		String var = loop.var != null ? loop.var : (loop.groupBy != null ? "group" : null);
+		Object previousVar = var != null ? context.get(var) : null;
+		Object previousStatus = loop.varStatus != null ? context.get(loop.varStatus) : null;
+		try {
+			List<Object> selected = new ArrayList<>();
+			for (Object item : items) {
+				if (loop.select != null) {
+					context.set(loop.var, item);
+					if (!Boolean.TRUE.equals(loop.select.evaluate(context))) {
+						continue;
+					}
+				}
+				selected.add(item);
+			}
+			List<?> iterated = loop.groupBy != null ? group(selected, loop.groupBy) : selected;
+			int index = 0;
+			for (Object item : iterated) {
+				if (var != null) {
+					context.set(var, item);
+				}
+				if (loop.varStatus != null) {
+					context.set(loop.varStatus, new LoopStatus(index));
+				}
+				emit(loop.body, sheet, nextRow, context);
+				index++;
+			}
+		} finally {
+			if (var != null) {
+				context.set(var, previousVar);
+			}
+			if (loop.varStatus != null) {
+				context.set(loop.varStatus, previousStatus);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void emitRow(RowTemplate rowTemplate, Sheet sheet, int rowNum, MapContext context) {
+		Row row = sheet.createRow(rowNum);
+		Row src = rowTemplate.row;
+		if (src != null) {
+			row.setHeight(src.getHeight());
+			row.setZeroHeight(src.getZeroHeight());
+			if (src.isFormatted() && src.getRowStyle() != null) {
+				row.setRowStyle(getStyle(src.getRowStyle()));
+			}
+		}
+		for (CellTemplate cellTemplate : rowTemplate.cells) {
+			Cell cell = row.createCell(cellTemplate.column);
+			cell.setCellStyle(getStyle(cellTemplate.style));
+			Object value = cellTemplate.value;
+			if (value instanceof List) {
+				List<Object> parts = (List<Object>) value;
+				if (parts.size() == 1 && parts.get(0) instanceof Expression) {
+					value = ((Expression) parts.get(0)).evaluate(context);
+				} else {
+					StringBuilder sb = new StringBuilder();
+					for (Object part : parts) {
+						Object v = part instanceof Expression ? ((Expression) part).evaluate(context) : part;
+						if (v != null) {
+							sb.append(v);
+						}
+					}
+					value = sb.toString();
+				}
+			}
+			setValue(cell, value);
+		}
+		for (CellRangeAddress region : rowTemplate.regions) {
+			sheet.addMergedRegionUnsafe(new CellRangeAddress(rowNum + region.getFirstRow(),
+			        rowNum + region.getLastRow(), region.getFirstColumn(), region.getLastColumn()));
+		}
+	}
+
+	private CellStyle getStyle(CellStyle src) {
+		return this.styles.computeIfAbsent(src.getIndex(), (i) -> createStyle(src));
+	}
+
+	private List<GroupData> group(List<Object> items, String groupBy) {
+		LinkedHashMap<Object, GroupData> groups = new LinkedHashMap<>();
+		for (Object item : items) {
+			Object key = jexl.getProperty(item, groupBy);
+			groups.computeIfAbsent(key, (k) -> new GroupData(item)).getItems().add(item);
+		}
+		return new ArrayList<>(groups.values());
+	}
+
+	private List<SheetTemplate> parse() throws UnsupportedTemplateException {
+		List<SheetTemplate> sheets = new ArrayList<>();
+		for (int i = 0; i < this.template.getNumberOfSheets(); i++) {
+			sheets.add(parseSheet(this.template.getSheetAt(i)));
+		}
+		return sheets;
+	}
+
+	private Map<String, String> parseAttributes(String tag, String allowed, int rowNum)
+	        throws UnsupportedTemplateException {
+		Map<String, String> attributes = new HashMap<>();
+		Matcher matcher = ATTRIBUTE.matcher(tag);
+		while (matcher.find()) {
+			if (!Arrays.asList(allowed.split(",")).contains(matcher.group(1))) {
+				throw new UnsupportedTemplateException("attribute " + matcher.group(1) + " on row " + (rowNum + 1));
+			}
+			attributes.put(matcher.group(1), matcher.group(2));
+		}
+		return attributes;
+	}
+
+	private Object parseCell(Cell cell) throws UnsupportedTemplateException {
+		switch (cell.getCellType()) {
+		case STRING:
+			String text = cell.getStringCellValue();
+			if (text.contains("$[")) {
+				throw new UnsupportedTemplateException("jxls formula in " + cell.getAddress());
+			}
+			if (text.contains("jx:")) {
+				throw new UnsupportedTemplateException("tag not alone on its row in " + cell.getAddress());
+			}
+			if (!text.contains("${")) {
+				return text;
+			}
+			return parseExpressions(text, cell);
+		case NUMERIC:
+			return cell.getNumericCellValue();
+		case BOOLEAN:
+			return cell.getBooleanCellValue();
+		case FORMULA:
+			// references would not follow the rows
+			throw new UnsupportedTemplateException("formula in " + cell.getAddress());
+		default:
+			return null;
+		}
+	}
+
+	private Expression parseExpression(String expression, int rowNum) throws UnsupportedTemplateException {
+		String text = expression.trim();
+		if (!text.startsWith("${") || !text.endsWith("}")) {
+			throw new UnsupportedTemplateException("expected ${...} on row " + (rowNum + 1) + ": " + expression);
+		}
+		try {
+			return jexl.createExpression(text.substring(2, text.length() - 1));
+		} catch (JexlException e) {
+			throw new UnsupportedTemplateException("invalid expression on row " + (rowNum + 1) + ": " + expression);
+		}
+	}
+
+	private List<Object> parseExpressions(String text, Cell cell) throws UnsupportedTemplateException {
+		List<Object> parts = new ArrayList<>();
+		int i = 0;
+		while (i < text.length()) {
+			int start = text.indexOf("${", i);
+			if (start < 0) {
+				parts.add(text.substring(i));
+				break;
+			}
+			if (start > i) {
+				parts.add(text.substring(i, start));
+			}
+			int end = start + 2;
+			int depth = 0;
+			char quote = 0;
+			for (; end < text.length(); end++) {
+				char c = text.charAt(end);
+				if (quote != 0) {
+					if (c == quote) {
+						quote = 0;
+					}
+				} else if (c == '"' || c == '\'') {
+					quote = c;
+				} else if (c == '{') {
+					depth++;
+				} else if (c == '}') {
+					if (depth == 0) {
+						break;
+					}
+					depth--;
+				}
+			}
+			if (end >= text.length()) {
+				throw new UnsupportedTemplateException("unterminated expression in " + cell.getAddress());
+			}
+			try {
+				parts.add(jexl.createExpression(text.substring(start + 2, end)));
+			} catch (JexlException e) {
+				throw new UnsupportedTemplateException("invalid expression in " + cell.getAddress());
+			}
+			i = end + 1;
+		}
+		return parts;
+	}
+
+	private SheetTemplate parseSheet(Sheet sheet) throws UnsupportedTemplateException {
+		SheetTemplate sheetTemplate = new SheetTemplate(sheet);
+		List<List<Node>> stack = new ArrayList<>();
+		List<Object> open = new ArrayList<>();
+		List<Node> current = sheetTemplate.nodes;
+		List<RowTemplate> run = new ArrayList<>();
+		List<CellRangeAddress> regions = sheet.getMergedRegions();
+
+		for (int rowNum = 0; rowNum <= sheet.getLastRowNum(); rowNum++) {
+			Row row = sheet.getRow(rowNum);
+			String tag = null;
+			RowTemplate rowTemplate = new RowTemplate(rowNum, row);
+			if (row != null) {
+				for (Cell cell : row) {
+					String text = cell.getCellType() == CellType.STRING ? cell.getStringCellValue().trim() : "";
+					if (text.startsWith("<jx:") || text.startsWith("</jx:")) {
+						if (tag != null) {
+							throw new UnsupportedTemplateException("two tags on row " + (rowNum + 1));
+						}
+						tag = text;
+					} else {
+						Object value = parseCell(cell);
+						rowTemplate.cells.add(new CellTemplate(cell.getColumnIndex(), cell.getCellStyle(), value));
+					}
+				}
+			}
+			if (tag == null) {
+				current.add(rowTemplate);
+				run.add(rowTemplate);
+				continue;
+			}
+			if (!rowTemplate.cells.stream()
+			        .allMatch(c -> c.value == null || c.value instanceof String && ((String) c.value).isBlank())) {
+				throw new UnsupportedTemplateException("tag not alone on row " + (rowNum + 1));
+			}
+			sheetTemplate.firstTagRow = Math.min(sheetTemplate.firstTagRow, rowNum);
+			addRegions(run, regions);
+			run.clear();
+
+			if (tag.startsWith(FOR_EACH)) {
+				Map<String, String> attributes = parseAttributes(tag, "items,var,varStatus,groupBy,select", rowNum);
+				LoopNode loop = new LoopNode();
+				if (attributes.get("items") == null) {
+					throw new UnsupportedTemplateException("forEach without items on row " + (rowNum + 1));
+				}
+				loop.items = parseExpression(attributes.get("items"), rowNum);
+				loop.var = attributes.get("var");
+				loop.varStatus = attributes.get("varStatus");
+				loop.groupBy = attributes.get("groupBy");
+				if (attributes.get("select") != null) {
+					if (loop.var == null) {
+						throw new UnsupportedTemplateException("select without var on row " + (rowNum + 1));
+					}
+					loop.select = parseExpression(attributes.get("select"), rowNum);
+				}
+				current.add(loop);
+				stack.add(current);
+				open.add(FOR_EACH);
+				current = loop.body;
+			} else if (tag.startsWith(IF)) {
+				Map<String, String> attributes = parseAttributes(tag, "test", rowNum);
+				if (attributes.get("test") == null) {
+					throw new UnsupportedTemplateException("if without test on row " + (rowNum + 1));
+				}
+				IfNode ifNode = new IfNode(parseExpression(attributes.get("test"), rowNum));
+				current.add(ifNode);
+				stack.add(current);
+				open.add(IF);
+				current = ifNode.body;
+			} else if (tag.equals(END_FOR_EACH) || tag.equals(END_IF)) {
+				Object expected = tag.equals(END_FOR_EACH) ? FOR_EACH : IF;
+				if (open.isEmpty() || open.get(open.size() - 1) != expected) {
+					throw new UnsupportedTemplateException("unexpected " + tag + " on row " + (rowNum + 1));
+				}
+				open.remove(open.size() - 1);
+				current = stack.remove(stack.size() - 1);
+			} else {
+				throw new UnsupportedTemplateException("unsupported tag on row " + (rowNum + 1) + ": " + tag);
+			}
+		}
+		if (!open.isEmpty()) {
+			throw new UnsupportedTemplateException("missing end tag in sheet " + sheet.getSheetName());
+		}
+		addRegions(run, regions);
+		return sheetTemplate;
+	}
+
+	/**
+	 * Merged regions are copied if all their rows are in the same run of rows without tags, since these rows are
+	 * always produced together.
+	 */
+	private void addRegions(List<RowTemplate> run, List<CellRangeAddress> regions) {
+		if (run.isEmpty()) {
+			return;
+		}
+		int first = run.get(0).rowNum;
+		int last = run.get(run.size() - 1).rowNum;
+		for (CellRangeAddress region : regions) {
+			if (region.getFirstRow() >= first && region.getLastRow() <= last) {
+				RowTemplate start = run.get(region.getFirstRow() - first);
+				start.regions.add(new CellRangeAddress(0, region.getLastRow() - region.getFirstRow(),
+				        region.getFirstColumn(), region.getLastColumn()));
+			}
+		}
+	}
+
+	private void setValue(Cell cell, Object value) {
+		if (value == null) {
+			return;
+		} else if (value instanceof Number) {
+			cell.setCellValue(((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			cell.setCellValue((Boolean) value);
+		} else if (value instanceof Date) {
+			cell.setCellValue((Date) value);
+		} else if (value instanceof Calendar) {
+			cell.setCellValue((Calendar) value);
+		} else {
+			cell.setCellValue(value.toString());
+		}
+	}
+
+	private Iterable<?> toIterable(Object items) {
+		if (items == null) {
+			return null;
+		} else if (items instanceof Iterable) {
+			return (Iterable<?>) items;
+		} else if (items instanceof Object[]) {
+			return Arrays.asList((Object[]) items);
+		} else if (items instanceof Map) {
+			return ((Map<?, ?>) items).values();
+		}
+		logger.warn("cannot iterate over {}", items.getClass().getSimpleName());
+		return null;
+	}
+
+	private XSSFColor toXSSFColor(HSSFPalette palette, short index) {
+		if (index == HSSFColor.HSSFColorPredefined.AUTOMATIC.getIndex()) {
+			return null;
+		}
+		HSSFColor color = palette.getColor(index);
+		if (color == null) {
+			return null;
+		}
+		short[] rgb = color.getTriplet();
+		return new XSSFColor(new byte[] { (byte) rgb[0], (byte) rgb[1], (byte) rgb[2] }, null);
+	}
+
+}
@@ -0,0 +1,352 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.spreadsheet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.ooxml.util.SAXHelper;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Read the rows of the first sheets of a workbook (.xls or .xlsx) with the POI event APIs.
+ *
+ * The cells are received as they are parsed, without building the workbook in memory. Values are given as text the
+ * same way the jxls reader did, so the R* classes convert them as before: numbers without a fraction are written as
+ * integers, dates are their Excel day number, and empty cells are absent.
+ *
+ * @author Jean-François Lamy
+ */
+public class WorkbookRowReader {
+
+	/**
+	 * Receives the rows that have at least one value, in order. Empty rows are skipped.
+	 */
+	@FunctionalInterface
+	public interface RowHandler {
+		void row(int sheetIndex, SheetRow row);
+	}
+
+	/**
+	 * The values of a row, by column number (0 based).
+	 */
+	public static class SheetRow {
+		private final TreeMap<Integer, String> cells = new TreeMap<>();
+		private final int rowNum;
+
+		SheetRow(int rowNum) {
+			this.rowNum = rowNum;
+		}
+
+		/**
+		 * @param col 0 based
+		 * @return the text of the cell, null if empty
+		 */
+		public String get(int col) {
+			return this.cells.get(col);
+		}
+
+		/**
+		 * @param col 0 based
+		 * @return the name of the cell, as in "C12"
+		 */
+		public String getReference(int col) {
+			return new CellReference(this.rowNum, col).formatAsString();
+		}
+
+		/**
+		 * @return the row number, 0 based
+		 */
+		public int getRowNum() {
+			return this.rowNum;
+		}
+
+		public boolean isBlank(int col) {
+			String s = this.cells.get(col);
+			return s == null || s.isBlank();
+		}
+
+		void put(int col, String value) {
+			if (value != null && !value.isEmpty()) {
+				this.cells.put(col, value);
+			}
+		}
+
+		boolean isEmpty() {
+			return this.cells.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return (this.rowNum + 1) + " " + this.cells;
+		}
+	}
+
+	/**
+	 * Legacy .xls: records of the whole file, sheets one after the other.
+	 */
+	private static class HSSFRows implements HSSFListener {
+		private SheetRow current;
+		private final RowHandler handler;
+		private final int nbSheets;
+		private int sheetIndex = -1;
+		private SSTRecord sst;
+		/** a formula with a text result is followed by a record with the text */
+		private FormulaRecord stringFormula;
+
+		HSSFRows(int nbSheets, RowHandler handler) {
+			this.nbSheets = nbSheets;
+			this.handler = handler;
+		}
+
+		@Override
+		public void processRecord(Record record) {
+			switch (record.getSid()) {
+			case BOFRecord.sid:
+				endRow();
+				if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+					this.sheetIndex++;
+				}
+				break;
+			case EOFRecord.sid:
+				endRow();
+				break;
+			case SSTRecord.sid:
+				this.sst = (SSTRecord) record;
+				break;
+			case LabelSSTRecord.sid:
+				LabelSSTRecord lsst = (LabelSSTRecord) record;
+				cell(lsst.getRow(), lsst.getColumn(), this.sst.getString(lsst.getSSTIndex()).getString());
+				break;
+			case LabelRecord.sid:
+				LabelRecord label = (LabelRecord) record;
+				cell(label.getRow(), label.getColumn(), label.getValue());
+				break;
+			case NumberRecord.sid:
+				// RK values are given as numbers by the event factory
+				NumberRecord number = (NumberRecord) record;
+				cell(number.getRow(), number.getColumn(), numberText(number.getValue()));
+				break;
+			case FormulaRecord.sid:
+				FormulaRecord formula = (FormulaRecord) record;
+				if (formula.hasCachedResultString()) {
+					this.stringFormula = formula;
+				} else if (formula.getCachedResultType() == CellType.NUMERIC.getCode()) {
+					cell(formula.getRow(), formula.getColumn(), numberText(formula.getValue()));
+				}
+				break;
+			case StringRecord.sid:
+				if (this.stringFormula != null) {
+					cell(this.stringFormula.getRow(), this.stringFormula.getColumn(),
+					        ((StringRecord) record).getString());
+					this.stringFormula = null;
+				}
+				break;
+			case BoolErrRecord.sid:
+				BoolErrRecord boolErr = (BoolErrRecord) record;
+				if (boolErr.isBoolean()) {
+					cell(boolErr.getRow(), boolErr.getColumn(), Boolean.toString(boolErr.getBooleanValue()));
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		private void cell(int rowNum, int col, String value) {
+			if (this.sheetIndex < 0 || this.sheetIndex >= this.nbSheets) {
+				return;
+			}
+			if (this.current != null && this.current.getRowNum() != rowNum) {
+				endRow();
+			}
+			if (this.current == null) {
+				this.current = new SheetRow(rowNum);
+			}
+			this.current.put(col, value);
+		}
+
+		private void endRow() {
+			if (this.current != null && !this.current.isEmpty()) {
+				this.handler.row(this.sheetIndex, this.current);
+			}
+			this.current = null;
+		}
+	}
+
+	/**
+	 * .xlsx: the SAX handler of a sheet calls us for each cell.
+	 */
+	private static class XSSFRows implements SheetContentsHandler {
+		private SheetRow current;
+		private final RowHandler handler;
+		private int nextCol;
+		private final int sheetIndex;
+
+		XSSFRows(int sheetIndex, RowHandler handler) {
+			this.sheetIndex = sheetIndex;
+			this.handler = handler;
+		}
+
+		@Override
+		public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+			int col = cellReference != null ? new CellReference(cellReference).getCol() : this.nextCol;
+			this.current.put(col, formattedValue);
+			this.nextCol = col + 1;
+		}
+
+		@Override
+		public void endRow(int rowNum) {
+			if (!this.current.isEmpty()) {
+				this.handler.row(this.sheetIndex, this.current);
+			}
+			this.current = null;
+		}
+
+		@Override
+		public void headerFooter(String text, boolean isHeader, String tagName) {
+		}
+
+		@Override
+		public void startRow(int rowNum) {
+			this.current = new SheetRow(rowNum);
+			this.nextCol = 0;
+		}
+	}
+
+	private static final Logger logger = (Logger) LoggerFactory.getLogger(WorkbookRowReader.class);
+
+	/**
+	 * Number as the jxls reader wrote it.
+	 *
+	 * @param value
+	 * @return integer if there is no fractional part
+	 */
+	static String numberText(double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < Long.MAX_VALUE) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	private final int nbSheets;
+
+	/**
+	 * @param nbSheets the number of sheets to read, starting with the first
+	 */
+	public WorkbookRowReader(int nbSheets) {
+		this.nbSheets = nbSheets;
+	}
+
+	/**
+	 * Read the rows.
+	 *
+	 * @param inputStream .xls or .xlsx content, left open
+	 * @param handler     called for each row
+	 * @throws IOException if the content is not a workbook or cannot be read
+	 */
+	public void read(InputStream inputStream, RowHandler handler) throws IOException {
+		InputStream is = FileMagic.prepareToCheckMagic(inputStream);
+		FileMagic fm = FileMagic.valueOf(is);
+		logger.debug("reading {} workbook", fm);
+		switch (fm) {
+		case OLE2:
+			readHSSF(is, handler);
+			break;
+		case OOXML:
+			readXSSF(is, handler);
+			break;
+		default:
+			throw new IOException("not a spreadsheet: " + fm);
+		}
+	}
+
+	private void readHSSF(InputStream is, RowHandler handler) throws IOException {
+		try (POIFSFileSystem fs = new POIFSFileSystem(is)) {
+			HSSFRows rows = new HSSFRows(this.nbSheets, handler);
+			HSSFRequest request = new HSSFRequest();
+			request.addListenerForAllRecords(rows);
+			new HSSFEventFactory().processWorkbookEvents(request, fs);
+			rows.endRow();
+		}
+	}
+
+	private void readXSSF(InputStream is, RowHandler handler) throws IOException {
+		// numbers and dates as raw values, not as formatted by the cell style
+		DataFormatter raw = new DataFormatter() {
+			@Override
+			public String formatRawCellContents(double value, int formatIndex, String formatString) {
+				return numberText(value);
+			}
+
+			@Override
+			public String formatRawCellContents(double value, int formatIndex, String formatString,
+			        boolean use1904Windowing) {
+				return numberText(value);
+			}
+		};
+		OPCPackage pkg = null;
+		try {
+			pkg = OPCPackage.open(is);
+			ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+			XSSFReader reader = new XSSFReader(pkg);
+			StylesTable styles = reader.getStylesTable();
+			Iterator<InputStream> sheets = reader.getSheetsData();
+			for (int sheetIndex = 0; sheetIndex < this.nbSheets && sheets.hasNext(); sheetIndex++) {
+				try (InputStream sheet = sheets.next()) {
+					XMLReader parser = SAXHelper.newXMLReader();
+					parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings,
+					        new XSSFRows(sheetIndex, handler), raw, false));
+					parser.parse(new InputSource(sheet));
+				}
+			}
+		} catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+			throw new IOException(e);
+		} finally {
+			if (pkg != null) {
+				// opened read-only from a stream, nothing to save
+				pkg.revert();
+			}
+		}
+	}
+
+}
@@ -1152,6 +1152,8 @@ public class UIEvent {
 
 	private Athlete athlete;
 
+	private final long createdNanos = System.nanoTime();
+
 	private Object origin;
 
 	private UIEvent(Athlete athlete, Object origin) {
@@ -1172,6 +1174,13 @@ public class UIEvent {
 		return athlete;
 	}
 
+	/**
+	 * @return when the event was emitted, as given by {@link System#nanoTime()}
+	 */
+	public long getCreatedNanos() {
+		return createdNanos;
+	}
+
 	/**
 	 * Gets the origin.
 	 *
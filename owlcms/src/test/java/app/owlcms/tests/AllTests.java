@@ -7,6 +7,7 @@
 package app.owlcms.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
@@ -15,12 +16,14 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 
 //import org.concordiainternational.competition.spreadsheet.ExtenXLSReader;
+import org.hibernate.stat.Statistics;
 import org.junit.runner.RunWith;
 import org.slf4j.LoggerFactory;
 
 import com.googlecode.junittoolbox.SuiteClasses;
 import com.googlecode.junittoolbox.WildcardPatternSuite;
 
+import app.owlcms.data.jpa.JPAService;
 import ch.qos.logback.classic.Logger;
 
 @RunWith(WildcardPatternSuite.class)
@@ -55,6 +58,31 @@ public class AllTests {
         }
     }
 
+    /**
+     * Fail if running some code issues more than a given number of SQL statements. Used to catch code that loads
+     * lazy associations one athlete at a time (N+1 selects).
+     *
+     * @param label     identifies the code in the failure message
+     * @param max       the number of statements allowed, independent of the number of athletes
+     * @param operation the code to run
+     * @return the number of statements issued
+     */
+    static public long assertStatementsAtMost(String label, long max, Runnable operation) {
+        Statistics statistics = JPAService.getStatistics();
+        boolean wasEnabled = statistics.isStatisticsEnabled();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            operation.run();
+            long count = statistics.getPrepareStatementCount();
+            logger.info("{}: {} statements", label, count);
+            assertTrue(label + ": " + count + " statements, expected at most " + max, count <= max);
+            return count;
+        } finally {
+            statistics.setStatisticsEnabled(wasEnabled);
+        }
+    }
+
     static public String getContents(InputStream is) {
         StringBuilder contents = new StringBuilder();
 
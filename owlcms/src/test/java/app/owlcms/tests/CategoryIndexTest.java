@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import app.owlcms.Main;
+import app.owlcms.data.agegroup.AgeGroup;
+import app.owlcms.data.athlete.Gender;
+import app.owlcms.data.category.AgeDivision;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.category.CategoryIndex;
+import app.owlcms.data.category.CategoryRepository;
+import app.owlcms.data.category.RegistrationPreferenceComparator;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.jpa.JPAService;
+
+/**
+ * The category index must give the same answers as the database.
+ */
+public class CategoryIndexTest {
+
+    @BeforeClass
+    public static void setupTests() {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        TestData.insertInitialData(0, true);
+    }
+
+    @AfterClass
+    public static void tearDownTests() {
+        JPAService.close();
+    }
+
+    @Test
+    public void sameAsQuery() {
+        assertFalse(CategoryRepository.findActive().isEmpty());
+        for (Gender gender : new Gender[] { null, Gender.F, Gender.M }) {
+            for (Integer age : new Integer[] { null, 5, 13, 15, 17, 20, 21, 35, 36, 60, 99 }) {
+                for (Double bw : new Double[] { null, 40.0D, 55.0D, 61.0D, 73.0D, 73.01D, 89.0D, 109.5D, 150.0D }) {
+                    String what = gender + " " + age + " " + bw;
+                    assertEquals(what, codes(query(gender, age, bw)),
+                            codes(CategoryIndex.getCurrent().find(gender, null, age, bw)));
+                }
+            }
+        }
+    }
+
+    private List<String> codes(List<Category> categories) {
+        return categories.stream().map(Category::getCode).collect(Collectors.toList());
+    }
+
+    private List<Category> query(Gender gender, Integer age, Double bw) {
+        List<Category> found = CategoryRepository.findFiltered((String) null, gender, (AgeDivision) null,
+                (AgeGroup) null, age, bw, true, -1, -1);
+        found.sort(new RegistrationPreferenceComparator());
+        return found;
+    }
+
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import app.owlcms.Main;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.export.CompetitionData;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.data.records.RecordDefinitionReader;
+import app.owlcms.data.records.RecordEvent;
+import app.owlcms.data.records.RecordRepository;
+
+/**
+ * An export restored in an emptied database gives the same athletes and records, in both formats. There are more than
+ * two pages of athletes and of records, so that the export and the restore both go through several chunks.
+ */
+public class CompetitionDataTest {
+
+    /** two sessions of this size, more than twice the page size used by the export */
+    private static final int NB_PER_SESSION = 110;
+
+    @BeforeClass
+    public static void setupTests() throws IOException {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        TestData.insertInitialData(NB_PER_SESSION, true);
+        RecordDefinitionReader.readZip(CompetitionDataTest.class.getResourceAsStream("/testData/records/IWF_EWF.zip"));
+    }
+
+    @AfterClass
+    public static void tearDownTests() {
+        JPAService.close();
+    }
+
+    @Test
+    public void compressed() throws IOException {
+        roundTrip(true);
+    }
+
+    @Test
+    public void indented() throws IOException {
+        roundTrip(false);
+    }
+
+    @Test
+    public void truncated() throws IOException {
+        String athletes = describe(AthleteRepository.findAll());
+        String records = describeRecords(RecordRepository.findAll());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CompetitionData().writeData(out, false);
+        // cut near the end, in the records, after all the athletes
+        byte[] content = out.toByteArray();
+        byte[] truncated = Arrays.copyOf(content, content.length * 9 / 10);
+        try {
+            new CompetitionData().restore(new ByteArrayInputStream(truncated));
+            fail("truncated export was restored");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(athletes, describe(AthleteRepository.findAll()));
+        assertEquals(records, describeRecords(RecordRepository.findAll()));
+    }
+
+    private String describe(List<Athlete> athletes) {
+        // athletes with the same name are in different sessions or categories
+        return athletes.stream()
+                .map(a -> a.getLastName() + " " + a.getFirstName() + " " + a.getGroup().getName() + " "
+                        + a.getCategoryCode() + " " + a.getBodyWeight())
+                .collect(Collectors.toCollection(TreeSet::new)).toString();
+    }
+
+    private String describeRecords(List<RecordEvent> records) {
+        return records.stream()
+                .map(r -> r.getRecordFederation() + " " + r.getRecordName() + " " + r.getAgeGrp() + " "
+                        + r.getBwCatString() + " " + r.getRecordLift() + " " + r.getRecordValue() + " "
+                        + r.getAthleteName())
+                .sorted()
+                .collect(Collectors.toList()).toString();
+    }
+
+    private void roundTrip(boolean compressed) throws IOException {
+        List<Athlete> before = AthleteRepository.findAll();
+        assertTrue(before.size() > 200);
+        String expected = describe(before);
+        List<RecordEvent> recordsBefore = RecordRepository.findAll();
+        assertTrue(recordsBefore.size() > 200);
+        String expectedRecords = describeRecords(recordsBefore);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CompetitionData().writeData(out, compressed);
+        new CompetitionData().restore(new ByteArrayInputStream(out.toByteArray()));
+
+        List<Athlete> after = AthleteRepository.findAll();
+        assertEquals(before.size(), after.size());
+        for (Athlete a : after) {
+            // the sessions are resolved across chunks
+            assertNotNull(a.getShortName(), a.getGroup());
+        }
+        assertEquals(expected, describe(after));
+        assertEquals(expectedRecords, describeRecords(RecordRepository.findAll()));
+    }
+
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static app.owlcms.tests.AllTests.assertStatementsAtMost;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import app.owlcms.Main;
+import app.owlcms.data.agegroup.AgeGroupRepository;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.group.GroupRepository;
+import app.owlcms.data.jpa.JPAService;
+
+/**
+ * The main read paths must not issue one query per athlete. The limits do not depend on the number of athletes.
+ */
+public class FetchPlanTest {
+
+    private static final int NB_ATHLETES = 40;
+    private static final int MAX_STATEMENTS = 10;
+
+    @BeforeClass
+    public static void setupTests() {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        TestData.insertInitialData(NB_ATHLETES, true);
+    }
+
+    @AfterClass
+    public static void tearDownTests() {
+        JPAService.close();
+    }
+
+    @Test
+    public void medals() {
+        assertStatementsAtMost("medals", MAX_STATEMENTS, () -> {
+            List<Athlete> athletes = AthleteRepository.findAthletesForGlobalRanking(null);
+            Competition.getCurrent().computeMedalsByCategory(athletes);
+        });
+    }
+
+    @Test
+    public void rankingAthletes() {
+        assertStatementsAtMost("ranking athletes", MAX_STATEMENTS, () -> {
+            List<Athlete> athletes = AthleteRepository.findAll();
+            assertTrue(athletes.size() >= NB_ATHLETES);
+            touchParticipations(athletes);
+        });
+    }
+
+    @Test
+    public void resultsSheet() {
+        assertStatementsAtMost("results sheet", MAX_STATEMENTS, () -> {
+            List<Athlete> athletes = AgeGroupRepository.allWeighedInPAthletesForAgeGroupAgeDivision(null, null);
+            for (Athlete a : athletes) {
+                a.getCategory().getCode();
+                a.getGroup();
+            }
+        });
+    }
+
+    @Test
+    public void scoreboard() {
+        Group group = GroupRepository.findByName("A");
+        assertStatementsAtMost("scoreboard", MAX_STATEMENTS, () -> {
+            List<Athlete> athletes = AthleteRepository.findAllByGroupAndWeighIn(group, true);
+            assertTrue(athletes.size() > 0);
+            touchParticipations(athletes);
+        });
+    }
+
+    private void touchParticipations(List<Athlete> athletes) {
+        for (Athlete a : athletes) {
+            for (Participation p : a.getParticipations()) {
+                p.getCategory().getCode();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import app.owlcms.Main;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.competition.MedalService;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.group.GroupRepository;
+import app.owlcms.data.jpa.JPAService;
+
+/**
+ * Medalists are only recomputed for the categories of the athletes that changed, and are the same as when computed
+ * for the whole competition.
+ */
+public class MedalServiceTest {
+
+    private static final int NB_ATHLETES = 20;
+
+    @BeforeClass
+    public static void setupTests() {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        TestData.insertInitialData(NB_ATHLETES, true);
+    }
+
+    @AfterClass
+    public static void tearDownTests() {
+        JPAService.close();
+    }
+
+    private static List<String> codes(Athlete a) {
+        return a.getParticipations().stream().map(Participation::getCategory).map(Category::getCode)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> describe(Collection<Athlete> medalists) {
+        return medalists.stream()
+                .map(m -> m.getShortName() + "_" + m.getId() + " " + m.getCategory().getCode() + " "
+                        + m.getBestSnatch() + " " + m.getBestCleanJerk() + " " + m.getTotal())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Medalists of every category, computed from scratch for the whole competition.
+     */
+    private static Map<String, List<String>> fullMedals() {
+        Map<String, List<String>> medals = new TreeMap<>();
+        Competition.getCurrent().computeMedalsByCategory(AthleteRepository.findAthletesForGlobalRanking(null))
+                .forEach((c, m) -> medals.put(c.getCode(), describe(m)));
+        return medals;
+    }
+
+    /**
+     * Medalists of the same categories, as kept by the service.
+     */
+    private static Map<String, List<String>> cachedMedals(Collection<Category> categories) {
+        Map<String, List<String>> medals = new TreeMap<>();
+        for (Category c : categories) {
+            List<String> m = describe(MedalService.getCurrent().getMedalists(c));
+            if (!m.isEmpty()) {
+                medals.put(c.getCode(), m);
+            }
+        }
+        return medals;
+    }
+
+    private static Map<String, List<String>> withoutEmpty(Map<String, List<String>> medals) {
+        medals.values().removeIf(List::isEmpty);
+        return medals;
+    }
+
+    @Test
+    public void categoryChange() {
+        List<Athlete> athletes = AthleteRepository.findAll();
+        for (int i = 0; i < athletes.size(); i++) {
+            Athlete a = athletes.get(i);
+            a.setValidation(false);
+            a.setSnatch1Declaration(Integer.toString(70 + i));
+            a.setSnatch1ActualLift(Integer.toString(70 + i));
+            a.setCleanJerk1Declaration(Integer.toString(90 + i));
+            a.setCleanJerk1ActualLift(Integer.toString(90 + i));
+            AthleteRepository.save(a);
+        }
+
+        // every category is now cached
+        Map<String, Category> categories = new TreeMap<>();
+        for (Athlete a : AthleteRepository.findAll()) {
+            for (Participation p : a.getParticipations()) {
+                categories.putIfAbsent(p.getCategory().getCode(), p.getCategory());
+            }
+        }
+        assertEquals(withoutEmpty(fullMedals()), cachedMedals(categories.values()));
+
+        // move a medalist to another category
+        Athlete moved = AthleteRepository.findAll().get(0);
+        String left = moved.getCategory().getCode();
+        Category target = categories.values().stream().filter(c -> !codes(moved).contains(c.getCode()))
+                .findFirst().orElse(null);
+        assertNotNull("test data has a single category", target);
+        assertTrue(describe(MedalService.getCurrent().getMedalists(moved.getCategory())).stream()
+                .anyMatch(m -> m.startsWith(moved.getShortName() + "_" + moved.getId() + " ")));
+        moved.setEligibleCategories(Set.of(target));
+        moved.setCategory(target);
+        AthleteRepository.save(moved);
+
+        assertFalse(describe(MedalService.getCurrent().getMedalists(categories.get(left))).stream()
+                .anyMatch(m -> m.startsWith(moved.getShortName() + "_" + moved.getId() + " ")));
+        assertEquals(withoutEmpty(fullMedals()), cachedMedals(categories.values()));
+    }
+
+    @Test
+    public void groupMedals() {
+        for (Group g : GroupRepository.findAll()) {
+            Map<String, List<String>> expected = new TreeMap<>();
+            Competition.getCurrent()
+                    .computeMedalsByCategory(AthleteRepository.findAthletesForGlobalRanking(g))
+                    .forEach((c, m) -> expected.put(c.getCode(), describe(m)));
+            Map<String, List<String>> actual = new TreeMap<>();
+            MedalService.getCurrent().getMedals(g, false).forEach((c, m) -> actual.put(c.getCode(), describe(m)));
+            assertEquals(g.getName(), expected, actual);
+        }
+    }
+
+    @Test
+    public void reused() {
+        Category c = AthleteRepository.findAll().get(0).getCategory();
+        TreeSet<Athlete> before = MedalService.getCurrent().getMedalists(c);
+        assertNotNull(before);
+        assertSame(before, MedalService.getCurrent().getMedalists(c));
+    }
+
+    @Test
+    public void savedAthlete() {
+        List<Athlete> athletes = AthleteRepository.findAll();
+        Athlete a = athletes.get(0);
+        Athlete other = athletes.stream().filter(b -> codes(b).stream().noneMatch(codes(a)::contains))
+                .findFirst().orElse(null);
+        assertNotNull("test data has a single category", other);
+
+        TreeSet<Athlete> own = MedalService.getCurrent().getMedalists(a.getCategory());
+        TreeSet<Athlete> others = MedalService.getCurrent().getMedalists(other.getCategory());
+        a.setSnatch1Declaration("60");
+        AthleteRepository.save(a);
+
+        assertNotSame(own, MedalService.getCurrent().getMedalists(a.getCategory()));
+        assertSame(others, MedalService.getCurrent().getMedalists(other.getCategory()));
+    }
+
+    @Test
+    public void subscribers() throws InterruptedException {
+        Athlete a = AthleteRepository.findAll().get(0);
+        CountDownLatch notified = new CountDownLatch(1);
+        Consumer<TreeSet<Athlete>> listener = (medalists) -> notified.countDown();
+        MedalService.getCurrent().subscribe(a.getCategory(), listener);
+        try {
+            a.setSnatch1Declaration("61");
+            AthleteRepository.save(a);
+            assertTrue(notified.await(10, TimeUnit.SECONDS));
+        } finally {
+            MedalService.getCurrent().unsubscribe(listener);
+        }
+    }
+
+}
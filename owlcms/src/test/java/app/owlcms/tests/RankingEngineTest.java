@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import app.owlcms.Main;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.athleteSort.AthleteSorter;
+import app.owlcms.data.athleteSort.Ranking;
+import app.owlcms.data.athleteSort.RankingEngine;
+import app.owlcms.data.category.Category;
+import app.owlcms.data.category.Participation;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.jpa.JPAService;
+
+/**
+ * The ranks maintained incrementally are the same as a full ranking of all the athletes.
+ */
+public class RankingEngineTest {
+
+    private static final int NB_ATHLETES = 20;
+    private static final Ranking[] OVERALL_RANKINGS = { Ranking.BW_SINCLAIR, Ranking.SMM, Ranking.QPOINTS };
+
+    @BeforeClass
+    public static void setupTests() {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        TestData.insertInitialData(NB_ATHLETES, true);
+    }
+
+    @AfterClass
+    public static void tearDownTests() {
+        JPAService.close();
+    }
+
+    /**
+     * Ranks computed from scratch, as done before the engine existed. Nothing is written.
+     */
+    private static Map<String, String> fullRanks() {
+        return JPAService.runInTransaction(em -> {
+            List<Athlete> athletes = AthleteSorter.assignCategoryRanks(em, null);
+            for (Ranking r : OVERALL_RANKINGS) {
+                AthleteSorter.assignOverallRanksAndPoints(AthleteSorter.resultsOrderCopy(athletes, r), r);
+            }
+            Map<String, String> ranks = ranks(athletes);
+            em.clear();
+            return ranks;
+        });
+    }
+
+    private static Map<String, String> ranks(List<Athlete> athletes) {
+        Map<String, String> ranks = new TreeMap<>();
+        for (Athlete a : athletes) {
+            String id = a.getShortName() + "_" + a.getId();
+            ranks.put(id + " sinclair", String.valueOf(a.getSinclairRank()));
+            ranks.put(id + " smm", String.valueOf(a.getSmmRank()));
+            ranks.put(id + " qpoints", String.valueOf(a.getqPointsRank()));
+            if (!a.isEligibleForIndividualRanking()) {
+                continue;
+            }
+            for (Participation p : a.getParticipations()) {
+                String key = id + " " + p.getCategory().getComputedCode();
+                ranks.put(key + " snatch", String.valueOf(p.getSnatchRank()));
+                ranks.put(key + " cj", String.valueOf(p.getCleanJerkRank()));
+                ranks.put(key + " total", String.valueOf(p.getTotalRank()));
+                ranks.put(key + " custom", String.valueOf(p.getCustomRank()));
+            }
+        }
+        return ranks;
+    }
+
+    /**
+     * Ranks as written by the engine.
+     */
+    private static Map<String, String> storedRanks() {
+        return JPAService.runInTransaction(
+                em -> ranks(AthleteRepository.doFindAllByGroupAndWeighIn(em, null, true, null)));
+    }
+
+    private static int updateRanks() {
+        return JPAService.runInTransaction(em -> RankingEngine.getCurrent().updateRanks(em));
+    }
+
+    @Test
+    public void liftsAndWeighIns() {
+        RankingEngine.getCurrent().invalidate();
+        updateRanks();
+        assertEquals(fullRanks(), storedRanks());
+
+        List<Athlete> athletes = AthleteRepository.findAllByGroupAndWeighIn(null, true);
+        assertTrue(athletes.size() > 4);
+        for (int i = 0; i < 3 * athletes.size(); i++) {
+            Athlete a = AthleteRepository.findById(athletes.get((i * 7) % athletes.size()).getId());
+            int weight = 60 + (i * 13) % 30;
+            String lift = (i % 4 == 3 ? "-" : "") + weight;
+            a.setValidation(false);
+            switch (i / athletes.size()) {
+            case 0:
+                a.setSnatch1Declaration(Integer.toString(weight));
+                a.setSnatch1ActualLift(lift);
+                break;
+            case 1:
+                a.setCleanJerk1Declaration(Integer.toString(weight + 20));
+                a.setCleanJerk1ActualLift((i % 4 == 3 ? "-" : "") + (weight + 20));
+                break;
+            default:
+                if (i % 5 == 0) {
+                    // weigh-in correction, changes the Sinclair and ranks the category again
+                    a.setBodyWeight(a.getBodyWeight() - 0.5);
+                } else {
+                    a.setSnatch2Declaration(Integer.toString(weight + 5));
+                    a.setSnatch2ActualLift(Integer.toString(weight + 5));
+                }
+                break;
+            }
+            AthleteRepository.save(a);
+            updateRanks();
+            assertEquals("after change " + i, fullRanks(), storedRanks());
+        }
+    }
+
+    @Test
+    public void categoryChanges() {
+        List<Athlete> athletes = AthleteRepository.findAllByGroupAndWeighIn(null, true);
+        for (int i = 0; i < athletes.size(); i++) {
+            Athlete a = AthleteRepository.findById(athletes.get(i).getId());
+            a.setValidation(false);
+            a.setSnatch1Declaration(Integer.toString(70 + i));
+            a.setSnatch1ActualLift(Integer.toString(70 + i));
+            AthleteRepository.save(a);
+        }
+        RankingEngine.getCurrent().invalidate();
+        updateRanks();
+        assertEquals(fullRanks(), storedRanks());
+
+        // move the leader of a category to another category
+        Athlete moved = AthleteRepository.findById(athletes.get(athletes.size() - 1).getId());
+        String left = moved.getCategory().getComputedCode();
+        Category target = athletes.stream().map(Athlete::getCategory)
+                .filter(c -> !c.getComputedCode().equals(left)).findFirst().orElse(null);
+        assertNotNull("test data has a single category", target);
+        moved.setEligibleCategories(Set.of(target));
+        moved.setCategory(target);
+        AthleteRepository.save(moved);
+        updateRanks();
+        assertEquals("after category change", fullRanks(), storedRanks());
+
+        // weighed out, then back in
+        Athlete out = AthleteRepository.findById(athletes.get(0).getId());
+        Double bodyWeight = out.getBodyWeight();
+        out.setBodyWeight(null);
+        AthleteRepository.save(out);
+        updateRanks();
+        assertEquals("after weighing out", fullRanks(), storedRanks());
+        out = AthleteRepository.findById(out.getId());
+        out.setBodyWeight(bodyWeight);
+        AthleteRepository.save(out);
+        updateRanks();
+        assertEquals("after weighing in", fullRanks(), storedRanks());
+    }
+
+}
@@ -11,7 +11,9 @@ import static app.owlcms.tests.AllTests.assertEqualsToReferenceFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
@@ -27,11 +29,14 @@ import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
 import app.owlcms.Main;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
 import app.owlcms.data.athlete.Gender;
 import app.owlcms.data.config.Config;
 import app.owlcms.data.jpa.JPAService;
 import app.owlcms.data.records.RecordDefinitionReader;
 import app.owlcms.data.records.RecordEvent;
+import app.owlcms.data.records.RecordIndex;
 import app.owlcms.data.records.RecordRepository;
 import app.owlcms.spreadsheet.JXLSExportRecords;
 import app.owlcms.utils.LoggerUtils;
@@ -147,6 +152,31 @@ public class RecordDefinitionReaderTest {
         assertEquals("wrong number of results", 3, results.size());
     }
 
+    @Test
+    public void _07_testIndex() throws IOException {
+        String zipURI = "/testData/records/IWF_EWF.zip";
+        InputStream zipStream = this.getClass().getResourceAsStream(zipURI);
+        RecordDefinitionReader.readZip(zipStream);
+        List<Athlete> athletes = AthleteRepository.findAll();
+        for (Athlete a : athletes) {
+            // same as before the index: query, then keep the largest record for each key.
+            Map<String, RecordEvent> expected = new HashMap<>();
+            for (RecordEvent r : RecordRepository.findFiltered(a.getGender(), a.getAge(), a.getBodyWeight(), null,
+                    null)) {
+                RecordEvent curMax = expected.get(r.getKey());
+                if (curMax == null || r.getRecordValue() > curMax.getRecordValue()) {
+                    expected.put(r.getKey(), r);
+                }
+            }
+            Map<String, Double> actual = RecordIndex.getCurrent().findForAthlete(a).stream()
+                    .collect(Collectors.toMap(RecordEvent::getKey, RecordEvent::getRecordValue));
+            assertEquals(a.getShortName(), expected.size(), actual.size());
+            for (RecordEvent r : expected.values()) {
+                assertEquals(r.getKey(), r.getRecordValue(), actual.get(r.getKey()));
+            }
+        }
+    }
+
 //    @Test
 //    @Ignore
 //    public void _08_testJson() throws IOException {
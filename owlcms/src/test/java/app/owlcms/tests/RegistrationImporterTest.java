@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import app.owlcms.Main;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.spreadsheet.RegistrationImporter;
+
+/**
+ * Registration files are read with the streaming reader, checked completely, then saved.
+ */
+public class RegistrationImporterTest {
+
+    @BeforeClass
+    public static void setupTests() {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        TestData.insertInitialData(5, true);
+    }
+
+    @AfterClass
+    public static void tearDownTests() {
+        JPAService.close();
+    }
+
+    @Test
+    public void errorsCollected() throws IOException {
+        int before = AthleteRepository.findAll().size();
+        byte[] content = registration(new HSSFWorkbook(),
+                new String[] { "Smith", "A", null },
+                new String[] { "Brown", "Z", null },
+                new String[] { "Gates", "A", "x" });
+
+        RegistrationImporter importer = new RegistrationImporter(null);
+        assertFalse(importer.read(new ByteArrayInputStream(content)));
+        List<String> errors = importer.getErrors();
+        assertEquals(errors.toString(), 2, errors.size());
+        // undefined session, bad lot number
+        assertTrue(errors.get(0), errors.get(0).contains("L10"));
+        assertTrue(errors.get(1), errors.get(1).contains("B11"));
+        assertEquals(before, AthleteRepository.findAll().size());
+    }
+
+    @Test
+    public void xls() throws IOException {
+        checkSaved(new HSSFWorkbook());
+    }
+
+    @Test
+    public void xlsx() throws IOException {
+        checkSaved(new XSSFWorkbook());
+    }
+
+    private void checkSaved(Workbook workbook) throws IOException {
+        byte[] content = registration(workbook,
+                new String[] { "Smith", "A", "1" },
+                new String[] { "Brown", "B", "2" },
+                new String[] { "Gates", "A", "3" });
+
+        RegistrationImporter importer = new RegistrationImporter(null);
+        assertTrue(importer.getErrors().toString(), importer.read(new ByteArrayInputStream(content)));
+        assertEquals(3, importer.save());
+
+        List<Athlete> athletes = AthleteRepository.findAll();
+        Set<String> names = athletes.stream().map(Athlete::getLastName).collect(Collectors.toCollection(TreeSet::new));
+        assertEquals("[Brown, Gates, Smith]", names.toString());
+        for (Athlete a : athletes) {
+            assertNotNull(a.getShortName(), a.getCategory());
+            assertEquals(a.getLastName().equals("Brown") ? "B" : "A", a.getGroup().getName());
+        }
+    }
+
+    /**
+     * Athletes sheet in the export format: competition information on top, athletes from row 9.
+     *
+     * @param athletes last name, session, lot number
+     */
+    private byte[] registration(Workbook workbook, String[]... athletes) throws IOException {
+        try (Workbook wb = workbook; ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            Sheet sheet = wb.createSheet("Athletes");
+            int rowNum = 8;
+            for (String[] a : athletes) {
+                Row row = sheet.createRow(rowNum++);
+                if (a[2] != null) {
+                    row.createCell(1).setCellValue(a[2]);
+                }
+                row.createCell(2).setCellValue(a[0]);
+                row.createCell(3).setCellValue("Joe");
+                row.createCell(5).setCellValue(1981);
+                row.createCell(6).setCellValue("M");
+                row.createCell(8).setCellValue(80.5D);
+                row.createCell(11).setCellValue(a[1]);
+            }
+            wb.write(out);
+            return out.toByteArray();
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import app.owlcms.Main;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.category.AgeDivision;
+import app.owlcms.data.competition.ResultsModel;
+import app.owlcms.data.competition.ResultsModel.View;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.group.Group;
+import app.owlcms.data.group.GroupRepository;
+import app.owlcms.data.jpa.JPAService;
+
+/**
+ * Results are only recomputed when the athletes they contain have changed.
+ */
+public class ResultsModelTest {
+
+    private static final int NB_ATHLETES = 20;
+
+    @BeforeClass
+    public static void setupTests() {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        Config.initConfig();
+        TestData.insertInitialData(NB_ATHLETES, true);
+    }
+
+    @AfterClass
+    public static void tearDownTests() {
+        JPAService.close();
+    }
+
+    @Test
+    public void otherChanges() {
+        View before = ResultsModel.getCurrent().getView(null, null);
+        // saved without telling the results
+        Group group = GroupRepository.findByName("A");
+        group.setAnnouncer("changed");
+        GroupRepository.save(group);
+        assertNotSame(before, ResultsModel.getCurrent().getView(null, null));
+    }
+
+    @Test
+    public void reused() {
+        View before = ResultsModel.getCurrent().getView(null, null);
+        assertSame(before, ResultsModel.getCurrent().getView(null, null));
+        // one entry per participation
+        assertTrue(before.getAthletes().size() >= NB_ATHLETES);
+        assertNotNull(before.getList("mwTot"));
+        assertNotNull(before.getList("mSinclair"));
+    }
+
+    @Test
+    public void savedAthlete() {
+        View all = ResultsModel.getCurrent().getView(null, null);
+        View masters = ResultsModel.getCurrent().getView(null, AgeDivision.MASTERS);
+        Athlete a = AthleteRepository.findAll().get(0);
+        a.setSnatch1Declaration("60");
+        AthleteRepository.save(a);
+
+        assertNotSame(all, ResultsModel.getCurrent().getView(null, null));
+        // the athlete is not a master
+        assertSame(masters, ResultsModel.getCurrent().getView(null, AgeDivision.MASTERS));
+    }
+
+}
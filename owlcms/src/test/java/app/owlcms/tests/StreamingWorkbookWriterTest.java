@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import app.owlcms.Main;
+import app.owlcms.data.athlete.Athlete;
+import app.owlcms.data.athlete.AthleteRepository;
+import app.owlcms.data.competition.Competition;
+import app.owlcms.data.config.Config;
+import app.owlcms.data.jpa.JPAService;
+import app.owlcms.i18n.Translator;
+import app.owlcms.spreadsheet.JXLSResultSheet;
+import app.owlcms.spreadsheet.StreamingWorkbookWriter;
+
+/**
+ * The streaming results must not need more memory as the number of athletes grows.
+ */
+public class StreamingWorkbookWriterTest {
+
+    private static final int HEAP_CAP_MB = 64;
+    private static final int NB_ATHLETES = 2000;
+    private static final int NB_CATEGORIES = 20;
+    private static final String PROTOCOL = "/templates/protocol/Protocol-A4.xls";
+
+    /**
+     * Generate a book in a separate JVM, so that the heap limit applies to it alone.
+     *
+     * @param args number of athletes
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        int nbAthletes = Integer.parseInt(args[0]);
+        SXSSFWorkbook workbook = transform(nbAthletes);
+        try {
+            workbook.write(OutputStream.nullOutputStream());
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    private static Map<String, Object> beans(int nbAthletes) {
+        List<Map<String, Object>> athletes = new ArrayList<>();
+        for (int i = 0; i < nbAthletes; i++) {
+            Map<String, Object> a = new HashMap<>();
+            // sorted by category, as the results are
+            int category = i * NB_CATEGORIES / nbAthletes;
+            a.put("lastName", "Last" + i);
+            a.put("firstName", "First" + i);
+            a.put("club", "Club" + (i % 50));
+            a.put("category", "Category" + category);
+            a.put("displayCategory", "Category" + category);
+            a.put("membership", Integer.toString(100000 + i));
+            a.put("startNumber", i % 100 + 1);
+            a.put("lotNumber", i + 1);
+            a.put("bodyWeight", 50.0D + category * 5 + (i % 5) / 10.0D);
+            a.put("formattedBirth", "2000-01-01");
+            a.put("snatch1AsInteger", 80);
+            a.put("snatch2AsInteger", -85);
+            a.put("snatch3AsInteger", 85);
+            a.put("bestSnatch", 85);
+            a.put("cleanJerk1AsInteger", 100);
+            a.put("cleanJerk2AsInteger", 105);
+            a.put("cleanJerk3AsInteger", -110);
+            a.put("bestCleanJerk", 105);
+            a.put("total", 190);
+            a.put("totalRank", i % 100 + 1);
+            a.put("sinclair", 250.5D);
+            a.put("robi", 120.3D);
+            athletes.add(a);
+        }
+        Map<String, Object> competition = new HashMap<>();
+        competition.put("competitionName", "Synthetic");
+        Map<String, Object> beans = new HashMap<>();
+        beans.put("athletes", athletes);
+        beans.put("lifters", athletes);
+        beans.put("competition", competition);
+        beans.put("t", new HashMap<String, String>());
+        return beans;
+    }
+
+    private static SXSSFWorkbook transform(int nbAthletes) throws IOException {
+        try (InputStream is = StreamingWorkbookWriterTest.class.getResourceAsStream(PROTOCOL)) {
+            StreamingWorkbookWriter writer = new StreamingWorkbookWriter(is);
+            assertTrue(writer.getUnsupportedReason(), writer.isSupported());
+            return writer.transform(beans(nbAthletes));
+        }
+    }
+
+    @Test
+    public void boundedHeap() throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-Xmx" + HEAP_CAP_MB + "m",
+                "-cp", System.getProperty("java.class.path"),
+                StreamingWorkbookWriterTest.class.getName(), Integer.toString(NB_ATHLETES))
+                        .inheritIO()
+                        .start();
+        assertTrue("timed out", process.waitFor(2, TimeUnit.MINUTES));
+        assertEquals(NB_ATHLETES + " athletes with " + HEAP_CAP_MB + "MB", 0, process.exitValue());
+    }
+
+    @Test
+    public void competitionBooksNotStreamed() throws IOException {
+        // the team sheets use jxls formulas, a documented limitation
+        for (String name : List.of("All", "Custom", "Masters-A4", "SnatchCJTotal-A4", "Total-A4")) {
+            try (InputStream is = getClass().getResourceAsStream("/templates/competitionBook/" + name + ".xls")) {
+                assertFalse(name, new StreamingWorkbookWriter(is).isSupported());
+            }
+        }
+    }
+
+    @Test
+    public void formulasNotStreamed() throws IOException {
+        try (InputStream is = getClass().getResourceAsStream("/templates/protocol/USAWResultsTemplate.xls")) {
+            assertFalse(new StreamingWorkbookWriter(is).isSupported());
+        }
+    }
+
+    @Test
+    public void rowWindow() throws IOException {
+        SXSSFWorkbook workbook = transform(NB_ATHLETES);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            Sheet sheet = workbook.getSheetAt(0);
+            int inMemory = 0;
+            for (int i = 0; i <= sheet.getLastRowNum(); i++) {
+                if (sheet.getRow(i) != null) {
+                    inMemory++;
+                }
+            }
+            // only the window is in memory
+            assertTrue(sheet.getLastRowNum() > NB_ATHLETES);
+            assertTrue(inMemory <= StreamingWorkbookWriter.ROW_WINDOW);
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+        }
+
+        try (XSSFWorkbook result = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            XSSFSheet sheet = result.getSheetAt(0);
+            int found = 0;
+            int nbCategories = 0;
+            for (int i = 0; i <= sheet.getLastRowNum(); i++) {
+                if (sheet.getRow(i) == null) {
+                    continue;
+                }
+                if (sheet.getRow(i).getCell(0) != null
+                        && sheet.getRow(i).getCell(0).toString().startsWith("Category")) {
+                    nbCategories++;
+                }
+                if (sheet.getRow(i).getCell(3) != null
+                        && sheet.getRow(i).getCell(3).toString().equals("Last" + found)) {
+                    found++;
+                }
+            }
+            assertEquals(NB_ATHLETES, found);
+            assertEquals(NB_CATEGORIES, nbCategories);
+        }
+    }
+
+    /**
+     * A book of 2,000 athletes from the database, with the beans the results sheet uses.
+     */
+    @Test
+    public void realisticResults() throws IOException {
+        Main.injectSuppliers();
+        JPAService.init(true, true);
+        try {
+            Config.initConfig();
+            TestData.insertInitialData(NB_ATHLETES / 2, true);
+            JPAService.runInTransaction(em -> {
+                int i = 0;
+                for (Athlete a : AthleteRepository.doFindAllByGroupAndWeighIn(em, null, true, null)) {
+                    int weight = 60 + i % 40;
+                    a.setValidation(false);
+                    a.setSnatch1Declaration(Integer.toString(weight));
+                    a.setSnatch1ActualLift(Integer.toString(weight));
+                    a.setCleanJerk1Declaration(Integer.toString(weight + 25));
+                    a.setCleanJerk1ActualLift((i % 7 == 0 ? "-" : "") + (weight + 25));
+                    i++;
+                }
+                return null;
+            });
+            List<Athlete> athletes = new JXLSResultSheet().getSortedAthletes();
+            assertTrue(athletes.size() >= NB_ATHLETES);
+            Map<String, Object> beans = new HashMap<>();
+            beans.put("athletes", athletes);
+            beans.put("lifters", athletes);
+            beans.put("competition", Competition.getCurrent());
+            beans.put("t", Translator.getMap());
+
+            SXSSFWorkbook workbook;
+            try (InputStream is = getClass().getResourceAsStream(PROTOCOL)) {
+                StreamingWorkbookWriter writer = new StreamingWorkbookWriter(is);
+                assertTrue(writer.getUnsupportedReason(), writer.isSupported());
+                workbook = writer.transform(beans);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                workbook.write(out);
+            } finally {
+                workbook.dispose();
+            }
+
+            // every athlete is listed once per category
+            Map<String, Integer> missing = new HashMap<>();
+            for (Athlete a : athletes) {
+                missing.merge(a.getLastName(), 1, Integer::sum);
+            }
+            try (XSSFWorkbook result = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+                XSSFSheet sheet = result.getSheetAt(0);
+                for (int i = 0; i <= sheet.getLastRowNum(); i++) {
+                    if (sheet.getRow(i) != null && sheet.getRow(i).getCell(3) != null) {
+                        missing.computeIfPresent(sheet.getRow(i).getCell(3).toString(), (k, n) -> n - 1);
+                    }
+                }
+            }
+            missing.values().removeIf(n -> n == 0);
+            assertTrue(missing.toString(), missing.isEmpty());
+        } finally {
+            JPAService.close();
+        }
+    }
+
+}
@@ -41,6 +41,7 @@ import app.owlcms.uievents.BreakTimerEvent.BreakStart;
 import app.owlcms.uievents.BreakType;
 import app.owlcms.uievents.DecisionEvent;
 import app.owlcms.uievents.DecisionEventType;
+import app.owlcms.uievents.ScoreboardSnapshot;
 import app.owlcms.uievents.UpdateEvent;
 import app.owlcms.utils.StartupUtils;
 import ch.qos.logback.classic.Level;
@@ -48,7 +49,6 @@ import ch.qos.logback.classic.Logger;
 import elemental.json.Json;
 import elemental.json.JsonArray;
 import elemental.json.JsonObject;
-import elemental.json.impl.JreJsonFactory;
 
 /**
  * Class Scoreboard
@@ -382,19 +382,16 @@ public class ResultsPR extends LitTemplate
             }
             this.getElement().setProperty("groupDescription", description != null ? description : "");
 
-            String athletes = e.getAthletes();
-            if (isLiftingOrder()) {
-                athletes = e.getLiftingOrderAthletes();
+            // the JSON is parsed once by the servlet and shared by all the UIs
+            ScoreboardSnapshot snapshot = e.getSnapshot();
+            if (snapshot == null) {
+                snapshot = new ScoreboardSnapshot(e, null);
             }
+            JsonArray athleteList = isLiftingOrder() ? snapshot.getLiftingOrderAthletes() : snapshot.getAthletes();
+            JsonArray leaderList = snapshot.getLeaders();
+            JsonObject recordList = snapshot.getRecords();
 
-            String leaders = e.getLeaders();
-            String records = e.getRecords();
-            String translationMap = e.getTranslationMap();
-
-            JreJsonFactory jreJsonFactory = new JreJsonFactory();
-
-            if (athletes != null) {
-                JsonArray athleteList = (JsonArray) jreJsonFactory.parse(athletes);
+            if (athleteList != null) {
                 this.getElement().setPropertyJson("athletes", athleteList);
                 this.getElement().setProperty("resultLines", athleteList.length() + 1);
             } else {
@@ -402,8 +399,7 @@ public class ResultsPR extends LitTemplate
                 this.getElement().setProperty("resultLines", 1);
             }
 
-            if (leaders != null && (breakType != BreakType.GROUP_DONE || e.isSinclairMeet())) {
-                JsonArray leaderList = (JsonArray) jreJsonFactory.parse(leaders);
+            if (leaderList != null && (breakType != BreakType.GROUP_DONE || e.isSinclairMeet())) {
                 this.getElement().setPropertyJson("leaders", leaderList);
                 this.getElement().setProperty("leaderLines", leaderList.length() + 1);
             } else {
@@ -411,19 +407,15 @@ public class ResultsPR extends LitTemplate
                 this.getElement().setProperty("leaderLines", 1);
             }
 
-            if (records != null) {
-                // logger.debug("records = {}", records);
-                JsonObject recordList = (JsonObject) jreJsonFactory.parse(records);
+            if (recordList != null) {
                 this.getElement().setPropertyJson("records", recordList);
                 this.getElement().setProperty("recordKind", e.getRecordKind());
                 this.getElement().setProperty("recordMessage", e.getRecordMessage());
             } else {
-                // logger.debug("null records = {}", records);
                 this.getElement().setPropertyJson("records", Json.createNull());
             }
 
-            this.getElement().setPropertyJson("t",
-                    translationMap != null ? jreJsonFactory.parse(translationMap) : Json.createNull());
+            this.getElement().setPropertyJson("t", snapshot.getTranslationMap());
 
             getElement().setProperty("noLiftRanks", e.getNoLiftRanks());
 
@@ -466,6 +458,7 @@ public class ResultsPR extends LitTemplate
                 //this.getElement().callJsFunction("reset");
                 needReset = false;
             }
+            snapshot.uiUpdated();
         });
     }
 
@@ -106,8 +106,9 @@ public class ConfigReceiverServlet extends HttpServlet {
         }
         if (!authenticated) {
             deny(req, resp, null);
+            return;
         }
-        return;
+        WarmStart.configChanged();
     }
 
     private void copyFile(FileItem item) throws IOException {
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.publicresults;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.uievents.UpdateEvent;
+import app.owlcms.utils.ProxyUtils;
+import ch.qos.logback.classic.Logger;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Lightweight scoreboard for spectators, without a Vaadin UI per viewer.
+ *
+ * <code>/feed/{fop}</code> opened in a browser returns a static page; the page then opens the same URL as an
+ * <code>EventSource</code> and gets the server-sent events of {@link SpectatorFeed}. Without a field of play name, the
+ * first field of play that sent an update is used.
+ */
+@WebServlet(urlPatterns = "/feed/*", asyncSupported = true, loadOnStartup = 1)
+public class FeedServlet extends HttpServlet {
+
+    private static final String PAGE = "feed.html";
+
+    private Logger logger = (Logger) LoggerFactory.getLogger(FeedServlet.class);
+    private byte[] page;
+
+    @Override
+    public void init() throws ServletException {
+        SpectatorFeed.start();
+        try (InputStream is = FeedServlet.class.getResourceAsStream(PAGE)) {
+            if (is == null) {
+                throw new ServletException("missing resource " + PAGE);
+            }
+            this.page = is.readAllBytes();
+        } catch (IOException e) {
+            throw new ServletException(e);
+        }
+    }
+
+    /**
+     * @see jakarta.servlet.http.HttpServlet#doGet(jakarta.servlet.http.HttpServletRequest,
+     *      jakarta.servlet.http.HttpServletResponse)
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String accept = req.getHeader("Accept");
+        if (accept == null || !accept.contains("text/event-stream")) {
+            resp.setContentType("text/html;charset=UTF-8");
+            resp.setHeader("Cache-Control", "no-cache");
+            resp.setContentLength(this.page.length);
+            resp.getOutputStream().write(this.page);
+            return;
+        }
+
+        String fopName = fopName(req);
+        SpectatorFeed feed = fopName != null ? SpectatorFeed.findFeed(fopName) : null;
+        if (feed == null) {
+            // nothing received yet for this platform, the page tries again later.
+            resp.sendError(404, "No such platform");
+            return;
+        }
+
+        resp.setContentType("text/event-stream;charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        // tell nginx-style reverse proxies not to buffer the stream
+        resp.setHeader("X-Accel-Buffering", "no");
+        resp.setStatus(200);
+
+        AsyncContext async = req.startAsync();
+        async.setTimeout(0);
+        ServletOutputStream out = resp.getOutputStream();
+        SpectatorFeed.Connection c = new SpectatorFeed.Connection(async, out);
+        async.addListener(c);
+        // non-blocking from now on; the container calls the listener when the socket can take more
+        out.setWriteListener(c);
+        feed.join(c);
+        logger.debug("feed {} opened by {}", fopName, ProxyUtils.getClientIp(req));
+    }
+
+    private String fopName(HttpServletRequest req) {
+        // already decoded by the container
+        String path = req.getPathInfo();
+        String name = path != null ? path.replace("/", "") : "";
+        if (!name.isBlank()) {
+            return name;
+        }
+        UpdateEvent first = UpdateReceiverServlet.sync(null);
+        return first != null ? first.getFopName() : null;
+    }
+
+}
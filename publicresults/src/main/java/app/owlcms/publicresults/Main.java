@@ -92,7 +92,14 @@ public class Main {
 
         // technical initializations
         //System.setProperty("java.net.preferIPv4Stack", "true");
-        
+
+        // boards show the last state received before a restart, without waiting for owlcms
+        SpectatorFeed.start();
+        WarmStart.restore();
+
+        // replica of a relay: keep the caches up to date from the relay instead of owlcms
+        RelayClient.start();
+
 
         return;
     }
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.publicresults;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.utils.Scheduler;
+import app.owlcms.utils.StartupUtils;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Replica side of the relay mode: follows the stream of a {@link RelayHub} and applies each post as if it had come
+ * from owlcms.
+ *
+ * Enabled by <code>-DrelayURL=http://relayhost:port</code> (or OWLCMS_RELAYURL). The posts are sent to the receivers
+ * of this node over the loopback interface, so they go through exactly the same code as on the relay and the caches
+ * are kept warm for the local spectators.
+ *
+ * When a post is missing, when the local receivers ask for a full state, or when the relay goes silent, the
+ * connection is dropped and opened again; the relay then sends the current state first.
+ */
+public class RelayClient implements Runnable {
+
+    private static final long RETRY_MILLIS = 5000;
+    /** the relay sends a heartbeat every 20 seconds */
+    private static final long SILENCE_MILLIS = 60000;
+    private static final Logger logger = (Logger) LoggerFactory.getLogger(RelayClient.class);
+
+    /**
+     * Follow the relay given by the <code>relayURL</code> parameter, if any.
+     */
+    public static void start() {
+        String relayURL = StartupUtils.getStringParam("relayURL");
+        if (relayURL == null || relayURL.isBlank()) {
+            return;
+        }
+        Thread t = new Thread(new RelayClient(relayURL, StartupUtils.getServerPort()), "relay-client");
+        t.setDaemon(true);
+        t.start();
+        logger.info("replica mode: following relay {}", relayURL);
+    }
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private volatile long lastReceived;
+    private final String localURL;
+    private final String relayURL;
+    private final String secret = StartupUtils.getStringParam("updateKey");
+    private volatile InputStream stream;
+
+    RelayClient(String relayURL, int localPort) {
+        this.relayURL = relayURL.endsWith("/") ? relayURL.substring(0, relayURL.length() - 1) : relayURL;
+        this.localURL = "http://127.0.0.1:" + localPort;
+    }
+
+    @Override
+    public void run() {
+        Scheduler.getShared().schedule(this::watchdog, SILENCE_MILLIS);
+        while (true) {
+            try {
+                follow();
+            } catch (EOFException e) {
+                logger.info("relay {} closed the connection", this.relayURL);
+            } catch (IOException e) {
+                logger.warn("relay {}: {}", this.relayURL, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("relay {}: {}", this.relayURL, e);
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void apply(RelayFrame f) throws IOException, InterruptedException {
+        HttpRequest.Builder post = HttpRequest.newBuilder(URI.create(this.localURL + f.getPath()))
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(f.getBody()));
+        if (f.getContentType() != null) {
+            post.header("Content-Type", f.getContentType());
+        }
+        if (f.getContentEncoding() != null) {
+            post.header("Content-Encoding", f.getContentEncoding());
+        }
+        int status = this.client.send(post.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status == 409) {
+            // the local receiver lost track of the sequence
+            throw new IOException("full state needed");
+        } else if (status != 200) {
+            logger.warn("{} {} from relay refused locally with status {}", f.getPath(), f.getSeq(), status);
+        }
+    }
+
+    private void follow() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(this.relayURL + "/relay"))
+                .header(RelayServlet.KEY_HEADER, this.secret != null ? this.secret : "")
+                .GET()
+                .build();
+        HttpResponse<InputStream> response = this.client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("status " + response.statusCode());
+        }
+        logger.info("connected to relay {}", this.relayURL);
+        this.lastReceived = System.currentTimeMillis();
+        this.stream = response.body();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(this.stream))) {
+            long last = -1;
+            while (true) {
+                RelayFrame f = RelayFrame.read(in);
+                this.lastReceived = System.currentTimeMillis();
+                switch (f.getKind()) {
+                case RelayFrame.HEARTBEAT:
+                    break;
+                case RelayFrame.SNAPSHOT:
+                    apply(f);
+                    last = f.getSeq();
+                    break;
+                case RelayFrame.LIVE:
+                    if (last >= 0 && f.getSeq() != last + 1) {
+                        throw new IOException("post " + (last + 1) + " missing, got " + f.getSeq());
+                    }
+                    apply(f);
+                    last = f.getSeq();
+                    break;
+                default:
+                    throw new IOException("unexpected frame " + f.getKind());
+                }
+            }
+        } finally {
+            this.stream = null;
+        }
+    }
+
+    /**
+     * Drop a connection on which nothing, not even a heartbeat, has been received for a while.
+     */
+    private void watchdog() {
+        try {
+            InputStream current = this.stream;
+            if (current != null && System.currentTimeMillis() - this.lastReceived > SILENCE_MILLIS) {
+                logger.warn("relay {} silent, reconnecting", this.relayURL);
+                current.close();
+            }
+        } catch (IOException e) {
+            // closing anyway
+        } finally {
+            Scheduler.getShared().schedule(this::watchdog, SILENCE_MILLIS / 2);
+        }
+    }
+
+}
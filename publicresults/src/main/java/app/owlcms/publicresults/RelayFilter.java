@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.publicresults;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.utils.LoggerUtils;
+import ch.qos.logback.classic.Logger;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * On a relay, keeps the body of the posts from owlcms so that the ones accepted can be sent to the replicas. Does
+ * nothing on other nodes.
+ *
+ * @see RelayHub
+ */
+@WebFilter(urlPatterns = { "/update", "/timer", "/decision", "/config" }, asyncSupported = true)
+public class RelayFilter extends HttpFilter {
+
+    /**
+     * A request whose body has already been read. The form fields are decoded from the body, since the container can
+     * no longer read them.
+     */
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+        private Map<String, String[]> form;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(this.body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    // the whole body is already in memory
+                    try {
+                        readListener.onDataAvailable();
+                        readListener.onAllDataRead();
+                    } catch (IOException e) {
+                        readListener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public String getParameter(String name) {
+            String[] values = getParameterMap().get(name);
+            return values != null && values.length > 0 ? values[0] : null;
+        }
+
+        @Override
+        public synchronized Map<String, String[]> getParameterMap() {
+            if (this.form == null) {
+                this.form = Collections.unmodifiableMap(decodeForm());
+            }
+            return this.form;
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames() {
+            return Collections.enumeration(getParameterMap().keySet());
+        }
+
+        @Override
+        public String[] getParameterValues(String name) {
+            return getParameterMap().get(name);
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        private Map<String, String[]> decodeForm() {
+            Map<String, List<String>> values = new LinkedHashMap<>();
+            decodeInto(values, getQueryString());
+            String contentType = getContentType();
+            if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+                decodeInto(values, new String(this.body, StandardCharsets.UTF_8));
+            }
+            Map<String, String[]> form = new LinkedHashMap<>();
+            values.forEach((k, v) -> form.put(k, v.toArray(new String[0])));
+            return form;
+        }
+
+        private void decodeInto(Map<String, List<String>> values, String encoded) {
+            if (encoded == null || encoded.isEmpty()) {
+                return;
+            }
+            for (String pair : encoded.split("&")) {
+                int eq = pair.indexOf('=');
+                String key = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, StandardCharsets.UTF_8);
+                String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+                values.computeIfAbsent(key, (k) -> new ArrayList<>()).add(value);
+            }
+        }
+    }
+
+    private Logger logger = (Logger) LoggerFactory.getLogger(RelayFilter.class);
+
+    @Override
+    protected void doFilter(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        RelayHub hub = RelayHub.getCurrent();
+        if (hub == null || !"POST".equals(req.getMethod())) {
+            chain.doFilter(req, res);
+            return;
+        }
+
+        byte[] body = req.getInputStream().readAllBytes();
+        CachedBodyRequest cached = new CachedBodyRequest(req, body);
+        // applied and numbered under the hub lock, so that a replica subscribing in between cannot get a snapshot
+        // that already includes this post and then the post itself.
+        synchronized (hub) {
+            chain.doFilter(cached, res);
+            if (res.getStatus() != 200) {
+                // refused or out of sequence, owlcms will send again
+                return;
+            }
+            try {
+                hub.publish(req.getServletPath(), cached, body);
+            } catch (RuntimeException e) {
+                logger.error("not relayed {}", LoggerUtils.stackTrace(e));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.publicresults;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A post received from owlcms, as sent from the relay to the replicas.
+ *
+ * On the wire: kind (one byte), sequence number, path, content type, content encoding, body length and body.
+ */
+public class RelayFrame {
+
+    /** keep-alive, no post */
+    public static final byte HEARTBEAT = 'H';
+    /** a post, numbered in order */
+    public static final byte LIVE = 'L';
+    /** part of the current state sent to a new replica, numbered as the last post it includes */
+    public static final byte SNAPSHOT = 'S';
+
+    /**
+     * @param in
+     * @return the next frame
+     * @throws IOException at the end of the stream
+     */
+    public static RelayFrame read(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        long seq = in.readLong();
+        String path = in.readUTF();
+        String contentType = in.readUTF();
+        String contentEncoding = in.readUTF();
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new RelayFrame(kind, seq, path, contentType.isEmpty() ? null : contentType,
+                contentEncoding.isEmpty() ? null : contentEncoding, body);
+    }
+
+    private final byte[] body;
+    private final String contentEncoding;
+    private final String contentType;
+    private final byte kind;
+    private final String path;
+    private final long seq;
+
+    public RelayFrame(byte kind, long seq, String path, String contentType, String contentEncoding, byte[] body) {
+        this.kind = kind;
+        this.seq = seq;
+        this.path = path;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.body = body;
+    }
+
+    public byte[] getBody() {
+        return this.body;
+    }
+
+    public String getContentEncoding() {
+        return this.contentEncoding;
+    }
+
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    public byte getKind() {
+        return this.kind;
+    }
+
+    public String getPath() {
+        return this.path;
+    }
+
+    public long getSeq() {
+        return this.seq;
+    }
+
+    /**
+     * @return the frame, as written on the stream
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.body.length + 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(this.kind);
+            out.writeLong(this.seq);
+            out.writeUTF(this.path);
+            out.writeUTF(this.contentType != null ? this.contentType : "");
+            out.writeUTF(this.contentEncoding != null ? this.contentEncoding : "");
+            out.writeInt(this.body.length);
+            out.write(this.body);
+        } catch (IOException e) {
+            // not possible with a byte array
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param kind
+     * @param seq
+     * @return the same post, with a different kind or number
+     */
+    public RelayFrame with(byte kind, long seq) {
+        return new RelayFrame(kind, seq, this.path, this.contentType, this.contentEncoding, this.body);
+    }
+
+}
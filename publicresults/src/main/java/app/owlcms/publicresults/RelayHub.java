@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.publicresults;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.utils.Scheduler;
+import app.owlcms.utils.StartupUtils;
+import ch.qos.logback.classic.Logger;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Relay mode: the node that receives the posts from owlcms sends them again to replicas, so that several
+ * publicresults instances can share the spectators behind a load balancer.
+ *
+ * Enabled with <code>-Drelay=true</code> (or OWLCMS_RELAY) on the node that owlcms posts to. Replicas are started
+ * with <code>-DrelayURL=http://relayhost:port</code> and the same update key; see {@link RelayClient}. To try it on a
+ * single machine, start one relay on port 8082 and replicas with <code>-Dport=8083</code>, <code>-Dport=8084</code>,
+ * and so on.
+ *
+ * Each post accepted locally is numbered and queued on every replica connection ({@link RelayServlet}). A new replica
+ * first gets the current state: the configuration files, the full state of each field of play and the running timers.
+ * {@link RelayFilter} applies a post and publishes it while holding the hub, so the state sent to a new replica is
+ * always that of the last post numbered.
+ * A replica that misses a post reconnects and gets the current state again; a replica that falls too far behind is
+ * disconnected, with the same outcome.
+ */
+public class RelayHub {
+
+    /**
+     * A replica connected to the relay, written with non-blocking I/O.
+     */
+    static final class Subscriber implements WriteListener, AsyncListener {
+
+        private final AsyncContext async;
+        private boolean closed;
+        private boolean flushNeeded;
+        private RelayHub hub;
+        private final ServletOutputStream out;
+        private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+        private long pendingBytes;
+        private final String remote;
+
+        Subscriber(AsyncContext async, ServletOutputStream out, String remote) {
+            this.async = async;
+            this.out = out;
+            this.remote = remote;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        void close() {
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+                this.pending.clear();
+            }
+            if (this.hub != null) {
+                this.hub.subscribers.remove(this);
+            }
+            logger.info("replica {} disconnected", this.remote);
+            try {
+                this.async.complete();
+            } catch (IllegalStateException e) {
+                // already completed by the container
+            }
+        }
+
+        void send(byte[] frame) {
+            boolean overflow = false;
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                if (this.pendingBytes + frame.length > MAX_PENDING_BYTES) {
+                    overflow = true;
+                } else {
+                    this.pending.add(frame);
+                    this.pendingBytes += frame.length;
+                }
+            }
+            if (overflow) {
+                // the posts cannot be skipped; the replica will reconnect and get the current state
+                logger.warn("replica {} too far behind, disconnecting", this.remote);
+                close();
+                return;
+            }
+            drain();
+        }
+
+        private synchronized void drain() {
+            if (this.closed) {
+                return;
+            }
+            try {
+                while (this.out.isReady()) {
+                    byte[] frame = this.pending.poll();
+                    if (frame == null) {
+                        if (this.flushNeeded) {
+                            this.flushNeeded = false;
+                            this.out.flush();
+                            continue;
+                        }
+                        return;
+                    }
+                    this.pendingBytes -= frame.length;
+                    this.out.write(frame);
+                    this.flushNeeded = true;
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * A timer post, kept so that new replicas get the actual remaining time.
+     */
+    private static class TimerPost {
+        private final Map<String, String[]> params;
+        private final long receivedMillis;
+
+        private TimerPost(Map<String, String[]> params) {
+            this.params = new LinkedHashMap<>(params);
+            this.receivedMillis = System.currentTimeMillis();
+        }
+
+        private RelayFrame toFrame(byte kind, long seq) {
+            String eventType = value("eventType");
+            boolean running = "StartTime".equals(eventType)
+                    || ("BreakStarted".equals(eventType) && !Boolean.parseBoolean(value("indefiniteBreak")));
+            StringJoiner body = new StringJoiner("&");
+            for (Map.Entry<String, String[]> e : this.params.entrySet()) {
+                String value = e.getValue().length > 0 ? e.getValue()[0] : "";
+                if (running && "milliseconds".equals(e.getKey()) && !value.isBlank()) {
+                    long elapsed = System.currentTimeMillis() - this.receivedMillis;
+                    value = Long.toString(Math.max(0, Long.parseLong(value) - elapsed));
+                }
+                body.add(URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8) + "="
+                        + URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+            return new RelayFrame(kind, seq, "/timer", FORM, null, body.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        private String value(String key) {
+            String[] values = this.params.get(key);
+            return values != null && values.length > 0 ? values[0] : null;
+        }
+    }
+
+    private static RelayHub current;
+    private static final String FORM = "application/x-www-form-urlencoded";
+    private static final byte[] HEARTBEAT_FRAME = new RelayFrame(RelayFrame.HEARTBEAT, 0, "", null, null,
+            new byte[0]).toBytes();
+    private static final long HEARTBEAT_MILLIS = 20000;
+    private static final Logger logger = (Logger) LoggerFactory.getLogger(RelayHub.class);
+    private static final long MAX_PENDING_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * @return the hub, or null if this node is not a relay
+     */
+    public static synchronized RelayHub getCurrent() {
+        if (current == null && StartupUtils.getBooleanParam("relay")) {
+            current = new RelayHub();
+            Scheduler.getShared().schedule(current::heartbeat, HEARTBEAT_MILLIS);
+            logger.info("relay mode: posts will be sent again to replicas connecting to /relay");
+        }
+        return current;
+    }
+
+    private RelayFrame config;
+    /** latest update of each field of play sent with the form protocol */
+    private final Map<String, RelayFrame> formUpdates = new HashMap<>();
+    private long seq;
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+    /** latest athlete timer and break timer of each field of play */
+    private final Map<String, TimerPost> timers = new LinkedHashMap<>();
+
+    private RelayHub() {
+    }
+
+    /**
+     * @return the number of replicas connected
+     */
+    public int getSubscriberCount() {
+        return this.subscribers.size();
+    }
+
+    /**
+     * Send a post that has been accepted locally to the replicas.
+     *
+     * @param path the servlet path, for example /update
+     * @param req  the request, with the body already read
+     * @param body
+     */
+    public synchronized void publish(String path, HttpServletRequest req, byte[] body) {
+        this.seq++;
+        RelayFrame frame = new RelayFrame(RelayFrame.LIVE, this.seq, path, req.getContentType(),
+                req.getHeader("Content-Encoding"), body);
+        retain(frame, req);
+        byte[] bytes = frame.toBytes();
+        for (Subscriber s : this.subscribers) {
+            s.send(bytes);
+        }
+    }
+
+    /**
+     * Start sending to a replica: the current state, then the posts as they come.
+     *
+     * @param s a subscriber already registered as write listener
+     */
+    synchronized void subscribe(Subscriber s) {
+        s.hub = this;
+        for (RelayFrame f : snapshot()) {
+            s.send(f.toBytes());
+        }
+        this.subscribers.add(s);
+        logger.info("replica {} connected at {}, {} replicas", s.remote, this.seq, this.subscribers.size());
+    }
+
+    private void heartbeat() {
+        try {
+            for (Subscriber s : this.subscribers) {
+                s.send(HEARTBEAT_FRAME);
+            }
+        } finally {
+            Scheduler.getShared().schedule(this::heartbeat, HEARTBEAT_MILLIS);
+        }
+    }
+
+    private void retain(RelayFrame frame, HttpServletRequest req) {
+        String contentType = frame.getContentType();
+        switch (frame.getPath()) {
+        case "/config":
+            this.config = frame;
+            break;
+        case "/update":
+            // the incremental protocol is kept by the receiver, see UpdateReceiverServlet.getFullStates()
+            if (contentType == null || !contentType.startsWith("application/json")) {
+                String fop = req.getParameter("fop");
+                if (fop != null) {
+                    this.formUpdates.put(fop, frame);
+                }
+            }
+            break;
+        case "/timer":
+            String fopName = req.getParameter("fopName");
+            String eventType = req.getParameter("eventType");
+            if (fopName != null && eventType != null) {
+                this.timers.put(fopName + (eventType.startsWith("Break") ? "|break" : "|athlete"),
+                        new TimerPost(req.getParameterMap()));
+            }
+            break;
+        default:
+            // decisions are transient
+            break;
+        }
+    }
+
+    private Iterable<RelayFrame> snapshot() {
+        ArrayDeque<RelayFrame> frames = new ArrayDeque<>();
+        if (this.config != null) {
+            frames.add(this.config.with(RelayFrame.SNAPSHOT, this.seq));
+        }
+        Map<String, String> fullStates = UpdateReceiverServlet.getFullStates();
+        for (Map.Entry<String, String> e : fullStates.entrySet()) {
+            frames.add(new RelayFrame(RelayFrame.SNAPSHOT, this.seq, "/update", "application/json", null,
+                    e.getValue().getBytes(StandardCharsets.UTF_8)));
+        }
+        for (Map.Entry<String, RelayFrame> e : this.formUpdates.entrySet()) {
+            if (!fullStates.containsKey(e.getKey())) {
+                frames.add(e.getValue().with(RelayFrame.SNAPSHOT, this.seq));
+            }
+        }
+        for (TimerPost t : this.timers.values()) {
+            frames.add(t.toFrame(RelayFrame.SNAPSHOT, this.seq));
+        }
+        return frames;
+    }
+
+}
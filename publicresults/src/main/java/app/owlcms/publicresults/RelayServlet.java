@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.publicresults;
+
+import java.io.IOException;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.utils.ProxyUtils;
+import app.owlcms.utils.StartupUtils;
+import ch.qos.logback.classic.Logger;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Persistent connection of a replica to the relay. The response never ends; it is a stream of {@link RelayFrame}.
+ *
+ * The replica authenticates with the update key, in the {@value #KEY_HEADER} header.
+ *
+ * @see RelayHub
+ */
+@WebServlet(urlPatterns = "/relay", asyncSupported = true)
+public class RelayServlet extends HttpServlet {
+
+    static final String KEY_HEADER = "X-Update-Key";
+
+    private Logger logger = (Logger) LoggerFactory.getLogger(RelayServlet.class);
+
+    private String secret = StartupUtils.getStringParam("updateKey");
+
+    /**
+     * @see jakarta.servlet.http.HttpServlet#doGet(jakarta.servlet.http.HttpServletRequest,
+     *      jakarta.servlet.http.HttpServletResponse)
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        RelayHub hub = RelayHub.getCurrent();
+        if (hub == null) {
+            resp.sendError(404, "Not a relay");
+            return;
+        }
+        String updateKey = req.getHeader(KEY_HEADER);
+        if (updateKey == null || !updateKey.equals(secret)) {
+            logger.error("denying access from {} expected {} got {} ", req.getRemoteHost(), secret, updateKey);
+            resp.sendError(401, "Denied, wrong credentials");
+            return;
+        }
+
+        resp.setContentType("application/octet-stream");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.setStatus(200);
+
+        AsyncContext async = req.startAsync();
+        async.setTimeout(0);
+        ServletOutputStream out = resp.getOutputStream();
+        RelayHub.Subscriber s = new RelayHub.Subscriber(async, out, ProxyUtils.getClientIp(req));
+        async.addListener(s);
+        out.setWriteListener(s);
+        hub.subscribe(s);
+    }
+
+}
@@ -0,0 +1,454 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.publicresults;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.Subscribe;
+
+import app.owlcms.uievents.BreakTimerEvent;
+import app.owlcms.uievents.DecisionEvent;
+import app.owlcms.uievents.ScoreboardSnapshot;
+import app.owlcms.uievents.TimerEvent;
+import app.owlcms.uievents.UpdateEvent;
+import app.owlcms.utils.Scheduler;
+import ch.qos.logback.classic.Logger;
+import elemental.json.Json;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+/**
+ * Read-only feed of a field of play for the lightweight scoreboard page, as server-sent events.
+ *
+ * Each event received from owlcms is serialized once per field of play; the same bytes are queued on every connection
+ * and written with non-blocking I/O, so a spectator costs a socket and a few references. A connection that cannot
+ * keep up only keeps the latest frame of each kind: every frame carries the whole state for its kind, so the older
+ * ones can be skipped.
+ *
+ * A new connection gets the latest frame of each kind, with the remaining time of running timers adjusted.
+ */
+public class SpectatorFeed {
+
+    /**
+     * One spectator. Frames are written when the socket can take them, never blocking the thread that publishes.
+     */
+    static final class Connection implements WriteListener, AsyncListener {
+
+        private final AsyncContext async;
+        private boolean closed;
+        private SpectatorFeed feed;
+        private boolean flushNeeded;
+        private final ServletOutputStream out;
+        /** latest frame of each kind not yet written, in order of arrival */
+        private final LinkedHashMap<String, byte[]> pending = new LinkedHashMap<>();
+
+        Connection(AsyncContext async, ServletOutputStream out) {
+            this.async = async;
+            this.out = out;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        void close() {
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+                this.pending.clear();
+            }
+            if (this.feed != null) {
+                this.feed.connections.remove(this);
+            }
+            try {
+                this.async.complete();
+            } catch (IllegalStateException e) {
+                // already completed by the container
+            }
+        }
+
+        void send(String kind, byte[] frame) {
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                // a newer frame of the same kind replaces the one not yet written
+                this.pending.remove(kind);
+                this.pending.put(kind, frame);
+            }
+            drain();
+        }
+
+        private synchronized void drain() {
+            if (this.closed) {
+                return;
+            }
+            try {
+                while (this.out.isReady()) {
+                    Iterator<byte[]> it = this.pending.values().iterator();
+                    if (!it.hasNext()) {
+                        if (this.flushNeeded) {
+                            this.flushNeeded = false;
+                            this.out.flush();
+                            continue;
+                        }
+                        return;
+                    }
+                    byte[] frame = it.next();
+                    it.remove();
+                    this.out.write(frame);
+                    this.flushNeeded = true;
+                }
+                // the container calls onWritePossible when the socket can take more
+            } catch (IOException | IllegalStateException e) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Receives the events from owlcms and hands them to the feed of their field of play.
+     */
+    private static class Receiver {
+
+        @Subscribe
+        public void breakTimer(BreakTimerEvent e) {
+            if (e.getFopName() != null) {
+                getFeed(e.getFopName()).onBreakTimer(e);
+            }
+        }
+
+        @Subscribe
+        public void decision(DecisionEvent e) {
+            if (e.getFopName() != null) {
+                getFeed(e.getFopName()).onDecision(e);
+            }
+        }
+
+        @Subscribe
+        public void timer(TimerEvent e) {
+            if (e.getFopName() != null) {
+                getFeed(e.getFopName()).onTimer(e);
+            }
+        }
+
+        @Subscribe
+        public void update(UpdateEvent e) {
+            if (e.getFopName() != null) {
+                getFeed(e.getFopName()).onUpdate(e);
+            }
+        }
+    }
+
+    /**
+     * A timer as last received, so that late spectators see the actual remaining time.
+     */
+    private static class TimerState {
+        private final JsonObject json;
+        private final long receivedMillis;
+        private final boolean running;
+
+        private TimerState(JsonObject json, boolean running) {
+            this.json = json;
+            this.running = running;
+            this.receivedMillis = System.currentTimeMillis();
+        }
+
+        private byte[] currentFrame(String kind) {
+            if (!this.running || !this.json.hasKey("ms")) {
+                return frame(kind, this.json.toJson());
+            }
+            JsonObject adjusted = Json.parse(this.json.toJson());
+            long elapsed = System.currentTimeMillis() - this.receivedMillis;
+            adjusted.put("ms", Math.max(0, this.json.getNumber("ms") - elapsed));
+            return frame(kind, adjusted.toJson());
+        }
+    }
+
+    private static final String BREAK_TIMER = "breakTimer";
+    private static final String DECISION = "decision";
+    private static final Map<String, SpectatorFeed> feeds = new ConcurrentHashMap<>();
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final long HEARTBEAT_MILLIS = 20000;
+    private static final Logger logger = (Logger) LoggerFactory.getLogger(SpectatorFeed.class);
+    private static final byte[] RETRY = "retry: 3000\n\n".getBytes(StandardCharsets.UTF_8);
+    private static boolean started;
+    private static final String TIMER = "timer";
+    private static final String TRANSLATIONS = "translations";
+    private static final String UPDATE = "update";
+
+    /**
+     * @param fopName
+     * @return the feed for the field of play, or null if nothing was ever received for it
+     */
+    public static SpectatorFeed findFeed(String fopName) {
+        SpectatorFeed feed = feeds.get(fopName);
+        if (feed == null && UpdateReceiverServlet.getUpdateCache().containsKey(fopName)) {
+            feed = getFeed(fopName);
+        }
+        return feed;
+    }
+
+    /**
+     * Listen to the events received from owlcms. Called once at startup, so that the feeds know the state before the
+     * first spectator connects.
+     */
+    public static synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        Receiver receiver = new Receiver();
+        UpdateReceiverServlet.getEventBus().register(receiver);
+        TimerReceiverServlet.getEventBus().register(receiver);
+        DecisionReceiverServlet.getEventBus().register(receiver);
+        Scheduler.getShared().schedule(SpectatorFeed::heartbeat, HEARTBEAT_MILLIS);
+    }
+
+    private static byte[] frame(String kind, String json) {
+        // line breaks end an event; outside of strings they are insignificant in JSON, inside they are escaped.
+        String data = json.replace("\r", "").replace("\n", "");
+        return ("event: " + kind + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static SpectatorFeed getFeed(String fopName) {
+        return feeds.computeIfAbsent(fopName, (n) -> {
+            SpectatorFeed feed = new SpectatorFeed(n);
+            UpdateEvent cached = UpdateReceiverServlet.getUpdateCache().get(n);
+            if (cached != null) {
+                feed.onUpdate(cached);
+            }
+            return feed;
+        });
+    }
+
+    /**
+     * Keep idle connections open through proxies, and notice the spectators that are gone.
+     */
+    private static void heartbeat() {
+        try {
+            for (SpectatorFeed feed : feeds.values()) {
+                for (Connection c : feed.connections) {
+                    c.send("heartbeat", HEARTBEAT);
+                }
+            }
+        } finally {
+            Scheduler.getShared().schedule(SpectatorFeed::heartbeat, HEARTBEAT_MILLIS);
+        }
+    }
+
+    private static void put(JsonObject json, String key, Boolean value) {
+        if (value != null) {
+            json.put(key, value);
+        }
+    }
+
+    private static void put(JsonObject json, String key, Integer value) {
+        if (value != null) {
+            json.put(key, value);
+        }
+    }
+
+    private static void put(JsonObject json, String key, JsonValue value) {
+        if (value != null) {
+            json.put(key, value);
+        }
+    }
+
+    private static void put(JsonObject json, String key, String value) {
+        if (value != null) {
+            json.put(key, value);
+        }
+    }
+
+    private TimerState breakTimer;
+    private final Set<Connection> connections = new CopyOnWriteArraySet<>();
+    private final String fopName;
+    /** latest frame of each kind, timers excepted */
+    private final LinkedHashMap<String, byte[]> latest = new LinkedHashMap<>();
+    private TimerState timer;
+    private String translationSource;
+
+    private SpectatorFeed(String fopName) {
+        this.fopName = fopName;
+    }
+
+    /**
+     * @return the number of spectators connected
+     */
+    public int getConnectionCount() {
+        return this.connections.size();
+    }
+
+    /**
+     * Start sending to a spectator. The connection must already be registered as write listener.
+     *
+     * @param c
+     */
+    synchronized void join(Connection c) {
+        c.feed = this;
+        this.connections.add(c);
+        c.send("retry", RETRY);
+        for (Map.Entry<String, byte[]> e : this.latest.entrySet()) {
+            c.send(e.getKey(), e.getValue());
+        }
+        if (this.timer != null) {
+            c.send(TIMER, this.timer.currentFrame(TIMER));
+        }
+        if (this.breakTimer != null) {
+            c.send(BREAK_TIMER, this.breakTimer.currentFrame(BREAK_TIMER));
+        }
+        logger.debug("{} spectator joined, {} connected", this.fopName, this.connections.size());
+    }
+
+    private synchronized void onBreakTimer(BreakTimerEvent e) {
+        JsonObject json = Json.createObject();
+        json.put("type", e.getClass().getSimpleName());
+        boolean running = false;
+        if (e instanceof BreakTimerEvent.BreakStart) {
+            BreakTimerEvent.BreakStart bs = (BreakTimerEvent.BreakStart) e;
+            put(json, "ms", bs.getTimeRemaining());
+            json.put("indefinite", bs.isIndefinite());
+            running = !bs.isIndefinite();
+        } else if (e instanceof BreakTimerEvent.BreakSetTime) {
+            BreakTimerEvent.BreakSetTime bst = (BreakTimerEvent.BreakSetTime) e;
+            put(json, "ms", bst.getTimeRemaining());
+            json.put("indefinite", bst.isIndefinite());
+        } else if (e instanceof BreakTimerEvent.BreakPaused) {
+            put(json, "ms", ((BreakTimerEvent.BreakPaused) e).getTimeRemaining());
+        }
+        put(json, "mode", e.getMode());
+        this.breakTimer = new TimerState(json, running);
+        publish(BREAK_TIMER, frame(BREAK_TIMER, json.toJson()));
+    }
+
+    private synchronized void onDecision(DecisionEvent e) {
+        JsonObject json = Json.createObject();
+        put(json, "type", e.getEventType() != null ? e.getEventType().name() : null);
+        put(json, "d1", e.getDecisionLight1());
+        put(json, "d2", e.getDecisionLight2());
+        put(json, "d3", e.getDecisionLight3());
+        json.put("visible", e.isDecisionLightsVisible());
+        json.put("down", e.isDown());
+        put(json, "recordKind", e.getRecordKind());
+        put(json, "recordMessage", e.getRecordMessage());
+        put(json, "mode", e.getMode());
+        this.latest.put(DECISION, frame(DECISION, json.toJson()));
+        publish(DECISION, this.latest.get(DECISION));
+    }
+
+    private synchronized void onTimer(TimerEvent e) {
+        JsonObject json = Json.createObject();
+        json.put("type", e.getClass().getSimpleName());
+        boolean running = false;
+        if (e instanceof TimerEvent.StartTime) {
+            TimerEvent.StartTime st = (TimerEvent.StartTime) e;
+            put(json, "ms", st.getTimeRemaining());
+            json.put("silent", st.isSilent());
+            running = true;
+        } else if (e instanceof TimerEvent.StopTime) {
+            put(json, "ms", ((TimerEvent.StopTime) e).getTimeRemaining());
+        } else if (e instanceof TimerEvent.SetTime) {
+            put(json, "ms", ((TimerEvent.SetTime) e).getTimeRemaining());
+        }
+        this.timer = new TimerState(json, running);
+        publish(TIMER, frame(TIMER, json.toJson()));
+    }
+
+    private synchronized void onUpdate(UpdateEvent e) {
+        String translations = e.getTranslationMap();
+        if (translations != null && !translations.equals(this.translationSource)) {
+            // large and seldom changed, only sent when it changes
+            this.translationSource = translations;
+            this.latest.put(TRANSLATIONS, frame(TRANSLATIONS, translations));
+            publish(TRANSLATIONS, this.latest.get(TRANSLATIONS));
+        }
+
+        JsonObject json = Json.createObject();
+        put(json, "competitionName", e.getCompetitionName());
+        put(json, "fop", e.getFopName());
+        put(json, "fopState", e.getFopState());
+        put(json, "groupName", e.getGroupName());
+        put(json, "groupDescription", e.getGroupDescription());
+        put(json, "categoryName", e.getCategoryName());
+        put(json, "fullName", e.getFullName());
+        put(json, "teamName", e.getTeamName());
+        put(json, "startNumber", e.getStartNumber());
+        put(json, "attempt", e.getAttempt());
+        put(json, "weight", e.getWeight());
+        put(json, "timeAllowed", e.getTimeAllowed());
+        put(json, "mode", e.getMode());
+        put(json, "break", e.isBreak());
+        put(json, "breakType", e.getBreakType() != null ? e.getBreakType().name() : null);
+        put(json, "ceremonyType", e.getCeremonyType() != null ? e.getCeremonyType().name() : null);
+        json.put("done", e.isDone());
+        json.put("hidden", e.getHidden());
+        put(json, "liftsDone", e.getLiftsDone());
+        put(json, "noLiftRanks", e.getNoLiftRanks());
+        put(json, "recordKind", e.getRecordKind());
+        put(json, "recordMessage", e.getRecordMessage());
+        json.put("sinclairMeet", e.isSinclairMeet());
+        ScoreboardSnapshot snapshot = e.getSnapshot();
+        if (snapshot != null) {
+            // already parsed once for the Vaadin scoreboards
+            put(json, "athletes", snapshot.getAthletes());
+            put(json, "liftingOrderAthletes", snapshot.getLiftingOrderAthletes());
+            put(json, "leaders", snapshot.getLeaders());
+            put(json, "records", snapshot.getRecords());
+        }
+        this.latest.put(UPDATE, frame(UPDATE, json.toJson()));
+        publish(UPDATE, this.latest.get(UPDATE));
+    }
+
+    private void publish(String kind, byte[] frame) {
+        for (Connection c : this.connections) {
+            c.send(kind, frame);
+        }
+    }
+
+}
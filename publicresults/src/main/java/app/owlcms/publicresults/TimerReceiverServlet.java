@@ -10,16 +10,16 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.Executors;
+import java.util.function.Function;
 
 import org.slf4j.LoggerFactory;
 
-import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
 
 import app.owlcms.uievents.BreakTimerEvent;
 import app.owlcms.uievents.TimerEvent;
 import app.owlcms.utils.LoggerUtils;
+import app.owlcms.utils.OrderedEventBus;
 import app.owlcms.utils.ProxyUtils;
 import app.owlcms.utils.StartupUtils;
 import ch.qos.logback.classic.Logger;
@@ -33,8 +33,7 @@ import jakarta.servlet.http.HttpServletResponse;
 public class TimerReceiverServlet extends HttpServlet {
 
     private static String defaultFopName;
-    static EventBus eventBus = new AsyncEventBus(TimerReceiverServlet.class.getSimpleName(),
-            Executors.newCachedThreadPool());
+    static EventBus eventBus = new OrderedEventBus(TimerReceiverServlet.class.getSimpleName());
 
     public static EventBus getEventBus() {
         return eventBus;
@@ -80,49 +79,15 @@ public class TimerReceiverServlet extends HttpServlet {
                 return;
             }
 
-            TimerEvent timerEvent = null;
-            BreakTimerEvent breakTimerEvent = null;
-
             String eventTypeString = req.getParameter("eventType");
             String fopName = req.getParameter("fopName");
-
-            String secondsString = req.getParameter("milliseconds");
-            int seconds = secondsString != null ? Integer.valueOf(secondsString) : 0;
-            String indefiniteString = req.getParameter("indefiniteBreak");
-            boolean indefinite = indefiniteString != null ? Boolean.valueOf(indefiniteString) : false;
-            String silentString = req.getParameter("silent");
-            boolean silent = silentString != null ? Boolean.valueOf(silentString) : false;
-
-            if (eventTypeString.equals("SetTime")) {
-                timerEvent = new TimerEvent.SetTime(seconds);
-            } else if (eventTypeString.equals("StopTime")) {
-                timerEvent = new TimerEvent.StopTime(seconds);
-            } else if (eventTypeString.equals("StartTime")) {
-                timerEvent = new TimerEvent.StartTime(seconds, silent);
-            } else if (eventTypeString.equals("BreakPaused")) {
-                breakTimerEvent = new BreakTimerEvent.BreakPaused(seconds);
-            } else if (eventTypeString.equals("BreakStarted")) {
-                breakTimerEvent = new BreakTimerEvent.BreakStart(seconds, indefinite);
-            } else if (eventTypeString.equals("BreakDone")) {
-                breakTimerEvent = new BreakTimerEvent.BreakDone(null);
-            } else if (eventTypeString.equals("BreakSetTime")) {
-                breakTimerEvent = new BreakTimerEvent.BreakSetTime(seconds, indefinite);
-            } else {
+            if (!postTimerEvent(req::getParameter)) {
                 String message = MessageFormat.format("unknown event type {0}", eventTypeString);
                 logger.error(message);
                 resp.sendError(400, message);
+                return;
             }
-
-            if (timerEvent != null) {
-                timerEvent.setFopName(fopName);
-                eventBus.post(timerEvent);
-            }
-            if (breakTimerEvent != null) {
-                breakTimerEvent.setFopName(fopName);
-                String mode = req.getParameter("mode");
-                breakTimerEvent.setMode(mode);
-                eventBus.post(breakTimerEvent);
-            }
+            WarmStart.timerReceived(req.getParameterMap());
 
             if (defaultFopName == null) {
                 defaultFopName = fopName;
@@ -132,4 +97,55 @@ public class TimerReceiverServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Post the timer event described by the parameters, as sent by owlcms.
+     *
+     * @param params the request parameters
+     * @return false if the event type is unknown
+     */
+    static boolean postTimerEvent(Function<String, String> params) {
+        TimerEvent timerEvent = null;
+        BreakTimerEvent breakTimerEvent = null;
+
+        String eventTypeString = params.apply("eventType");
+        String fopName = params.apply("fopName");
+
+        String secondsString = params.apply("milliseconds");
+        int seconds = secondsString != null ? Integer.valueOf(secondsString) : 0;
+        String indefiniteString = params.apply("indefiniteBreak");
+        boolean indefinite = indefiniteString != null ? Boolean.valueOf(indefiniteString) : false;
+        String silentString = params.apply("silent");
+        boolean silent = silentString != null ? Boolean.valueOf(silentString) : false;
+
+        if (eventTypeString.equals("SetTime")) {
+            timerEvent = new TimerEvent.SetTime(seconds);
+        } else if (eventTypeString.equals("StopTime")) {
+            timerEvent = new TimerEvent.StopTime(seconds);
+        } else if (eventTypeString.equals("StartTime")) {
+            timerEvent = new TimerEvent.StartTime(seconds, silent);
+        } else if (eventTypeString.equals("BreakPaused")) {
+            breakTimerEvent = new BreakTimerEvent.BreakPaused(seconds);
+        } else if (eventTypeString.equals("BreakStarted")) {
+            breakTimerEvent = new BreakTimerEvent.BreakStart(seconds, indefinite);
+        } else if (eventTypeString.equals("BreakDone")) {
+            breakTimerEvent = new BreakTimerEvent.BreakDone(null);
+        } else if (eventTypeString.equals("BreakSetTime")) {
+            breakTimerEvent = new BreakTimerEvent.BreakSetTime(seconds, indefinite);
+        } else {
+            return false;
+        }
+
+        if (timerEvent != null) {
+            timerEvent.setFopName(fopName);
+            eventBus.post(timerEvent);
+        }
+        if (breakTimerEvent != null) {
+            breakTimerEvent.setFopName(fopName);
+            String mode = params.apply("mode");
+            breakTimerEvent.setMode(mode);
+            eventBus.post(breakTimerEvent);
+        }
+        return true;
+    }
+
 }
\ No newline at end of file
@@ -7,25 +7,33 @@
 package app.owlcms.publicresults;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
 
 import org.slf4j.LoggerFactory;
 
-import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
 
 import app.owlcms.uievents.BreakType;
+import app.owlcms.uievents.ScoreboardSnapshot;
 import app.owlcms.uievents.UpdateEvent;
 import app.owlcms.utils.LoggerUtils;
+import app.owlcms.utils.OrderedEventBus;
 import app.owlcms.utils.ProxyUtils;
 import app.owlcms.utils.ResourceWalker;
 import app.owlcms.utils.StartupUtils;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonType;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -35,16 +43,77 @@ import jakarta.servlet.http.HttpServletResponse;
 @WebServlet("/update")
 public class UpdateReceiverServlet extends HttpServlet {
 
+    private static final String STATE_PROTOCOL_VERSION = "1";
     private static String defaultFopName;
-    static EventBus eventBus = new AsyncEventBus(UpdateReceiverServlet.class.getSimpleName(),
-            Executors.newCachedThreadPool());
+    static EventBus eventBus = new OrderedEventBus(UpdateReceiverServlet.class.getSimpleName());
     private static Map<String, UpdateEvent> updateCache = new HashMap<>();
+    /** raw values received through the incremental protocol, per FOP */
+    private static Map<String, Map<String, String>> fopStates = new HashMap<>();
+    private static Map<String, Long> fopSequences = new HashMap<>();
+    /** raw values of the last update received through the form protocol, per FOP */
+    private static Map<String, Map<String, String>> formStates = new HashMap<>();
     static long lastUpdate = 0;
 
     public static EventBus getEventBus() {
         return eventBus;
     }
 
+    /**
+     * The values received through the incremental protocol, as full updates, so that a relay can bring a replica up to
+     * date.
+     *
+     * @return the JSON payload for each field of play
+     */
+    static Map<String, String> getFullStates() {
+        String key = StartupUtils.getStringParam("updateKey");
+        Map<String, String> fullStates = new HashMap<>();
+        synchronized (fopStates) {
+            for (Entry<String, Map<String, String>> e : fopStates.entrySet()) {
+                Long seq = fopSequences.get(e.getKey());
+                if (seq == null) {
+                    continue;
+                }
+                JsonObject values = Json.createObject();
+                for (Entry<String, String> v : e.getValue().entrySet()) {
+                    if (v.getValue() != null) {
+                        values.put(v.getKey(), v.getValue());
+                    }
+                }
+                JsonObject payload = Json.createObject();
+                if (key != null) {
+                    payload.put("updateKey", key);
+                }
+                payload.put("fop", e.getKey());
+                payload.put("seq", seq);
+                payload.put("full", true);
+                payload.put("values", values);
+                fullStates.put(e.getKey(), payload.toJson());
+            }
+        }
+        return fullStates;
+    }
+
+    /**
+     * The values of the last update of each field of play, for {@link WarmStart}. The update key is not included.
+     *
+     * @return for each field of play, the values and the sequence number of the incremental protocol, if used
+     */
+    static JsonObject getSavedStates() {
+        JsonObject saved = Json.createObject();
+        synchronized (fopStates) {
+            for (Entry<String, Map<String, String>> e : formStates.entrySet()) {
+                saved.put(e.getKey(), savedState(e.getValue(), null));
+            }
+            for (Entry<String, Map<String, String>> e : fopStates.entrySet()) {
+                Long seq = fopSequences.get(e.getKey());
+                if (seq != null) {
+                    saved.put(e.getKey(), savedState(e.getValue(), seq));
+                }
+            }
+        }
+        return saved;
+    }
+
     public static Map<String, UpdateEvent> getUpdateCache() {
         return updateCache;
     }
@@ -53,6 +122,48 @@ public class UpdateReceiverServlet extends HttpServlet {
         UpdateReceiverServlet.updateCache = updateCache;
     }
 
+    /**
+     * Rebuild the cache from saved values, as if the updates had just been received. owlcms can then go on with the
+     * incremental protocol where it was.
+     *
+     * @param saved as returned by {@link #getSavedStates()}
+     */
+    static void restoreStates(JsonObject saved) {
+        UpdateReceiverServlet receiver = new UpdateReceiverServlet();
+        for (String fopName : saved.keys()) {
+            JsonObject fopState = saved.getObject(fopName);
+            JsonObject values = fopState.getObject("values");
+            Map<String, String> state = new HashMap<>();
+            for (String key : values.keys()) {
+                state.put(key, values.getString(key));
+            }
+            synchronized (fopStates) {
+                if (fopState.hasKey("seq")) {
+                    fopStates.put(fopName, state);
+                    fopSequences.put(fopName, (long) fopState.getNumber("seq"));
+                } else {
+                    formStates.put(fopName, state);
+                }
+                receiver.processUpdate(receiver.buildUpdateEvent(state::get));
+            }
+        }
+    }
+
+    private static JsonObject savedState(Map<String, String> state, Long seq) {
+        JsonObject values = Json.createObject();
+        for (Entry<String, String> v : state.entrySet()) {
+            if (v.getValue() != null && !"updateKey".equals(v.getKey())) {
+                values.put(v.getKey(), v.getValue());
+            }
+        }
+        JsonObject saved = Json.createObject();
+        if (seq != null) {
+            saved.put("seq", seq);
+        }
+        saved.put("values", values);
+        return saved;
+    }
+
     public static UpdateEvent sync(String fopName) {
         if (fopName == null) {
             fopName = defaultFopName;
@@ -86,18 +197,23 @@ public class UpdateReceiverServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) {
         try {
+            // tells owlcms that errors are not caused by the incremental protocol being unknown
+            resp.setHeader("X-Update-Protocol", STATE_PROTOCOL_VERSION);
+            String contentType = req.getContentType();
+            if (contentType != null && contentType.startsWith("application/json")) {
+                doStatePost(req, resp);
+                return;
+            }
+
             String updateKey = req.getParameter("updateKey");
             if (updateKey == null || !updateKey.equals(secret)) {
                 logger.error("denying access from {} expected {} got {} ", req.getRemoteHost(), secret, updateKey);
                 resp.sendError(401, "Denied, wrong credentials");
                 return;
             }
-            
+
             if (ResourceWalker.getLocalDirPath() == null) {
-                String message = "Local override directory not present: requesting remote configuration files.";
-                logger.info(message);
-                logger.info("requesting customization");
-                resp.sendError(412, "Missing configuration files.");
+                requestConfiguration(resp);
                 return;
             }
 
@@ -112,88 +228,210 @@ public class UpdateReceiverServlet extends HttpServlet {
                 }
             }
 
-            UpdateEvent updateEvent = new UpdateEvent();
-
-            updateEvent.setCompetitionName(req.getParameter("competitionName"));
-            updateEvent.setFopName(req.getParameter("fop"));
-            updateEvent.setFopState(req.getParameter("fopState"));
-            updateEvent.setStylesDir(req.getParameter("stylesDir"));
-
-            updateEvent.setAttempt(req.getParameter("attempt"));
-            updateEvent.setCategoryName(req.getParameter("categoryName"));
-            updateEvent.setFullName(req.getParameter("fullName"));
-            updateEvent.setGroupName(req.getParameter("groupName"));
-
-            updateEvent.setHidden(Boolean.valueOf(req.getParameter("hidden")));
-            String startNumber = req.getParameter("startNumber");
-            updateEvent.setStartNumber(startNumber != null ? Integer.parseInt(startNumber) : 0);
-            updateEvent.setTeamName(req.getParameter("teamName"));
-            String weight = req.getParameter("weight");
-            updateEvent.setWeight(weight != null ? Integer.parseInt(weight) : null);
-            
-            updateEvent.setMode(req.getParameter("mode"));
-
-            updateEvent.setNoLiftRanks(req.getParameter("noLiftRanks"));
-            updateEvent.setAthletes(req.getParameter("groupAthletes"));
-            updateEvent.setLiftingOrderAthletes(req.getParameter("liftingOrderAthletes"));
-            updateEvent.setLeaders(req.getParameter("leaders"));
-
-            updateEvent.setRecords(req.getParameter("records"));
-            updateEvent.setRecordKind(req.getParameter("recordKind"));
-            updateEvent.setRecordMessage(req.getParameter("recordMessage"));
-            updateEvent.setLiftsDone(req.getParameter("liftsDone"));
-
-            updateEvent.setWideTeamNames(Boolean.parseBoolean(req.getParameter("wideTeamNames")));
-            String timeAllowed = req.getParameter("timeAllowed");
-            updateEvent.setTimeAllowed(timeAllowed != null ? Integer.parseInt(req.getParameter("timeAllowed")) : null);
-
-            updateEvent.setTranslationMap(req.getParameter("translationMap"));
-
-            String breakString = req.getParameter("break");
-            String breakTypeString = req.getParameter("breakType");
-            String breakRemainingString = req.getParameter("breakRemaining");
-            String breakIsIndefiniteString = req.getParameter("breakIsIndefinite");
-            updateEvent.setBreak(breakString != null ? Boolean.valueOf(breakString) : null);
-            BreakType bt = breakTypeString != null ? BreakType.valueOf(breakTypeString) : null;
-            updateEvent.setBreakType(bt);
-            updateEvent.setBreakRemaining(breakRemainingString != null ? Integer.parseInt(breakRemainingString) : null);
-            updateEvent.setIndefinite(Boolean.parseBoolean(breakIsIndefiniteString));
-            
-            String sinclairMeetString = req.getParameter("sinclairMeet");
-            updateEvent.setSinclairMeet(Boolean.parseBoolean(sinclairMeetString));
-
-            if (bt == BreakType.GROUP_DONE) {
-                updateEvent.setRecords(null);
-                updateEvent.setRecordKind("none");
-                updateEvent.setRecordMessage("");
-                updateEvent.setDone(true);
-            }
-
-            String fopName = updateEvent.getFopName();
-            // put in the cache first so events can know which FOPs are active;
-
-            long now = System.currentTimeMillis();
-            if (now - lastUpdate < 500) {
-                // short time range, is this a duplicate?
-                UpdateEvent prevUpdate = updateCache.get(fopName);
-                if (prevUpdate != null && updateEvent.hashCode() == prevUpdate.hashCode()) {
-                    logger./**/warn("duplicate event ignored");
-                } else {
-                    updateCache.put(fopName, updateEvent);
-                    eventBus.post(updateEvent);
-                }
-            } else {
-                updateCache.put(fopName, updateEvent);
-                eventBus.post(updateEvent);
+            Map<String, String> state = new HashMap<>();
+            for (Entry<String, String[]> pair : req.getParameterMap().entrySet()) {
+                state.put(pair.getKey(), pair.getValue().length > 0 ? pair.getValue()[0] : null);
             }
-
-            if (defaultFopName == null) {
-                defaultFopName = fopName;
+            synchronized (fopStates) {
+                if (state.get("fop") != null) {
+                    formStates.put(state.get("fop"), state);
+                }
+                processUpdate(buildUpdateEvent(state::get));
             }
+            WarmStart.changed();
             resp.sendError(200);
         } catch (Exception e) {
             logger.error(LoggerUtils.stackTrace(e));
+            if (!resp.isCommitted()) {
+                try {
+                    // the sender must not take the update as delivered
+                    resp.sendError(500);
+                } catch (IOException e1) {
+                    // client gone
+                }
+            }
         }
     }
 
+    private UpdateEvent buildUpdateEvent(Function<String, String> params) {
+        UpdateEvent updateEvent = new UpdateEvent();
+
+        updateEvent.setCompetitionName(params.apply("competitionName"));
+        updateEvent.setFopName(params.apply("fop"));
+        updateEvent.setFopState(params.apply("fopState"));
+        updateEvent.setStylesDir(params.apply("stylesDir"));
+
+        updateEvent.setAttempt(params.apply("attempt"));
+        updateEvent.setCategoryName(params.apply("categoryName"));
+        updateEvent.setFullName(params.apply("fullName"));
+        updateEvent.setGroupName(params.apply("groupName"));
+
+        updateEvent.setHidden(Boolean.valueOf(params.apply("hidden")));
+        String startNumber = params.apply("startNumber");
+        updateEvent.setStartNumber(startNumber != null ? Integer.parseInt(startNumber) : 0);
+        updateEvent.setTeamName(params.apply("teamName"));
+        String weight = params.apply("weight");
+        updateEvent.setWeight(weight != null ? Integer.parseInt(weight) : null);
+
+        updateEvent.setMode(params.apply("mode"));
+
+        updateEvent.setNoLiftRanks(params.apply("noLiftRanks"));
+        updateEvent.setAthletes(params.apply("groupAthletes"));
+        updateEvent.setLiftingOrderAthletes(params.apply("liftingOrderAthletes"));
+        updateEvent.setLeaders(params.apply("leaders"));
+
+        updateEvent.setRecords(params.apply("records"));
+        updateEvent.setRecordKind(params.apply("recordKind"));
+        updateEvent.setRecordMessage(params.apply("recordMessage"));
+        updateEvent.setLiftsDone(params.apply("liftsDone"));
+
+        updateEvent.setWideTeamNames(Boolean.parseBoolean(params.apply("wideTeamNames")));
+        String timeAllowed = params.apply("timeAllowed");
+        updateEvent.setTimeAllowed(timeAllowed != null ? Integer.parseInt(timeAllowed) : null);
+
+        updateEvent.setTranslationMap(params.apply("translationMap"));
+
+        String breakString = params.apply("break");
+        String breakTypeString = params.apply("breakType");
+        String breakRemainingString = params.apply("breakRemaining");
+        String breakIsIndefiniteString = params.apply("breakIsIndefinite");
+        updateEvent.setBreak(breakString != null ? Boolean.valueOf(breakString) : null);
+        BreakType bt = breakTypeString != null ? BreakType.valueOf(breakTypeString) : null;
+        updateEvent.setBreakType(bt);
+        updateEvent.setBreakRemaining(breakRemainingString != null ? Integer.parseInt(breakRemainingString) : null);
+        updateEvent.setIndefinite(Boolean.parseBoolean(breakIsIndefiniteString));
+
+        String sinclairMeetString = params.apply("sinclairMeet");
+        updateEvent.setSinclairMeet(Boolean.parseBoolean(sinclairMeetString));
+
+        if (bt == BreakType.GROUP_DONE) {
+            updateEvent.setRecords(null);
+            updateEvent.setRecordKind("none");
+            updateEvent.setRecordMessage("");
+            updateEvent.setDone(true);
+        }
+        return updateEvent;
+    }
+
+    /**
+     * Incremental protocol. The body is a JSON object (usually gzipped) with a per-FOP sequence number. A full update
+     * replaces the state; otherwise the values are applied to the state received previously. If an update was missed
+     * (or we restarted), we answer 409 and owlcms sends everything again.
+     */
+    private void doStatePost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        JsonObject payload;
+        InputStream in = req.getInputStream();
+        if ("gzip".equalsIgnoreCase(req.getHeader("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        try (InputStream body = in) {
+            payload = Json.parse(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            resp.sendError(400, "Malformed update");
+            return;
+        }
+
+        String updateKey = payload.hasKey("updateKey") ? payload.getString("updateKey") : null;
+        if (updateKey == null || !updateKey.equals(secret)) {
+            logger.error("denying access from {} expected {} got {} ", req.getRemoteHost(), secret, updateKey);
+            resp.sendError(401, "Denied, wrong credentials");
+            return;
+        }
+
+        if (ResourceWalker.getLocalDirPath() == null) {
+            requestConfiguration(resp);
+            return;
+        }
+
+        if (!isType(payload, "fop", JsonType.STRING) || !isType(payload, "seq", JsonType.NUMBER)
+                || !isType(payload, "full", JsonType.BOOLEAN) || !isType(payload, "values", JsonType.OBJECT)
+                || (payload.hasKey("removed") && !isType(payload, "removed", JsonType.ARRAY))) {
+            logger.error("malformed update from {}", ProxyUtils.getClientIp(req));
+            resp.sendError(400, "Malformed update");
+            return;
+        }
+        String fopName = payload.getString("fop");
+        long seq = (long) payload.getNumber("seq");
+        boolean full = payload.getBoolean("full");
+        Map<String, String> state;
+        // the state is applied and published in the same critical section, so that concurrent posts for a field of
+        // play reach the displays in sequence order.
+        synchronized (fopStates) {
+            Long prevSeq = fopSequences.get(fopName);
+            Map<String, String> prevState = fopStates.get(fopName);
+            if (full) {
+                state = new HashMap<>();
+            } else if (prevState == null || prevSeq == null || seq != prevSeq + 1) {
+                logger.info("{} update {} received, expecting {}: requesting full state", fopName, seq,
+                        prevSeq != null ? prevSeq + 1 : "full");
+                fopSequences.remove(fopName);
+                fopStates.remove(fopName);
+                resp.sendError(409, "Resynchronization required");
+                return;
+            } else {
+                state = new HashMap<>(prevState);
+            }
+            JsonObject values = payload.getObject("values");
+            for (String key : values.keys()) {
+                state.put(key, values.getString(key));
+            }
+            JsonArray removed = payload.getArray("removed");
+            for (int i = 0; removed != null && i < removed.length(); i++) {
+                state.remove(removed.getString(i));
+            }
+            UpdateEvent updateEvent;
+            try {
+                updateEvent = buildUpdateEvent(state::get);
+            } catch (RuntimeException e) {
+                logger.error("malformed update {} {} from {}: {}", fopName, seq, ProxyUtils.getClientIp(req),
+                        e.toString());
+                resp.sendError(400, "Malformed update");
+                return;
+            }
+            fopStates.put(fopName, state);
+            fopSequences.put(fopName, seq);
+            processUpdate(updateEvent);
+        }
+        logger.debug("update {} {} received from {}, {} values changed", fopName, seq, ProxyUtils.getClientIp(req),
+                payload.getObject("values").keys().length);
+        WarmStart.changed();
+        resp.sendError(200);
+    }
+
+    private static boolean isType(JsonObject payload, String key, JsonType type) {
+        return payload.hasKey(key) && payload.get(key).getType() == type;
+    }
+
+    private void processUpdate(UpdateEvent updateEvent) {
+        String fopName = updateEvent.getFopName();
+        // put in the cache first so events can know which FOPs are active;
+
+        long now = System.currentTimeMillis();
+        UpdateEvent prevUpdate = updateCache.get(fopName);
+        if (now - lastUpdate < 500 && prevUpdate != null && updateEvent.hashCode() == prevUpdate.hashCode()) {
+            // short time range, and a duplicate
+            logger./**/warn("duplicate event ignored");
+        } else {
+            // parse the JSON once for all the displays
+            ScoreboardSnapshot prevSnapshot = prevUpdate != null ? prevUpdate.getSnapshot() : null;
+            updateEvent.setSnapshot(new ScoreboardSnapshot(updateEvent, prevSnapshot));
+            updateCache.put(fopName, updateEvent);
+            if (prevSnapshot != null) {
+                prevSnapshot.close();
+            }
+            eventBus.post(updateEvent);
+        }
+
+        if (defaultFopName == null) {
+            defaultFopName = fopName;
+        }
+    }
+
+    private void requestConfiguration(HttpServletResponse resp) throws IOException {
+        String message = "Local override directory not present: requesting remote configuration files.";
+        logger.info(message);
+        logger.info("requesting customization");
+        resp.sendError(412, "Missing configuration files.");
+    }
+
 }
\ No newline at end of file
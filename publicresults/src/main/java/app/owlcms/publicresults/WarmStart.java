@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.publicresults;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.LoggerFactory;
+
+import app.owlcms.utils.LoggerUtils;
+import app.owlcms.utils.ResourceWalker;
+import app.owlcms.utils.Scheduler;
+import app.owlcms.utils.StartupUtils;
+import app.owlcms.utils.ZipUtils;
+import ch.qos.logback.classic.Logger;
+import elemental.json.Json;
+import elemental.json.JsonObject;
+
+/**
+ * Snapshot of what owlcms has sent, so that a restarted publicresults shows the scoreboards right away instead of
+ * waiting for the next update.
+ *
+ * Enabled with <code>-DwarmStartFile=/some/dir/publicresults.json</code> (or OWLCMS_WARMSTARTFILE). The file holds the
+ * last update of each field of play and the last athlete and break timer posts; the configuration files sent by
+ * owlcms are kept next to it, in a zip with the same name followed by <code>.config.zip</code>. Both are written in
+ * the background, a short while after a change, and replaced atomically.
+ *
+ * The snapshot is read before the web server starts. Running timers are restored with the time elapsed since they
+ * were received taken off. Decisions are not kept: they are only shown for a few seconds.
+ */
+public class WarmStart {
+
+    /** older snapshots are from another session and are ignored */
+    private static final long MAX_AGE_MILLIS = 6 * 3600 * 1000L;
+    private static final long WRITE_DELAY_MILLIS = 2000;
+    private static final Logger logger = (Logger) LoggerFactory.getLogger(WarmStart.class);
+
+    private static boolean configChanged;
+    private static Path snapshotFile;
+    /** latest athlete timer and break timer post of each field of play */
+    private static final Map<String, JsonObject> timers = new LinkedHashMap<>();
+    private static boolean writeScheduled;
+
+    /**
+     * The state has changed: schedule a write, unless one is already pending.
+     */
+    static void changed() {
+        if (snapshotFile == null) {
+            return;
+        }
+        synchronized (WarmStart.class) {
+            if (writeScheduled) {
+                return;
+            }
+            writeScheduled = true;
+        }
+        Scheduler.getShared().schedule(WarmStart::write, WRITE_DELAY_MILLIS);
+    }
+
+    /**
+     * New configuration files have been received.
+     */
+    static void configChanged() {
+        synchronized (WarmStart.class) {
+            configChanged = true;
+        }
+        changed();
+    }
+
+    /**
+     * Read the snapshot given by the <code>warmStartFile</code> parameter, if any, and fill the caches. Must be called
+     * before the web server starts.
+     */
+    public static void restore() {
+        String fileName = StartupUtils.getStringParam("warmStartFile");
+        if (fileName == null || fileName.isBlank()) {
+            return;
+        }
+        snapshotFile = Paths.get(fileName).toAbsolutePath();
+        try {
+            restoreConfig();
+            restoreState();
+        } catch (IOException | RuntimeException e) {
+            // starting cold is always possible, owlcms sends everything again
+            logger.error("warm start from {} failed {}", snapshotFile, LoggerUtils.stackTrace(e));
+        }
+    }
+
+    /**
+     * Keep a timer post that has been accepted.
+     *
+     * @param params the request parameters
+     */
+    static void timerReceived(Map<String, String[]> params) {
+        if (snapshotFile == null) {
+            return;
+        }
+        String fopName = first(params, "fopName");
+        String eventType = first(params, "eventType");
+        if (fopName == null || eventType == null) {
+            return;
+        }
+        JsonObject values = Json.createObject();
+        for (Map.Entry<String, String[]> e : params.entrySet()) {
+            String value = e.getValue().length > 0 ? e.getValue()[0] : null;
+            if (value != null && !"updateKey".equals(e.getKey())) {
+                values.put(e.getKey(), value);
+            }
+        }
+        JsonObject timer = Json.createObject();
+        timer.put("receivedAt", System.currentTimeMillis());
+        timer.put("values", values);
+        synchronized (timers) {
+            timers.put(fopName + (eventType.startsWith("Break") ? "|break" : "|athlete"), timer);
+        }
+        changed();
+    }
+
+    private static Path configFile() {
+        return snapshotFile.resolveSibling(snapshotFile.getFileName() + ".config.zip");
+    }
+
+    private static String first(Map<String, String[]> params, String key) {
+        String[] values = params.get(key);
+        return values != null && values.length > 0 ? values[0] : null;
+    }
+
+    private static void replace(Path target, byte[] content) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, content);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void restoreConfig() throws IOException {
+        Path configFile = configFile();
+        if (!Files.exists(configFile) || ResourceWalker.getLocalDirPath() != null) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(configFile)) {
+            ResourceWalker.unzipBlobToTemp(in);
+        }
+        logger.info("configuration files restored from {}", configFile);
+    }
+
+    private static void restoreState() throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        JsonObject snapshot = Json.parse(Files.readString(snapshotFile, StandardCharsets.UTF_8));
+        long age = System.currentTimeMillis() - (long) snapshot.getNumber("savedAt");
+        if (age > MAX_AGE_MILLIS) {
+            logger.info("ignoring {}, saved {} minutes ago", snapshotFile, age / 60000);
+            return;
+        }
+        if (ResourceWalker.getLocalDirPath() == null) {
+            // the scoreboards cannot be shown without the configuration files
+            return;
+        }
+        JsonObject updates = snapshot.getObject("updates");
+        UpdateReceiverServlet.restoreStates(updates);
+
+        JsonObject savedTimers = snapshot.getObject("timers");
+        for (String key : savedTimers.keys()) {
+            JsonObject timer = savedTimers.getObject(key);
+            JsonObject values = timer.getObject("values");
+            Map<String, String> params = new LinkedHashMap<>();
+            for (String name : values.keys()) {
+                params.put(name, values.getString(name));
+            }
+            String eventType = params.get("eventType");
+            boolean running = "StartTime".equals(eventType)
+                    || ("BreakStarted".equals(eventType) && !Boolean.parseBoolean(params.get("indefiniteBreak")));
+            String millis = params.get("milliseconds");
+            if (running && millis != null && !millis.isBlank()) {
+                long elapsed = System.currentTimeMillis() - (long) timer.getNumber("receivedAt");
+                params.put("milliseconds", Long.toString(Math.max(0, Long.parseLong(millis) - elapsed)));
+            }
+            TimerReceiverServlet.postTimerEvent(params::get);
+            synchronized (timers) {
+                timers.put(key, timer);
+            }
+        }
+        logger.info("warm start: {} fields of play restored from {}, saved {} seconds ago", updates.keys().length,
+                snapshotFile, age / 1000);
+    }
+
+    private static void write() {
+        boolean writeConfig;
+        synchronized (WarmStart.class) {
+            writeScheduled = false;
+            writeConfig = configChanged;
+            configChanged = false;
+        }
+        try {
+            Files.createDirectories(snapshotFile.getParent());
+            if (writeConfig) {
+                writeConfig();
+            }
+            JsonObject savedTimers = Json.createObject();
+            synchronized (timers) {
+                for (Map.Entry<String, JsonObject> e : timers.entrySet()) {
+                    savedTimers.put(e.getKey(), e.getValue());
+                }
+            }
+            JsonObject snapshot = Json.createObject();
+            snapshot.put("savedAt", System.currentTimeMillis());
+            snapshot.put("updates", UpdateReceiverServlet.getSavedStates());
+            snapshot.put("timers", savedTimers);
+            replace(snapshotFile, snapshot.toJson().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            logger.error("could not write {} {}", snapshotFile, LoggerUtils.stackTrace(e));
+        }
+    }
+
+    /**
+     * Zip the local override directory. It lives in memory, so the files are copied one by one.
+     */
+    private static void writeConfig() throws IOException {
+        Path localDir = ResourceWalker.getLocalDirPath();
+        if (localDir == null) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(localDir)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        Path configFile = configFile();
+        Path tmp = configFile.resolveSibling(configFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp); ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            for (Path p : files) {
+                String name = ResourceWalker.relativeName(p, localDir).replace('\\', '/');
+                ZipUtils.zipStream(Files.newInputStream(p), name, false, zipOut);
+            }
+        }
+        Files.move(tmp, configFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("{} configuration files saved to {}", files.size(), configFile);
+    }
+
+}
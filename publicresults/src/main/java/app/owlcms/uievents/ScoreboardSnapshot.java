@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.uievents;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Logger;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+import elemental.json.impl.JreJsonFactory;
+
+/**
+ * The JSON payloads of an update, parsed once when the update is received and shared by all the scoreboards
+ * showing the same field of play.
+ *
+ * The parsed values are never modified after construction; the displays only hand them to Vaadin, which serializes
+ * them to the browser. Payloads that did not change since the previous update (typically the translation map and the
+ * records) are not parsed again.
+ *
+ * The snapshot also measures the fan-out: the time between reception of the update and the moment the last UI
+ * finished applying it.
+ */
+public class ScoreboardSnapshot {
+
+    private static final Logger logger = (Logger) LoggerFactory.getLogger(ScoreboardSnapshot.class);
+
+    private static final AtomicLong fanOutCount = new AtomicLong();
+    private static final AtomicLong fanOutTotalNanos = new AtomicLong();
+    private static final AtomicLong fanOutMaxNanos = new AtomicLong();
+
+    /**
+     * @return the longest time taken to bring all the UIs of a field of play up to date, in milliseconds
+     */
+    public static double getMaxFanOutMillis() {
+        return fanOutMaxNanos.get() / 1_000_000.0D;
+    }
+
+    /**
+     * @return the average time taken to bring all the UIs of a field of play up to date, in milliseconds
+     */
+    public static double getMeanFanOutMillis() {
+        long count = fanOutCount.get();
+        return count == 0 ? 0.0D : fanOutTotalNanos.get() / 1_000_000.0D / count;
+    }
+
+    private final String athletesSource;
+    private final String liftingOrderAthletesSource;
+    private final String leadersSource;
+    private final String recordsSource;
+    private final String translationMapSource;
+
+    private final JsonArray athletes;
+    private final JsonArray liftingOrderAthletes;
+    private final JsonArray leaders;
+    private final JsonObject records;
+    private final JsonValue translationMap;
+
+    private final String fopName;
+    private final long receivedNanos;
+    private final AtomicInteger uiCount = new AtomicInteger();
+    private final AtomicLong lastUiDoneNanos = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param e        the update just received
+     * @param previous the snapshot for the previous update on the same field of play, or null
+     */
+    public ScoreboardSnapshot(UpdateEvent e, ScoreboardSnapshot previous) {
+        this.receivedNanos = System.nanoTime();
+        this.fopName = e.getFopName();
+        JreJsonFactory jreJsonFactory = new JreJsonFactory();
+
+        this.athletesSource = e.getAthletes();
+        this.athletes = previous != null && Objects.equals(this.athletesSource, previous.athletesSource)
+                ? previous.athletes
+                : (JsonArray) parse(jreJsonFactory, this.athletesSource);
+
+        this.liftingOrderAthletesSource = e.getLiftingOrderAthletes();
+        this.liftingOrderAthletes = previous != null
+                && Objects.equals(this.liftingOrderAthletesSource, previous.liftingOrderAthletesSource)
+                        ? previous.liftingOrderAthletes
+                        : (JsonArray) parse(jreJsonFactory, this.liftingOrderAthletesSource);
+
+        this.leadersSource = e.getLeaders();
+        this.leaders = previous != null && Objects.equals(this.leadersSource, previous.leadersSource)
+                ? previous.leaders
+                : (JsonArray) parse(jreJsonFactory, this.leadersSource);
+
+        this.recordsSource = e.getRecords();
+        this.records = previous != null && Objects.equals(this.recordsSource, previous.recordsSource)
+                ? previous.records
+                : (JsonObject) parse(jreJsonFactory, this.recordsSource);
+
+        this.translationMapSource = e.getTranslationMap();
+        this.translationMap = previous != null
+                && Objects.equals(this.translationMapSource, previous.translationMapSource)
+                        ? previous.translationMap
+                        : parse(jreJsonFactory, this.translationMapSource);
+    }
+
+    /**
+     * Called when no more UIs will apply this snapshot (a newer one has been received). Records the fan-out time.
+     */
+    public void close() {
+        int count = this.uiCount.get();
+        if (count == 0) {
+            return;
+        }
+        long fanOut = this.lastUiDoneNanos.get() - this.receivedNanos;
+        fanOutCount.incrementAndGet();
+        fanOutTotalNanos.addAndGet(fanOut);
+        fanOutMaxNanos.accumulateAndGet(fanOut, Math::max);
+        logger.debug("{} update applied to {} UIs in {} ms (mean {} ms, max {} ms)", this.fopName, count,
+                fanOut / 1_000_000L, String.format("%.1f", getMeanFanOutMillis()),
+                String.format("%.1f", getMaxFanOutMillis()));
+    }
+
+    /**
+     * @return the athletes in start order, null if none
+     */
+    public JsonArray getAthletes() {
+        return this.athletes;
+    }
+
+    /**
+     * @return the leaders, null if none
+     */
+    public JsonArray getLeaders() {
+        return this.leaders;
+    }
+
+    /**
+     * @return the athletes in lifting order, null if none
+     */
+    public JsonArray getLiftingOrderAthletes() {
+        return this.liftingOrderAthletes;
+    }
+
+    /**
+     * @return the records, null if none
+     */
+    public JsonObject getRecords() {
+        return this.records;
+    }
+
+    /**
+     * @return the translation map, or a JSON null
+     */
+    public JsonValue getTranslationMap() {
+        return this.translationMap != null ? this.translationMap : Json.createNull();
+    }
+
+    /**
+     * Called by each UI once it has applied the snapshot.
+     */
+    public void uiUpdated() {
+        this.uiCount.incrementAndGet();
+        this.lastUiDoneNanos.accumulateAndGet(System.nanoTime(), Math::max);
+    }
+
+    private JsonValue parse(JreJsonFactory jreJsonFactory, String source) {
+        return source != null ? jreJsonFactory.parse(source) : null;
+    }
+
+}
@@ -42,6 +42,7 @@ public class UpdateEvent {
     private CeremonyType ceremonyType;
     private String mode;
     private boolean done = false;
+    private ScoreboardSnapshot snapshot;
 
     public UpdateEvent() {
         setLeaders(this.leaders);
@@ -167,6 +168,13 @@ public class UpdateEvent {
         return this.startNumber;
     }
 
+    /**
+     * @return the parsed JSON payloads, shared by all the displays
+     */
+    public ScoreboardSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
     public String getStylesDir() {
         return this.stylesDir;
     }
@@ -319,6 +327,10 @@ public class UpdateEvent {
         this.sinclairMeet = sinclairMeet;
     }
 
+    public void setSnapshot(ScoreboardSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
     public void setStartNumber(Integer parameter) {
         this.startNumber = parameter;
     }
@@ -17,15 +17,16 @@ import java.nio.file.Path;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.MissingResourceException;
 import java.util.Properties;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -40,6 +41,8 @@ import com.vaadin.flow.i18n.I18NProvider;
 import app.owlcms.utils.MemTempUtils;
 import app.owlcms.utils.ResourceWalker;
 import ch.qos.logback.classic.Logger;
+import elemental.json.Json;
+import elemental.json.JsonObject;
 
 /**
  * This class creates a resource bundle from a CSV file containing the various translations, and provides translations
@@ -48,10 +51,60 @@ import ch.qos.logback.classic.Logger;
  * Static variations of the translation routines are also provided for translations that do not take place inside Vaadin
  * components (e.g. spreadsheets).
  *
+ * Translations are read from the bundles once per locale into an immutable catalog, so lookups do not synchronize.
+ * {@link #reset()} replaces all the catalogs at once.
+ *
  */
 
 public class Translator implements I18NProvider {
 
+    /**
+     * Immutable translations for one locale, with the message formats for values that take parameters compiled in
+     * advance. The key/value maps sent to the displays are built on first use and shared.
+     */
+    private static final class Catalog {
+        private final Map<String, String> translations;
+        private final Map<String, String> ownTranslations;
+        private final Map<String, MessageFormat> formats;
+        private final Map<String, JsonObject> sections = new ConcurrentHashMap<>();
+        private final Map<String, String> sectionsJson = new ConcurrentHashMap<>();
+
+        private Catalog(PropertyResourceBundle bundle) {
+            Map<String, String> all = new HashMap<>();
+            Map<String, String> own = new HashMap<>();
+            Map<String, MessageFormat> compiled = new HashMap<>();
+            Enumeration<String> keys = bundle.getKeys();
+            while (keys.hasMoreElements()) {
+                String key = keys.nextElement();
+                String value = bundle.getString(key);
+                all.put(key, value);
+                Object ownValue = bundle.handleGetObject(key);
+                if (ownValue != null) {
+                    own.put(key, (String) ownValue);
+                }
+                if (value.indexOf('{') >= 0) {
+                    try {
+                        compiled.put(key, new MessageFormat(escapeQuotes(value)));
+                    } catch (IllegalArgumentException e) {
+                        // reported when the translation is actually used.
+                    }
+                }
+            }
+            this.translations = Collections.unmodifiableMap(all);
+            this.ownTranslations = own;
+            this.formats = compiled;
+        }
+
+        private String format(String key, String value, Object... params) {
+            MessageFormat mf = this.formats.get(key);
+            if (mf == null || params.length == 0 || !value.equals(this.translations.get(key))) {
+                return formatPattern(value, params);
+            }
+            // MessageFormat is not thread-safe, copying is much cheaper than parsing again.
+            return ((MessageFormat) mf.clone()).format(params);
+        }
+    }
+
     private static final long serialVersionUID = 687252956819191905L;
     private static final Logger logger = (Logger) LoggerFactory.getLogger(Translator.class);
     private static Translator helper = new Translator();
@@ -65,6 +118,7 @@ public class Translator implements I18NProvider {
     private static long resetTimeStamp = System.currentTimeMillis();
 
     private static Supplier<Locale> localeSupplier;
+    private static volatile Map<Locale, Catalog> catalogs = new ConcurrentHashMap<>();
 
     public static Locale createLocale(String localeString) {
         if (localeString == null) {
@@ -108,7 +162,7 @@ public class Translator implements I18NProvider {
     }
 
     public static Enumeration<String> getKeys() {
-        return Translator.getBundleFromCSV(Locale.ENGLISH).getKeys();
+        return Collections.enumeration(getCatalog(Locale.ENGLISH).translations.keySet());
     }
 
     /**
@@ -118,16 +172,52 @@ public class Translator implements I18NProvider {
         return localeSupplier;
     }
 
+    /**
+     * @return all the translations for the current locale. The map is shared and cannot be modified.
+     */
     public static Map<String, String> getMap() {
-        final PropertyResourceBundle bundle = (PropertyResourceBundle) getBundleFromCSV(getLocaleSupplier().get());
-        Map<String, String> translations = new HashMap<>();
-        Enumeration<String> keys = bundle.getKeys();
-        String key;
-        while (keys.hasMoreElements()) {
-            key = keys.nextElement();
-            translations.put(key, bundle.getString(key));
+        return getCatalog(getLocaleSupplier().get()).translations;
+    }
+
+    /**
+     * Translations for the keys that start with a prefix, for use by a display template. The prefix is removed from
+     * the keys, so "Scoreboard.Name" is available as "Name". The object is shared by all the displays using the same
+     * locale and must not be modified.
+     *
+     * @param prefix for example "Scoreboard."
+     * @return the translations in the current locale
+     */
+    public static JsonObject getSectionJson(String prefix) {
+        Locale locale = effectiveLocale();
+        Catalog catalog = getCatalog(locale);
+        JsonObject section = catalog.sections.get(prefix);
+        if (section == null) {
+            section = Json.createObject();
+            for (String key : getCatalog(Locale.ENGLISH).translations.keySet()) {
+                if (key.startsWith(prefix)) {
+                    String value = catalog.translations.get(key);
+                    section.put(key.replace(prefix, ""),
+                            value != null ? value : "!" + locale.getLanguage() + ": " + key);
+                }
+            }
+            JsonObject prev = catalog.sections.putIfAbsent(prefix, section);
+            section = prev != null ? prev : section;
         }
-        return translations;
+        return section;
+    }
+
+    /**
+     * @param prefix
+     * @return the same translations as {@link #getSectionJson(String)}, serialized once.
+     */
+    public static String getSectionJsonString(String prefix) {
+        Catalog catalog = getCatalog(effectiveLocale());
+        String json = catalog.sectionsJson.get(prefix);
+        if (json == null) {
+            json = getSectionJson(prefix).toJson();
+            catalog.sectionsJson.putIfAbsent(prefix, json);
+        }
+        return json;
     }
 
     public static long getResetTimeStamp() {
@@ -146,6 +236,7 @@ public class Translator implements I18NProvider {
         resetTimeStamp = System.currentTimeMillis();
         locales = null;
         i18nloader = null;
+        catalogs = new ConcurrentHashMap<>();
         helper = new Translator();
         logger.debug("cleared translation class loader");
     }
@@ -354,6 +445,46 @@ public class Translator implements I18NProvider {
         }
     }
 
+    /**
+     * Same locale as used by {@link #translate(String)}.
+     */
+    private static Locale effectiveLocale() {
+        Locale l = getLocaleSupplier().get();
+        return l != null ? l : getForcedLocale();
+    }
+
+    private static String escapeQuotes(String pattern) {
+        // single quotes must be doubled. If already doubled in the input, fix back.
+        pattern = pattern.replaceAll("'", "''");
+        pattern = pattern.replaceAll("''''", "''");
+        return pattern;
+    }
+
+    private static String formatPattern(String pattern, Object... params) {
+        String value = pattern;
+        if (params.length > 0) {
+            value = MessageFormat.format(escapeQuotes(pattern), params);
+        }
+        return value;
+    }
+
+    /**
+     * Get the translations for a locale; the bundle is only read the first time after a reset.
+     *
+     * @param locale
+     * @return
+     */
+    private static Catalog getCatalog(Locale locale) {
+        Map<Locale, Catalog> current = catalogs;
+        Catalog catalog = current.get(locale);
+        if (catalog == null) {
+            catalog = new Catalog((PropertyResourceBundle) getBundleFromCSV(locale));
+            Catalog prev = current.putIfAbsent(locale, catalog);
+            catalog = prev != null ? prev : catalog;
+        }
+        return catalog;
+    }
+
     private static void throwInvalidLocale(String localeString) {
         String message = MessageFormat.format("invalid locale: {0}", localeString);
         logger.error(message);
@@ -381,16 +512,14 @@ public class Translator implements I18NProvider {
             return "";
         }
 
-        final PropertyResourceBundle bundle = (PropertyResourceBundle) getBundleFromCSV(locale);
+        final Catalog catalog = getCatalog(locale);
 
-        String value;
-        try {
-            value = bundle.getString(key);
-        } catch (final MissingResourceException e) {
+        String value = catalog.translations.get(key);
+        if (value == null) {
             return "!" + locale.getLanguage() + ": " + key;
         }
         if (params.length > 0) {
-            value = format(value, params);
+            value = catalog.format(key, value, params);
         }
         return value;
     }
@@ -400,18 +529,14 @@ public class Translator implements I18NProvider {
             nullTranslationKey();
             return "";
         }
-        final PropertyResourceBundle bundle = (PropertyResourceBundle) getBundleFromCSV(locale);
+        final Catalog catalog = getCatalog(locale);
 
-        String value;
-        
-        //value = (String) bundle.handleGetObject(key);
-        try {
-            value = bundle.getString(key);
-        } catch (final MissingResourceException e) {
+        String value = catalog.translations.get(key);
+        if (value == null) {
             return null;
         }
         if (params.length > 0) {
-            value = format(value, params);
+            value = catalog.format(key, value, params);
         }
         return value;
     }
@@ -421,13 +546,11 @@ public class Translator implements I18NProvider {
             nullTranslationKey();
             return "";
         }
-        final PropertyResourceBundle bundle = (PropertyResourceBundle) getBundleFromCSV(locale);
+        final Catalog catalog = getCatalog(locale);
 
-        String value;
-        
-        value = (String) bundle.handleGetObject(key);
+        String value = catalog.ownTranslations.get(key);
         if (params.length > 0) {
-            value = format(value, params);
+            value = catalog.format(key, value, params);
         }
         return value;
     }
@@ -440,17 +563,15 @@ public class Translator implements I18NProvider {
             nullTranslationKey();
             return "";
         }
-        final PropertyResourceBundle bundle = (PropertyResourceBundle) getBundleFromCSV(locale);
+        Catalog catalog = getCatalog(locale);
 
-        String value;
-        try {
-            value = bundle.getString(key);
-        } catch (final MissingResourceException e) {
-            PropertyResourceBundle enBundle = (PropertyResourceBundle) getBundleFromCSV(Locale.ENGLISH);
-            value = (String) enBundle.handleGetObject(key);
+        String value = catalog.translations.get(key);
+        if (value == null) {
+            catalog = getCatalog(Locale.ENGLISH);
+            value = catalog.ownTranslations.get(key);
         }
         if (params.length > 0 && value != null) {
-            value = format(value, params);
+            value = catalog.format(key, value, params);
         }
         return value;
     }
@@ -464,18 +585,6 @@ public class Translator implements I18NProvider {
         logger./**/warn("null translation key");
     }
 
-    private String format(String pattern, Object... params) {
-        String value = pattern;
-        if (params.length > 0) {
-            // single quotes must be doubled. If already doubled in the input, fix back.
-            pattern = pattern.replaceAll("'", "''");
-            pattern = pattern.replaceAll("''''", "''");
-            value = MessageFormat.format(pattern, params);
-            // logger.trace("format {} input={} params={} \\n result={}", params.getClass(), pattern, params, value);
-        }
-        return value;
-    }
-
     private Locale overrideLocale(Locale locale) {
         Locale l = getLocaleSupplier().get();
         if (l != null) {
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import app.owlcms.utils.ResourceWalker;
+import app.owlcms.utils.StartupUtils;
+
+/**
+ * Memory copies of the small files served by {@link FileServlet}: style sheets, flags, pictures, short sounds. The
+ * same files are fetched by every display, so they are read and compressed once.
+ *
+ * Entries are kept by resolved path and checked against the size and modification time of the file. All entries are
+ * dropped when the local override directory is replaced. The least recently used entries are evicted beyond the
+ * memory budget, set in megabytes by <code>-DassetCacheMB</code> (or OWLCMS_ASSETCACHEMB); 0 disables the cache.
+ */
+class AssetCache {
+
+	/**
+	 * The content of a file, with its compressed variant if it is worth sending.
+	 */
+	static class Asset {
+		private final byte[] content;
+		private final String eTag;
+		private final byte[] gzipped;
+		private final long lastModified;
+		private final long size;
+
+		private Asset(byte[] content, byte[] gzipped, String eTag, BasicFileAttributes attr) {
+			this.content = content;
+			this.gzipped = gzipped;
+			this.eTag = eTag;
+			this.size = attr.size();
+			this.lastModified = attr.lastModifiedTime().toMillis();
+		}
+
+		/**
+		 * @param gzip true if the client accepts gzip
+		 * @return the bytes to send
+		 */
+		byte[] getBody(boolean gzip) {
+			return gzip && gzipped != null ? gzipped : content;
+		}
+
+		/**
+		 * @param gzip true if the client accepts gzip
+		 * @return a strong ETag for the variant sent
+		 */
+		String getETag(boolean gzip) {
+			return gzip && gzipped != null ? "\"" + eTag + "-gzip\"" : "\"" + eTag + "\"";
+		}
+
+		boolean isGzipped(boolean gzip) {
+			return gzip && gzipped != null;
+		}
+
+		private boolean isCurrent(BasicFileAttributes attr) {
+			return size == attr.size() && lastModified == attr.lastModifiedTime().toMillis();
+		}
+
+		private long weight() {
+			return content.length + (gzipped != null ? gzipped.length : 0);
+		}
+	}
+
+	/** larger files are streamed from disk */
+	static final long MAX_ASSET_SIZE = 512 * 1024;
+
+	/**
+	 * @param contentType
+	 * @return true if compressing the content type is worthwhile
+	 */
+	static boolean isCompressible(String contentType) {
+		return contentType.startsWith("text")
+		        || contentType.contains("javascript")
+		        || contentType.contains("json")
+		        || contentType.contains("svg+xml");
+	}
+
+	private final Map<Path, Asset> assets = new LinkedHashMap<>(64, 0.75f, true);
+	private final long budget = StartupUtils.getIntegerParam("assetCacheMB", 32) * 1024L * 1024L;
+	private Path localDir;
+	private long used;
+
+	/**
+	 * Fetch the content of a file, reading it if it is not cached or has changed.
+	 *
+	 * @param file         resolved through {@link ResourceWalker}
+	 * @param attr         the current attributes of the file
+	 * @param compressible true if a gzip variant should be prepared
+	 * @return the cached content, or null if the file should be streamed
+	 * @throws IOException
+	 */
+	Asset get(Path file, BasicFileAttributes attr, boolean compressible) throws IOException {
+		if (attr.size() > MAX_ASSET_SIZE || attr.size() > budget) {
+			return null;
+		}
+		synchronized (this) {
+			Path currentLocalDir = ResourceWalker.getLocalDirPath();
+			if (currentLocalDir != localDir) {
+				// new override zip, resolved paths now point elsewhere
+				clear();
+				localDir = currentLocalDir;
+			}
+			Asset asset = assets.get(file);
+			if (asset != null && asset.isCurrent(attr)) {
+				return asset;
+			}
+		}
+
+		// read outside the lock; two threads loading the same file is harmless.
+		byte[] content = Files.readAllBytes(file);
+		byte[] gzipped = compressible ? gzip(content) : null;
+		Asset asset = new Asset(content, gzipped, digest(content), attr);
+
+		synchronized (this) {
+			Asset previous = assets.put(file, asset);
+			if (previous != null) {
+				used -= previous.weight();
+			}
+			used += asset.weight();
+			Iterator<Asset> lru = assets.values().iterator();
+			while (used > budget && lru.hasNext()) {
+				Asset evicted = lru.next();
+				used -= evicted.weight();
+				lru.remove();
+			}
+		}
+		return asset;
+	}
+
+	synchronized void clear() {
+		assets.clear();
+		used = 0;
+	}
+
+	private String digest(byte[] content) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(hash).substring(0, 22);
+		} catch (NoSuchAlgorithmException e) {
+			// mandatory in every JRE
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private byte[] gzip(byte[] content) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 64);
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(content);
+		}
+		if (bytes.size() >= content.length) {
+			// already compressed, or too small
+			return null;
+		}
+		return bytes.toByteArray();
+	}
+
+}
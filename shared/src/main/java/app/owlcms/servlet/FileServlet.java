@@ -114,6 +114,8 @@ public class FileServlet extends HttpServlet {
 	private static Logger logger = (Logger) LoggerFactory.getLogger(FileServlet.class);
     { logger.setLevel(Level.INFO); }
 
+	private final transient AssetCache assetCache = new AssetCache();
+
 	/**
 	 * @return the ignoreCaching
 	 */
@@ -383,7 +385,25 @@ public class FileServlet extends HttpServlet {
 
 		long length = attr.size();
 		long lastModified = attr.lastModifiedTime().toMillis();
-		String eTag = fileName + "_" + length + "_" + lastModified;
+
+		// Get content type by file name.
+		// If content type is unknown, then set the default value.
+		// For all content types, see: http://www.w3schools.com/media/media_mimeref.asp
+		// To add new content types, add new mime-mapping entry in web.xml.
+		String contentType = getServletContext().getMimeType(fileName);
+		if (contentType == null) {
+			contentType = "application/octet-stream";
+		}
+
+		// Small files are served from memory, already compressed; byte ranges are
+		// always taken from the uncompressed content.
+		boolean compressible = AssetCache.isCompressible(contentType);
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		boolean acceptsGzip = compressible && request.getHeader("Range") == null
+		        && acceptEncoding != null && accepts(acceptEncoding, "gzip");
+		AssetCache.Asset asset = assetCache.get(file, attr, compressible);
+		String eTag = asset != null ? asset.getETag(acceptsGzip)
+		        : fileName + "_" + length + "_" + lastModified;
 		long expires;
 		if (isIgnoreCaching()) {
 			expires = System.currentTimeMillis() - 2000; // already expired to force reload
@@ -505,26 +525,12 @@ public class FileServlet extends HttpServlet {
 		// Prepare and initialize response
 		// --------------------------------------------------------
 
-		// Get content type by file name and set default GZIP support and content
-		// disposition.
-		String contentType = getServletContext().getMimeType(fileName);
-		boolean acceptsGzip = false;
+		// Set default content disposition.
 		String disposition = "inline";
 
-		// If content type is unknown, then set the default value.
-		// For all content types, see: http://www.w3schools.com/media/media_mimeref.asp
-		// To add new content types, add new mime-mapping entry in web.xml.
-		if (contentType == null) {
-			contentType = "application/octet-stream";
-		}
-
-		// If content type is text, then determine whether GZIP content encoding is
-		// supported by
-		// the browser and expand content type with the one and right character
-		// encoding.
+		// If content type is text, then expand content type with the one and right
+		// character encoding.
 		if (contentType.startsWith("text")) {
-			String acceptEncoding = request.getHeader("Accept-Encoding");
-			acceptsGzip = acceptEncoding != null && accepts(acceptEncoding, "gzip");
 			contentType += ";charset=UTF-8";
 		}
 
@@ -545,6 +551,9 @@ public class FileServlet extends HttpServlet {
 		response.setHeader("ETag", eTag);
 		response.setDateHeader("Last-Modified", lastModified);
 		response.setDateHeader("Expires", expires);
+		if (compressible) {
+			response.setHeader("Vary", "Accept-Encoding");
+		}
 
 		// Send requested file (part(s)) to client
 		// ------------------------------------------------
@@ -554,10 +563,27 @@ public class FileServlet extends HttpServlet {
 		FileChannel in = null;
 
 		try {
+			output = response.getOutputStream();
+
+			if ((ranges.isEmpty() || ranges.get(0) == full) && asset != null) {
+
+				// Return full file from memory.
+				byte[] body = asset.getBody(acceptsGzip);
+				response.setContentType(contentType);
+				if (asset.isGzipped(acceptsGzip)) {
+					response.setHeader("Content-Encoding", "gzip");
+				}
+				response.setHeader("Content-Length", String.valueOf(body.length));
+				response.setStatus(HttpServletResponse.SC_OK);
+				if (content) {
+					output.write(body);
+				}
+				return;
+			}
+
 			// Open streams.
 			// input = new RandomAccessFile(file, "r");
 			in = FileChannel.open(file, StandardOpenOption.READ);
-			output = response.getOutputStream();
 
 			if (ranges.isEmpty() || ranges.get(0) == full) {
 
@@ -0,0 +1,356 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Asynchronous event bus with per-subscriber ordering.
+ *
+ * Each registered object gets its own mailbox; events are delivered to a given subscriber one at a time, in the order
+ * they were posted. Mailboxes are drained by a bounded pool of named threads shared by all the buses, so a burst of
+ * events no longer creates a thread per delivery. A subscriber that falls behind (typically a display whose browser
+ * went away) loses its oldest events once its mailbox is full, instead of holding memory forever.
+ *
+ * The pool size and the mailbox capacity are read from the <code>eventThreads</code> and
+ * <code>eventQueueSize</code> parameters. Queue depth, dispatch latency and execution time per event type are
+ * published over JMX under <code>app.owlcms:type=EventBus</code>.
+ *
+ * The class extends {@link EventBus} so it can be used wherever a Guava bus was used; only register, unregister and
+ * post are meaningful.
+ */
+public class OrderedEventBus extends EventBus implements OrderedEventBusMBean {
+
+    private static final class Queued {
+        private final Object event;
+        private final long enqueuedNanos;
+
+        private Queued(Object event) {
+            this.event = event;
+            this.enqueuedNanos = System.nanoTime();
+        }
+    }
+
+    private static final class Timing {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            this.count.incrementAndGet();
+            this.totalNanos.addAndGet(nanos);
+            this.maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private double mean() {
+            long n = this.count.get();
+            return n == 0 ? 0.0D : this.totalNanos.get() / 1_000_000.0D / n;
+        }
+
+        private double max() {
+            return this.maxNanos.get() / 1_000_000.0D;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("n=%d mean=%.2fms max=%.2fms", this.count.get(), mean(), max());
+        }
+    }
+
+    /**
+     * Events waiting for one subscriber. Runs on the shared pool while it has events, at most one thread at a time.
+     */
+    private final class Mailbox implements Runnable {
+        private final Object listener;
+        private final Set<Class<?>> eventTypes;
+        /** synchronous bus whose only subscriber is the listener; Guava finds the methods to call */
+        private final EventBus delivery;
+        private final ArrayDeque<Queued> queue = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean closed;
+
+        private Mailbox(Object listener) {
+            this.listener = listener;
+            this.eventTypes = subscribedTypes(listener.getClass());
+            this.delivery = new EventBus((exception, context) -> logger.error("{} {} {}", getName(),
+                    context.getSubscriberMethod().getName(), LoggerUtils.stackTrace(exception)));
+            this.delivery.register(listener);
+        }
+
+        private boolean accepts(Object event) {
+            for (Class<?> eventType : this.eventTypes) {
+                if (eventType.isInstance(event)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void close() {
+            synchronized (this) {
+                OrderedEventBus.this.queueDepth.addAndGet(-this.queue.size());
+                this.queue.clear();
+                this.closed = true;
+            }
+        }
+
+        private void offer(Object event) {
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                if (this.queue.size() >= QUEUE_CAPACITY) {
+                    Queued dropped = this.queue.removeFirst();
+                    OrderedEventBus.this.queueDepth.decrementAndGet();
+                    OrderedEventBus.this.droppedEvents.incrementAndGet();
+                    logger.warn("{} subscriber {} is not keeping up, dropped {}", getName(),
+                            this.listener.getClass().getSimpleName(), dropped.event.getClass().getSimpleName());
+                }
+                this.queue.addLast(new Queued(event));
+                OrderedEventBus.this.queueDepth.incrementAndGet();
+                if (this.scheduled) {
+                    return;
+                }
+                this.scheduled = true;
+            }
+            getExecutor().execute(this);
+        }
+
+        @Override
+        public void run() {
+            // give other subscribers a chance after a batch
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Queued queued;
+                synchronized (this) {
+                    queued = this.queue.pollFirst();
+                    if (queued == null) {
+                        this.scheduled = false;
+                        return;
+                    }
+                }
+                OrderedEventBus.this.queueDepth.decrementAndGet();
+                deliver(queued);
+            }
+            synchronized (this) {
+                if (this.queue.isEmpty()) {
+                    this.scheduled = false;
+                    return;
+                }
+            }
+            getExecutor().execute(this);
+        }
+
+        private void deliver(Queued queued) {
+            long start = System.nanoTime();
+            OrderedEventBus.this.dispatchLatency.record(start - queued.enqueuedNanos);
+            this.delivery.post(queued.event);
+            OrderedEventBus.this.executionTimes
+                    .computeIfAbsent(queued.event.getClass().getSimpleName(), (k) -> new Timing())
+                    .record(System.nanoTime() - start);
+            OrderedEventBus.this.deliveredEvents.incrementAndGet();
+        }
+    }
+
+    private static final int BATCH_SIZE = 10;
+    private static final int QUEUE_CAPACITY = StartupUtils.getIntegerParam("eventQueueSize", 100);
+    private static final Logger logger = (Logger) LoggerFactory.getLogger(OrderedEventBus.class);
+    private static ThreadPoolExecutor executor;
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int nbThreads = StartupUtils.getIntegerParam("eventThreads",
+                    Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+            AtomicInteger threadNumber = new AtomicInteger();
+            ThreadFactory threadFactory = (r) -> {
+                Thread t = new Thread(r, "events-" + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            // the work queue holds at most one entry per subscriber, it cannot grow unbounded
+            executor = new ThreadPoolExecutor(nbThreads, nbThreads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), threadFactory);
+            executor.allowCoreThreadTimeOut(true);
+            logger.info("event delivery using {} threads", nbThreads);
+        }
+        return executor;
+    }
+
+    private static Set<Class<?>> subscribedTypes(Class<?> clazz) {
+        Set<Class<?>> types = new HashSet<>();
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            addSubscribedTypes(c, types);
+            for (Class<?> i : c.getInterfaces()) {
+                addSubscribedTypes(i, types);
+            }
+        }
+        return types;
+    }
+
+    private static void addSubscribedTypes(Class<?> c, Set<Class<?>> types) {
+        for (Method m : c.getDeclaredMethods()) {
+            if (m.isAnnotationPresent(Subscribe.class) && m.getParameterCount() == 1) {
+                types.add(m.getParameterTypes()[0]);
+            }
+        }
+    }
+
+    private final List<Mailbox> mailboxes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong deliveredEvents = new AtomicLong();
+    private Timing dispatchLatency = new Timing();
+    private Map<String, Timing> executionTimes = new ConcurrentHashMap<>();
+
+    public OrderedEventBus(String identifier) {
+        super(identifier);
+        registerMBean();
+    }
+
+    @Override
+    public long getDeliveredEvents() {
+        return this.deliveredEvents.get();
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return this.droppedEvents.get();
+    }
+
+    @Override
+    public String getExecutionTimes() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Timing> e : new TreeMap<>(this.executionTimes).entrySet()) {
+            sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public double getMaxDispatchLatencyMillis() {
+        return this.dispatchLatency.max();
+    }
+
+    @Override
+    public double getMeanDispatchLatencyMillis() {
+        return this.dispatchLatency.mean();
+    }
+
+    @Override
+    public String getName() {
+        return identifier();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return this.queueDepth.get();
+    }
+
+    @Override
+    public int getSubscriberCount() {
+        return this.mailboxes.size();
+    }
+
+    /**
+     * Queue the event for every subscriber that has a method accepting it. Returns immediately.
+     */
+    @Override
+    public void post(Object event) {
+        for (Mailbox mailbox : this.mailboxes) {
+            if (mailbox.accepts(event)) {
+                mailbox.offer(event);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void register(Object object) {
+        if (findMailbox(object) != null) {
+            return;
+        }
+        this.mailboxes.add(new Mailbox(object));
+    }
+
+    @Override
+    public void resetStatistics() {
+        this.dispatchLatency = new Timing();
+        this.executionTimes = new ConcurrentHashMap<>();
+        this.droppedEvents.set(0);
+        this.deliveredEvents.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s subscribers=%d queued=%d delivered=%d dropped=%d latency mean=%.2fms max=%.2fms",
+                getName(), getSubscriberCount(), getQueueDepth(), getDeliveredEvents(), getDroppedEvents(),
+                getMeanDispatchLatencyMillis(), getMaxDispatchLatencyMillis());
+    }
+
+    /**
+     * Pending events for the object are discarded.
+     *
+     * @throws IllegalArgumentException if the object was not registered, as for a Guava bus
+     */
+    @Override
+    public synchronized void unregister(Object object) {
+        Mailbox mailbox = findMailbox(object);
+        if (mailbox == null) {
+            throw new IllegalArgumentException("missing event subscriber for an annotated method. Is " + object
+                    + " registered?");
+        }
+        this.mailboxes.remove(mailbox);
+        mailbox.close();
+    }
+
+    private Mailbox findMailbox(Object object) {
+        for (Mailbox mailbox : this.mailboxes) {
+            if (mailbox.listener == object) {
+                return mailbox;
+            }
+        }
+        return null;
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("app.owlcms:type=EventBus,name=" + ObjectName.quote(identifier()));
+            if (server.isRegistered(name)) {
+                // bus re-created for the same platform
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (Exception e) {
+            logger.warn("cannot publish metrics for {}: {}", identifier(), e.toString());
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.utils;
+
+/**
+ * Metrics published over JMX for each {@link OrderedEventBus}.
+ */
+public interface OrderedEventBusMBean {
+
+    public long getDeliveredEvents();
+
+    public long getDroppedEvents();
+
+    public String getExecutionTimes();
+
+    public double getMaxDispatchLatencyMillis();
+
+    public double getMeanDispatchLatencyMillis();
+
+    public String getName();
+
+    public int getQueueDepth();
+
+    public int getSubscriberCount();
+
+    public void resetStatistics();
+
+}
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Shared scheduler for delayed actions (decision display, resets, reminders) and short background jobs.
+ *
+ * Delayed actions run on a small fixed pool (<code>schedulerThreads</code> parameter) instead of a
+ * <code>java.util.Timer</code> thread per call. Background jobs that may block (sounds, simulation) run on a separate
+ * bounded pool of reusable threads so they cannot delay the timers. The lag between the planned and actual start of
+ * delayed actions is measured and published over JMX as <code>app.owlcms:type=Scheduler</code>.
+ *
+ * In testing mode, use a {@link VirtualScheduler} instead.
+ */
+public class Scheduler implements SchedulerMBean {
+
+    /**
+     * Handle on a scheduled action.
+     */
+    public interface Task {
+        /**
+         * Prevent the action from running if it has not started yet.
+         */
+        void cancel();
+
+        boolean isDone();
+    }
+
+    /**
+     * A job that must not run on the calling thread.
+     */
+    private static class Detached implements Runnable {
+        private final Runnable r;
+
+        Detached(Runnable r) {
+            this.r = r;
+        }
+
+        @Override
+        public void run() {
+            this.r.run();
+        }
+    }
+
+    private static final long LATE_MILLIS = 50;
+    private static final int MAX_WORKERS = 64;
+    private static Scheduler shared;
+    private static final Logger logger = (Logger) LoggerFactory.getLogger(Scheduler.class);
+
+    public static synchronized Scheduler getShared() {
+        if (shared == null) {
+            shared = new Scheduler(StartupUtils.getIntegerParam("schedulerThreads", 4));
+        }
+        return shared;
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return (r) -> {
+            Thread t = new Thread(r, prefix + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static Task wrap(Future<?> future) {
+        return new Task() {
+            @Override
+            public void cancel() {
+                future.cancel(false);
+            }
+
+            @Override
+            public boolean isDone() {
+                return future.isDone();
+            }
+        };
+    }
+
+    private ScheduledThreadPoolExecutor timers;
+    private ThreadPoolExecutor workers;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong lateCount = new AtomicLong();
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    /**
+     * Used by {@link VirtualScheduler}, which does not need threads.
+     */
+    protected Scheduler() {
+    }
+
+    private Scheduler(int nbThreads) {
+        this.timers = new ScheduledThreadPoolExecutor(nbThreads, threadFactory("scheduler-"));
+        this.timers.setRemoveOnCancelPolicy(true);
+        // threads are reused for a minute; if all are busy the caller does the work, unless it is waiting for it.
+        ThreadFactory workerFactory = threadFactory("worker-");
+        this.workers = new ThreadPoolExecutor(0, MAX_WORKERS, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                workerFactory, (r, executor) -> {
+                    if (executor.isShutdown()) {
+                        return;
+                    }
+                    if (r instanceof Detached) {
+                        workerFactory.newThread(r).start();
+                    } else {
+                        r.run();
+                    }
+                });
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("app.owlcms:type=Scheduler"));
+        } catch (Exception e) {
+            logger.warn("cannot publish scheduler metrics: {}", e.toString());
+        }
+    }
+
+    /**
+     * Run a job that may block, without tying up the timer threads.
+     *
+     * @param r the job
+     */
+    public void execute(Runnable r) {
+        this.workers.execute(() -> {
+            try {
+                r.run();
+            } catch (Throwable t) {
+                logger.error(LoggerUtils.stackTrace(t));
+            }
+        });
+    }
+
+    /**
+     * Run a job that may block on a pool thread, never on the caller. Used for the producer side of a pipe, which
+     * would wait forever if the caller had to run it before reading.
+     *
+     * @param r the job
+     */
+    public void executeDetached(Runnable r) {
+        this.workers.execute(new Detached(() -> {
+            try {
+                r.run();
+            } catch (Throwable t) {
+                logger.error(LoggerUtils.stackTrace(t));
+            }
+        }));
+    }
+
+    @Override
+    public long getLateCount() {
+        return this.lateCount.get();
+    }
+
+    @Override
+    public double getMaxLagMillis() {
+        return this.maxLagNanos.get() / 1_000_000.0D;
+    }
+
+    @Override
+    public double getMeanLagMillis() {
+        long n = this.count.get();
+        return n == 0 ? 0.0D : this.totalLagNanos.get() / 1_000_000.0D / n;
+    }
+
+    @Override
+    public long getScheduledCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Run an action after a delay.
+     *
+     * @param r           the action, should not block
+     * @param delayMillis
+     * @return a handle to cancel the action
+     */
+    public Task schedule(Runnable r, long delayMillis) {
+        long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        return wrap(this.timers.schedule(() -> {
+            recordLag(System.nanoTime() - due);
+            try {
+                r.run();
+            } catch (Throwable t) {
+                logger.error(LoggerUtils.stackTrace(t));
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Run a job that may block after a delay. The timer thread only hands the job over to the background pool.
+     *
+     * @param r           the job
+     * @param delayMillis
+     * @return a handle to cancel the job before the delay expires
+     */
+    public Task scheduleJob(Runnable r, long delayMillis) {
+        return schedule(() -> execute(r), delayMillis);
+    }
+
+    private void recordLag(long lag) {
+        lag = Math.max(lag, 0);
+        this.count.incrementAndGet();
+        this.totalLagNanos.addAndGet(lag);
+        this.maxLagNanos.accumulateAndGet(lag, Math::max);
+        if (lag > TimeUnit.MILLISECONDS.toNanos(LATE_MILLIS)) {
+            this.lateCount.incrementAndGet();
+            logger.warn("scheduled action started {} ms late", TimeUnit.NANOSECONDS.toMillis(lag));
+        }
+    }
+
+}
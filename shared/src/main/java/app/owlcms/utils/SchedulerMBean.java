@@ -0,0 +1,22 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.utils;
+
+/**
+ * Metrics published over JMX for the shared {@link Scheduler}.
+ */
+public interface SchedulerMBean {
+
+    public long getLateCount();
+
+    public double getMaxLagMillis();
+
+    public double getMeanLagMillis();
+
+    public long getScheduledCount();
+
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2023 Jean-François Lamy
+ *
+ * Licensed under the Non-Profit Open Software License version 3.0  ("NPOSL-3.0")
+ * License text at https://opensource.org/licenses/NPOSL-3.0
+ *******************************************************************************/
+package app.owlcms.utils;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Scheduler running on a virtual clock, for tests.
+ *
+ * Nothing runs on other threads. With auto-advance (the default), scheduling an action immediately moves the clock
+ * to its due time and runs it, together with anything it schedules in turn, so tests see the same outcome as after
+ * the real delays without waiting. Without auto-advance, actions only run when the test calls
+ * {@link #advance(long)}.
+ *
+ * Actions may be scheduled from several threads (the simulation reacts to events delivered asynchronously); they are
+ * run one at a time, by whichever thread is already running actions.
+ */
+public class VirtualScheduler extends Scheduler {
+
+    private static final class Entry implements Task {
+        private final long due;
+        private final long seq;
+        private final Runnable action;
+        private boolean cancelled;
+        private boolean done;
+
+        private Entry(long due, long seq, Runnable action) {
+            this.due = due;
+            this.seq = seq;
+            this.action = action;
+        }
+
+        @Override
+        public synchronized void cancel() {
+            this.cancelled = true;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return this.done || this.cancelled;
+        }
+    }
+
+    private final boolean autoAdvance;
+    private long now;
+    private long seq;
+    private boolean running;
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(
+            Comparator.comparingLong((Entry e) -> e.due).thenComparingLong(e -> e.seq));
+
+    public VirtualScheduler() {
+        this(true);
+    }
+
+    public VirtualScheduler(boolean autoAdvance) {
+        this.autoAdvance = autoAdvance;
+    }
+
+    /**
+     * Move the clock forward, running the actions that become due, in order.
+     *
+     * @param millis
+     */
+    public void advance(long millis) {
+        long target;
+        synchronized (this) {
+            target = this.now + millis;
+        }
+        runUntil(target);
+        synchronized (this) {
+            this.now = Math.max(this.now, target);
+        }
+    }
+
+    /**
+     * @return the virtual time, in milliseconds since the scheduler was created
+     */
+    public synchronized long currentTimeMillis() {
+        return this.now;
+    }
+
+    @Override
+    public void execute(Runnable r) {
+        r.run();
+    }
+
+    /**
+     * The job feeds a pipe read by the caller, it cannot run inline.
+     */
+    @Override
+    public void executeDetached(Runnable r) {
+        Thread t = new Thread(r, "virtual-detached");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * @return the number of actions waiting for the clock
+     */
+    public synchronized int getPendingCount() {
+        return this.queue.size();
+    }
+
+    @Override
+    public Task schedule(Runnable r, long delayMillis) {
+        Entry entry;
+        synchronized (this) {
+            entry = new Entry(this.now + Math.max(delayMillis, 0), this.seq++, r);
+            this.queue.add(entry);
+            if (!this.autoAdvance || this.running) {
+                // an action scheduled by a running action is picked up by the loop below
+                return entry;
+            }
+        }
+        runUntil(Long.MAX_VALUE);
+        return entry;
+    }
+
+    private void runUntil(long target) {
+        synchronized (this) {
+            if (this.running) {
+                return;
+            }
+            this.running = true;
+        }
+        boolean released = false;
+        try {
+            while (true) {
+                Entry next;
+                synchronized (this) {
+                    next = this.queue.peek();
+                    if (next == null || next.due > target) {
+                        // in the same lock as the check, so an action scheduled from another thread is never left
+                        // behind
+                        this.running = false;
+                        released = true;
+                        return;
+                    }
+                    this.queue.poll();
+                    this.now = Math.max(this.now, next.due);
+                }
+                synchronized (next) {
+                    if (next.cancelled) {
+                        continue;
+                    }
+                    next.done = true;
+                }
+                next.action.run();
+            }
+        } finally {
+            if (!released) {
+                synchronized (this) {
+                    this.running = false;
+                }
+            }
+        }
+    }
+
+}